@@ -0,0 +1,436 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import liquibase.CatalogAndSchema;
+import liquibase.Liquibase;
+
+import liquibase.change.ColumnConfig;
+
+import liquibase.change.core.InsertDataChange;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
+
+import liquibase.database.Database;
+
+import liquibase.diff.DiffGeneratorFactory;
+import liquibase.diff.DiffResult;
+
+import liquibase.diff.compare.CompareControl;
+
+import liquibase.diff.output.DiffOutputControl;
+
+import liquibase.diff.output.changelog.DiffToChangeLog;
+
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+
+import liquibase.resource.ResourceAccessor;
+
+import liquibase.serializer.core.xml.XMLChangeLogSerializer;
+
+import liquibase.snapshot.DatabaseSnapshot;
+import liquibase.snapshot.InvalidExampleException;
+import liquibase.snapshot.SnapshotControl;
+import liquibase.snapshot.SnapshotGeneratorFactory;
+
+import liquibase.statement.DatabaseFunction;
+
+import liquibase.util.LiquibaseUtil;
+
+/**
+ * Generates a squashed baseline changelog by applying a changelog to
+ * an {@linkplain EmbeddedDatabases embedded database}, snapshotting
+ * the resulting schema and writing changesets that recreate it in one
+ * pass.
+ *
+ * <p>The baseline ends with a changeset that inserts a {@code
+ * DATABASECHANGELOG} row for every changeset the embedded database
+ * ran, with the same file path, identity and checksum and an
+ * execution date of the time the baseline is applied, so a database
+ * created from the baseline treats the original changelog's
+ * changesets as applied and goes on to apply only those added
+ * later.</p>
+ *
+ * <p>The baseline reflects the schema as the embedded database
+ * represents it; changesets that are restricted to other databases
+ * with {@code dbms}, or that depend on vendor-specific SQL, are not
+ * captured.  Data is captured only if the {@linkplain
+ * #setDiffTypes(String) diff types} include {@code data}.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see EmbeddedDatabases
+ */
+public class BaselineGenerator {
+
+  /**
+   * The {@code id} of the final changeset of a baseline, which marks
+   * the original changesets as applied.
+   */
+  public static final String HISTORY_CHANGE_SET_ID = "baseline-history";
+
+  /**
+   * The JDBC URL of the embedded database; never {@code null}.
+   */
+  private String url;
+
+  /**
+   * The comma-separated Liquibase contexts to apply; may be {@code
+   * null}.
+   */
+  private String contexts;
+
+  /**
+   * The <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders; may be
+   * {@code null}.
+   */
+  private Properties changeLogParameters;
+
+  /**
+   * The {@code author} of the generated changesets; never {@code
+   * null}.
+   */
+  private String changeSetAuthor;
+
+  /**
+   * The comma-separated types of database objects to capture, as
+   * understood by Liquibase's {@code diffTypes} option; may be {@code
+   * null} in which case Liquibase's defaults will be used.
+   */
+  private String diffTypes;
+
+  /**
+   * The directory to which captured data is written as CSV files;
+   * may be {@code null}.
+   */
+  private String dataDirectory;
+
+  /**
+   * Creates a new {@link BaselineGenerator} that uses the {@linkplain
+   * EmbeddedDatabases#DEFAULT_URL default embedded database}.
+   */
+  public BaselineGenerator() {
+    super();
+    this.url = EmbeddedDatabases.DEFAULT_URL;
+    this.changeSetAuthor = "baseline";
+  }
+
+  /**
+   * Returns the JDBC URL of the embedded database.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} JDBC URL
+   */
+  public String getUrl() {
+    return this.url;
+  }
+
+  /**
+   * Sets the JDBC URL of the embedded database.  The database it
+   * identifies must be empty.
+   *
+   * @param url the JDBC URL; may be {@code null} in which case the
+   * {@linkplain EmbeddedDatabases#DEFAULT_URL default} will be used
+   */
+  public void setUrl(final String url) {
+    this.url = url == null ? EmbeddedDatabases.DEFAULT_URL : url;
+  }
+
+  /**
+   * Returns the comma-separated Liquibase contexts to apply.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the contexts, or {@code null}
+   */
+  public String getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Sets the comma-separated Liquibase contexts to apply.
+   *
+   * @param contexts the contexts; may be {@code null} in which case
+   * all changesets will be applied
+   */
+  public void setContexts(final String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Returns the <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the changelog parameters, or {@code null}
+   */
+  public Properties getChangeLogParameters() {
+    return this.changeLogParameters;
+  }
+
+  /**
+   * Sets the <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders.
+   *
+   * @param changeLogParameters the changelog parameters; may be
+   * {@code null}
+   */
+  public void setChangeLogParameters(final Properties changeLogParameters) {
+    this.changeLogParameters = changeLogParameters;
+  }
+
+  /**
+   * Returns the {@code author} of the generated changesets.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} author
+   */
+  public String getChangeSetAuthor() {
+    return this.changeSetAuthor;
+  }
+
+  /**
+   * Sets the {@code author} of the generated changesets.
+   *
+   * @param changeSetAuthor the author; may be {@code null} in which
+   * case {@code baseline} will be used
+   */
+  public void setChangeSetAuthor(final String changeSetAuthor) {
+    this.changeSetAuthor = changeSetAuthor == null ? "baseline" : changeSetAuthor;
+  }
+
+  /**
+   * Returns the comma-separated types of database objects to
+   * capture.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the types, or {@code null}
+   */
+  public String getDiffTypes() {
+    return this.diffTypes;
+  }
+
+  /**
+   * Sets the comma-separated types of database objects to capture,
+   * such as {@code tables,columns,primaryKeys,data}.
+   *
+   * @param diffTypes the types; may be {@code null} in which case
+   * Liquibase's defaults, which exclude data, will be used
+   */
+  public void setDiffTypes(final String diffTypes) {
+    this.diffTypes = diffTypes;
+  }
+
+  /**
+   * Returns the directory to which captured data is written as CSV
+   * files.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the directory, or {@code null}
+   */
+  public String getDataDirectory() {
+    return this.dataDirectory;
+  }
+
+  /**
+   * Sets the directory to which captured data is written as CSV
+   * files.
+   *
+   * @param dataDirectory the directory; may be {@code null}
+   */
+  public void setDataDirectory(final String dataDirectory) {
+    this.dataDirectory = dataDirectory;
+  }
+
+  /**
+   * Applies the supplied changelog to a fresh embedded database and
+   * writes a baseline changelog that recreates the resulting schema
+   * and marks every applied changeset as having been run.
+   *
+   * <p>The embedded database is closed before this method
+   * returns.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeLog the name of the changelog, as understood by the
+   * supplied {@link ResourceAccessor}; must not be {@code null}
+   *
+   * @param resourceAccessor the {@link ResourceAccessor} used to read
+   * the changelog; must not be {@code null}
+   *
+   * @param out the {@link OutputStream} to which the baseline
+   * changelog will be written; must not be {@code null}; will not be
+   * closed
+   *
+   * @return a non-{@code null} {@link List} of the {@link
+   * RanChangeSet}s the baseline marks as applied, in the order they
+   * were applied
+   *
+   * @exception IllegalArgumentException if any parameter is {@code
+   * null}
+   *
+   * @exception LiquibaseException if the changelog could not be
+   * applied or the database could not be snapshotted
+   *
+   * @exception IOException if the baseline could not be written
+   */
+  public List<RanChangeSet> generate(final String changeLog, final ResourceAccessor resourceAccessor, final OutputStream out) throws LiquibaseException, IOException {
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    if (resourceAccessor == null) {
+      throw new IllegalArgumentException("resourceAccessor", new NullPointerException("resourceAccessor"));
+    }
+    if (out == null) {
+      throw new IllegalArgumentException("out", new NullPointerException("out"));
+    }
+    final List<ChangeSet> baseline;
+    final List<RanChangeSet> ranChangeSets;
+    final Database database = EmbeddedDatabases.open(this.getUrl(), null);
+    try {
+      final Liquibase liquibase = new Liquibase(changeLog, resourceAccessor, database);
+      final Properties changeLogParameters = this.getChangeLogParameters();
+      if (changeLogParameters != null) {
+        for (final String name : changeLogParameters.stringPropertyNames()) {
+          liquibase.setChangeLogParameter(name, changeLogParameters.getProperty(name));
+        }
+      }
+      liquibase.update(this.getContexts());
+      ranChangeSets = database.getRanChangeSetList();
+      baseline = this.snapshot(database);
+      baseline.add(this.newHistoryChangeSet(database, ranChangeSets));
+    } finally {
+      EmbeddedDatabases.closeQuietly(database);
+    }
+    new XMLChangeLogSerializer().write(baseline, out);
+    return ranChangeSets;
+  }
+
+  /**
+   * Snapshots the supplied {@link Database} and returns changesets
+   * that recreate it.
+   *
+   * @param database the {@link Database}; must not be {@code null}
+   *
+   * @return a non-{@code null}, mutable {@link List} of {@link
+   * ChangeSet}s
+   *
+   * @exception LiquibaseException if the snapshot fails
+   *
+   * @exception IOException if captured data could not be written
+   */
+  private final List<ChangeSet> snapshot(final Database database) throws LiquibaseException, IOException {
+    assert database != null;
+    final CatalogAndSchema schema = new CatalogAndSchema(null, null);
+    final CompareControl compareControl = new CompareControl(new CompareControl.SchemaComparison[] { new CompareControl.SchemaComparison(schema, schema) }, this.getDiffTypes());
+    final SnapshotControl snapshotControl = new SnapshotControl(database, this.getDiffTypes());
+    final DiffResult diffResult;
+    try {
+      final SnapshotGeneratorFactory snapshots = SnapshotGeneratorFactory.getInstance();
+      final DatabaseSnapshot reference = snapshots.createSnapshot(compareControl.getSchemas(CompareControl.DatabaseRole.REFERENCE), database, snapshotControl);
+      final DatabaseSnapshot comparison = snapshots.createSnapshot(compareControl.getSchemas(CompareControl.DatabaseRole.COMPARISON), null, snapshotControl);
+      diffResult = DiffGeneratorFactory.getInstance().compare(reference, comparison, compareControl);
+    } catch (final InvalidExampleException e) {
+      throw new DatabaseException(e);
+    }
+    final DiffOutputControl outputControl = new DiffOutputControl(false, false, false);
+    if (this.getDataDirectory() != null) {
+      outputControl.setDataDir(this.getDataDirectory());
+    }
+    final DiffToChangeLog diffToChangeLog = new DiffToChangeLog(diffResult, outputControl);
+    diffToChangeLog.setChangeSetAuthor(this.getChangeSetAuthor());
+    diffToChangeLog.setIdRoot("baseline");
+    return new ArrayList<ChangeSet>(diffToChangeLog.generateChangeSets());
+  }
+
+  /**
+   * Returns a {@link ChangeSet} that inserts a {@code
+   * DATABASECHANGELOG} row for each of the supplied {@link
+   * RanChangeSet}s.
+   *
+   * @param database the {@link Database} the changesets were applied
+   * to; must not be {@code null}
+   *
+   * @param ranChangeSets the {@link RanChangeSet}s; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link ChangeSet}
+   */
+  private final ChangeSet newHistoryChangeSet(final Database database, final List<RanChangeSet> ranChangeSets) {
+    assert database != null;
+    assert ranChangeSets != null;
+    final ChangeSet changeSet = new ChangeSet(HISTORY_CHANGE_SET_ID, this.getChangeSetAuthor(), false, false, null, null, null, null);
+    changeSet.setComments(String.format("Marks %d changesets as applied", ranChangeSets.size()));
+    final String tableName = database.getDatabaseChangeLogTableName();
+    final String version = LiquibaseUtil.getBuildVersion();
+    final DatabaseFunction now = new DatabaseFunction(DatabaseFunction.CURRENT_DATE_TIME_PLACE_HOLDER);
+    int orderExecuted = 0;
+    for (final RanChangeSet ranChangeSet : ranChangeSets) {
+      if (ranChangeSet != null) {
+        final InsertDataChange insert = new InsertDataChange();
+        insert.setTableName(tableName);
+        insert.addColumn(new ColumnConfig().setName("ID").setValue(ranChangeSet.getId()));
+        insert.addColumn(new ColumnConfig().setName("AUTHOR").setValue(ranChangeSet.getAuthor()));
+        insert.addColumn(new ColumnConfig().setName("FILENAME").setValue(ranChangeSet.getChangeLog()));
+        insert.addColumn(new ColumnConfig().setName("DATEEXECUTED").setValueComputed(now));
+        insert.addColumn(new ColumnConfig().setName("ORDEREXECUTED").setValueNumeric(Integer.valueOf(++orderExecuted)));
+        insert.addColumn(new ColumnConfig().setName("EXECTYPE").setValue(ranChangeSet.getExecType() == null ? ChangeSet.ExecType.EXECUTED.value : ranChangeSet.getExecType().value));
+        insert.addColumn(new ColumnConfig().setName("MD5SUM").setValue(ranChangeSet.getLastCheckSum() == null ? null : ranChangeSet.getLastCheckSum().toString()));
+        insert.addColumn(new ColumnConfig().setName("DESCRIPTION").setValue(ranChangeSet.getDescription()));
+        insert.addColumn(new ColumnConfig().setName("COMMENTS").setValue(ranChangeSet.getComments()));
+        insert.addColumn(new ColumnConfig().setName("TAG").setValue(ranChangeSet.getTag()));
+        insert.addColumn(new ColumnConfig().setName("LIQUIBASE").setValue(version));
+        changeSet.addChange(insert);
+      }
+    }
+    return changeSet;
+  }
+
+}
@@ -0,0 +1,942 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.XMLConstants;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.mvel2.templates.TemplateRuntime;
+
+/**
+ * Assembles changelog fragments found among an ordered list of
+ * classpath entries into a single aggregating <a
+ * href="http://www.liquibase.org/">Liquibase</a> changelog, without
+ * any dependency on Maven.
+ *
+ * <p>This is the engine behind the {@code assembleChangeLog} goal,
+ * made available to non-Maven build steps and containers.  Its
+ * inputs are:</p>
+ *
+ * <ul>
+ *
+ * <li>an ordered {@linkplain #getClasspath() classpath}&mdash;jar
+ * files and directories&mdash;normally in topological dependency
+ * order from the entry with the fewest dependencies to the entry with
+ * the most</li>
+ *
+ * <li>the {@linkplain #getChangeLogResourceNames() resource names}
+ * that identify changelog fragments</li>
+ *
+ * <li>an optional <a href="http://mvel.codehaus.org/">MVEL</a>
+ * {@linkplain #getTemplate() template}, and the {@linkplain
+ * #getChangeLogParameters() changelog parameters} and {@linkplain
+ * #getDatabaseChangeLogXsdVersion() XML Schema version} it is merged
+ * with</li>
+ *
+ * </ul>
+ *
+ * <p>When no template is supplied the output of the default template
+ * that ships with this project is produced directly, so MVEL is never
+ * loaded; this keeps the cost of a one-shot assembly close to the
+ * cost of reading the classpath.</p>
+ *
+ * <p>Changelog fragments are {@code include}d by {@link URL}.  The
+ * artifact-aware features of the {@code assembleChangeLog}
+ * goal&mdash;{@code CLASSPATH} include mode, include indices and
+ * context-specific changelogs&mdash;remain Maven-specific.</p>
+ *
+ * <p>Instances of this class are not safe for concurrent use by
+ * multiple threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see #assemble(Writer)
+ */
+public class ChangeLogAssembler {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The changelog resource name used when none is {@linkplain
+   * #setChangeLogResourceNames(List) supplied}: {@value}.
+   */
+  public static final String DEFAULT_CHANGE_LOG_RESOURCE_NAME = "META-INF/liquibase/changelog.xml";
+
+  /**
+   * The classpath resource name of the default changelog template:
+   * {@value}.
+   */
+  public static final String DEFAULT_TEMPLATE_RESOURCE_NAME = "changelog-template.mvl";
+
+  /**
+   * The line separator in effect on this platform.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final String LS = System.getProperty("line.separator", "\n");
+
+  /**
+   * The XML namespace of Liquibase changelogs: {@value}.
+   */
+  private static final String DATABASE_CHANGE_LOG_NAMESPACE = "http://www.liquibase.org/xml/ns/dbchangelog";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The classpath entries to search, in order.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getClasspath()
+   */
+  private List<File> classpath;
+
+  /**
+   * The resource names identifying changelog fragments.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getChangeLogResourceNames()
+   */
+  private List<String> changeLogResourceNames;
+
+  /**
+   * The contents of the <a href="http://mvel.codehaus.org/">MVEL</a>
+   * template, or {@code null} to use the default.
+   *
+   * @see #getTemplate()
+   */
+  private String template;
+
+  /**
+   * The version of the Liquibase XML Schema to declare and validate
+   * against.
+   *
+   * @see #getDatabaseChangeLogXsdVersion()
+   */
+  private String databaseChangeLogXsdVersion;
+
+  /**
+   * Changelog parameters to declare in the assembled changelog.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getChangeLogParameters()
+   */
+  private Properties changeLogParameters;
+
+  /**
+   * Whether to drop changelog fragments whose contents duplicate
+   * those of a fragment found earlier.
+   *
+   * @see #isDeduplicate()
+   */
+  private boolean deduplicate;
+
+  /**
+   * Whether to validate changelog fragments against the Liquibase XML
+   * Schema.
+   *
+   * @see #isValidate()
+   */
+  private boolean validate;
+
+  /**
+   * The maximum number of threads to validate with.
+   *
+   * @see #getValidationThreads()
+   */
+  private int validationThreads;
+
+  /**
+   * Whether to verify that no two changesets share an identity.
+   *
+   * @see #isCheckDuplicateChangeSets()
+   */
+  private boolean checkDuplicateChangeSets;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogAssembler} that searches for {@link
+   * #DEFAULT_CHANGE_LOG_RESOURCE_NAME}, uses the default template and
+   * version {@code 3.0} of the Liquibase XML Schema, but does not
+   * deduplicate or validate changelog fragments or check for
+   * duplicate changesets.
+   */
+  public ChangeLogAssembler() {
+    super();
+    this.setChangeLogResourceNames(Collections.singletonList(DEFAULT_CHANGE_LOG_RESOURCE_NAME));
+    this.setDatabaseChangeLogXsdVersion("3.0");
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the classpath entries&mdash;jar files and
+   * directories&mdash;that will be searched for changelog fragments,
+   * in order.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link List} of {@link File}s, or {@code null}
+   *
+   * @see #setClasspath(List)
+   */
+  public List<File> getClasspath() {
+    return this.classpath;
+  }
+
+  /**
+   * Sets the classpath entries that will be searched for changelog
+   * fragments, in order.
+   *
+   * @param classpath a {@link List} of jar files and directories; may
+   * be {@code null}
+   *
+   * @see #getClasspath()
+   */
+  public void setClasspath(final List<File> classpath) {
+    this.classpath = classpath;
+  }
+
+  /**
+   * Returns the classpath-relative resource names that identify
+   * changelog fragments.  Names may be {@linkplain
+   * ResourceNamePatterns patterns}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link List} of resource names, or {@code null}
+   *
+   * @see #setChangeLogResourceNames(List)
+   */
+  public List<String> getChangeLogResourceNames() {
+    return this.changeLogResourceNames;
+  }
+
+  /**
+   * Sets the classpath-relative resource names that identify
+   * changelog fragments.
+   *
+   * @param changeLogResourceNames a {@link List} of resource names;
+   * may be {@code null}
+   *
+   * @see #getChangeLogResourceNames()
+   */
+  public void setChangeLogResourceNames(final List<String> changeLogResourceNames) {
+    this.changeLogResourceNames = changeLogResourceNames;
+  }
+
+  /**
+   * Returns the contents of the <a
+   * href="http://mvel.codehaus.org/">MVEL</a> template that will
+   * aggregate changelog fragments, or {@code null} if the default
+   * template will be used.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the template contents, or {@code null}
+   *
+   * @see #setTemplate(String)
+   */
+  public String getTemplate() {
+    return this.template;
+  }
+
+  /**
+   * Sets the contents of the <a
+   * href="http://mvel.codehaus.org/">MVEL</a> template that will
+   * aggregate changelog fragments.  The template may refer to the
+   * {@code databaseChangeLogXsdVersion}, {@code changeLogParameters}
+   * and {@code resources} variables, exactly as templates used by the
+   * {@code assembleChangeLog} goal may.
+   *
+   * @param template the template contents; may be {@code null} in
+   * which case the default template will be used
+   *
+   * @see #getTemplate()
+   */
+  public void setTemplate(final String template) {
+    this.template = template;
+  }
+
+  /**
+   * Returns the version of the Liquibase XML Schema that the
+   * assembled changelog declares and that changelog fragments are
+   * {@linkplain #isValidate() validated} against.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the XML Schema version, or {@code null}
+   *
+   * @see #setDatabaseChangeLogXsdVersion(String)
+   */
+  public String getDatabaseChangeLogXsdVersion() {
+    return this.databaseChangeLogXsdVersion;
+  }
+
+  /**
+   * Sets the version of the Liquibase XML Schema that the assembled
+   * changelog declares.
+   *
+   * @param databaseChangeLogXsdVersion the XML Schema version, such
+   * as {@code 3.0}; may be {@code null}
+   *
+   * @see #getDatabaseChangeLogXsdVersion()
+   */
+  public void setDatabaseChangeLogXsdVersion(final String databaseChangeLogXsdVersion) {
+    this.databaseChangeLogXsdVersion = databaseChangeLogXsdVersion;
+  }
+
+  /**
+   * Returns the changelog parameters that the assembled changelog
+   * declares.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Properties} object, or {@code null}
+   *
+   * @see #setChangeLogParameters(Properties)
+   */
+  public Properties getChangeLogParameters() {
+    return this.changeLogParameters;
+  }
+
+  /**
+   * Sets the changelog parameters that the assembled changelog
+   * declares.
+   *
+   * @param changeLogParameters a {@link Properties} object; may be
+   * {@code null}
+   *
+   * @see #getChangeLogParameters()
+   */
+  public void setChangeLogParameters(final Properties changeLogParameters) {
+    this.changeLogParameters = changeLogParameters;
+  }
+
+  /**
+   * Returns {@code true} if changelog fragments whose contents
+   * duplicate those of a fragment found earlier will be dropped.
+   *
+   * @return {@code true} if changelog fragments will be deduplicated
+   *
+   * @see #setDeduplicate(boolean)
+   *
+   * @see #deduplicate(Collection, Map)
+   */
+  public boolean isDeduplicate() {
+    return this.deduplicate;
+  }
+
+  /**
+   * Sets whether changelog fragments whose contents duplicate those
+   * of a fragment found earlier will be dropped.
+   *
+   * @param deduplicate whether to deduplicate changelog fragments
+   *
+   * @see #isDeduplicate()
+   */
+  public void setDeduplicate(final boolean deduplicate) {
+    this.deduplicate = deduplicate;
+  }
+
+  /**
+   * Returns {@code true} if changelog fragments will be validated
+   * against the Liquibase XML Schema.
+   *
+   * @return {@code true} if changelog fragments will be validated
+   *
+   * @see #setValidate(boolean)
+   *
+   * @see #validate(Collection)
+   */
+  public boolean isValidate() {
+    return this.validate;
+  }
+
+  /**
+   * Sets whether changelog fragments will be validated against the
+   * Liquibase XML Schema.
+   *
+   * @param validate whether to validate changelog fragments
+   *
+   * @see #isValidate()
+   */
+  public void setValidate(final boolean validate) {
+    this.validate = validate;
+  }
+
+  /**
+   * Returns the maximum number of threads to validate changelog
+   * fragments with; values less than {@code 1} mean the number of
+   * available processors.
+   *
+   * @return the maximum number of validation threads
+   *
+   * @see #setValidationThreads(int)
+   *
+   * @see ChangeLogValidator#validate(Collection, int)
+   */
+  public int getValidationThreads() {
+    return this.validationThreads;
+  }
+
+  /**
+   * Sets the maximum number of threads to validate changelog
+   * fragments with.
+   *
+   * @param validationThreads the maximum number of validation
+   * threads; values less than {@code 1} mean the number of available
+   * processors
+   *
+   * @see #getValidationThreads()
+   */
+  public void setValidationThreads(final int validationThreads) {
+    this.validationThreads = validationThreads;
+  }
+
+  /**
+   * Returns {@code true} if the assembler will verify that no two
+   * changesets share an identity.
+   *
+   * @return {@code true} if duplicate changesets will be checked for
+   *
+   * @see #setCheckDuplicateChangeSets(boolean)
+   *
+   * @see #checkDuplicateChangeSets(Map)
+   */
+  public boolean isCheckDuplicateChangeSets() {
+    return this.checkDuplicateChangeSets;
+  }
+
+  /**
+   * Sets whether the assembler will verify that no two changesets
+   * share an identity.
+   *
+   * @param checkDuplicateChangeSets whether to check for duplicate
+   * changesets
+   *
+   * @see #isCheckDuplicateChangeSets()
+   */
+  public void setCheckDuplicateChangeSets(final boolean checkDuplicateChangeSets) {
+    this.checkDuplicateChangeSets = checkDuplicateChangeSets;
+  }
+
+  /**
+   * {@linkplain #discover() Discovers} changelog fragments on the
+   * {@linkplain #getClasspath() classpath}, {@linkplain
+   * #deduplicate(Collection, Map) deduplicates}, {@linkplain
+   * #validate(Collection) validates} and {@linkplain
+   * #checkDuplicateChangeSets(Map) checks} them as configured, and
+   * {@linkplain #write(Collection, Writer) writes} an aggregating
+   * changelog that {@code include}s them to the supplied {@link
+   * Writer}.
+   *
+   * <p>Nothing is written if no changelog fragments are found.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}; will not be closed
+   *
+   * @return a non-{@code null} {@link Result} describing the
+   * assembly
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if a changelog fragment could not be read,
+   * failed validation or defined a duplicate changeset, or if the
+   * changelog could not be written
+   */
+  public Result assemble(final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    Collection<? extends ChangeLogResource> resources = this.discover();
+    final Map<ChangeLogResource, ChangeLogResource> dropped = new LinkedHashMap<ChangeLogResource, ChangeLogResource>();
+    if (this.isDeduplicate()) {
+      resources = this.deduplicate(resources, dropped);
+    }
+    if (this.isValidate()) {
+      this.validate(resources);
+    }
+    final Map<ChangeLogResource, String> includes = new LinkedHashMap<ChangeLogResource, String>();
+    for (final ChangeLogResource resource : resources) {
+      includes.put(resource, resource.toString());
+    }
+    if (!includes.isEmpty()) {
+      if (this.isCheckDuplicateChangeSets()) {
+        this.checkDuplicateChangeSets(includes);
+      }
+      this.write(ChangeLogDescriptor.of(includes), writer);
+    }
+    return new Result(includes, dropped);
+  }
+
+  /**
+   * Returns the changelog fragments found on the {@linkplain
+   * #getClasspath() classpath}, ordered first by {@linkplain
+   * #getChangeLogResourceNames() resource name} and then by
+   * classpath entry, which is the same order in which the {@code
+   * assembleChangeLog} goal discovers them.
+   *
+   * <p>Jar files and directories are {@linkplain
+   * JarChangeLogScanner#scan(File, Collection) scanned} directly
+   * rather than through a {@link ClassLoader}.  Classpath entries
+   * that do not exist are skipped.  Resources matching a {@linkplain
+   * ResourceNamePatterns pattern} appear, within each classpath
+   * entry, in natural order.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Collection} of {@link
+   * ChangeLogResource}s
+   *
+   * @exception IOException if a classpath entry could not be read
+   */
+  public Collection<? extends ChangeLogResource> discover() throws IOException {
+    final Collection<ChangeLogResource> returnValue = new ArrayList<ChangeLogResource>();
+    final List<File> classpath = this.getClasspath();
+    final List<String> names = this.getChangeLogResourceNames();
+    if (classpath != null && !classpath.isEmpty() && names != null && !names.isEmpty()) {
+      final List<Map<String, ChangeLogResource>> scans = new ArrayList<Map<String, ChangeLogResource>>(classpath.size());
+      for (final File entry : classpath) {
+        if (entry != null) {
+          if (entry.isFile()) {
+            scans.add(JarChangeLogScanner.scan(entry, names));
+          } else if (entry.isDirectory()) {
+            scans.add(JarChangeLogScanner.scanDirectory(entry, null, names));
+          }
+        }
+      }
+      final ResourceNamePatterns patterns = ResourceNamePatterns.of(names);
+      for (final String name : names) {
+        if (name != null) {
+          for (final Map<String, ChangeLogResource> scan : scans) {
+            returnValue.addAll(patterns.select(scan.values(), name));
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a new {@link Collection} containing those of the supplied
+   * {@link ChangeLogResource}s whose {@linkplain
+   * ChangeLogResource#getContentHash() contents} have not already
+   * been seen earlier in iteration order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources the {@link ChangeLogResource}s to deduplicate;
+   * may be {@code null}
+   *
+   * @param dropped a {@link Map} into which each dropped {@link
+   * ChangeLogResource} will be put, mapped to the earlier {@link
+   * ChangeLogResource} whose contents it duplicates; may be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link Collection} of {@link
+   * ChangeLogResource}s, in the same order as they were supplied,
+   * without duplicates
+   *
+   * @exception IOException if a changelog fragment could not be read
+   */
+  public Collection<? extends ChangeLogResource> deduplicate(final Collection<? extends ChangeLogResource> resources, final Map<? super ChangeLogResource, ? super ChangeLogResource> dropped) throws IOException {
+    final Collection<ChangeLogResource> returnValue;
+    if (resources == null || resources.isEmpty()) {
+      returnValue = Collections.emptySet();
+    } else {
+      returnValue = new ArrayList<ChangeLogResource>(resources.size());
+      final Map<String, ChangeLogResource> seen = new HashMap<String, ChangeLogResource>();
+      for (final ChangeLogResource resource : resources) {
+        if (resource != null) {
+          final ChangeLogResource original = seen.get(resource.getContentHash());
+          if (original == null) {
+            seen.put(resource.getContentHash(), resource);
+            returnValue.add(resource);
+          } else if (dropped != null) {
+            dropped.put(resource, original);
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Validates those of the supplied {@link ChangeLogResource}s whose
+   * {@linkplain ChangeLogResource#getName() names} end with {@code
+   * .xml} against the Liquibase XML Schema whose version is given by
+   * the {@link #getDatabaseChangeLogXsdVersion()
+   * databaseChangeLogXsdVersion} property.
+   *
+   * @param resources the {@link ChangeLogResource}s to validate; may
+   * be {@code null} in which case no action will be taken
+   *
+   * @exception IOException if any changelog fragment could not be
+   * read or is invalid; its message describes every problem found
+   *
+   * @exception IllegalStateException if there are changelog
+   * fragments to validate but no {@linkplain
+   * #getDatabaseChangeLogXsdVersion() XML Schema version}
+   *
+   * @see ChangeLogValidator
+   */
+  public void validate(final Collection<? extends ChangeLogResource> resources) throws IOException {
+    if (resources != null && !resources.isEmpty()) {
+      final Collection<ChangeLogResource> xmlResources = new ArrayList<ChangeLogResource>(resources.size());
+      for (final ChangeLogResource resource : resources) {
+        if (resource != null) {
+          final String name = resource.getName();
+          if (name != null && name.toLowerCase().endsWith(".xml")) {
+            xmlResources.add(resource);
+          }
+        }
+      }
+      if (!xmlResources.isEmpty()) {
+        final String xsdVersion = this.getDatabaseChangeLogXsdVersion();
+        if (xsdVersion == null) {
+          throw new IllegalStateException("this.getDatabaseChangeLogXsdVersion()", new NullPointerException("this.getDatabaseChangeLogXsdVersion()"));
+        }
+        final Map<ChangeLogResource, List<String>> problems = new ChangeLogValidator(xsdVersion).validate(xmlResources, this.getValidationThreads());
+        if (problems != null && !problems.isEmpty()) {
+          final StringBuilder sb = new StringBuilder();
+          sb.append(problems.size()).append(" invalid changelog(s):");
+          for (final Map.Entry<ChangeLogResource, List<String>> entry : problems.entrySet()) {
+            final ChangeLogResource resource = entry.getKey();
+            sb.append(LS).append(resource).append(this.describeOrigin(resource)).append(":");
+            for (final String problem : entry.getValue()) {
+              sb.append(LS).append("  ").append(problem);
+            }
+          }
+          throw new IOException(sb.toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Verifies that no two changesets defined by those of the supplied
+   * {@link ChangeLogResource}s whose {@linkplain
+   * ChangeLogResource#getName() names} end with {@code .xml} share an
+   * {@code id}, {@code author} and file path, and returns the number
+   * of distinct changeset identities checked.
+   *
+   * @param includes a {@link Map} of {@link ChangeLogResource}s to
+   * the {@code include}s by which they are included, in order; may be
+   * {@code null} in which case no action will be taken
+   *
+   * @return the number of distinct changeset identities checked
+   *
+   * @exception IOException if a changelog fragment could not be read,
+   * or if any changesets share an identity; its message describes
+   * every such collision
+   *
+   * @see ChangeSetIdentityIndex
+   */
+  public int checkDuplicateChangeSets(final Map<? extends ChangeLogResource, ? extends String> includes) throws IOException {
+    int returnValue = 0;
+    if (includes != null && !includes.isEmpty()) {
+      final ChangeSetIdentityIndex index = new ChangeSetIdentityIndex();
+      final List<ChangeSetIdentityIndex.Collision> collisions = new ArrayList<ChangeSetIdentityIndex.Collision>();
+      for (final Map.Entry<? extends ChangeLogResource, ? extends String> entry : includes.entrySet()) {
+        final ChangeLogResource resource = entry.getKey();
+        if (resource != null) {
+          final String name = resource.getName();
+          if (name != null && name.toLowerCase().endsWith(".xml")) {
+            collisions.addAll(index.add(resource, entry.getValue()));
+          }
+        }
+      }
+      returnValue = index.size();
+      if (!collisions.isEmpty()) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(collisions.size()).append(" duplicate changeset(s):");
+        for (final ChangeSetIdentityIndex.Collision collision : collisions) {
+          final ChangeSetIdentityIndex.Identity first = collision.getFirst();
+          final ChangeSetIdentityIndex.Identity second = collision.getSecond();
+          sb.append(LS).append(first);
+          sb.append(LS).append("  defined in ").append(first.getResource()).append(":").append(first.getLineNumber()).append(this.describeOrigin(first.getResource()));
+          sb.append(LS).append("  and again in ").append(second.getResource()).append(":").append(second.getLineNumber()).append(this.describeOrigin(second.getResource()));
+        }
+        throw new IOException(sb.toString());
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a description of where the supplied {@link
+   * ChangeLogResource} came from, suitable for appending to an error
+   * message, or an empty {@link String}.
+   *
+   * <p>This implementation returns an empty {@link String}.
+   * Subclasses that know more about their changelog fragments, such
+   * as which Maven artifact each came from, may override it.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resource the {@link ChangeLogResource} in question; may be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  protected String describeOrigin(final ChangeLogResource resource) {
+    return "";
+  }
+
+  /**
+   * Writes an aggregating changelog that {@code include}s each of the
+   * supplied {@code include}s, in order, to the supplied {@link
+   * Writer}.
+   *
+   * <p>If a {@linkplain #getTemplate() template} has been supplied,
+   * it is merged by <a href="http://mvel.codehaus.org/">MVEL</a>.
+   * Otherwise the changelog that the {@linkplain
+   * #DEFAULT_TEMPLATE_RESOURCE_NAME default template} describes is
+   * written directly, with its attribute values escaped.</p>
+   *
+   * <p>The supplied {@link Collection} is the template's {@code
+   * resources} variable.  Its elements are written by their string
+   * forms, so they may be {@code include} {@link String}s or {@link
+   * ChangeLogDescriptor}s, which also let a template read details of
+   * each changelog.</p>
+   *
+   * @param includes a {@link Collection} of {@code include}s; may be
+   * {@code null} in which case no action will be taken
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}; will not be closed
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if the changelog could not be written
+   */
+  public void write(final Collection<?> includes, final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    if (includes != null && !includes.isEmpty()) {
+      final String template = this.getTemplate();
+      if (template == null) {
+        this.writeDefault(includes, writer);
+      } else {
+        final Map<Object, Object> variables = new HashMap<Object, Object>();
+        variables.put("databaseChangeLogXsdVersion", this.getDatabaseChangeLogXsdVersion());
+        variables.put("changeLogParameters", this.getChangeLogParameters());
+        variables.put("resources", includes);
+        final Object output = TemplateRuntime.eval(template, this, variables);
+        if (output != null) {
+          writer.write(output.toString());
+        }
+      }
+      writer.flush();
+    }
+  }
+
+  /**
+   * Writes the changelog that the {@linkplain
+   * #DEFAULT_TEMPLATE_RESOURCE_NAME default template} describes for
+   * the supplied {@code include}s, without loading <a
+   * href="http://mvel.codehaus.org/">MVEL</a>.
+   *
+   * <p>The changelog is written by an {@link XMLStreamWriter}, so
+   * changelog parameter names and values and {@code include}s
+   * containing characters such as {@code &} or {@code "} are properly
+   * escaped.</p>
+   *
+   * @param includes a non-empty {@link Collection} of {@code
+   * include}s; must not be {@code null}
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}; will not be closed
+   *
+   * @exception IOException if the changelog could not be written
+   */
+  private final void writeDefault(final Collection<?> includes, final Writer writer) throws IOException {
+    assert includes != null;
+    assert writer != null;
+    try {
+      final XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+      xml.writeStartDocument("1.0");
+      xml.writeCharacters(LS);
+      xml.writeStartElement("databaseChangeLog");
+      xml.writeDefaultNamespace(DATABASE_CHANGE_LOG_NAMESPACE);
+      xml.writeNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+      xml.writeAttribute("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation", DATABASE_CHANGE_LOG_NAMESPACE + " " + DATABASE_CHANGE_LOG_NAMESPACE + "/dbchangelog-" + this.getDatabaseChangeLogXsdVersion() + ".xsd");
+      xml.writeCharacters(LS);
+      final Properties changeLogParameters = this.getChangeLogParameters();
+      if (changeLogParameters != null && !changeLogParameters.isEmpty()) {
+        for (final Object propertyName : Collections.list(changeLogParameters.propertyNames())) {
+          final String value = changeLogParameters.getProperty(String.valueOf(propertyName));
+          if (value != null) {
+            xml.writeCharacters("  ");
+            xml.writeEmptyElement("property");
+            xml.writeAttribute("name", String.valueOf(propertyName));
+            xml.writeAttribute("value", value);
+            xml.writeCharacters(LS);
+          }
+        }
+      }
+      xml.writeCharacters(LS);
+      for (final Object include : includes) {
+        xml.writeCharacters("  ");
+        xml.writeEmptyElement("include");
+        xml.writeAttribute("file", String.valueOf(include));
+        xml.writeCharacters(LS);
+      }
+      xml.writeCharacters(LS);
+      xml.writeEndElement();
+      xml.writeCharacters(LS);
+      xml.writeEndDocument();
+      xml.flush();
+      xml.close();
+    } catch (final XMLStreamException e) {
+      throw new IOException("Could not write changelog", e);
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The outcome of an {@linkplain ChangeLogAssembler#assemble(Writer)
+   * assembly}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Result {
+
+    /**
+     * The {@link ChangeLogResource}s that were included, in order,
+     * mapped to the {@code include}s by which they were included.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Map<ChangeLogResource, String> includes;
+
+    /**
+     * The {@link ChangeLogResource}s that were dropped as duplicates,
+     * mapped to the {@link ChangeLogResource}s they duplicate.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Map<ChangeLogResource, ChangeLogResource> dropped;
+
+    /**
+     * Creates a new {@link Result}.
+     *
+     * @param includes the included {@link ChangeLogResource}s mapped
+     * to their {@code include}s; must not be {@code null}
+     *
+     * @param dropped the dropped {@link ChangeLogResource}s mapped to
+     * the {@link ChangeLogResource}s they duplicate; must not be
+     * {@code null}
+     */
+    private Result(final Map<ChangeLogResource, String> includes, final Map<ChangeLogResource, ChangeLogResource> dropped) {
+      super();
+      assert includes != null;
+      assert dropped != null;
+      this.includes = Collections.unmodifiableMap(includes);
+      this.dropped = Collections.unmodifiableMap(dropped);
+    }
+
+    /**
+     * Returns the {@link ChangeLogResource}s that were included, in
+     * order, mapped to the {@code include}s by which they were
+     * included.
+     *
+     * <p>This method never returns {@code null}.</p>
+     *
+     * @return an immutable, non-{@code null} {@link Map}
+     */
+    public Map<ChangeLogResource, String> getIncludes() {
+      return this.includes;
+    }
+
+    /**
+     * Returns the {@link ChangeLogResource}s that were dropped because
+     * their contents duplicate those of an earlier changelog fragment,
+     * mapped to that earlier fragment.
+     *
+     * <p>This method never returns {@code null}.</p>
+     *
+     * @return an immutable, non-{@code null} {@link Map}
+     */
+    public Map<ChangeLogResource, ChangeLogResource> getDropped() {
+      return this.dropped;
+    }
+
+  }
+
+}
@@ -0,0 +1,405 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A command line interface to the {@link ChangeLogAssembler}, for
+ * assembling changelogs outside of Maven.
+ *
+ * <p>Usage:</p>
+ *
+ * <blockquote><pre>java -cp <i>classpath</i> com.edugility.liquibase.ChangeLogAssemblerCommand [<i>options</i>] <i>classpathFile</i> <i>outputFile</i></pre></blockquote>
+ *
+ * <p>The <i>classpathFile</i> lists the classpath entries to search,
+ * in order, separated by line breaks or by the {@linkplain
+ * File#pathSeparator platform path separator}, so the output of
+ * {@code mvn dependency:build-classpath -Dmdep.outputFile=...} may
+ * be used as is.  An <i>outputFile</i> of {@code -} writes to
+ * standard output.  Options are:</p>
+ *
+ * <dl>
+ *
+ * <dt>{@code -n} <i>name</i></dt><dd>a changelog resource name or
+ * {@linkplain ResourceNamePatterns pattern}, such as {@code
+ * 'META-INF/liquibase/**}{@code /*.xml'}; may be repeated; {@value
+ * ChangeLogAssembler#DEFAULT_CHANGE_LOG_RESOURCE_NAME} by
+ * default</dd>
+ *
+ * <dt>{@code -t} <i>file</i></dt><dd>an <a
+ * href="http://mvel.codehaus.org/">MVEL</a> template file to use
+ * instead of the default template</dd>
+ *
+ * <dt>{@code -x} <i>version</i></dt><dd>the Liquibase XML Schema
+ * version; {@code 3.0} by default</dd>
+ *
+ * <dt>{@code -D}<i>name</i>{@code =}<i>value</i></dt><dd>a changelog
+ * parameter; may be repeated</dd>
+ *
+ * <dt>{@code -e} <i>encoding</i></dt><dd>the character encoding of
+ * the template and of the output; {@code UTF-8} by default</dd>
+ *
+ * <dt>{@code --validate}</dt><dd>validate changelog fragments against
+ * the Liquibase XML Schema</dd>
+ *
+ * <dt>{@code --deduplicate}</dt><dd>drop changelog fragments whose
+ * contents duplicate earlier ones</dd>
+ *
+ * <dt>{@code --check-duplicates}</dt><dd>fail if two changesets
+ * share an {@code id}, {@code author} and file path</dd>
+ *
+ * </dl>
+ *
+ * <p>The exit status is {@code 0} on success, {@code 1} on failure and
+ * {@code 2} on a usage error.</p>
+ *
+ * <h2>Startup</h2>
+ *
+ * <p>This class is written to start quickly: it touches only the
+ * JDK, {@link ChangeLogAssembler} and the handful of classes that the
+ * requested checks need.  With the default template <a
+ * href="http://mvel.codehaus.org/">MVEL</a> is not loaded at all, and
+ * Liquibase is loaded only for {@code --validate}.  Because the set
+ * of classes loaded is small and stable, it is also a good candidate
+ * for a class data sharing archive on JDKs that support one, for
+ * example by running once with {@code
+ * -XX:ArchiveClassesAtExit=assembler.jsa} and thereafter with {@code
+ * -XX:SharedArchiveFile=assembler.jsa} against the same classpath.
+ * The plugin's {@code cli} classified jar bundles this class with
+ * its runtime dependencies and names it as its {@code Main-Class},
+ * so it can be run with {@code java -jar
+ * liquibase-maven-plugin-}<i>version</i>{@code -cli.jar}, and a
+ * single jar keeps such an archive's classpath stable.</p>
+ *
+ * <p>When writing to a file, the changelog is written to a temporary
+ * file in the same directory which then replaces the output file,
+ * atomically where the file system supports it, so an existing
+ * changelog is left untouched if assembly fails.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogAssembler
+ */
+public final class ChangeLogAssemblerCommand {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The usage message.
+   */
+  private static final String USAGE = "Usage: ChangeLogAssemblerCommand [-n name]... [-t templateFile] [-x xsdVersion] [-Dname=value]... [-e encoding] [--validate] [--deduplicate] [--check-duplicates] classpathFile outputFile";
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogAssemblerCommand}.
+   */
+  private ChangeLogAssemblerCommand() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Runs the command and {@linkplain System#exit(int) exits} with its
+   * status.
+   *
+   * @param args the command line arguments; may be {@code null}
+   *
+   * @see #run(String[])
+   */
+  public static final void main(final String[] args) {
+    System.exit(run(args));
+  }
+
+  /**
+   * Runs the command and returns its exit status.
+   *
+   * @param args the command line arguments; may be {@code null}
+   *
+   * @return {@code 0} on success, {@code 1} on failure and {@code 2}
+   * on a usage error
+   */
+  public static final int run(final String[] args) {
+    final ChangeLogAssembler assembler = new ChangeLogAssembler();
+    final List<String> names = new ArrayList<String>();
+    final Properties parameters = new Properties();
+    String templateFile = null;
+    String encoding = "UTF-8";
+    final List<String> operands = new ArrayList<String>();
+    if (args != null) {
+      for (int i = 0; i < args.length; i++) {
+        final String arg = args[i];
+        if (arg == null) {
+          continue;
+        }
+        if (arg.equals("-n") || arg.equals("-t") || arg.equals("-x") || arg.equals("-e")) {
+          if (i + 1 >= args.length) {
+            return usage("Missing value for " + arg);
+          }
+          final String value = args[++i];
+          if (arg.equals("-n")) {
+            names.add(value);
+          } else if (arg.equals("-t")) {
+            templateFile = value;
+          } else if (arg.equals("-x")) {
+            assembler.setDatabaseChangeLogXsdVersion(value);
+          } else {
+            encoding = value;
+          }
+        } else if (arg.startsWith("-D")) {
+          final int equals = arg.indexOf('=');
+          if (equals < 3) {
+            return usage("Invalid parameter: " + arg);
+          }
+          parameters.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+        } else if (arg.equals("--validate")) {
+          assembler.setValidate(true);
+        } else if (arg.equals("--deduplicate")) {
+          assembler.setDeduplicate(true);
+        } else if (arg.equals("--check-duplicates")) {
+          assembler.setCheckDuplicateChangeSets(true);
+        } else if (arg.startsWith("-") && arg.length() > 1) {
+          return usage("Unknown option: " + arg);
+        } else {
+          operands.add(arg);
+        }
+      }
+    }
+    if (operands.size() != 2) {
+      return usage(null);
+    }
+    if (!names.isEmpty()) {
+      assembler.setChangeLogResourceNames(names);
+    }
+    if (!parameters.isEmpty()) {
+      assembler.setChangeLogParameters(parameters);
+    }
+    try {
+      assembler.setClasspath(readClasspath(new File(operands.get(0))));
+      if (templateFile != null) {
+        assembler.setTemplate(read(new File(templateFile), encoding));
+      }
+      final String outputFile = operands.get(1);
+      final Writer writer;
+      final File file;
+      final File temporaryFile;
+      if ("-".equals(outputFile)) {
+        file = null;
+        temporaryFile = null;
+        writer = new BufferedWriter(new OutputStreamWriter(System.out, encoding));
+      } else {
+        file = new File(outputFile).getAbsoluteFile();
+        final File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+          throw new IOException("Could not create parent directory chain for " + file);
+        }
+        // Write next to the output file and move into place only on
+        // success, so a failed assembly never leaves a truncated
+        // changelog behind.
+        temporaryFile = File.createTempFile(file.getName(), ".tmp", parent);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), encoding));
+      }
+      ChangeLogAssembler.Result result = null;
+      try {
+        result = assembler.assemble(writer);
+        if (temporaryFile != null) {
+          writer.close();
+          moveIntoPlace(temporaryFile, file);
+        }
+      } finally {
+        if (temporaryFile != null) {
+          try {
+            writer.close();
+          } catch (final IOException ignore) {
+            // ignore on purpose
+          }
+          if (result == null || temporaryFile.exists()) {
+            Files.deleteIfExists(temporaryFile.toPath());
+          }
+        }
+      }
+      assert result != null;
+      for (final Map.Entry<ChangeLogResource, ChangeLogResource> entry : result.getDropped().entrySet()) {
+        System.err.println("Dropping changelog " + entry.getKey() + "; its contents duplicate those of " + entry.getValue());
+      }
+      if (result.getIncludes().isEmpty()) {
+        System.err.println("No changelogs found");
+      }
+      return 0;
+    } catch (final IOException e) {
+      System.err.println(e.getMessage());
+      return 1;
+    } catch (final RuntimeException e) {
+      e.printStackTrace();
+      return 1;
+    }
+  }
+
+  /**
+   * Moves the supplied temporary file over the supplied target file,
+   * atomically where the file system supports it.
+   *
+   * @param temporaryFile the file to move; must not be {@code null}
+   * and must be in the same directory as {@code file}
+   *
+   * @param file the file to replace; must not be {@code null}
+   *
+   * @exception IOException if the file could not be moved
+   */
+  private static final void moveIntoPlace(final File temporaryFile, final File file) throws IOException {
+    assert temporaryFile != null;
+    assert file != null;
+    try {
+      Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (final AtomicMoveNotSupportedException notSupported) {
+      Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Prints the supplied message, if any, and the usage message to
+   * standard error and returns {@code 2}.
+   *
+   * @param message the message to print; may be {@code null}
+   *
+   * @return {@code 2}
+   */
+  private static final int usage(final String message) {
+    if (message != null) {
+      System.err.println(message);
+    }
+    System.err.println(USAGE);
+    return 2;
+  }
+
+  /**
+   * Reads a list of classpath entries, separated by line breaks or by
+   * the {@linkplain File#pathSeparator platform path separator}, from
+   * the supplied {@link File}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param file the {@link File} to read; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of {@link File}s
+   *
+   * @exception IOException if the {@link File} could not be read
+   */
+  private static final List<File> readClasspath(final File file) throws IOException {
+    assert file != null;
+    final List<File> returnValue = new ArrayList<File>();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        for (final String entry : line.split(File.pathSeparator)) {
+          final String trimmed = entry.trim();
+          if (!trimmed.isEmpty()) {
+            returnValue.add(new File(trimmed));
+          }
+        }
+      }
+    } finally {
+      try {
+        reader.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Reads the supplied {@link File} fully into a {@link String}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param file the {@link File} to read; must not be {@code null}
+   *
+   * @param encoding the character encoding of the {@link File}; must
+   * not be {@code null}
+   *
+   * @return the contents of the {@link File}; never {@code null}
+   *
+   * @exception IOException if the {@link File} could not be read
+   */
+  private static final String read(final File file, final String encoding) throws IOException {
+    assert file != null;
+    assert encoding != null;
+    final StringBuilder sb = new StringBuilder();
+    final Reader reader = new InputStreamReader(new FileInputStream(file), encoding);
+    try {
+      final char[] buffer = new char[8192];
+      int read;
+      while ((read = reader.read(buffer)) >= 0) {
+        sb.append(buffer, 0, read);
+      }
+    } finally {
+      try {
+        reader.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,887 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.math.BigInteger;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+
+import org.mvel2.templates.CompiledTemplate;
+import org.mvel2.templates.TemplateCompiler;
+import org.mvel2.templates.TemplateRuntime;
+
+/**
+ * A long-lived process that keeps the expensive parts of changelog
+ * assembly warm between builds: per-jar changelog indexes and compiled
+ * <a href="http://mvel.codehaus.org/">MVEL</a> templates.
+ *
+ * <p>The daemon listens on the loopback interface only.  Because it
+ * will merge any template it is sent, every connection must first
+ * present a random token that the daemon writes, readable by its owner
+ * only, to a {@linkplain
+ * ChangeLogAssemblerDaemonClient#getDefaultTokenFile(int) token
+ * file}; clients read the token from there.  Java 7 offers no Unix
+ * domain sockets, so this stands in for their file-system
+ * permissions.</p>
+ *
+ * <p>Jar indexes are keyed by a jar file's path, length and last
+ * modification time, so a rebuilt jar is simply rescanned.
+ * Directories are always scanned afresh.  Both caches are bounded by
+ * entry count and evicted least-recently-used first; in addition, if
+ * heap use exceeds a {@linkplain #setMaxMemoryPercent(int) percentage}
+ * of the maximum heap after a request, both caches are cleared.  The
+ * daemon exits after a {@linkplain #setIdleTimeoutMillis(long) period
+ * of inactivity}.</p>
+ *
+ * <p>Usage:</p>
+ *
+ * <blockquote><pre>java -cp <i>classpath</i> com.edugility.liquibase.ChangeLogAssemblerDaemon start|status|stop [--port <i>port</i>] [--token-file <i>file</i>] [--idle-timeout <i>seconds</i>] [--max-jar-indexes <i>count</i>] [--max-templates <i>count</i>] [--max-memory-percent <i>percent</i>]</pre></blockquote>
+ *
+ * <p>{@code start} runs the daemon in the foreground.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogAssemblerDaemonClient
+ */
+public class ChangeLogAssemblerDaemon {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The line separator in effect on this platform.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final String LS = System.getProperty("line.separator", "\n");
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The port to listen on.
+   */
+  private final int port;
+
+  /**
+   * The file to write the authentication token to.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final File tokenFile;
+
+  /**
+   * How long, in milliseconds, the daemon may be idle before it exits.
+   *
+   * @see #getIdleTimeoutMillis()
+   */
+  private volatile long idleTimeoutMillis;
+
+  /**
+   * The percentage of the maximum heap beyond which caches are
+   * cleared.
+   *
+   * @see #getMaxMemoryPercent()
+   */
+  private volatile int maxMemoryPercent;
+
+  /**
+   * Jar indexes, indexed by jar file key and resource names.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final LruCache<String, Map<String, ChangeLogResource>> jarIndexes;
+
+  /**
+   * Compiled templates, indexed by template contents.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final LruCache<String, CompiledTemplate> templates;
+
+  /**
+   * The number of requests served.
+   */
+  private final AtomicLong requests;
+
+  /**
+   * The number of times the caches were cleared because of memory
+   * pressure.
+   */
+  private final AtomicLong memoryEvictions;
+
+  /**
+   * The time at which this daemon was created, in milliseconds since
+   * the epoch.
+   */
+  private final long startTime;
+
+  /**
+   * The time of the most recent activity, in milliseconds since the
+   * epoch.
+   */
+  private volatile long lastActivity;
+
+  /**
+   * Whether this daemon should keep running.
+   */
+  private volatile boolean running;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogAssemblerDaemon} that will exit
+   * after thirty idle minutes, caches up to 10,000 jar indexes and 16
+   * compiled templates, and clears its caches when heap use exceeds
+   * 75% of the maximum heap.
+   *
+   * @param port the port to listen on; must be between {@code 1} and
+   * {@code 65535}
+   *
+   * @param tokenFile the file to write the authentication token to;
+   * may be {@code null} in which case the {@linkplain
+   * ChangeLogAssemblerDaemonClient#getDefaultTokenFile(int) default}
+   * will be used
+   *
+   * @exception IllegalArgumentException if {@code port} is out of
+   * range
+   */
+  public ChangeLogAssemblerDaemon(final int port, final File tokenFile) {
+    super();
+    if (port < 1 || port > 65535) {
+      throw new IllegalArgumentException("port: " + port);
+    }
+    this.port = port;
+    if (tokenFile == null) {
+      this.tokenFile = ChangeLogAssemblerDaemonClient.getDefaultTokenFile(port);
+    } else {
+      this.tokenFile = tokenFile;
+    }
+    this.jarIndexes = new LruCache<String, Map<String, ChangeLogResource>>(10000);
+    this.templates = new LruCache<String, CompiledTemplate>(16);
+    this.requests = new AtomicLong();
+    this.memoryEvictions = new AtomicLong();
+    this.startTime = System.currentTimeMillis();
+    this.lastActivity = this.startTime;
+    this.setIdleTimeoutMillis(TimeUnit.MINUTES.toMillis(30L));
+    this.setMaxMemoryPercent(75);
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns how long, in milliseconds, this daemon may be idle before
+   * it exits.
+   *
+   * @return the idle timeout in milliseconds; {@code 0} or less means
+   * never
+   *
+   * @see #setIdleTimeoutMillis(long)
+   */
+  public long getIdleTimeoutMillis() {
+    return this.idleTimeoutMillis;
+  }
+
+  /**
+   * Sets how long, in milliseconds, this daemon may be idle before it
+   * exits.
+   *
+   * @param idleTimeoutMillis the idle timeout in milliseconds; {@code
+   * 0} or less means never
+   *
+   * @see #getIdleTimeoutMillis()
+   */
+  public void setIdleTimeoutMillis(final long idleTimeoutMillis) {
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  /**
+   * Returns the maximum number of jar indexes this daemon caches.
+   *
+   * @return the maximum number of jar indexes
+   *
+   * @see #setMaxJarIndexes(int)
+   */
+  public int getMaxJarIndexes() {
+    return this.jarIndexes.getMaxSize();
+  }
+
+  /**
+   * Sets the maximum number of jar indexes this daemon caches.
+   *
+   * @param maxJarIndexes the maximum number of jar indexes; {@code 0}
+   * or less disables the cache
+   *
+   * @see #getMaxJarIndexes()
+   */
+  public void setMaxJarIndexes(final int maxJarIndexes) {
+    this.jarIndexes.setMaxSize(maxJarIndexes);
+  }
+
+  /**
+   * Returns the maximum number of compiled templates this daemon
+   * caches.
+   *
+   * @return the maximum number of compiled templates
+   *
+   * @see #setMaxTemplates(int)
+   */
+  public int getMaxTemplates() {
+    return this.templates.getMaxSize();
+  }
+
+  /**
+   * Sets the maximum number of compiled templates this daemon caches.
+   *
+   * @param maxTemplates the maximum number of compiled templates;
+   * {@code 0} or less disables the cache
+   *
+   * @see #getMaxTemplates()
+   */
+  public void setMaxTemplates(final int maxTemplates) {
+    this.templates.setMaxSize(maxTemplates);
+  }
+
+  /**
+   * Returns the percentage of the maximum heap beyond which this
+   * daemon clears its caches after a request.
+   *
+   * @return a percentage
+   *
+   * @see #setMaxMemoryPercent(int)
+   */
+  public int getMaxMemoryPercent() {
+    return this.maxMemoryPercent;
+  }
+
+  /**
+   * Sets the percentage of the maximum heap beyond which this daemon
+   * clears its caches after a request.
+   *
+   * @param maxMemoryPercent a percentage between {@code 1} and {@code
+   * 100}
+   *
+   * @exception IllegalArgumentException if {@code maxMemoryPercent}
+   * is out of range
+   *
+   * @see #getMaxMemoryPercent()
+   */
+  public void setMaxMemoryPercent(final int maxMemoryPercent) {
+    if (maxMemoryPercent < 1 || maxMemoryPercent > 100) {
+      throw new IllegalArgumentException("maxMemoryPercent: " + maxMemoryPercent);
+    }
+    this.maxMemoryPercent = maxMemoryPercent;
+  }
+
+  /**
+   * Writes the authentication token, listens for and serves requests
+   * until this daemon is stopped or has been idle for longer than its
+   * {@linkplain #getIdleTimeoutMillis() idle timeout}, and then
+   * removes the token file.
+   *
+   * @exception IOException if the token file could not be written or
+   * the port could not be bound
+   */
+  public void run() throws IOException {
+    final String token = new BigInteger(130, new SecureRandom()).toString(32);
+    final ServerSocket server = new ServerSocket(this.port, 50, InetAddress.getByName(null));
+    try {
+      this.writeToken(token);
+      final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+          @Override
+          public final Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "liquibase-assembler-daemon");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      try {
+        server.setSoTimeout(1000);
+        this.running = true;
+        while (this.running) {
+          final Socket socket;
+          try {
+            socket = server.accept();
+          } catch (final SocketTimeoutException e) {
+            final long idleTimeoutMillis = this.getIdleTimeoutMillis();
+            if (idleTimeoutMillis > 0L && System.currentTimeMillis() - this.lastActivity > idleTimeoutMillis) {
+              this.running = false;
+            }
+            continue;
+          }
+          this.lastActivity = System.currentTimeMillis();
+          executor.execute(new Runnable() {
+              @Override
+              public final void run() {
+                handle(socket, token);
+              }
+            });
+        }
+      } finally {
+        executor.shutdown();
+      }
+    } finally {
+      try {
+        server.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+      if (!this.tokenFile.delete()) {
+        this.tokenFile.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * Stops this daemon after the request in progress, if any.
+   */
+  public void stop() {
+    this.running = false;
+  }
+
+  /**
+   * Writes the supplied token to the {@linkplain #tokenFile token
+   * file}, readable and writable by its owner only.
+   *
+   * @param token the token; must not be {@code null}
+   *
+   * @exception IOException if the token file could not be written
+   */
+  private final void writeToken(final String token) throws IOException {
+    assert token != null;
+    final File parent = this.tokenFile.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Could not create parent directory chain for " + this.tokenFile);
+    }
+    if (this.tokenFile.exists() && !this.tokenFile.delete()) {
+      throw new IOException("Could not delete stale token file " + this.tokenFile);
+    }
+    if (!this.tokenFile.createNewFile()) {
+      throw new IOException("Could not create token file " + this.tokenFile);
+    }
+    if (!(this.tokenFile.setReadable(false, false) && this.tokenFile.setReadable(true, true) && this.tokenFile.setWritable(false, false) && this.tokenFile.setWritable(true, true))) {
+      throw new IOException("Could not restrict the permissions of token file " + this.tokenFile);
+    }
+    final Writer writer = new OutputStreamWriter(new FileOutputStream(this.tokenFile), "UTF-8");
+    try {
+      writer.write(token);
+      writer.write(LS);
+    } finally {
+      try {
+        writer.close();
+      } catch (final IOException ignore) {
+        // ignore on purpose
+      }
+    }
+  }
+
+  /**
+   * Serves the single request arriving on the supplied {@link
+   * Socket} and closes it.
+   *
+   * @param socket the {@link Socket}; must not be {@code null}
+   *
+   * @param token the authentication token the client must present;
+   * must not be {@code null}
+   */
+  private final void handle(final Socket socket, final String token) {
+    assert socket != null;
+    assert token != null;
+    try {
+      socket.setSoTimeout(60000);
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      if (!MessageDigest.isEqual(token.getBytes("UTF-8"), ChangeLogAssemblerDaemonClient.readString(in).getBytes("UTF-8"))) {
+        ChangeLogAssemblerDaemonClient.writeString(out, ChangeLogAssemblerDaemonClient.ERROR);
+        ChangeLogAssemblerDaemonClient.writeString(out, "Unauthorized");
+        out.flush();
+        return;
+      }
+      final String command = ChangeLogAssemblerDaemonClient.readString(in);
+      this.requests.incrementAndGet();
+      try {
+        if (ChangeLogAssemblerDaemonClient.SCAN.equals(command)) {
+          this.scan(in, out);
+        } else if (ChangeLogAssemblerDaemonClient.RENDER.equals(command)) {
+          this.render(in, out);
+        } else if (ChangeLogAssemblerDaemonClient.STATUS.equals(command)) {
+          ChangeLogAssemblerDaemonClient.writeString(out, ChangeLogAssemblerDaemonClient.OK);
+          ChangeLogAssemblerDaemonClient.writeString(out, this.getStatus());
+        } else if (ChangeLogAssemblerDaemonClient.STOP.equals(command)) {
+          this.stop();
+          ChangeLogAssemblerDaemonClient.writeString(out, ChangeLogAssemblerDaemonClient.OK);
+        } else {
+          ChangeLogAssemblerDaemonClient.writeString(out, ChangeLogAssemblerDaemonClient.ERROR);
+          ChangeLogAssemblerDaemonClient.writeString(out, "Unknown command: " + command);
+        }
+      } catch (final IOException e) {
+        ChangeLogAssemblerDaemonClient.writeString(out, ChangeLogAssemblerDaemonClient.ERROR);
+        ChangeLogAssemblerDaemonClient.writeString(out, String.valueOf(e.getMessage()));
+      } catch (final RuntimeException e) {
+        ChangeLogAssemblerDaemonClient.writeString(out, ChangeLogAssemblerDaemonClient.ERROR);
+        ChangeLogAssemblerDaemonClient.writeString(out, String.valueOf(e));
+      }
+      out.flush();
+    } catch (final IOException brokenConnection) {
+      // Nothing can be reported to a client that has gone away.
+    } finally {
+      ChangeLogAssemblerDaemonClient.close(socket);
+      this.checkMemory();
+      this.lastActivity = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Serves a {@linkplain ChangeLogAssemblerDaemonClient#scan(List,
+   * List) scan} request.
+   *
+   * @param in the request; must not be {@code null}
+   *
+   * @param out the response; must not be {@code null}
+   *
+   * @exception IOException if a classpath entry could not be read or
+   * an input/output error occurs
+   */
+  private final void scan(final DataInputStream in, final DataOutputStream out) throws IOException {
+    assert in != null;
+    assert out != null;
+    final int entryCount = in.readInt();
+    final List<File> entries = new ArrayList<File>(Math.max(0, entryCount));
+    for (int i = 0; i < entryCount; i++) {
+      entries.add(new File(ChangeLogAssemblerDaemonClient.readString(in)));
+    }
+    final int nameCount = in.readInt();
+    final List<String> names = new ArrayList<String>(Math.max(0, nameCount));
+    for (int i = 0; i < nameCount; i++) {
+      names.add(ChangeLogAssemblerDaemonClient.readString(in));
+    }
+    final List<Map<String, ChangeLogResource>> scans = new ArrayList<Map<String, ChangeLogResource>>(entries.size());
+    for (final File entry : entries) {
+      scans.add(this.scan(entry, names));
+    }
+    ChangeLogAssemblerDaemonClient.writeString(out, ChangeLogAssemblerDaemonClient.OK);
+    out.writeInt(scans.size());
+    for (final Map<String, ChangeLogResource> scan : scans) {
+      final List<ChangeLogResource> found = new ArrayList<ChangeLogResource>();
+      for (final ChangeLogResource resource : scan.values()) {
+        if (resource != null) {
+          found.add(resource);
+        }
+      }
+      out.writeInt(found.size());
+      for (final ChangeLogResource resource : found) {
+        ChangeLogAssemblerDaemonClient.writeString(out, resource.getName());
+        ChangeLogAssemblerDaemonClient.writeString(out, resource.getURL().toExternalForm());
+        ChangeLogAssemblerDaemonClient.writeString(out, resource.getContentHash());
+      }
+    }
+  }
+
+  /**
+   * Scans a single classpath entry, consulting and populating the jar
+   * index cache if it is a jar file.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param entry the classpath entry; must not be {@code null}
+   *
+   * @param names the resource names to look for; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link Map} of {@link
+   * ChangeLogResource}s indexed by name; values may be {@code null}
+   *
+   * @exception IOException if the entry could not be read
+   */
+  private final Map<String, ChangeLogResource> scan(final File entry, final List<String> names) throws IOException {
+    assert entry != null;
+    assert names != null;
+    Map<String, ChangeLogResource> returnValue;
+    if (entry.isFile()) {
+      final String key = String.format("%s|%d|%d|%s", entry.getAbsolutePath(), entry.length(), entry.lastModified(), names);
+      returnValue = this.jarIndexes.get(key);
+      if (returnValue == null) {
+        returnValue = JarChangeLogScanner.scan(entry, names);
+        this.jarIndexes.put(key, returnValue);
+      }
+    } else if (entry.isDirectory()) {
+      returnValue = JarChangeLogScanner.scanDirectory(entry, null, names);
+    } else {
+      returnValue = Collections.emptyMap();
+    }
+    return returnValue;
+  }
+
+  /**
+   * Serves a {@linkplain ChangeLogAssemblerDaemonClient#render(String,
+   * String, Properties, java.util.Collection) render} request.
+   *
+   * @param in the request; must not be {@code null}
+   *
+   * @param out the response; must not be {@code null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  private final void render(final DataInputStream in, final DataOutputStream out) throws IOException {
+    assert in != null;
+    assert out != null;
+    final String template = ChangeLogAssemblerDaemonClient.readString(in);
+    final String databaseChangeLogXsdVersion = in.readBoolean() ? ChangeLogAssemblerDaemonClient.readString(in) : null;
+    Properties changeLogParameters = null;
+    if (in.readBoolean()) {
+      changeLogParameters = new Properties();
+      final int parameterCount = in.readInt();
+      for (int i = 0; i < parameterCount; i++) {
+        changeLogParameters.setProperty(ChangeLogAssemblerDaemonClient.readString(in), ChangeLogAssemblerDaemonClient.readString(in));
+      }
+    }
+    final int includeCount = in.readInt();
+    final List<String> includes = new ArrayList<String>(Math.max(0, includeCount));
+    for (int i = 0; i < includeCount; i++) {
+      includes.add(ChangeLogAssemblerDaemonClient.readString(in));
+    }
+    CompiledTemplate compiledTemplate = this.templates.get(template);
+    if (compiledTemplate == null) {
+      compiledTemplate = TemplateCompiler.compileTemplate(template);
+      this.templates.put(template, compiledTemplate);
+    }
+    final ChangeLogAssembler context = new ChangeLogAssembler();
+    context.setDatabaseChangeLogXsdVersion(databaseChangeLogXsdVersion);
+    context.setChangeLogParameters(changeLogParameters);
+    final Map<Object, Object> variables = new HashMap<Object, Object>();
+    variables.put("databaseChangeLogXsdVersion", databaseChangeLogXsdVersion);
+    variables.put("changeLogParameters", changeLogParameters);
+    variables.put("resources", includes);
+    final Object output = TemplateRuntime.execute(compiledTemplate, context, new MapVariableResolverFactory(variables));
+    ChangeLogAssemblerDaemonClient.writeString(out, ChangeLogAssemblerDaemonClient.OK);
+    ChangeLogAssemblerDaemonClient.writeString(out, output == null ? "" : output.toString());
+  }
+
+  /**
+   * Clears both caches if heap use exceeds the {@linkplain
+   * #getMaxMemoryPercent() configured percentage} of the maximum heap.
+   */
+  private final void checkMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    final long used = runtime.totalMemory() - runtime.freeMemory();
+    if (used * 100L > runtime.maxMemory() * this.getMaxMemoryPercent()) {
+      this.jarIndexes.clear();
+      this.templates.clear();
+      this.memoryEvictions.incrementAndGet();
+    }
+  }
+
+  /**
+   * Returns a human-readable report of this daemon's uptime, cache
+   * sizes, hit rates and memory use.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} multi-line report
+   */
+  public String getStatus() {
+    final Runtime runtime = Runtime.getRuntime();
+    final long mb = 1024L * 1024L;
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format("uptime: %d s, requests: %d, idle timeout: %d s", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - this.startTime), this.requests.get(), TimeUnit.MILLISECONDS.toSeconds(this.getIdleTimeoutMillis()))).append(LS);
+    sb.append("jar indexes: ").append(this.jarIndexes).append(LS);
+    sb.append("compiled templates: ").append(this.templates).append(LS);
+    sb.append(String.format("heap: %d of %d MB used, caches cleared at %d%%, %d time(s)", (runtime.totalMemory() - runtime.freeMemory()) / mb, runtime.maxMemory() / mb, this.getMaxMemoryPercent(), this.memoryEvictions.get())).append(LS);
+    return sb.toString();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Starts, queries or stops a daemon according to the supplied
+   * command line arguments and {@linkplain System#exit(int) exits}
+   * with {@code 0} on success, {@code 1} on failure and {@code 2} on
+   * a usage error.
+   *
+   * @param args the command line arguments; may be {@code null}
+   */
+  public static final void main(final String[] args) {
+    int status = 0;
+    String command = null;
+    int port = ChangeLogAssemblerDaemonClient.DEFAULT_PORT;
+    File tokenFile = null;
+    long idleTimeoutSeconds = -1L;
+    int maxJarIndexes = -1;
+    int maxTemplates = -1;
+    int maxMemoryPercent = -1;
+    try {
+      if (args != null) {
+        for (int i = 0; i < args.length; i++) {
+          final String arg = args[i];
+          if (arg.startsWith("--")) {
+            if (i + 1 >= args.length) {
+              throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            final String value = args[++i];
+            if (arg.equals("--port")) {
+              port = Integer.parseInt(value);
+            } else if (arg.equals("--token-file")) {
+              tokenFile = new File(value);
+            } else if (arg.equals("--idle-timeout")) {
+              idleTimeoutSeconds = Long.parseLong(value);
+            } else if (arg.equals("--max-jar-indexes")) {
+              maxJarIndexes = Integer.parseInt(value);
+            } else if (arg.equals("--max-templates")) {
+              maxTemplates = Integer.parseInt(value);
+            } else if (arg.equals("--max-memory-percent")) {
+              maxMemoryPercent = Integer.parseInt(value);
+            } else {
+              throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+          } else if (command == null) {
+            command = arg;
+          } else {
+            throw new IllegalArgumentException("Unexpected argument: " + arg);
+          }
+        }
+      }
+      if ("start".equals(command)) {
+        final ChangeLogAssemblerDaemon daemon = new ChangeLogAssemblerDaemon(port, tokenFile);
+        if (idleTimeoutSeconds >= 0L) {
+          daemon.setIdleTimeoutMillis(TimeUnit.SECONDS.toMillis(idleTimeoutSeconds));
+        }
+        if (maxJarIndexes >= 0) {
+          daemon.setMaxJarIndexes(maxJarIndexes);
+        }
+        if (maxTemplates >= 0) {
+          daemon.setMaxTemplates(maxTemplates);
+        }
+        if (maxMemoryPercent >= 0) {
+          daemon.setMaxMemoryPercent(maxMemoryPercent);
+        }
+        System.out.println("Listening on localhost:" + port);
+        daemon.run();
+      } else if ("status".equals(command)) {
+        System.out.print(new ChangeLogAssemblerDaemonClient(port, tokenFile).status());
+      } else if ("stop".equals(command)) {
+        new ChangeLogAssemblerDaemonClient(port, tokenFile).stop();
+      } else {
+        throw new IllegalArgumentException("Usage: ChangeLogAssemblerDaemon start|status|stop [--port port] [--token-file file] [--idle-timeout seconds] [--max-jar-indexes count] [--max-templates count] [--max-memory-percent percent]");
+      }
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      status = 2;
+    } catch (final IOException e) {
+      System.err.println(e.getMessage());
+      status = 1;
+    }
+    System.exit(status);
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A synchronized, size-bounded, least-recently-used cache that
+   * counts its hits and misses.
+   *
+   * @param <K> the type of the keys
+   *
+   * @param <V> the type of the values
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class LruCache<K, V> {
+
+    /**
+     * The entries, in access order.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final LinkedHashMap<K, V> map;
+
+    /**
+     * The maximum number of entries.
+     */
+    private int maxSize;
+
+    /**
+     * The number of lookups that found an entry.
+     */
+    private long hits;
+
+    /**
+     * The number of lookups that found no entry.
+     */
+    private long misses;
+
+    /**
+     * Creates a new {@link LruCache}.
+     *
+     * @param maxSize the maximum number of entries
+     */
+    private LruCache(final int maxSize) {
+      super();
+      this.maxSize = maxSize;
+      this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected final boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+          return this.size() > LruCache.this.maxSize;
+        }
+      };
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return the maximum number of entries
+     */
+    private final synchronized int getMaxSize() {
+      return this.maxSize;
+    }
+
+    /**
+     * Sets the maximum number of entries, evicting any excess.
+     *
+     * @param maxSize the maximum number of entries; {@code 0} or less
+     * disables the cache
+     */
+    private final synchronized void setMaxSize(final int maxSize) {
+      this.maxSize = Math.max(0, maxSize);
+      final Iterator<K> iterator = this.map.keySet().iterator();
+      while (this.map.size() > this.maxSize && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+      }
+    }
+
+    /**
+     * Returns the value for the supplied key, or {@code null},
+     * counting the lookup as a hit or a miss.
+     *
+     * @param key the key; may be {@code null}
+     *
+     * @return the value, or {@code null}
+     */
+    private final synchronized V get(final K key) {
+      final V returnValue = this.map.get(key);
+      if (returnValue == null) {
+        this.misses++;
+      } else {
+        this.hits++;
+      }
+      return returnValue;
+    }
+
+    /**
+     * Associates the supplied value with the supplied key.
+     *
+     * @param key the key; may be {@code null}
+     *
+     * @param value the value; may be {@code null}
+     */
+    private final synchronized void put(final K key, final V value) {
+      if (this.maxSize > 0) {
+        this.map.put(key, value);
+      }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    private final synchronized void clear() {
+      this.map.clear();
+    }
+
+    /**
+     * Returns a description of this cache's size and hit rate.
+     *
+     * @return a non-{@code null} {@link String}
+     */
+    @Override
+    public final synchronized String toString() {
+      final long lookups = this.hits + this.misses;
+      return String.format("%d of %d, %d hit(s), %d miss(es), hit rate %.1f%%", this.map.size(), this.maxSize, this.hits, this.misses, lookups == 0L ? 0.0 : 100.0 * this.hits / lookups);
+    }
+
+  }
+
+}
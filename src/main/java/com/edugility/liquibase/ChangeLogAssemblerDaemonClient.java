@@ -0,0 +1,516 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A client of a {@link ChangeLogAssemblerDaemon} listening on the
+ * loopback interface.
+ *
+ * <p>Each request opens a new connection, authenticates with the
+ * token the daemon wrote to its {@linkplain #getDefaultTokenFile(int)
+ * token file}, and closes the connection when done.  Any failure to
+ * reach the daemon is reported as an {@link IOException}, so callers
+ * can fall back to doing the work themselves.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogAssemblerDaemon
+ */
+public class ChangeLogAssemblerDaemonClient {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The port a {@link ChangeLogAssemblerDaemon} listens on by default:
+   * {@value}.
+   */
+  public static final int DEFAULT_PORT = 48761;
+
+  /**
+   * The command that {@linkplain #scan(List, List) scans} classpath
+   * entries.
+   */
+  static final String SCAN = "SCAN";
+
+  /**
+   * The command that {@linkplain #render(String, String, Properties,
+   * Collection) renders} a template.
+   */
+  static final String RENDER = "RENDER";
+
+  /**
+   * The command that {@linkplain #status() reports status}.
+   */
+  static final String STATUS = "STATUS";
+
+  /**
+   * The command that {@linkplain #stop() stops} the daemon.
+   */
+  static final String STOP = "STOP";
+
+  /**
+   * The response that indicates success.
+   */
+  static final String OK = "OK";
+
+  /**
+   * The response that indicates failure; it is followed by a message.
+   */
+  static final String ERROR = "ERROR";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The port the daemon listens on.
+   */
+  private final int port;
+
+  /**
+   * The file holding the daemon's authentication token.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final File tokenFile;
+
+  /**
+   * How long to wait, in milliseconds, to connect to the daemon.
+   */
+  private final int connectTimeout;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogAssemblerDaemonClient} for a daemon
+   * listening on the supplied port that uses its {@linkplain
+   * #getDefaultTokenFile(int) default token file}.
+   *
+   * @param port the port; must be between {@code 1} and {@code 65535}
+   *
+   * @exception IllegalArgumentException if {@code port} is out of
+   * range
+   */
+  public ChangeLogAssemblerDaemonClient(final int port) {
+    this(port, null);
+  }
+
+  /**
+   * Creates a new {@link ChangeLogAssemblerDaemonClient}.
+   *
+   * @param port the port; must be between {@code 1} and {@code 65535}
+   *
+   * @param tokenFile the file holding the daemon's authentication
+   * token; may be {@code null} in which case the {@linkplain
+   * #getDefaultTokenFile(int) default} will be used
+   *
+   * @exception IllegalArgumentException if {@code port} is out of
+   * range
+   */
+  public ChangeLogAssemblerDaemonClient(final int port, final File tokenFile) {
+    super();
+    if (port < 1 || port > 65535) {
+      throw new IllegalArgumentException("port: " + port);
+    }
+    this.port = port;
+    if (tokenFile == null) {
+      this.tokenFile = getDefaultTokenFile(port);
+    } else {
+      this.tokenFile = tokenFile;
+    }
+    this.connectTimeout = 500;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Asks the daemon to scan each of the supplied classpath entries for
+   * the supplied resource names and returns, for each classpath entry
+   * in order, a {@link Map} of the {@link ChangeLogResource}s found in
+   * it indexed by resource name.
+   *
+   * <p>Jar files are scanned once and then answered from the
+   * daemon's cache for as long as they are unchanged.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param classpath the classpath entries to scan; must not be
+   * {@code null}
+   *
+   * @param names the resource names to look for; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link List} with one {@link Map} per
+   * classpath entry
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   *
+   * @exception IOException if the daemon could not be reached or
+   * reported an error
+   */
+  public List<Map<String, ChangeLogResource>> scan(final List<? extends File> classpath, final List<? extends String> names) throws IOException {
+    if (classpath == null) {
+      throw new IllegalArgumentException("classpath", new NullPointerException("classpath"));
+    }
+    if (names == null) {
+      throw new IllegalArgumentException("names", new NullPointerException("names"));
+    }
+    final Socket socket = this.open();
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      writeString(out, SCAN);
+      out.writeInt(classpath.size());
+      for (final File entry : classpath) {
+        writeString(out, entry == null ? "" : entry.getAbsolutePath());
+      }
+      out.writeInt(names.size());
+      for (final String name : names) {
+        writeString(out, name == null ? "" : name);
+      }
+      out.flush();
+      final DataInputStream in = readResponse(socket);
+      final int entries = in.readInt();
+      final List<Map<String, ChangeLogResource>> returnValue = new ArrayList<Map<String, ChangeLogResource>>(entries);
+      for (int i = 0; i < entries; i++) {
+        final int found = in.readInt();
+        final Map<String, ChangeLogResource> resources = new HashMap<String, ChangeLogResource>();
+        for (int j = 0; j < found; j++) {
+          final String name = readString(in);
+          final URL url = new URL(readString(in));
+          final String contentHash = readString(in);
+          resources.put(name, new ChangeLogResource(url, name, contentHash.isEmpty() ? null : contentHash));
+        }
+        returnValue.add(resources);
+      }
+      return returnValue;
+    } finally {
+      close(socket);
+    }
+  }
+
+  /**
+   * Asks the daemon to merge the supplied <a
+   * href="http://mvel.codehaus.org/">MVEL</a> template with the
+   * supplied variables, exactly as a {@link ChangeLogAssembler} would,
+   * and returns the result.
+   *
+   * <p>The daemon keeps compiled templates, so rendering a template
+   * it has seen before costs only the merge.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param template the template contents; must not be {@code null}
+   *
+   * @param databaseChangeLogXsdVersion the Liquibase XML Schema
+   * version; may be {@code null}
+   *
+   * @param changeLogParameters changelog parameters; may be {@code
+   * null}
+   *
+   * @param includes the {@code include}s, in order; must not be
+   * {@code null}
+   *
+   * @return the rendered changelog; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code template} or {@code
+   * includes} is {@code null}
+   *
+   * @exception IOException if the daemon could not be reached or
+   * reported an error
+   */
+  public String render(final String template, final String databaseChangeLogXsdVersion, final Properties changeLogParameters, final Collection<?> includes) throws IOException {
+    if (template == null) {
+      throw new IllegalArgumentException("template", new NullPointerException("template"));
+    }
+    if (includes == null) {
+      throw new IllegalArgumentException("includes", new NullPointerException("includes"));
+    }
+    final Socket socket = this.open();
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      writeString(out, RENDER);
+      writeString(out, template);
+      out.writeBoolean(databaseChangeLogXsdVersion != null);
+      if (databaseChangeLogXsdVersion != null) {
+        writeString(out, databaseChangeLogXsdVersion);
+      }
+      out.writeBoolean(changeLogParameters != null);
+      if (changeLogParameters != null) {
+        final List<String> propertyNames = new ArrayList<String>(changeLogParameters.stringPropertyNames());
+        out.writeInt(propertyNames.size());
+        for (final String propertyName : propertyNames) {
+          writeString(out, propertyName);
+          writeString(out, changeLogParameters.getProperty(propertyName));
+        }
+      }
+      out.writeInt(includes.size());
+      for (final Object include : includes) {
+        writeString(out, String.valueOf(include));
+      }
+      out.flush();
+      return readString(readResponse(socket));
+    } finally {
+      close(socket);
+    }
+  }
+
+  /**
+   * Returns a human-readable report of the daemon's uptime, cache
+   * sizes, hit rates and memory use.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} multi-line report
+   *
+   * @exception IOException if the daemon could not be reached
+   */
+  public String status() throws IOException {
+    final Socket socket = this.open();
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      writeString(out, STATUS);
+      out.flush();
+      return readString(readResponse(socket));
+    } finally {
+      close(socket);
+    }
+  }
+
+  /**
+   * Asks the daemon to shut down.
+   *
+   * @exception IOException if the daemon could not be reached
+   */
+  public void stop() throws IOException {
+    final Socket socket = this.open();
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      writeString(out, STOP);
+      out.flush();
+      readResponse(socket);
+    } finally {
+      close(socket);
+    }
+  }
+
+  /**
+   * Connects to the daemon and sends the authentication token.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a connected {@link Socket}; never {@code null}
+   *
+   * @exception IOException if the token could not be read or the
+   * daemon could not be reached
+   */
+  private final Socket open() throws IOException {
+    final String token = readToken(this.tokenFile);
+    final Socket socket = new Socket();
+    boolean success = false;
+    try {
+      socket.connect(new InetSocketAddress(InetAddress.getByName(null), this.port), this.connectTimeout);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      writeString(out, token);
+      out.flush();
+      success = true;
+    } finally {
+      if (!success) {
+        close(socket);
+      }
+    }
+    return socket;
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the file in which a {@link ChangeLogAssemblerDaemon}
+   * listening on the supplied port records its authentication token
+   * by default: {@code
+   * ${user.home}/.liquibase-maven-plugin/daemon-}<i>port</i>{@code
+   * .token}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param port the port
+   *
+   * @return a non-{@code null} {@link File}
+   */
+  public static final File getDefaultTokenFile(final int port) {
+    return new File(new File(System.getProperty("user.home"), ".liquibase-maven-plugin"), "daemon-" + port + ".token");
+  }
+
+  /**
+   * Reads the authentication token from the supplied file.
+   *
+   * @param tokenFile the file; must not be {@code null}
+   *
+   * @return the token; never {@code null}
+   *
+   * @exception IOException if the file could not be read or is empty
+   */
+  private static final String readToken(final File tokenFile) throws IOException {
+    assert tokenFile != null;
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tokenFile), "UTF-8"));
+    try {
+      final String token = reader.readLine();
+      if (token == null || token.trim().isEmpty()) {
+        throw new IOException("Empty daemon token file: " + tokenFile);
+      }
+      return token.trim();
+    } finally {
+      try {
+        reader.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+  /**
+   * Reads the daemon's response status from the supplied {@link
+   * Socket} and returns a {@link DataInputStream} positioned at the
+   * response body.
+   *
+   * @param socket the {@link Socket}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link DataInputStream}
+   *
+   * @exception IOException if the daemon reported an error
+   */
+  private static final DataInputStream readResponse(final Socket socket) throws IOException {
+    assert socket != null;
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    final String status = readString(in);
+    if (!OK.equals(status)) {
+      throw new IOException("Daemon error: " + readString(in));
+    }
+    return in;
+  }
+
+  /**
+   * Writes the supplied {@link String} as a length-prefixed sequence
+   * of UTF-8 bytes, which, unlike {@link
+   * DataOutputStream#writeUTF(String)}, has no 64 kilobyte limit.
+   *
+   * @param out the {@link DataOutputStream} to write to; must not be
+   * {@code null}
+   *
+   * @param s the {@link String} to write; must not be {@code null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  static final void writeString(final DataOutputStream out, final String s) throws IOException {
+    final byte[] bytes = s.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a {@link String} written by {@link
+   * #writeString(DataOutputStream, String)}.
+   *
+   * @param in the {@link DataInputStream} to read from; must not be
+   * {@code null}
+   *
+   * @return the {@link String}; never {@code null}
+   *
+   * @exception IOException if an input/output error occurs or the
+   * length is implausible
+   */
+  static final String readString(final DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0 || length > 64 * 1024 * 1024) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  /**
+   * Closes the supplied {@link Socket}, ignoring any error.
+   *
+   * @param socket the {@link Socket}; may be {@code null}
+   */
+  static final void close(final Socket socket) {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+}
@@ -0,0 +1,462 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes, to a changelog template, one changelog fragment to be
+ * {@code include}d in the assembled changelog.
+ *
+ * <p>Templates receive a {@link List} of {@link ChangeLogDescriptor}s
+ * as their {@code resources} variable.  Since the {@linkplain
+ * #toString() string form} of a {@link ChangeLogDescriptor} is its
+ * {@linkplain #getInclude() include}, a template that merely prints
+ * each element, as the default template does, behaves exactly as it
+ * did when it was given bare {@link URL}s.  Templates that need more
+ * may read, for example, {@code resource.name}, {@code
+ * resource.contentHash}, {@code resource.size} or {@code
+ * resource.changeSetCount}.</p>
+ *
+ * <p>Attributes that require reading the changelog are computed only
+ * when a template first reads them, and are remembered by the
+ * underlying {@link ChangeLogResource}, so a template that does not
+ * read them costs nothing extra.</p>
+ *
+ * <p>For templates written when each element was a {@link URL}, a
+ * {@link ChangeLogDescriptor} also offers the {@link URL} methods
+ * such a template is likely to call, such as {@link
+ * #toExternalForm()}, {@link #getPath()} and {@link #openStream()},
+ * each of which delegates to the changelog's {@linkplain #getURL()
+ * URL}.  A {@link ChangeLogDescriptor} is not itself a {@link URL},
+ * however: a template that passes an element to a method expecting
+ * one, or that compares elements with {@link URL}s, must use {@code
+ * resource.URL} instead.  In {@code CLASSPATH} include mode the
+ * {@linkplain #toString() string form} is the resource name, while
+ * {@link #toExternalForm()} is still the changelog's {@link
+ * URL}.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class ChangeLogDescriptor {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link ChangeLogResource} described.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getResource()
+   */
+  private final ChangeLogResource resource;
+
+  /**
+   * The {@code include} by which the assembled changelog refers to
+   * the changelog.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getInclude()
+   */
+  private final String include;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogDescriptor}.
+   *
+   * @param resource the {@link ChangeLogResource} to describe; must
+   * not be {@code null}
+   *
+   * @param include the {@code include} by which the assembled
+   * changelog refers to it; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   */
+  public ChangeLogDescriptor(final ChangeLogResource resource, final String include) {
+    super();
+    if (resource == null) {
+      throw new IllegalArgumentException("resource", new NullPointerException("resource"));
+    }
+    if (include == null) {
+      throw new IllegalArgumentException("include", new NullPointerException("include"));
+    }
+    this.resource = resource;
+    this.include = include;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link ChangeLogResource} described by this {@link
+   * ChangeLogDescriptor}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link ChangeLogResource}
+   */
+  public ChangeLogResource getResource() {
+    return this.resource;
+  }
+
+  /**
+   * Returns the {@code include} by which the assembled changelog
+   * refers to the changelog: a {@link URL} or a classpath-relative
+   * resource name.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@code include}
+   */
+  public String getInclude() {
+    return this.include;
+  }
+
+  /**
+   * Returns the {@link URL} of the changelog.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link URL}
+   *
+   * @see ChangeLogResource#getURL()
+   */
+  public URL getURL() {
+    return this.resource.getURL();
+  }
+
+  /**
+   * Returns the classpath-relative resource name under which the
+   * changelog was found.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} resource name
+   *
+   * @see ChangeLogResource#getName()
+   */
+  public String getName() {
+    return this.resource.getName();
+  }
+
+  /**
+   * Returns the content hash of the changelog, reading it on first
+   * use.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a lowercase hexadecimal content hash; never {@code null}
+   *
+   * @exception IOException if the changelog could not be read
+   *
+   * @see ChangeLogResource#getContentHash()
+   */
+  public String getContentHash() throws IOException {
+    return this.resource.getContentHash();
+  }
+
+  /**
+   * Returns the size of the changelog in bytes, reading it on first
+   * use.
+   *
+   * @return the size of the changelog in bytes
+   *
+   * @exception IOException if the changelog could not be read
+   *
+   * @see ChangeLogResource#getSize()
+   */
+  public long getSize() throws IOException {
+    return this.resource.getSize();
+  }
+
+  /**
+   * Returns the number of changesets in the changelog, parsing it on
+   * first use.
+   *
+   * @return the number of changesets in the changelog
+   *
+   * @exception IOException if the changelog could not be read or
+   * parsed
+   *
+   * @see ChangeLogResource#getChangeSetCount()
+   */
+  public int getChangeSetCount() throws IOException {
+    return this.resource.getChangeSetCount();
+  }
+
+  /**
+   * Returns the {@linkplain URL#toExternalForm() external form} of
+   * the changelog's {@linkplain #getURL() URL}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String}
+   *
+   * @see URL#toExternalForm()
+   */
+  public String toExternalForm() {
+    return this.getURL().toExternalForm();
+  }
+
+  /**
+   * Returns the changelog's {@linkplain #getURL() URL} as a {@link
+   * URI}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link URI}
+   *
+   * @exception URISyntaxException if the {@link URL} is not a valid
+   * {@link URI}
+   *
+   * @see URL#toURI()
+   */
+  public URI toURI() throws URISyntaxException {
+    return this.getURL().toURI();
+  }
+
+  /**
+   * Returns the protocol of the changelog's {@linkplain #getURL()
+   * URL}, such as {@code jar} or {@code file}.
+   *
+   * @return the protocol
+   *
+   * @see URL#getProtocol()
+   */
+  public String getProtocol() {
+    return this.getURL().getProtocol();
+  }
+
+  /**
+   * Returns the host of the changelog's {@linkplain #getURL() URL}.
+   *
+   * @return the host
+   *
+   * @see URL#getHost()
+   */
+  public String getHost() {
+    return this.getURL().getHost();
+  }
+
+  /**
+   * Returns the port of the changelog's {@linkplain #getURL() URL}.
+   *
+   * @return the port, or {@code -1} if it is not set
+   *
+   * @see URL#getPort()
+   */
+  public int getPort() {
+    return this.getURL().getPort();
+  }
+
+  /**
+   * Returns the authority of the changelog's {@linkplain #getURL()
+   * URL}.
+   *
+   * @return the authority
+   *
+   * @see URL#getAuthority()
+   */
+  public String getAuthority() {
+    return this.getURL().getAuthority();
+  }
+
+  /**
+   * Returns the user information of the changelog's {@linkplain
+   * #getURL() URL}.
+   *
+   * @return the user information
+   *
+   * @see URL#getUserInfo()
+   */
+  public String getUserInfo() {
+    return this.getURL().getUserInfo();
+  }
+
+  /**
+   * Returns the path of the changelog's {@linkplain #getURL() URL}.
+   *
+   * @return the path
+   *
+   * @see URL#getPath()
+   */
+  public String getPath() {
+    return this.getURL().getPath();
+  }
+
+  /**
+   * Returns the file name, that is, the path and query, of the
+   * changelog's {@linkplain #getURL() URL}.
+   *
+   * @return the file name
+   *
+   * @see URL#getFile()
+   */
+  public String getFile() {
+    return this.getURL().getFile();
+  }
+
+  /**
+   * Returns the query of the changelog's {@linkplain #getURL() URL}.
+   *
+   * @return the query
+   *
+   * @see URL#getQuery()
+   */
+  public String getQuery() {
+    return this.getURL().getQuery();
+  }
+
+  /**
+   * Returns the fragment of the changelog's {@linkplain #getURL()
+   * URL}.
+   *
+   * @return the fragment
+   *
+   * @see URL#getRef()
+   */
+  public String getRef() {
+    return this.getURL().getRef();
+  }
+
+  /**
+   * Opens a connection to the changelog's {@linkplain #getURL() URL}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link URLConnection}
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @see URL#openConnection()
+   */
+  public URLConnection openConnection() throws IOException {
+    return this.getURL().openConnection();
+  }
+
+  /**
+   * Opens the changelog for reading.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a new {@link InputStream}; never {@code null}
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @see ChangeLogResource#openStream()
+   */
+  public InputStream openStream() throws IOException {
+    return this.resource.openStream();
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link URL} refers to the
+   * same file as the changelog's {@linkplain #getURL() URL}.
+   *
+   * @param url the {@link URL} to compare; may be {@code null}
+   *
+   * @return {@code true} if both refer to the same file
+   *
+   * @see URL#sameFile(URL)
+   */
+  public boolean sameFile(final URL url) {
+    return url != null && this.getURL().sameFile(url);
+  }
+
+  /**
+   * Returns the {@linkplain #getInclude() include} of this {@link
+   * ChangeLogDescriptor}, so that templates printing it directly
+   * write the {@code include}.
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public String toString() {
+    return this.include;
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns a new {@link List} of {@link ChangeLogDescriptor}s, one
+   * for each entry of the supplied {@link Map} of {@link
+   * ChangeLogResource}s to {@code include}s, in iteration order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param includes a {@link Map} of {@link ChangeLogResource}s to
+   * {@code include}s; may be {@code null}
+   *
+   * @return a non-{@code null}, mutable {@link List} of {@link
+   * ChangeLogDescriptor}s
+   */
+  public static List<ChangeLogDescriptor> of(final Map<? extends ChangeLogResource, ? extends String> includes) {
+    final List<ChangeLogDescriptor> returnValue = new ArrayList<ChangeLogDescriptor>();
+    if (includes != null) {
+      for (final Map.Entry<? extends ChangeLogResource, ? extends String> entry : includes.entrySet()) {
+        if (entry.getKey() != null && entry.getValue() != null) {
+          returnValue.add(new ChangeLogDescriptor(entry.getKey(), entry.getValue()));
+        }
+      }
+    }
+    return returnValue;
+  }
+
+}
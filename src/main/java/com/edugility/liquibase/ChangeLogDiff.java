@@ -0,0 +1,371 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences, by {@linkplain ChangeLogResource#getContentHash()
+ * content hash}, between the changelogs contributed to two versions of
+ * an assembled changelog.
+ *
+ * <p>Changelogs are paired by a caller-supplied key that identifies a
+ * changelog independently of the version of the artifact that
+ * contains it, such as
+ * <code><i>groupId</i>:<i>artifactId</i>:<i>resourceName</i></code>.</p>
+ *
+ * <h3>Format</h3>
+ *
+ * <p>A diff is {@linkplain #write(Writer) written} as UTF-8 text.
+ * The first line, which begins with "{@code #}", names the columns.
+ * Every other line consists of four tab-separated fields: the
+ * {@linkplain Status status}, the key, the previous content hash and
+ * the current content hash.  A hash is "{@code -}" when there is no
+ * corresponding changelog.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see #compute(Map, Map)
+ */
+public final class ChangeLogDiff {
+
+  /**
+   * The {@link Entry} instances in this {@link ChangeLogDiff}, in
+   * current order followed by removed changelogs in previous order.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final List<Entry> entries;
+
+  /**
+   * Creates a new {@link ChangeLogDiff}.
+   *
+   * @param entries the {@link Entry} instances; must not be {@code
+   * null}
+   */
+  private ChangeLogDiff(final List<Entry> entries) {
+    super();
+    assert entries != null;
+    this.entries = Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Compares the supplied previous and current changelogs and returns
+   * a new {@link ChangeLogDiff} describing their differences.
+   *
+   * <p>Each changelog is {@linkplain
+   * ChangeLogResource#getContentHash() hashed} as part of this
+   * operation.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param previous the previous changelogs, indexed by key, in
+   * order; may be {@code null}
+   *
+   * @param current the current changelogs, indexed by key, in order;
+   * may be {@code null}
+   *
+   * @return a new {@link ChangeLogDiff}; never {@code null}
+   *
+   * @exception IOException if a changelog could not be read
+   */
+  public static ChangeLogDiff compute(final Map<String, ? extends ChangeLogResource> previous, final Map<String, ? extends ChangeLogResource> current) throws IOException {
+    final List<Entry> entries = new ArrayList<Entry>();
+    if (current != null) {
+      for (final Map.Entry<String, ? extends ChangeLogResource> entry : current.entrySet()) {
+        final ChangeLogResource resource = entry.getValue();
+        if (resource != null) {
+          final ChangeLogResource previousResource = previous == null ? null : previous.get(entry.getKey());
+          final String currentHash = resource.getContentHash();
+          final Status status;
+          final String previousHash;
+          if (previousResource == null) {
+            status = Status.ADDED;
+            previousHash = null;
+          } else {
+            previousHash = previousResource.getContentHash();
+            status = currentHash.equals(previousHash) ? Status.UNCHANGED : Status.MODIFIED;
+          }
+          entries.add(new Entry(status, entry.getKey(), previousHash, currentHash, resource));
+        }
+      }
+    }
+    if (previous != null) {
+      for (final Map.Entry<String, ? extends ChangeLogResource> entry : previous.entrySet()) {
+        final ChangeLogResource resource = entry.getValue();
+        if (resource != null && (current == null || !current.containsKey(entry.getKey()))) {
+          entries.add(new Entry(Status.REMOVED, entry.getKey(), resource.getContentHash(), null, null));
+        }
+      }
+    }
+    return new ChangeLogDiff(entries);
+  }
+
+  /**
+   * Returns an unmodifiable {@link List} of the {@link Entry}
+   * instances in this {@link ChangeLogDiff}, in current order followed
+   * by removed changelogs in previous order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link List} of {@link Entry} instances
+   */
+  public List<Entry> getEntries() {
+    return this.entries;
+  }
+
+  /**
+   * Returns the {@link ChangeLogResource}s that were {@linkplain
+   * Status#ADDED added} or {@linkplain Status#MODIFIED modified}, in
+   * current order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link List} of {@link
+   * ChangeLogResource}s
+   */
+  public List<ChangeLogResource> getChangedResources() {
+    final List<ChangeLogResource> returnValue = new ArrayList<ChangeLogResource>();
+    for (final Entry entry : this.entries) {
+      if (entry.getStatus() == Status.ADDED || entry.getStatus() == Status.MODIFIED) {
+        returnValue.add(entry.getResource());
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the number of {@link Entry} instances in this {@link
+   * ChangeLogDiff} with the supplied {@link Status}.
+   *
+   * @param status the {@link Status}; may be {@code null}
+   *
+   * @return the number of matching {@link Entry} instances
+   */
+  public int count(final Status status) {
+    int count = 0;
+    for (final Entry entry : this.entries) {
+      if (entry.getStatus() == status) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Writes this {@link ChangeLogDiff} to the supplied {@link Writer}
+   * in the format described in the {@linkplain ChangeLogDiff class
+   * documentation}.
+   *
+   * <p>The supplied {@link Writer} is {@linkplain Writer#flush()
+   * flushed} but not {@linkplain Writer#close() closed}.</p>
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  public void write(final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    writer.write("# status\tkey\tprevious " + Digests.ALGORITHM + "\tcurrent " + Digests.ALGORITHM + "\n");
+    for (final Entry entry : this.entries) {
+      writer.write(entry.getStatus().name());
+      writer.write('\t');
+      writer.write(entry.getKey());
+      writer.write('\t');
+      writer.write(entry.getPreviousContentHash() == null ? "-" : entry.getPreviousContentHash());
+      writer.write('\t');
+      writer.write(entry.getCurrentContentHash() == null ? "-" : entry.getCurrentContentHash());
+      writer.write('\n');
+    }
+    writer.flush();
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The status of a changelog in a {@link ChangeLogDiff}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static enum Status {
+
+    /**
+     * The changelog is present only in the current version.
+     */
+    ADDED,
+
+    /**
+     * The changelog is present in both versions with different
+     * contents.
+     */
+    MODIFIED,
+
+    /**
+     * The changelog is present in both versions with identical
+     * contents.
+     */
+    UNCHANGED,
+
+    /**
+     * The changelog is present only in the previous version.
+     */
+    REMOVED
+
+  }
+
+  /**
+   * A single changelog in a {@link ChangeLogDiff}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Entry {
+
+    /**
+     * The {@link Status}; never {@code null}.
+     */
+    private final Status status;
+
+    /**
+     * The key; never {@code null}.
+     */
+    private final String key;
+
+    /**
+     * The previous content hash; may be {@code null}.
+     */
+    private final String previousContentHash;
+
+    /**
+     * The current content hash; may be {@code null}.
+     */
+    private final String currentContentHash;
+
+    /**
+     * The current {@link ChangeLogResource}; may be {@code null}.
+     */
+    private final ChangeLogResource resource;
+
+    /**
+     * Creates a new {@link Entry}.
+     *
+     * @param status the {@link Status}; must not be {@code null}
+     *
+     * @param key the key; must not be {@code null}
+     *
+     * @param previousContentHash the previous content hash; may be
+     * {@code null}
+     *
+     * @param currentContentHash the current content hash; may be
+     * {@code null}
+     *
+     * @param resource the current {@link ChangeLogResource}; may be
+     * {@code null}
+     */
+    private Entry(final Status status, final String key, final String previousContentHash, final String currentContentHash, final ChangeLogResource resource) {
+      super();
+      assert status != null;
+      assert key != null;
+      this.status = status;
+      this.key = key;
+      this.previousContentHash = previousContentHash;
+      this.currentContentHash = currentContentHash;
+      this.resource = resource;
+    }
+
+    /**
+     * Returns the {@link Status} of the changelog.
+     *
+     * @return a non-{@code null} {@link Status}
+     */
+    public Status getStatus() {
+      return this.status;
+    }
+
+    /**
+     * Returns the key identifying the changelog.
+     *
+     * @return a non-{@code null} key
+     */
+    public String getKey() {
+      return this.key;
+    }
+
+    /**
+     * Returns the content hash of the previous version of the
+     * changelog, or {@code null} if it was {@linkplain Status#ADDED
+     * added}.
+     *
+     * @return a content hash, or {@code null}
+     */
+    public String getPreviousContentHash() {
+      return this.previousContentHash;
+    }
+
+    /**
+     * Returns the content hash of the current version of the
+     * changelog, or {@code null} if it was {@linkplain
+     * Status#REMOVED removed}.
+     *
+     * @return a content hash, or {@code null}
+     */
+    public String getCurrentContentHash() {
+      return this.currentContentHash;
+    }
+
+    /**
+     * Returns the current {@link ChangeLogResource}, or {@code null}
+     * if it was {@linkplain Status#REMOVED removed}.
+     *
+     * @return a {@link ChangeLogResource}, or {@code null}
+     */
+    public ChangeLogResource getResource() {
+      return this.resource;
+    }
+
+  }
+
+}
@@ -0,0 +1,422 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URL;
+
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+
+import java.nio.channels.FileChannel;
+
+import java.util.AbstractList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import liquibase.change.CheckSum;
+
+/**
+ * A read-only, random-access view of a binary <em>changelog
+ * manifest</em> as written by a {@link ChangeLogManifestWriter}.
+ *
+ * <p>A changelog manifest lets an application enumerate every {@link
+ * ChangeLogManifestEntry} of an assembled changelog, together with
+ * the checksum Liquibase computed for it at build time, without
+ * parsing any XML.  Files are {@linkplain
+ * FileChannel#map(FileChannel.MapMode, long, long) memory-mapped};
+ * records are decoded lazily, one {@link #get(int)} at a time.</p>
+ *
+ * <p>A changelog manifest records changeset identities and checksums
+ * only.  It is suitable for status reports, pending-changeset checks
+ * and checksum comparison against a {@code DATABASECHANGELOG} table.
+ * It records no {@code Change}s, so it is not a substitute for the
+ * changelog itself: applying changesets still requires parsing the
+ * changelog.</p>
+ *
+ * <h3>Format</h3>
+ *
+ * <p>All integers are big-endian.  A changelog manifest consists
+ * of:</p>
+ *
+ * <ol>
+ *
+ * <li>The four magic bytes "{@code LQBM}"</li>
+ *
+ * <li>A four-byte format {@linkplain #VERSION version}</li>
+ *
+ * <li>A four-byte record count, <i>n</i></li>
+ *
+ * <li>An offset index of <i>n</i> eight-byte absolute record
+ * offsets</li>
+ *
+ * <li><i>n</i> records, each of which is a four-byte length followed
+ * by that many bytes of payload</li>
+ *
+ * </ol>
+ *
+ * <p>Strings within a record payload are encoded as a four-byte
+ * length (or {@code -1} for {@code null}) followed by that many
+ * bytes of UTF-8.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogManifestWriter
+ *
+ * @see ChangeLogManifestEntry
+ */
+public final class ChangeLogManifest extends AbstractList<ChangeLogManifestEntry> {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The magic bytes that begin every changelog manifest.
+   */
+  static final byte[] MAGIC = new byte[] { 'L', 'Q', 'B', 'M' };
+
+  /**
+   * The version of the changelog manifest format understood by this
+   * class.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * The size in bytes of the fixed portion of the header that
+   * precedes the offset index.
+   */
+  static final int HEADER_SIZE = MAGIC.length + 4 + 4;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link ByteBuffer} holding the changelog manifest.
+   *
+   * <p>This field is never {@code null}.  It is never read from
+   * directly; {@linkplain ByteBuffer#duplicate() duplicates} are used
+   * instead so that this {@link ChangeLogManifest} may be shared
+   * among threads.</p>
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * The number of records in the changelog manifest.
+   */
+  private final int size;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogManifest} by memory-mapping the
+   * supplied {@link File}.
+   *
+   * @param file the changelog manifest {@link File}; must not be
+   * {@code null}
+   *
+   * @exception IllegalArgumentException if {@code file} is {@code
+   * null}
+   *
+   * @exception IOException if the {@link File} could not be mapped or
+   * is not a changelog manifest
+   */
+  public ChangeLogManifest(final File file) throws IOException {
+    this(map(file));
+  }
+
+  /**
+   * Creates a new {@link ChangeLogManifest} backed by the supplied
+   * {@link ByteBuffer}.
+   *
+   * @param buffer a {@link ByteBuffer} whose contents, from its
+   * {@linkplain ByteBuffer#position() position} to its {@linkplain
+   * ByteBuffer#limit() limit}, are a changelog manifest; must not be
+   * {@code null}; will not be modified
+   *
+   * @exception IllegalArgumentException if {@code buffer} is {@code
+   * null}
+   *
+   * @exception IOException if the contents of {@code buffer} are not
+   * a changelog manifest
+   */
+  public ChangeLogManifest(final ByteBuffer buffer) throws IOException {
+    super();
+    if (buffer == null) {
+      throw new IllegalArgumentException("buffer", new NullPointerException("buffer"));
+    }
+    this.buffer = buffer.slice().asReadOnlyBuffer();
+    final ByteBuffer header = this.buffer.duplicate();
+    try {
+      for (final byte b : MAGIC) {
+        if (header.get() != b) {
+          throw new IOException("Not a changelog manifest");
+        }
+      }
+      final int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported changelog manifest version: " + version);
+      }
+      this.size = header.getInt();
+    } catch (final BufferUnderflowException e) {
+      throw (IOException)new IOException("Truncated changelog manifest").initCause(e);
+    }
+    if (this.size < 0 || HEADER_SIZE + 8L * this.size > this.buffer.limit()) {
+      throw new IOException("Corrupt changelog manifest offset index");
+    }
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the number of {@link ChangeLogManifestEntry}s in this {@link
+   * ChangeLogManifest}.
+   *
+   * @return the number of {@link ChangeLogManifestEntry}s in this {@link
+   * ChangeLogManifest}
+   */
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Decodes and returns the {@link ChangeLogManifestEntry} at the supplied
+   * zero-based index.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param index the index of the {@link ChangeLogManifestEntry} to
+   * return; must be greater than or equal to {@code 0} and less than
+   * the return value of {@link #size()}
+   *
+   * @return a non-{@code null} {@link ChangeLogManifestEntry}
+   *
+   * @exception IndexOutOfBoundsException if {@code index} is out of
+   * range
+   *
+   * @exception IllegalStateException if the record at the supplied
+   * index is corrupt
+   */
+  @Override
+  public ChangeLogManifestEntry get(final int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    final ByteBuffer record = this.buffer.duplicate();
+    try {
+      final long offset = record.getLong(HEADER_SIZE + 8 * index);
+      if (offset < 0L || offset > record.limit()) {
+        throw new IllegalStateException("Corrupt offset for record " + index + ": " + offset);
+      }
+      record.position((int)offset);
+      final int length = record.getInt();
+      if (length < 0 || length > record.remaining()) {
+        throw new IllegalStateException("Corrupt length for record " + index + ": " + length);
+      }
+      record.limit(record.position() + length);
+      final String id = getString(record);
+      final String author = getString(record);
+      final String filePath = getString(record);
+      final String changeLogPath = getString(record);
+      final String checkSum = getString(record);
+      final String description = getString(record);
+      final String comments = getString(record);
+      final Set<String> contexts = getStrings(record);
+      final Set<String> dbms = getStrings(record);
+      final byte flags = record.get();
+      final byte failOnError = record.get();
+      return new ChangeLogManifestEntry(id,
+                                   author,
+                                   filePath,
+                                   changeLogPath,
+                                   checkSum == null ? null : CheckSum.parse(checkSum),
+                                   description,
+                                   comments,
+                                   contexts,
+                                   dbms,
+                                   (flags & ChangeLogManifestWriter.ALWAYS_RUN) != 0,
+                                   (flags & ChangeLogManifestWriter.RUN_ON_CHANGE) != 0,
+                                   (flags & ChangeLogManifestWriter.RUN_IN_TRANSACTION) != 0,
+                                   failOnError < 0 ? null : Boolean.valueOf(failOnError != 0));
+    } catch (final BufferUnderflowException e) {
+      throw new IllegalStateException("Corrupt record " + index, e);
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Loads a {@link ChangeLogManifest} from the supplied {@link URL}.
+   * {@code file:} {@link URL}s are memory-mapped; all others (such
+   * as {@code jar:} {@link URL}s for changelog manifests packaged as
+   * classpath resources) are read fully into memory.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param url the {@link URL} to load; must not be {@code null}
+   *
+   * @return a new {@link ChangeLogManifest}; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code url} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs or if the
+   * resource is not a changelog manifest
+   */
+  public static final ChangeLogManifest load(final URL url) throws IOException {
+    if (url == null) {
+      throw new IllegalArgumentException("url", new NullPointerException("url"));
+    }
+    if ("file".equals(url.getProtocol())) {
+      try {
+        return new ChangeLogManifest(new File(url.toURI()));
+      } catch (final java.net.URISyntaxException fallThrough) {
+        // fall through to the streaming case
+      }
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final InputStream stream = url.openStream();
+    try {
+      final byte[] chunk = new byte[8192];
+      int read;
+      while ((read = stream.read(chunk)) >= 0) {
+        bytes.write(chunk, 0, read);
+      }
+    } finally {
+      try {
+        stream.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    return new ChangeLogManifest(ByteBuffer.wrap(bytes.toByteArray()));
+  }
+
+  /**
+   * Memory-maps the supplied {@link File} in its entirety.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param file the {@link File} to map; must not be {@code null}
+   *
+   * @return a read-only {@link ByteBuffer}; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code file} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  private static final ByteBuffer map(final File file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file", new NullPointerException("file"));
+    }
+    final FileInputStream stream = new FileInputStream(file);
+    try {
+      final FileChannel channel = stream.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+    } finally {
+      try {
+        stream.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+  /**
+   * Decodes a length-prefixed UTF-8 {@link String} from the supplied
+   * {@link ByteBuffer}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param buffer the {@link ByteBuffer} to read from; must not be
+   * {@code null}
+   *
+   * @return a {@link String}, or {@code null}
+   */
+  private static final String getString(final ByteBuffer buffer) {
+    final int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    final byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, ChangeLogManifestWriter.UTF_8);
+  }
+
+  /**
+   * Decodes a count-prefixed sequence of {@link String}s from the
+   * supplied {@link ByteBuffer}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param buffer the {@link ByteBuffer} to read from; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link Set} of {@link String}s
+   */
+  private static final Set<String> getStrings(final ByteBuffer buffer) {
+    final int count = buffer.getInt();
+    final Set<String> returnValue = new LinkedHashSet<String>();
+    for (int i = 0; i < count; i++) {
+      returnValue.add(getString(buffer));
+    }
+    return returnValue;
+  }
+
+}
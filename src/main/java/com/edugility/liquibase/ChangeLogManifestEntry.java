@@ -0,0 +1,472 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import liquibase.change.CheckSum;
+
+import liquibase.changelog.ChangeSet;
+
+/**
+ * An immutable, parse-free description of a <a
+ * href="http://www.liquibase.org/">Liquibase</a> {@link ChangeSet}
+ * as recorded in a {@linkplain ChangeLogManifest changelog
+ * manifest}.
+ *
+ * <p>A {@link ChangeLogManifestEntry} carries everything Liquibase
+ * uses to identify a {@link ChangeSet} and to decide whether it has
+ * already been applied&mdash;its identity, its {@linkplain #getCheckSum()
+ * checksum}, its contexts and its target database types&mdash;but
+ * not its {@linkplain ChangeSet#getChanges() changes}.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogManifest
+ *
+ * @see ChangeLogManifestWriter
+ */
+public final class ChangeLogManifestEntry {
+
+  /**
+   * The identifier of the {@link ChangeSet} this {@link
+   * ChangeLogManifestEntry} describes.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final String id;
+
+  /**
+   * The author of the {@link ChangeSet} this {@link
+   * ChangeLogManifestEntry} describes.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final String author;
+
+  /**
+   * The (possibly logical) file path of the {@link ChangeSet} this
+   * {@link ChangeLogManifestEntry} describes.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final String filePath;
+
+  /**
+   * The physical path of the changelog that contained the {@link
+   * ChangeSet} this {@link ChangeLogManifestEntry} describes.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final String changeLogPath;
+
+  /**
+   * The {@link CheckSum} of the {@link ChangeSet} this {@link
+   * ChangeLogManifestEntry} describes.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final CheckSum checkSum;
+
+  /**
+   * The description of the {@link ChangeSet} this {@link
+   * ChangeLogManifestEntry} describes.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final String description;
+
+  /**
+   * The comments of the {@link ChangeSet} this {@link
+   * ChangeLogManifestEntry} describes.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final String comments;
+
+  /**
+   * The contexts of the {@link ChangeSet} this {@link
+   * ChangeLogManifestEntry} describes.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Set<String> contexts;
+
+  /**
+   * The database types of the {@link ChangeSet} this {@link
+   * ChangeLogManifestEntry} describes.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Set<String> dbms;
+
+  /**
+   * Whether the {@link ChangeSet} this {@link ChangeLogManifestEntry}
+   * describes should always be run.
+   */
+  private final boolean alwaysRun;
+
+  /**
+   * Whether the {@link ChangeSet} this {@link ChangeLogManifestEntry}
+   * describes should be run again when it changes.
+   */
+  private final boolean runOnChange;
+
+  /**
+   * Whether the {@link ChangeSet} this {@link ChangeLogManifestEntry}
+   * describes should be run in a transaction.
+   */
+  private final boolean runInTransaction;
+
+  /**
+   * Whether failure of the {@link ChangeSet} this {@link
+   * ChangeLogManifestEntry} describes should stop migration.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final Boolean failOnError;
+
+  /**
+   * Creates a new {@link ChangeLogManifestEntry} describing the supplied
+   * {@link ChangeSet}.
+   *
+   * <p>This constructor calls {@link ChangeSet#generateCheckSum()}
+   * and so may be relatively expensive.</p>
+   *
+   * @param changeSet the {@link ChangeSet} to describe; must not be
+   * {@code null}
+   *
+   * @exception IllegalArgumentException if {@code changeSet} is
+   * {@code null}
+   */
+  public ChangeLogManifestEntry(final ChangeSet changeSet) {
+    this(checkNotNull(changeSet).getId(),
+         changeSet.getAuthor(),
+         changeSet.getFilePath(),
+         changeSet.getChangeLog() == null ? null : changeSet.getChangeLog().getPhysicalFilePath(),
+         changeSet.generateCheckSum(),
+         changeSet.getDescription(),
+         changeSet.getComments(),
+         changeSet.getContexts(),
+         changeSet.getDbmsSet(),
+         changeSet.isAlwaysRun(),
+         changeSet.isRunOnChange(),
+         changeSet.isRunInTransaction(),
+         changeSet.getFailOnError());
+  }
+
+  /**
+   * Creates a new {@link ChangeLogManifestEntry}.
+   *
+   * @param id the changeset identifier; may be {@code null}
+   *
+   * @param author the changeset author; may be {@code null}
+   *
+   * @param filePath the (possibly logical) file path of the
+   * changeset; may be {@code null}
+   *
+   * @param changeLogPath the physical path of the changelog that
+   * contained the changeset; may be {@code null}
+   *
+   * @param checkSum the changeset's {@link CheckSum}; may be {@code
+   * null}
+   *
+   * @param description the changeset's description; may be {@code
+   * null}
+   *
+   * @param comments the changeset's comments; may be {@code null}
+   *
+   * @param contexts the changeset's contexts; may be {@code null}
+   *
+   * @param dbms the changeset's database types; may be {@code null}
+   *
+   * @param alwaysRun whether the changeset should always be run
+   *
+   * @param runOnChange whether the changeset should be run again when
+   * it changes
+   *
+   * @param runInTransaction whether the changeset should be run in a
+   * transaction
+   *
+   * @param failOnError whether failure of the changeset should stop
+   * migration; may be {@code null}
+   */
+  public ChangeLogManifestEntry(final String id,
+                           final String author,
+                           final String filePath,
+                           final String changeLogPath,
+                           final CheckSum checkSum,
+                           final String description,
+                           final String comments,
+                           final Set<String> contexts,
+                           final Set<String> dbms,
+                           final boolean alwaysRun,
+                           final boolean runOnChange,
+                           final boolean runInTransaction,
+                           final Boolean failOnError) {
+    super();
+    this.id = id;
+    this.author = author;
+    this.filePath = filePath;
+    this.changeLogPath = changeLogPath;
+    this.checkSum = checkSum;
+    this.description = description;
+    this.comments = comments;
+    if (contexts == null || contexts.isEmpty()) {
+      this.contexts = Collections.emptySet();
+    } else {
+      this.contexts = Collections.unmodifiableSet(new LinkedHashSet<String>(contexts));
+    }
+    if (dbms == null || dbms.isEmpty()) {
+      this.dbms = Collections.emptySet();
+    } else {
+      this.dbms = Collections.unmodifiableSet(new LinkedHashSet<String>(dbms));
+    }
+    this.alwaysRun = alwaysRun;
+    this.runOnChange = runOnChange;
+    this.runInTransaction = runInTransaction;
+    this.failOnError = failOnError;
+  }
+
+  /**
+   * Returns the changeset identifier.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the changeset identifier, or {@code null}
+   */
+  public String getId() {
+    return this.id;
+  }
+
+  /**
+   * Returns the changeset author.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the changeset author, or {@code null}
+   */
+  public String getAuthor() {
+    return this.author;
+  }
+
+  /**
+   * Returns the (possibly logical) file path of the changeset, as
+   * recorded by Liquibase in its {@code DATABASECHANGELOG} table.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the file path of the changeset, or {@code null}
+   */
+  public String getFilePath() {
+    return this.filePath;
+  }
+
+  /**
+   * Returns the physical path of the changelog that contained the
+   * changeset.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the physical path of the changelog that contained the
+   * changeset, or {@code null}
+   */
+  public String getChangeLogPath() {
+    return this.changeLogPath;
+  }
+
+  /**
+   * Returns the {@link CheckSum} that Liquibase computed for the
+   * changeset at build time.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link CheckSum}, or {@code null}
+   */
+  public CheckSum getCheckSum() {
+    return this.checkSum;
+  }
+
+  /**
+   * Returns the description of the changeset.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the description of the changeset, or {@code null}
+   */
+  public String getDescription() {
+    return this.description;
+  }
+
+  /**
+   * Returns the comments of the changeset.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the comments of the changeset, or {@code null}
+   */
+  public String getComments() {
+    return this.comments;
+  }
+
+  /**
+   * Returns an unmodifiable {@link Set} of the changeset's contexts.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Set} of contexts
+   */
+  public Set<String> getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Returns an unmodifiable {@link Set} of the database types the
+   * changeset targets.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Set} of database types
+   */
+  public Set<String> getDbmsSet() {
+    return this.dbms;
+  }
+
+  /**
+   * Returns {@code true} if the changeset should always be run.
+   *
+   * @return {@code true} if the changeset should always be run
+   */
+  public boolean isAlwaysRun() {
+    return this.alwaysRun;
+  }
+
+  /**
+   * Returns {@code true} if the changeset should be run again when
+   * it changes.
+   *
+   * @return {@code true} if the changeset should be run again when
+   * it changes
+   */
+  public boolean isRunOnChange() {
+    return this.runOnChange;
+  }
+
+  /**
+   * Returns {@code true} if the changeset should be run in a
+   * transaction.
+   *
+   * @return {@code true} if the changeset should be run in a
+   * transaction
+   */
+  public boolean isRunInTransaction() {
+    return this.runInTransaction;
+  }
+
+  /**
+   * Returns whether failure of the changeset should stop migration.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return whether failure of the changeset should stop migration,
+   * or {@code null} if the changeset did not say
+   */
+  public Boolean getFailOnError() {
+    return this.failOnError;
+  }
+
+  /**
+   * Returns {@code true} if this {@link ChangeLogManifestEntry}
+   * describes the supplied {@link ChangeSet}: that is, if they share the same
+   * identity and {@linkplain ChangeSet#generateCheckSum() checksum}.
+   *
+   * @param changeSet the {@link ChangeSet} to test; may be {@code
+   * null} in which case {@code false} will be returned
+   *
+   * @return {@code true} if this {@link ChangeLogManifestEntry}
+   * describes the supplied {@link ChangeSet}; {@code false}
+   * otherwise
+   */
+  public boolean describes(final ChangeSet changeSet) {
+    return
+      changeSet != null &&
+      equals(this.id, changeSet.getId()) &&
+      equals(this.author, changeSet.getAuthor()) &&
+      equals(this.filePath, changeSet.getFilePath()) &&
+      equals(this.checkSum, changeSet.generateCheckSum());
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * ChangeLogManifestEntry} in the same format as that used by {@link
+   * ChangeSet#toString(boolean) ChangeSet.toString(false)}.
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public String toString() {
+    return this.filePath + "::" + this.id + "::" + this.author;
+  }
+
+  /**
+   * Returns {@code true} if the two supplied {@link Object}s are both
+   * {@code null} or are {@linkplain Object#equals(Object) equal}.
+   *
+   * @param a the first {@link Object}; may be {@code null}
+   *
+   * @param b the second {@link Object}; may be {@code null}
+   *
+   * @return {@code true} if the two supplied {@link Object}s are
+   * equal
+   */
+  private static final boolean equals(final Object a, final Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  /**
+   * Returns the supplied {@link ChangeSet} if it is non-{@code null}.
+   *
+   * @param changeSet the {@link ChangeSet} to check; must not be
+   * {@code null}
+   *
+   * @return the supplied {@link ChangeSet}; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code changeSet} is
+   * {@code null}
+   */
+  private static final ChangeSet checkNotNull(final ChangeSet changeSet) {
+    if (changeSet == null) {
+      throw new IllegalArgumentException("changeSet", new NullPointerException("changeSet"));
+    }
+    return changeSet;
+  }
+
+}
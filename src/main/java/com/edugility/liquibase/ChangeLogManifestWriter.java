@@ -0,0 +1,289 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import liquibase.change.CheckSum;
+
+import liquibase.changelog.ChangeSet;
+
+/**
+ * Writes {@link ChangeLogManifestEntry}s in the binary format read by
+ * {@link ChangeLogManifest}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogManifest
+ */
+public class ChangeLogManifestWriter {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The UTF-8 {@link Charset}.  This field is never {@code null}.
+   */
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The flag bit indicating that a changeset should always be run.
+   */
+  static final int ALWAYS_RUN = 0x01;
+
+  /**
+   * The flag bit indicating that a changeset should be run again when
+   * it changes.
+   */
+  static final int RUN_ON_CHANGE = 0x02;
+
+  /**
+   * The flag bit indicating that a changeset should be run in a
+   * transaction.
+   */
+  static final int RUN_IN_TRANSACTION = 0x04;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogManifestWriter}.
+   */
+  public ChangeLogManifestWriter() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * {@linkplain ChangeLogManifestEntry#ChangeLogManifestEntry(ChangeSet)
+   * Describes} each of the supplied {@link ChangeSet}s and writes the
+   * result to the supplied {@link File}.
+   *
+   * @param changeSets the {@link ChangeSet}s to write, in order; may
+   * be {@code null} in which case an empty changelog manifest will be
+   * written
+   *
+   * @param file the {@link File} to write to; must not be {@code
+   * null}; will be overwritten
+   *
+   * @exception IllegalArgumentException if {@code file} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @see #write(Collection, OutputStream)
+   */
+  public void write(final Collection<? extends ChangeSet> changeSets, final File file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file", new NullPointerException("file"));
+    }
+    final List<ChangeLogManifestEntry> entries = new ArrayList<ChangeLogManifestEntry>();
+    if (changeSets != null) {
+      for (final ChangeSet changeSet : changeSets) {
+        if (changeSet != null) {
+          entries.add(new ChangeLogManifestEntry(changeSet));
+        }
+      }
+    }
+    final OutputStream stream = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      this.write(entries, stream);
+    } finally {
+      try {
+        stream.close();
+      } catch (final IOException ignore) {
+        // ignore on purpose
+      }
+    }
+  }
+
+  /**
+   * Writes the supplied {@link ChangeLogManifestEntry}s to the supplied
+   * {@link OutputStream} as a changelog manifest.
+   *
+   * @param changeSets the {@link ChangeLogManifestEntry}s to write, in
+   * order; may be {@code null} in which case an empty changelog
+   * changelog will be written
+   *
+   * @param stream the {@link OutputStream} to write to; must not be
+   * {@code null}; will be {@linkplain OutputStream#flush() flushed}
+   * but not {@linkplain OutputStream#close() closed}
+   *
+   * @exception IllegalArgumentException if {@code stream} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  public void write(final Collection<? extends ChangeLogManifestEntry> changeSets, final OutputStream stream) throws IOException {
+    if (stream == null) {
+      throw new IllegalArgumentException("stream", new NullPointerException("stream"));
+    }
+    final List<byte[]> records = new ArrayList<byte[]>();
+    if (changeSets != null) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream record = new DataOutputStream(bytes);
+      for (final ChangeLogManifestEntry changeSet : changeSets) {
+        if (changeSet != null) {
+          bytes.reset();
+          writeRecord(changeSet, record);
+          record.flush();
+          records.add(bytes.toByteArray());
+        }
+      }
+    }
+    final DataOutputStream out = new DataOutputStream(stream);
+    out.write(ChangeLogManifest.MAGIC);
+    out.writeInt(ChangeLogManifest.VERSION);
+    out.writeInt(records.size());
+    long offset = ChangeLogManifest.HEADER_SIZE + 8L * records.size();
+    for (final byte[] record : records) {
+      out.writeLong(offset);
+      offset += 4L + record.length;
+    }
+    for (final byte[] record : records) {
+      out.writeInt(record.length);
+      out.write(record);
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes the payload of a single record describing the supplied
+   * {@link ChangeLogManifestEntry}.
+   *
+   * @param changeSet the {@link ChangeLogManifestEntry} to write; must not
+   * be {@code null}
+   *
+   * @param out the {@link DataOutputStream} to write to; must not be
+   * {@code null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  private static final void writeRecord(final ChangeLogManifestEntry changeSet, final DataOutputStream out) throws IOException {
+    assert changeSet != null;
+    assert out != null;
+    writeString(changeSet.getId(), out);
+    writeString(changeSet.getAuthor(), out);
+    writeString(changeSet.getFilePath(), out);
+    writeString(changeSet.getChangeLogPath(), out);
+    final CheckSum checkSum = changeSet.getCheckSum();
+    writeString(checkSum == null ? null : checkSum.toString(), out);
+    writeString(changeSet.getDescription(), out);
+    writeString(changeSet.getComments(), out);
+    writeStrings(changeSet.getContexts(), out);
+    writeStrings(changeSet.getDbmsSet(), out);
+    int flags = 0;
+    if (changeSet.isAlwaysRun()) {
+      flags |= ALWAYS_RUN;
+    }
+    if (changeSet.isRunOnChange()) {
+      flags |= RUN_ON_CHANGE;
+    }
+    if (changeSet.isRunInTransaction()) {
+      flags |= RUN_IN_TRANSACTION;
+    }
+    out.writeByte(flags);
+    final Boolean failOnError = changeSet.getFailOnError();
+    if (failOnError == null) {
+      out.writeByte(-1);
+    } else if (failOnError.booleanValue()) {
+      out.writeByte(1);
+    } else {
+      out.writeByte(0);
+    }
+  }
+
+  /**
+   * Writes the supplied {@link String} as a four-byte length (or
+   * {@code -1} if it is {@code null}) followed by its UTF-8 bytes.
+   *
+   * @param s the {@link String} to write; may be {@code null}
+   *
+   * @param out the {@link DataOutputStream} to write to; must not be
+   * {@code null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  private static final void writeString(final String s, final DataOutputStream out) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    } else {
+      final byte[] bytes = s.getBytes(UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Writes the supplied {@link Collection} of {@link String}s as a
+   * four-byte count followed by each {@linkplain
+   * #writeString(String, DataOutputStream) string}.
+   *
+   * @param strings the {@link String}s to write; may be {@code null}
+   *
+   * @param out the {@link DataOutputStream} to write to; must not be
+   * {@code null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  private static final void writeStrings(final Collection<? extends String> strings, final DataOutputStream out) throws IOException {
+    if (strings == null) {
+      out.writeInt(0);
+    } else {
+      out.writeInt(strings.size());
+      for (final String s : strings) {
+        writeString(s, out);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,608 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.namespace.QName;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Writes a copy of an {@linkplain
+ * com.edugility.liquibase.maven.AssembleChangeLogMojo assembled
+ * changelog} that contains only those changesets that a {@link
+ * Filter} accepts.
+ *
+ * <p>The assembled changelog and each of its {@code include}s are
+ * read and written with StAX, one event at a time, so memory use
+ * does not depend on the size of the changelogs.  Each {@code
+ * include} that still has accepted changesets is copied, less its
+ * other changesets, into a directory next to the pruned
+ * changelog, and the pruned changelog {@code include}s the copy
+ * instead.  Each copy is given a {@code logicalFilePath} equal to the
+ * original {@code include} (unless it already has one), so the
+ * changesets it contains keep the identities Liquibase knows them
+ * by.</p>
+ *
+ * <p>Nested {@code include}s within {@code include}d changelogs are
+ * copied unaltered and are not pruned.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see PendingChangeSetFilter
+ *
+ * @see ContextChangeSetFilter
+ */
+public class ChangeLogPruner {
+
+  /**
+   * The {@link Filter} that decides which changesets are kept.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Filter filter;
+
+  /**
+   * The {@link XMLInputFactory} used to read changelogs.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final XMLInputFactory inputFactory;
+
+  /**
+   * The {@link XMLOutputFactory} used to write changelogs.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final XMLOutputFactory outputFactory;
+
+  /**
+   * The {@link XMLEventFactory} used to create replacement elements.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final XMLEventFactory eventFactory;
+
+  /**
+   * Creates a new {@link ChangeLogPruner} that keeps only those
+   * changesets that the supplied {@link RanChangeSetIndex} does not
+   * record as having been applied.
+   *
+   * @param ranChangeSets the {@link RanChangeSetIndex} recording
+   * applied changesets; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code ranChangeSets} is
+   * {@code null}
+   *
+   * @see PendingChangeSetFilter
+   */
+  public ChangeLogPruner(final RanChangeSetIndex ranChangeSets) {
+    this(new PendingChangeSetFilter(ranChangeSets));
+  }
+
+  /**
+   * Creates a new {@link ChangeLogPruner}.
+   *
+   * @param filter the {@link Filter} that decides which changesets
+   * are kept; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code filter} is {@code
+   * null}
+   */
+  public ChangeLogPruner(final Filter filter) {
+    super();
+    if (filter == null) {
+      throw new IllegalArgumentException("filter", new NullPointerException("filter"));
+    }
+    this.filter = filter;
+    this.inputFactory = XMLInputFactory.newInstance();
+    this.inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    this.outputFactory = XMLOutputFactory.newInstance();
+    this.eventFactory = XMLEventFactory.newInstance();
+  }
+
+  /**
+   * Reads the supplied assembled changelog, writes a pruned copy of
+   * it to the supplied {@link File}, writes a line to the supplied
+   * report {@link Writer} for each changeset kept, and returns a
+   * {@link Summary}.
+   *
+   * <p>Pruned copies of {@code include}d changelogs are written to a
+   * directory next to {@code outputFile} whose name is that of {@code
+   * outputFile} with {@code .includes} appended.</p>
+   *
+   * <p>Each report line is of the form <code><i>status</i>
+   * <i>filePath</i>::<i>id</i>::<i>author</i></code>, separated by a
+   * tab, where <i>status</i> is the value returned by {@link
+   * Filter#accept(String, String, String, Map)}.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeLog the name of the assembled changelog, as
+   * understood by the supplied {@link ResourceAccessor}; must not be
+   * {@code null}
+   *
+   * @param resourceAccessor the {@link ResourceAccessor} used to read
+   * the assembled changelog and its {@code include}s; must not be
+   * {@code null}
+   *
+   * @param outputFile the pruned changelog to write; must not be
+   * {@code null}
+   *
+   * @param report the {@link Writer} to write the report to; may be
+   * {@code null}; will not be closed
+   *
+   * @return a non-{@code null} {@link Summary}
+   *
+   * @exception IllegalArgumentException if {@code changeLog}, {@code
+   * resourceAccessor} or {@code outputFile} is {@code null}
+   *
+   * @exception IOException if a changelog could not be read or
+   * written, or uses {@code includeAll}
+   */
+  public Summary prune(final String changeLog, final ResourceAccessor resourceAccessor, final File outputFile, final Writer report) throws IOException {
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    if (resourceAccessor == null) {
+      throw new IllegalArgumentException("resourceAccessor", new NullPointerException("resourceAccessor"));
+    }
+    if (outputFile == null) {
+      throw new IllegalArgumentException("outputFile", new NullPointerException("outputFile"));
+    }
+    final File includeDirectory = new File(outputFile.getParentFile(), outputFile.getName() + ".includes");
+    if (!includeDirectory.exists() && !includeDirectory.mkdirs()) {
+      throw new IOException("Could not create directory " + includeDirectory);
+    }
+    final Summary summary = new Summary();
+    final InputStream in = open(resourceAccessor, changeLog);
+    try {
+      final OutputStream out = new FileOutputStream(outputFile);
+      try {
+        final XMLEventReader reader = this.inputFactory.createXMLEventReader(in);
+        final XMLEventWriter writer = this.outputFactory.createXMLEventWriter(out, "UTF-8");
+        int depth = 0;
+        int includeNumber = 0;
+        boolean skippingInclude = false;
+        while (reader.hasNext()) {
+          final XMLEvent event = reader.nextEvent();
+          if (event.isStartDocument()) {
+            writer.add(this.eventFactory.createStartDocument("UTF-8", "1.0"));
+          } else if (event.isStartElement()) {
+            depth++;
+            final StartElement startElement = event.asStartElement();
+            final String localName = startElement.getName().getLocalPart();
+            if (depth == 2 && "include".equals(localName)) {
+              final String file = attributeValue(startElement, "file");
+              if (file == null) {
+                throw new IOException(changeLog + ": include without a file attribute");
+              }
+              final String include;
+              if ("true".equalsIgnoreCase(attributeValue(startElement, "relativeToChangelogFile"))) {
+                final int slash = changeLog.replace('\\', '/').lastIndexOf('/');
+                include = slash < 0 ? file : changeLog.substring(0, slash + 1) + file;
+              } else {
+                include = file;
+              }
+              includeNumber++;
+              final String prunedName = String.format("%04d.xml", includeNumber);
+              final boolean kept = this.pruneInclude(include, resourceAccessor, new File(includeDirectory, prunedName), report, summary);
+              if (kept) {
+                final List<Attribute> attributes = new ArrayList<Attribute>();
+                attributes.add(this.eventFactory.createAttribute("file", includeDirectory.getName() + "/" + prunedName));
+                attributes.add(this.eventFactory.createAttribute("relativeToChangelogFile", "true"));
+                writer.add(this.eventFactory.createStartElement(startElement.getName(), attributes.iterator(), null));
+              } else {
+                skippingInclude = true;
+              }
+            } else if (depth == 2 && ("includeAll".equals(localName) || "changeSet".equals(localName))) {
+              throw new IOException(changeLog + ": " + localName + " is not supported in an assembled changelog");
+            } else if (!skippingInclude) {
+              writer.add(event);
+            }
+          } else if (event.isEndElement()) {
+            if (skippingInclude) {
+              if (depth == 2) {
+                skippingInclude = false;
+              }
+            } else {
+              writer.add(event);
+            }
+            depth--;
+          } else if (event.getEventType() != XMLEvent.DTD && !skippingInclude) {
+            writer.add(event);
+          }
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+      } finally {
+        out.close();
+      }
+    } catch (final XMLStreamException e) {
+      throw new IOException("Could not prune " + changeLog, e);
+    } finally {
+      try {
+        in.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * Copies the supplied {@code include}d changelog to the supplied
+   * {@link File}, omitting changesets that this {@link
+   * ChangeLogPruner}'s {@link Filter} rejects, and returns {@code
+   * true} if any changesets remain.
+   *
+   * <p>If no changesets remain, the {@link File} is deleted.</p>
+   *
+   * @param include the {@code include} path; must not be {@code null}
+   *
+   * @param resourceAccessor the {@link ResourceAccessor}; must not be
+   * {@code null}
+   *
+   * @param file the {@link File} to write; must not be {@code null}
+   *
+   * @param report the report {@link Writer}; may be {@code null}
+   *
+   * @param summary the {@link Summary} to update; must not be {@code
+   * null}
+   *
+   * @return {@code true} if any changesets remain
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @exception XMLStreamException if the changelog is not well-formed
+   */
+  private final boolean pruneInclude(final String include, final ResourceAccessor resourceAccessor, final File file, final Writer report, final Summary summary) throws IOException, XMLStreamException {
+    assert include != null;
+    assert resourceAccessor != null;
+    assert file != null;
+    assert summary != null;
+    int kept = 0;
+    final InputStream in = open(resourceAccessor, include);
+    try {
+      final OutputStream out = new FileOutputStream(file);
+      try {
+        final XMLEventReader reader = this.inputFactory.createXMLEventReader(in);
+        final XMLEventWriter writer = this.outputFactory.createXMLEventWriter(out, "UTF-8");
+        String changeLogFilePath = include;
+        int depth = 0;
+        int skipDepth = 0;
+        while (reader.hasNext()) {
+          final XMLEvent event = reader.nextEvent();
+          if (event.isStartDocument()) {
+            writer.add(this.eventFactory.createStartDocument("UTF-8", "1.0"));
+          } else if (event.isStartElement()) {
+            depth++;
+            StartElement startElement = event.asStartElement();
+            if (skipDepth > 0) {
+              continue;
+            }
+            if (depth == 1) {
+              final String logicalFilePath = attributeValue(startElement, "logicalFilePath");
+              if (logicalFilePath == null || logicalFilePath.isEmpty()) {
+                final List<Attribute> attributes = new ArrayList<Attribute>();
+                @SuppressWarnings("unchecked")
+                final Iterator<Attribute> existing = startElement.getAttributes();
+                while (existing.hasNext()) {
+                  final Attribute attribute = existing.next();
+                  if (!"logicalFilePath".equals(attribute.getName().getLocalPart())) {
+                    attributes.add(attribute);
+                  }
+                }
+                attributes.add(this.eventFactory.createAttribute("logicalFilePath", include));
+                startElement = this.eventFactory.createStartElement(startElement.getName(), attributes.iterator(), startElement.getNamespaces());
+              } else {
+                changeLogFilePath = logicalFilePath;
+              }
+            } else if (depth == 2 && "changeSet".equals(startElement.getName().getLocalPart())) {
+              summary.changeSetCount++;
+              String filePath = attributeValue(startElement, "logicalFilePath");
+              if (filePath == null || filePath.isEmpty()) {
+                filePath = changeLogFilePath;
+              }
+              final String id = attributeValue(startElement, "id");
+              final String author = attributeValue(startElement, "author");
+              final String status = this.filter.accept(filePath, id, author, attributes(startElement));
+              if (status == null) {
+                summary.omittedCount++;
+                skipDepth = depth;
+              } else {
+                kept++;
+                final Integer count = summary.statusCounts.get(status);
+                summary.statusCounts.put(status, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+                if (report != null) {
+                  report.write(status + "\t" + filePath + "::" + id + "::" + author + System.getProperty("line.separator", "\n"));
+                }
+              }
+            }
+            if (skipDepth == 0) {
+              writer.add(startElement);
+            }
+          } else if (event.isEndElement()) {
+            if (skipDepth == 0) {
+              writer.add(event);
+            } else if (skipDepth == depth) {
+              skipDepth = 0;
+            }
+            depth--;
+          } else if (skipDepth == 0 && event.getEventType() != XMLEvent.DTD) {
+            writer.add(event);
+          }
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+      } finally {
+        out.close();
+      }
+    } finally {
+      try {
+        in.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    if (kept == 0 && !file.delete()) {
+      throw new IOException("Could not delete " + file);
+    }
+    return kept > 0;
+  }
+
+  /**
+   * Opens the supplied changelog.
+   *
+   * @param resourceAccessor the {@link ResourceAccessor}; must not be
+   * {@code null}
+   *
+   * @param name the name of the changelog; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link InputStream}
+   *
+   * @exception IOException if the changelog could not be found
+   */
+  private static final InputStream open(final ResourceAccessor resourceAccessor, final String name) throws IOException {
+    assert resourceAccessor != null;
+    assert name != null;
+    final InputStream returnValue = resourceAccessor.getResourceAsStream(name);
+    if (returnValue == null) {
+      throw new IOException("Could not find " + name);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the value of the unqualified attribute with the supplied
+   * name, or {@code null} if there is no such attribute.
+   *
+   * @param startElement the {@link StartElement}; must not be {@code
+   * null}
+   *
+   * @param name the attribute name; must not be {@code null}
+   *
+   * @return the attribute value, or {@code null}
+   */
+  private static final String attributeValue(final StartElement startElement, final String name) {
+    assert startElement != null;
+    assert name != null;
+    final Attribute attribute = startElement.getAttributeByName(new QName(name));
+    return attribute == null ? null : attribute.getValue();
+  }
+
+  /**
+   * Returns the unqualified attributes of the supplied {@link
+   * StartElement} as an unmodifiable {@link Map} of local names to
+   * values.
+   *
+   * @param startElement the {@link StartElement}; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link Map}
+   */
+  private static final Map<String, String> attributes(final StartElement startElement) {
+    assert startElement != null;
+    final Map<String, String> returnValue = new HashMap<String, String>();
+    @SuppressWarnings("unchecked")
+    final Iterator<Attribute> attributes = startElement.getAttributes();
+    while (attributes.hasNext()) {
+      final Attribute attribute = attributes.next();
+      final QName name = attribute.getName();
+      if (name.getNamespaceURI() == null || name.getNamespaceURI().isEmpty()) {
+        returnValue.put(name.getLocalPart(), attribute.getValue());
+      }
+    }
+    return Collections.unmodifiableMap(returnValue);
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * Decides which changesets a {@link ChangeLogPruner} keeps.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static interface Filter {
+
+    /**
+     * Returns a short status describing why the identified changeset
+     * is kept, or {@code null} if it should be omitted.
+     *
+     * @param filePath the effective file path of the changeset; will
+     * not be {@code null}
+     *
+     * @param id the {@code id} of the changeset; may be {@code null}
+     * if the changelog is invalid
+     *
+     * @param author the {@code author} of the changeset; may be
+     * {@code null} if the changelog is invalid
+     *
+     * @param attributes an unmodifiable {@link Map} of the {@code
+     * changeSet} element's unqualified attributes, indexed by local
+     * name; will not be {@code null}
+     *
+     * @return a status such as {@code PENDING}, or {@code null}
+     */
+    public String accept(final String filePath, final String id, final String author, final Map<String, String> attributes);
+
+  }
+
+  /**
+   * A summary of the results of {@linkplain ChangeLogPruner#prune(String,
+   * ResourceAccessor, File, Writer) pruning} a changelog.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Summary {
+
+    /**
+     * The number of changesets read.
+     */
+    private int changeSetCount;
+
+    /**
+     * The number of changesets omitted.
+     */
+    private int omittedCount;
+
+    /**
+     * The number of changesets kept, indexed by the status the {@link
+     * Filter} returned for them.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Map<String, Integer> statusCounts;
+
+    /**
+     * Creates a new {@link Summary}.
+     */
+    private Summary() {
+      super();
+      this.statusCounts = new TreeMap<String, Integer>();
+    }
+
+    /**
+     * Returns the number of changesets read.
+     *
+     * @return the number of changesets read
+     */
+    public int getChangeSetCount() {
+      return this.changeSetCount;
+    }
+
+    /**
+     * Returns the number of changesets omitted.
+     *
+     * @return the number of changesets omitted
+     */
+    public int getOmittedCount() {
+      return this.omittedCount;
+    }
+
+    /**
+     * Returns the number of changesets kept.
+     *
+     * @return the number of changesets kept
+     */
+    public int getKeptCount() {
+      return this.changeSetCount - this.omittedCount;
+    }
+
+    /**
+     * Returns the number of changesets kept with the supplied status.
+     *
+     * @param status the status; may be {@code null} in which case
+     * {@code 0} will be returned
+     *
+     * @return the number of changesets kept with {@code status}
+     */
+    public int getCount(final String status) {
+      final Integer count = status == null ? null : this.statusCounts.get(status);
+      return count == null ? 0 : count.intValue();
+    }
+
+    /**
+     * Returns a {@link String} representation of this {@link
+     * Summary}.
+     *
+     * @return a non-{@code null} {@link String}
+     */
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder();
+      sb.append(this.getChangeSetCount()).append(" changesets: ");
+      for (final Map.Entry<String, Integer> entry : this.statusCounts.entrySet()) {
+        sb.append(entry.getValue()).append(" ").append(entry.getKey().toLowerCase()).append(", ");
+      }
+      sb.append(this.getOmittedCount()).append(" omitted");
+      return sb.toString();
+    }
+
+  }
+
+}
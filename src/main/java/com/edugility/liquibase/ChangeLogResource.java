@@ -0,0 +1,335 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URL;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A changelog discovered on a classpath: a {@link URL} together with
+ * the classpath-relative resource name under which it was found.
+ *
+ * <p>Expensive attributes, such as the {@linkplain #getContentHash()
+ * content hash}, the {@linkplain #getSize() size} and the {@linkplain
+ * #getChangeSetCount() changeset count}, are computed only on demand
+ * and are then remembered.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class ChangeLogResource {
+
+  /**
+   * The {@link URL} of the changelog.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getURL()
+   */
+  private final URL url;
+
+  /**
+   * The classpath-relative resource name of the changelog.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getName()
+   */
+  private final String name;
+
+  /**
+   * The content hash of the changelog, lazily computed.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getContentHash()
+   */
+  private volatile String contentHash;
+
+  /**
+   * The size of the changelog in bytes, lazily computed; {@code -1}
+   * until then.
+   *
+   * @see #getSize()
+   */
+  private volatile long size;
+
+  /**
+   * The number of changesets in the changelog, lazily computed;
+   * {@code -1} until then.
+   *
+   * @see #getChangeSetCount()
+   */
+  private volatile int changeSetCount;
+
+  /**
+   * Creates a new {@link ChangeLogResource}.
+   *
+   * @param url the {@link URL} of the changelog; must not be {@code
+   * null}
+   *
+   * @param name the classpath-relative resource name under which the
+   * changelog was found; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   */
+  public ChangeLogResource(final URL url, final String name) {
+    super();
+    if (url == null) {
+      throw new IllegalArgumentException("url", new NullPointerException("url"));
+    }
+    if (name == null) {
+      throw new IllegalArgumentException("name", new NullPointerException("name"));
+    }
+    this.url = url;
+    this.name = name;
+    this.size = -1L;
+    this.changeSetCount = -1;
+  }
+
+  /**
+   * Creates a new {@link ChangeLogResource} whose {@linkplain
+   * #getContentHash() content hash} has already been computed, for
+   * example by a {@link ChangeLogScanCache} or while streaming a
+   * compressed nested jar file.
+   *
+   * @param url the {@link URL} of the changelog; must not be {@code
+   * null}
+   *
+   * @param name the classpath-relative resource name under which the
+   * changelog was found; must not be {@code null}
+   *
+   * @param contentHash the {@linkplain Digests#hash(InputStream)
+   * content hash} of the changelog; may be {@code null} in which
+   * case it will be computed on first use
+   *
+   * @exception IllegalArgumentException if either {@code url} or
+   * {@code name} is {@code null}
+   */
+  public ChangeLogResource(final URL url, final String name, final String contentHash) {
+    this(url, name);
+    this.contentHash = contentHash;
+  }
+
+  /**
+   * Returns the {@link URL} of the changelog.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link URL}
+   */
+  public URL getURL() {
+    return this.url;
+  }
+
+  /**
+   * Returns the classpath-relative resource name under which the
+   * changelog was found, such as {@code
+   * META-INF/liquibase/changelog.xml}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} resource name
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Opens and returns a new {@link InputStream} reading the contents
+   * of the changelog.  Callers are responsible for {@linkplain
+   * InputStream#close() closing} it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a new {@link InputStream}; never {@code null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  public InputStream openStream() throws IOException {
+    return this.url.openStream();
+  }
+
+  /**
+   * Returns the {@linkplain Digests#hash(InputStream) content hash}
+   * of the changelog, computing it on first use.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a lowercase hexadecimal content hash; never {@code null}
+   *
+   * @exception IOException if the changelog could not be read
+   *
+   * @see Digests#hash(InputStream)
+   */
+  public String getContentHash() throws IOException {
+    String returnValue = this.contentHash;
+    if (returnValue == null) {
+      final InputStream stream = this.openStream();
+      try {
+        returnValue = Digests.hash(stream);
+      } finally {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+      this.contentHash = returnValue;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@linkplain #getContentHash() content hash} of the
+   * changelog if it has already been computed or was supplied at
+   * construction time, or {@code null} if it has not, without reading
+   * the changelog.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a lowercase hexadecimal content hash, or {@code null}
+   *
+   * @see #getContentHash()
+   */
+  public String getContentHashIfComputed() {
+    return this.contentHash;
+  }
+
+  /**
+   * Returns the size of the changelog in bytes, reading it on first
+   * use.
+   *
+   * @return the size of the changelog in bytes
+   *
+   * @exception IOException if the changelog could not be read
+   */
+  public long getSize() throws IOException {
+    long returnValue = this.size;
+    if (returnValue < 0L) {
+      returnValue = 0L;
+      final InputStream stream = this.openStream();
+      try {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) >= 0) {
+          returnValue += read;
+        }
+      } finally {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+      this.size = returnValue;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the number of {@code changeSet} elements directly within
+   * the changelog's root element, reading it with a StAX {@link
+   * XMLStreamReader} on first use.  Nested {@code include}s are not
+   * followed.
+   *
+   * @return the number of changesets in the changelog
+   *
+   * @exception IOException if the changelog could not be read or is
+   * not well-formed XML
+   */
+  public int getChangeSetCount() throws IOException {
+    int returnValue = this.changeSetCount;
+    if (returnValue < 0) {
+      returnValue = 0;
+      final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+      inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+      inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      final InputStream stream = this.openStream();
+      try {
+        final XMLStreamReader reader = inputFactory.createXMLStreamReader(this.toString(), stream);
+        assert reader != null;
+        try {
+          int depth = 0;
+          while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+              depth++;
+              if (depth == 2 && "changeSet".equals(reader.getLocalName())) {
+                returnValue++;
+              }
+              break;
+            case XMLStreamConstants.END_ELEMENT:
+              depth--;
+              break;
+            default:
+              break;
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      } catch (final XMLStreamException e) {
+        throw new IOException("Could not read " + this, e);
+      } finally {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+      this.changeSetCount = returnValue;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@linkplain URL#toExternalForm() external form} of
+   * this {@link ChangeLogResource}'s {@link URL}, which is also how it
+   * is {@code include}d by default in an assembled changelog.
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public String toString() {
+    return this.url.toExternalForm();
+  }
+
+}
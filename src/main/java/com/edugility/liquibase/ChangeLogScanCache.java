@@ -0,0 +1,347 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+import java.net.URL;
+
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A directory of {@linkplain JarChangeLogScanner#scan(File,
+ * Collection) jar file scans}, so that a scan performed by one
+ * component, such as a Maven build extension, may be used by another
+ * that cannot share objects with it, such as a mojo loaded by a
+ * different class realm.
+ *
+ * <p>Jar files in a Maven repository are effectively immutable, so
+ * each scan is stored in a file named for a hash of the jar file's
+ * {@linkplain File#getAbsolutePath() path} and is valid only while
+ * the jar file's {@linkplain File#length() length} and {@linkplain
+ * File#lastModified() last modification time} are those recorded with
+ * it.  Scans are written to a temporary file that is then moved into
+ * place, atomically where the file system supports it, so a reader
+ * never sees one half written.  A scan that is missing, stale,
+ * unreadable or that did not look for every resource name of
+ * interest is reported as absent so that callers can fall back to
+ * scanning the jar file themselves.</p>
+ *
+ * <h3>Format</h3>
+ *
+ * <p>A scan is UTF-8 text.  Lines beginning with "{@code #}" are
+ * ignored.  The first other line consists of three tab-separated
+ * fields: the jar file's absolute path, its length and its last
+ * modification time.  Every other line consists of two tab-separated
+ * fields: a resource name and the {@linkplain Digests content hash}
+ * of the jar file entry with that name, {@code +} if the entry exists
+ * but its content hash was not computed during the scan, or {@code -}
+ * if the jar file has no such entry.</p>
+ *
+ * <p>This class is safe for use by multiple threads and by multiple
+ * processes.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see JarChangeLogScanner
+ */
+public final class ChangeLogScanCache {
+
+  /**
+   * The directory in which scans are stored.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getDirectory()
+   */
+  private final File directory;
+
+  /**
+   * Creates a new {@link ChangeLogScanCache}.
+   *
+   * @param directory the directory in which scans are stored; need
+   * not exist; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code directory} is
+   * {@code null}
+   */
+  public ChangeLogScanCache(final File directory) {
+    super();
+    if (directory == null) {
+      throw new IllegalArgumentException("directory", new NullPointerException("directory"));
+    }
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the directory in which scans are stored.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link File}
+   */
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * Returns the stored scan of the supplied jar file, or {@code null}
+   * if there is none, if it is stale, if it cannot be read or if it
+   * did not look for every one of the supplied resource names.
+   *
+   * <p>The {@link Map} that is returned has an entry for every
+   * resource found in the jar file that matches one of the supplied
+   * resource names.</p>
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param jarFile the jar file whose scan should be returned; must
+   * not be {@code null}
+   *
+   * @param names the classpath-relative resource names the caller is
+   * interested in; must not be {@code null}
+   *
+   * @return an immutable {@link Map} of {@link ChangeLogResource}s
+   * indexed by resource name, or {@code null}
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   */
+  public Map<String, ChangeLogResource> get(final File jarFile, final Collection<? extends String> names) {
+    if (jarFile == null) {
+      throw new IllegalArgumentException("jarFile", new NullPointerException("jarFile"));
+    }
+    if (names == null) {
+      throw new IllegalArgumentException("names", new NullPointerException("names"));
+    }
+    final File file = this.getFile(jarFile);
+    if (!file.isFile()) {
+      return null;
+    }
+    final Map<String, String> hashes;
+    try {
+      hashes = read(file, jarFile);
+    } catch (final IOException unreadable) {
+      return null;
+    }
+    if (hashes == null || !hashes.keySet().containsAll(names)) {
+      return null;
+    }
+    final Map<String, ChangeLogResource> returnValue = new LinkedHashMap<String, ChangeLogResource>();
+    try {
+      final String base = String.format("jar:%s!/", jarFile.toURI().toURL().toExternalForm());
+      final ResourceNamePatterns patterns = ResourceNamePatterns.of(names);
+      for (final Map.Entry<String, String> entry : hashes.entrySet()) {
+        final String name = entry.getKey();
+        final String contentHash = entry.getValue();
+        if (contentHash != null && patterns.indexOf(name) >= 0) {
+          returnValue.put(name, new ChangeLogResource(new URL(base + name), name, "+".equals(contentHash) ? null : contentHash));
+        }
+      }
+    } catch (final IOException malformed) {
+      return null;
+    }
+    return Collections.unmodifiableMap(returnValue);
+  }
+
+  /**
+   * Stores the supplied scan of the supplied jar file, replacing any
+   * scan stored for it before.
+   *
+   * <p>A scan with a resource name that contains a tab or line break
+   * cannot be stored and is silently ignored.</p>
+   *
+   * @param jarFile the jar file that was scanned; must not be {@code
+   * null}
+   *
+   * @param scan the scan, as returned by {@link
+   * JarChangeLogScanner#scan(File, Collection)}, with an entry for
+   * every resource name that was looked for; must not be {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   *
+   * @exception IOException if the scan could not be stored
+   */
+  public void put(final File jarFile, final Map<String, ? extends ChangeLogResource> scan) throws IOException {
+    if (jarFile == null) {
+      throw new IllegalArgumentException("jarFile", new NullPointerException("jarFile"));
+    }
+    if (scan == null) {
+      throw new IllegalArgumentException("scan", new NullPointerException("scan"));
+    }
+    for (final String name : scan.keySet()) {
+      if (name == null || name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+        return;
+      }
+    }
+    if (!this.directory.isDirectory() && !this.directory.mkdirs() && !this.directory.isDirectory()) {
+      throw new IOException("Could not create parent directory chain for " + this.directory);
+    }
+    final File file = this.getFile(jarFile);
+    final File temporaryFile = File.createTempFile(file.getName(), ".tmp", this.directory);
+    try {
+      final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), "UTF-8"));
+      try {
+        writer.write("# path\tlength\tlast modified\n");
+        writer.write(jarFile.getAbsolutePath());
+        writer.write('\t');
+        writer.write(Long.toString(jarFile.length()));
+        writer.write('\t');
+        writer.write(Long.toString(jarFile.lastModified()));
+        writer.write('\n');
+        for (final Map.Entry<String, ? extends ChangeLogResource> entry : scan.entrySet()) {
+          final ChangeLogResource resource = entry.getValue();
+          writer.write(entry.getKey());
+          writer.write('\t');
+          if (resource == null) {
+            writer.write("-");
+          } else {
+            final String contentHash = resource.getContentHashIfComputed();
+            writer.write(contentHash == null ? "+" : contentHash);
+          }
+          writer.write('\n');
+        }
+      } finally {
+        writer.close();
+      }
+      try {
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (final AtomicMoveNotSupportedException notSupported) {
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile.toPath());
+    }
+  }
+
+  /**
+   * Returns the file in which the scan of the supplied jar file is
+   * stored.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param jarFile the jar file; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link File}
+   */
+  private final File getFile(final File jarFile) {
+    assert jarFile != null;
+    final MessageDigest digest = Digests.newMessageDigest();
+    try {
+      digest.update(jarFile.getAbsolutePath().getBytes("UTF-8"));
+    } catch (final UnsupportedEncodingException utf8IsAlwaysSupported) {
+      throw new IllegalStateException(utf8IsAlwaysSupported);
+    }
+    return new File(this.directory, Digests.toHexString(digest.digest()) + ".scan");
+  }
+
+  /**
+   * Reads the scan stored in the supplied file and returns the
+   * content hashes it records, indexed by resource name, or {@code
+   * null} if it is not a scan of the supplied jar file as it is now.
+   *
+   * <p>Resource names that were looked for but not found are mapped
+   * to {@code null}.</p>
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param file the file to read; must not be {@code null}
+   *
+   * @param jarFile the jar file the scan must describe; must not be
+   * {@code null}
+   *
+   * @return a {@link Map} of content hashes, or {@code null}
+   *
+   * @exception IOException if the file could not be read or is
+   * malformed
+   */
+  private static final Map<String, String> read(final File file, final File jarFile) throws IOException {
+    assert file != null;
+    assert jarFile != null;
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      final Map<String, String> returnValue = new LinkedHashMap<String, String>();
+      boolean header = true;
+      String line = null;
+      while ((line = reader.readLine()) != null) {
+        if (line.length() > 0 && line.charAt(0) != '#') {
+          if (header) {
+            final String[] fields = line.split("\t", 3);
+            if (fields.length != 3) {
+              throw new IOException("Malformed scan: " + file);
+            }
+            if (!fields[0].equals(jarFile.getAbsolutePath()) ||
+                !fields[1].equals(Long.toString(jarFile.length())) ||
+                !fields[2].equals(Long.toString(jarFile.lastModified()))) {
+              return null;
+            }
+            header = false;
+          } else {
+            final String[] fields = line.split("\t", 2);
+            if (fields.length != 2) {
+              throw new IOException("Malformed scan: " + file);
+            }
+            returnValue.put(fields[0], "-".equals(fields[1]) ? null : fields[1]);
+          }
+        }
+      }
+      if (header) {
+        throw new IOException("Malformed scan: " + file);
+      }
+      return returnValue;
+    } finally {
+      try {
+        reader.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+}
@@ -0,0 +1,374 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.XMLConstants;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import javax.xml.transform.sax.SAXSource;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import liquibase.changelog.DatabaseChangeLog;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Validates XML changelogs against the Liquibase XML Schema bundled
+ * with Liquibase itself.
+ *
+ * <p>Validation is entirely offline: the schema is read from the
+ * Liquibase jar, and external entities referenced by the changelogs
+ * being validated are never fetched.  Each compiled {@link Schema}
+ * is cached for the life of the JVM, so it is compiled at most once
+ * per schema version no matter how many {@link ChangeLogValidator}s
+ * are created.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see #validate(Collection, int)
+ */
+public class ChangeLogValidator {
+
+  /**
+   * The format of the classpath resource name of a Liquibase XML
+   * Schema, given a version.
+   */
+  private static final String XSD_RESOURCE_NAME_FORMAT = "liquibase/parser/core/xml/dbchangelog-%s.xsd";
+
+  /**
+   * Compiled {@link Schema}s indexed by version.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final ConcurrentMap<String, Schema> schemas = new ConcurrentHashMap<String, Schema>();
+
+  /**
+   * An {@link EntityResolver} that resolves every external entity to
+   * an empty document so that validation never touches the network.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final EntityResolver offlineEntityResolver = new EntityResolver() {
+      @Override
+      public final InputSource resolveEntity(final String publicId, final String systemId) {
+        return new InputSource(new StringReader(""));
+      }
+    };
+
+  /**
+   * The {@link Schema} against which changelogs are validated.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Schema schema;
+
+  /**
+   * The {@link SAXParserFactory} used to create the {@link
+   * XMLReader}s that read changelogs.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final SAXParserFactory parserFactory;
+
+  /**
+   * Creates a new {@link ChangeLogValidator}.
+   *
+   * @param xsdVersion the version of the Liquibase XML Schema to
+   * validate against, such as {@code 3.0}; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code xsdVersion} is
+   * {@code null}
+   *
+   * @exception IOException if there is no Liquibase XML Schema
+   * bundled with Liquibase for the supplied version, or if it could
+   * not be compiled
+   *
+   * @see #getSchema(String)
+   */
+  public ChangeLogValidator(final String xsdVersion) throws IOException {
+    super();
+    this.schema = getSchema(xsdVersion);
+    this.parserFactory = SAXParserFactory.newInstance();
+    this.parserFactory.setNamespaceAware(true);
+    this.parserFactory.setValidating(false);
+  }
+
+  /**
+   * Returns the compiled {@link Schema} for the Liquibase XML Schema
+   * with the supplied version, compiling and caching it if necessary.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param xsdVersion the version of the Liquibase XML Schema, such
+   * as {@code 3.0}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Schema}
+   *
+   * @exception IllegalArgumentException if {@code xsdVersion} is
+   * {@code null}
+   *
+   * @exception IOException if there is no Liquibase XML Schema
+   * bundled with Liquibase for the supplied version, or if it could
+   * not be compiled
+   */
+  public static final Schema getSchema(final String xsdVersion) throws IOException {
+    if (xsdVersion == null) {
+      throw new IllegalArgumentException("xsdVersion", new NullPointerException("xsdVersion"));
+    }
+    Schema schema = schemas.get(xsdVersion);
+    if (schema == null) {
+      synchronized (schemas) {
+        schema = schemas.get(xsdVersion);
+        if (schema == null) {
+          final String resourceName = String.format(XSD_RESOURCE_NAME_FORMAT, xsdVersion);
+          ClassLoader loader = DatabaseChangeLog.class.getClassLoader();
+          if (loader == null) {
+            loader = ClassLoader.getSystemClassLoader();
+          }
+          assert loader != null;
+          final URL xsd = loader.getResource(resourceName);
+          if (xsd == null) {
+            throw new IOException("No Liquibase XML Schema is bundled for version " + xsdVersion + " (" + resourceName + ")");
+          }
+          // SchemaFactory instances are not thread-safe, so each
+          // (rare) compilation gets its own.
+          final SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+          try {
+            schema = schemaFactory.newSchema(xsd);
+          } catch (final SAXException e) {
+            throw new IOException("Could not compile " + xsd, e);
+          }
+          assert schema != null;
+          schemas.put(xsdVersion, schema);
+        }
+      }
+    }
+    return schema;
+  }
+
+  /**
+   * Validates the supplied {@link ChangeLogResource} and returns a
+   * {@link List} of messages describing the problems found.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resource the {@link ChangeLogResource} to validate; must
+   * not be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of problem descriptions,
+   * each of the form <code><i>url</i>:<i>line</i>:<i>column</i>:
+   * <i>message</i></code>; empty if the changelog is valid
+   *
+   * @exception IllegalArgumentException if {@code resource} is {@code
+   * null}
+   *
+   * @exception IOException if the changelog could not be read
+   */
+  public List<String> validate(final ChangeLogResource resource) throws IOException {
+    if (resource == null) {
+      throw new IllegalArgumentException("resource", new NullPointerException("resource"));
+    }
+    final List<String> problems = new ArrayList<String>();
+    final ErrorHandler errorHandler = new ErrorHandler() {
+        @Override
+        public final void warning(final SAXParseException e) {
+
+        }
+
+        @Override
+        public final void error(final SAXParseException e) {
+          problems.add(describe(resource, e));
+        }
+
+        @Override
+        public final void fatalError(final SAXParseException e) {
+          problems.add(describe(resource, e));
+        }
+      };
+    final XMLReader reader;
+    try {
+      reader = this.parserFactory.newSAXParser().getXMLReader();
+    } catch (final ParserConfigurationException e) {
+      throw new IllegalStateException(e);
+    } catch (final SAXException e) {
+      throw new IllegalStateException(e);
+    }
+    assert reader != null;
+    reader.setEntityResolver(offlineEntityResolver);
+    reader.setErrorHandler(errorHandler);
+    final Validator validator = this.schema.newValidator();
+    assert validator != null;
+    validator.setErrorHandler(errorHandler);
+    final InputStream stream = resource.openStream();
+    try {
+      final InputSource inputSource = new InputSource(stream);
+      inputSource.setSystemId(resource.getURL().toExternalForm());
+      validator.validate(new SAXSource(reader, inputSource));
+    } catch (final SAXParseException e) {
+      // Already recorded by the ErrorHandler.
+    } catch (final SAXException e) {
+      problems.add(resource + ": " + e.getMessage());
+    } finally {
+      try {
+        stream.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    return problems;
+  }
+
+  /**
+   * Validates the supplied {@link ChangeLogResource}s in parallel
+   * using a pool of at most {@code threads} threads and returns the
+   * problems found, indexed by the {@link ChangeLogResource} in which
+   * they were found.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources the {@link ChangeLogResource}s to validate; may
+   * be {@code null}
+   *
+   * @param threads the maximum number of threads to use; if less
+   * than {@code 1} then the {@linkplain
+   * Runtime#availableProcessors() number of available processors}
+   * will be used instead
+   *
+   * @return a non-{@code null} {@link Map} of problem descriptions,
+   * in the iteration order of the supplied {@link Collection}, that
+   * contains entries only for invalid changelogs; empty if every
+   * changelog is valid
+   *
+   * @exception IOException if a changelog could not be read
+   *
+   * @see #validate(ChangeLogResource)
+   */
+  public Map<ChangeLogResource, List<String>> validate(final Collection<? extends ChangeLogResource> resources, int threads) throws IOException {
+    if (resources == null || resources.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    if (threads < 1) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    threads = Math.min(threads, resources.size());
+    final Map<ChangeLogResource, Future<List<String>>> futures = new LinkedHashMap<ChangeLogResource, Future<List<String>>>();
+    final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      for (final ChangeLogResource resource : resources) {
+        if (resource != null) {
+          futures.put(resource, executorService.submit(new Callable<List<String>>() {
+              @Override
+              public final List<String> call() throws IOException {
+                return validate(resource);
+              }
+            }));
+        }
+      }
+      final Map<ChangeLogResource, List<String>> returnValue = new LinkedHashMap<ChangeLogResource, List<String>>();
+      for (final Map.Entry<ChangeLogResource, Future<List<String>>> entry : futures.entrySet()) {
+        final List<String> problems;
+        try {
+          problems = entry.getValue().get();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while validating " + entry.getKey(), e);
+        } catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException)cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+          } else if (cause instanceof Error) {
+            throw (Error)cause;
+          }
+          throw new IOException(cause);
+        }
+        if (problems != null && !problems.isEmpty()) {
+          returnValue.put(entry.getKey(), problems);
+        }
+      }
+      return returnValue;
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns a description of the supplied {@link SAXParseException}
+   * suitable for display to an end user.
+   *
+   * @param resource the {@link ChangeLogResource} being validated;
+   * must not be {@code null}
+   *
+   * @param e the {@link SAXParseException} to describe; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} description
+   */
+  private static final String describe(final ChangeLogResource resource, final SAXParseException e) {
+    assert resource != null;
+    assert e != null;
+    return String.format("%s:%d:%d: %s", resource, e.getLineNumber(), e.getColumnNumber(), e.getMessage());
+  }
+
+}
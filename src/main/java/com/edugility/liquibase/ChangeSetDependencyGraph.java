@@ -0,0 +1,722 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import liquibase.change.Change;
+import liquibase.change.ChangeFactory;
+import liquibase.change.ChangeParameterMetaData;
+import liquibase.change.ChangeWithColumns;
+import liquibase.change.ColumnConfig;
+import liquibase.change.ConstraintsConfig;
+
+import liquibase.change.core.AddForeignKeyConstraintChange;
+import liquibase.change.core.CreateProcedureChange;
+import liquibase.change.core.CreateViewChange;
+import liquibase.change.core.DropTableChange;
+import liquibase.change.core.EmptyChange;
+import liquibase.change.core.ExecuteShellCommandChange;
+import liquibase.change.core.RawSQLChange;
+import liquibase.change.core.SQLFileChange;
+import liquibase.change.core.StopChange;
+import liquibase.change.core.TagDatabaseChange;
+
+import liquibase.change.custom.CustomChangeWrapper;
+
+import liquibase.changelog.ChangeSet;
+
+import liquibase.precondition.core.PreconditionContainer;
+
+/**
+ * A directed acyclic graph of the changesets of a changelog in which
+ * an edge from one changeset to a later one means the later one must
+ * not start until the earlier one has finished, together with a plan
+ * of {@linkplain #getGroups() groups} of changesets that can be
+ * applied in parallel.
+ *
+ * <h3>Read and write sets</h3>
+ *
+ * <p>Each changeset is given a set of database objects it reads and a
+ * set it writes, derived from the parameters of its changes: tables
+ * and views a change names are written, tables it refers to by
+ * foreign key are read, and sequences it names are written or, when
+ * used for a default value, read.  Writing a table also reads every
+ * table it is known, from earlier changesets, to be linked to by
+ * foreign key, in either direction.  Names are compared
+ * case-insensitively, qualified by schema when one is given.</p>
+ *
+ * <p>Changesets whose effects cannot be determined this way&mdash;those
+ * containing raw SQL, SQL files, custom changes, shell commands,
+ * views, procedures, tags or changes this class does not recognize,
+ * those dropping tables with cascading constraints, and those with
+ * preconditions&mdash;are <em>barriers</em>: they start after every
+ * earlier changeset has finished and every later changeset starts
+ * after they have.</p>
+ *
+ * <h3>Order</h3>
+ *
+ * <p>Edges only ever run from earlier changesets to later ones, so
+ * any schedule that honors them applies conflicting changesets in
+ * changelog order.  Since an {@linkplain
+ * com.edugility.liquibase.maven.AssembleChangeLogMojo assembled
+ * changelog} includes its fragments in artifact topological order,
+ * the graph always agrees with that order.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ParallelChangeSetApplier
+ */
+public final class ChangeSetDependencyGraph {
+
+  /**
+   * Parameters naming relations (tables or views) that a change
+   * writes.
+   */
+  private static final Set<String> WRITTEN_RELATION_PARAMETERS = new HashSet<String>(Arrays.asList("tableName", "baseTableName", "existingTableName", "oldTableName", "newTableName", "viewName", "oldViewName", "newViewName"));
+
+  /**
+   * Parameters naming relations (tables or views) that a change
+   * reads.
+   */
+  private static final Set<String> READ_RELATION_PARAMETERS = Collections.singleton("referencedTableName");
+
+  /**
+   * The prefix of sequence names in read and write sets.
+   */
+  private static final String SEQUENCE_PREFIX = "sequence:";
+
+  /**
+   * The platform's line separator.
+   */
+  private static final String LS = System.getProperty("line.separator", "\n");
+
+  /**
+   * The {@link Node}s of this graph, in changelog order; never {@code
+   * null}.
+   */
+  private final List<Node> nodes;
+
+  /**
+   * The parallel groups of this graph, in application order; never
+   * {@code null}.
+   */
+  private final List<List<Node>> groups;
+
+  /**
+   * Creates a new {@link ChangeSetDependencyGraph}.
+   *
+   * @param nodes the {@link Node}s, in changelog order, with their
+   * predecessors and groups already computed; must not be {@code
+   * null}
+   */
+  private ChangeSetDependencyGraph(final List<Node> nodes) {
+    super();
+    assert nodes != null;
+    this.nodes = Collections.unmodifiableList(nodes);
+    final List<List<Node>> groups = new ArrayList<List<Node>>();
+    for (final Node node : nodes) {
+      while (groups.size() <= node.group) {
+        groups.add(new ArrayList<Node>());
+      }
+      groups.get(node.group).add(node);
+    }
+    for (int i = 0; i < groups.size(); i++) {
+      groups.set(i, Collections.unmodifiableList(groups.get(i)));
+    }
+    this.groups = Collections.unmodifiableList(groups);
+  }
+
+  /**
+   * Returns the {@link Node}s of this graph in changelog order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link List}
+   */
+  public List<Node> getNodes() {
+    return this.nodes;
+  }
+
+  /**
+   * Returns the groups of this graph in application order.  Every
+   * changeset in a group depends only on changesets in earlier
+   * groups, so the changesets of a group may be applied in parallel
+   * once all earlier groups have been applied.  Within a group,
+   * changesets are in changelog order.
+   *
+   * <p>Each changeset is placed in the earliest group possible, so
+   * the number of groups is the length of the graph's critical
+   * path.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of
+   * non-empty, unmodifiable {@link List}s
+   */
+  public List<List<Node>> getGroups() {
+    return this.groups;
+  }
+
+  /**
+   * Returns the number of changesets that are {@linkplain
+   * Node#isBarrier() barriers}.
+   *
+   * @return the number of barriers
+   */
+  public int getBarrierCount() {
+    int returnValue = 0;
+    for (final Node node : this.nodes) {
+      if (node.isBarrier()) {
+        returnValue++;
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Writes this graph's plan to the supplied {@link Writer} as
+   * tab-separated text: a header line, then one line per changeset,
+   * group by group, giving its zero-based group, file path, id,
+   * author, the changelog positions of the changesets it directly
+   * depends on, and its read and write sets ({@code *} for a
+   * barrier).
+   *
+   * @param writer the {@link Writer}; must not be {@code null}; will
+   * not be closed
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if the plan could not be written
+   */
+  public void write(final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    writer.write("group\tposition\tfilePath\tid\tauthor\tdependsOn\treads\twrites" + LS);
+    for (final List<Node> group : this.groups) {
+      for (final Node node : group) {
+        final ChangeSet changeSet = node.getChangeSet();
+        writer.write(node.getGroup() + "\t" + node.getPosition() + "\t" + changeSet.getFilePath() + "\t" + changeSet.getId() + "\t" + changeSet.getAuthor() + "\t" + join(node.predecessors) + "\t" + (node.isBarrier() ? "*" : join(node.getReads())) + "\t" + (node.isBarrier() ? "*" : join(node.getWrites())) + LS);
+      }
+    }
+  }
+
+  /**
+   * Builds a {@link ChangeSetDependencyGraph} from the supplied
+   * {@link ChangeSet}s, which must be in the order in which Liquibase
+   * would apply them.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeSets the {@link ChangeSet}s; must not be {@code
+   * null}
+   *
+   * @return a new {@link ChangeSetDependencyGraph}
+   *
+   * @exception IllegalArgumentException if {@code changeSets} is
+   * {@code null}
+   */
+  public static final ChangeSetDependencyGraph build(final Collection<? extends ChangeSet> changeSets) {
+    if (changeSets == null) {
+      throw new IllegalArgumentException("changeSets", new NullPointerException("changeSets"));
+    }
+    final List<Node> nodes = new ArrayList<Node>(changeSets.size());
+    final Map<String, Set<String>> foreignKeys = new HashMap<String, Set<String>>();
+    final Map<String, Node> lastWriters = new HashMap<String, Node>();
+    final Map<String, List<Node>> readersSinceWrite = new HashMap<String, List<Node>>();
+    final Set<Node> sinks = new LinkedHashSet<Node>();
+    Node lastBarrier = null;
+    for (final ChangeSet changeSet : changeSets) {
+      if (changeSet != null) {
+        final Node node = analyze(changeSet, nodes.size(), foreignKeys);
+        final Set<Node> predecessors = new HashSet<Node>();
+        if (lastBarrier != null) {
+          predecessors.add(lastBarrier);
+        }
+        if (node.isBarrier()) {
+          // Every changeset since the last barrier is either a sink
+          // or an ancestor of one.
+          predecessors.addAll(sinks);
+          lastWriters.clear();
+          readersSinceWrite.clear();
+          lastBarrier = node;
+        } else {
+          for (final String object : node.getReads()) {
+            final Node writer = lastWriters.get(object);
+            if (writer != null) {
+              predecessors.add(writer);
+            }
+          }
+          for (final String object : node.getWrites()) {
+            final Node writer = lastWriters.get(object);
+            if (writer != null) {
+              predecessors.add(writer);
+            }
+            final List<Node> readers = readersSinceWrite.remove(object);
+            if (readers != null) {
+              predecessors.addAll(readers);
+            }
+          }
+          for (final String object : node.getReads()) {
+            if (!node.getWrites().contains(object)) {
+              List<Node> readers = readersSinceWrite.get(object);
+              if (readers == null) {
+                readers = new ArrayList<Node>();
+                readersSinceWrite.put(object, readers);
+              }
+              readers.add(node);
+            }
+          }
+          for (final String object : node.getWrites()) {
+            lastWriters.put(object, node);
+          }
+        }
+        predecessors.remove(node);
+        sinks.removeAll(predecessors);
+        sinks.add(node);
+        final Set<Integer> positions = new TreeSet<Integer>();
+        int group = 0;
+        for (final Node predecessor : predecessors) {
+          positions.add(Integer.valueOf(predecessor.getPosition()));
+          group = Math.max(group, predecessor.group + 1);
+        }
+        node.predecessors = Collections.unmodifiableSet(positions);
+        node.group = group;
+        nodes.add(node);
+      }
+    }
+    return new ChangeSetDependencyGraph(nodes);
+  }
+
+  /**
+   * Derives the read and write sets of the supplied {@link ChangeSet}
+   * and returns a new {@link Node} for it.
+   *
+   * @param changeSet the {@link ChangeSet}; must not be {@code null}
+   *
+   * @param position the position of the {@link ChangeSet} in the
+   * changelog
+   *
+   * @param foreignKeys the foreign key links known so far, by table,
+   * in both directions; will be updated; must not be {@code null}
+   *
+   * @return a new {@link Node}
+   */
+  private static final Node analyze(final ChangeSet changeSet, final int position, final Map<String, Set<String>> foreignKeys) {
+    assert changeSet != null;
+    final Set<String> reads = new TreeSet<String>();
+    final Set<String> writes = new TreeSet<String>();
+    boolean barrier = false;
+    final PreconditionContainer preconditions = changeSet.getPreconditions();
+    if (preconditions != null && preconditions.getNestedPreconditions() != null && !preconditions.getNestedPreconditions().isEmpty()) {
+      barrier = true;
+    }
+    final List<Change> changes = changeSet.getChanges();
+    if (changes != null) {
+      for (final Change change : changes) {
+        if (change != null && !barrier) {
+          barrier = !analyze(change, reads, writes, foreignKeys);
+        }
+      }
+    }
+    if (barrier) {
+      reads.clear();
+      writes.clear();
+    } else {
+      for (final String table : new ArrayList<String>(writes)) {
+        final Set<String> linked = foreignKeys.get(table);
+        if (linked != null) {
+          reads.addAll(linked);
+        }
+      }
+    }
+    return new Node(changeSet, position, barrier, reads, writes);
+  }
+
+  /**
+   * Adds the objects the supplied {@link Change} reads and writes to
+   * the supplied sets, and returns {@code false} if its effects cannot
+   * be determined.
+   *
+   * @param change the {@link Change}; must not be {@code null}
+   *
+   * @param reads the read set; must not be {@code null}
+   *
+   * @param writes the write set; must not be {@code null}
+   *
+   * @param foreignKeys the foreign key links known so far, by table,
+   * in both directions; will be updated; must not be {@code null}
+   *
+   * @return {@code true} if the effects of the {@link Change} are
+   * known; {@code false} if it must be treated as a barrier
+   */
+  private static final boolean analyze(final Change change, final Set<String> reads, final Set<String> writes, final Map<String, Set<String>> foreignKeys) {
+    assert change != null;
+    if (change instanceof EmptyChange) {
+      return true;
+    }
+    if (change instanceof RawSQLChange ||
+        change instanceof SQLFileChange ||
+        change instanceof CustomChangeWrapper ||
+        change instanceof ExecuteShellCommandChange ||
+        change instanceof CreateViewChange ||
+        change instanceof CreateProcedureChange ||
+        change instanceof StopChange ||
+        change instanceof TagDatabaseChange ||
+        (change instanceof DropTableChange && Boolean.TRUE.equals(((DropTableChange)change).isCascadeConstraints()))) {
+      return false;
+    }
+    final Map<String, ChangeParameterMetaData> parameters = ChangeFactory.getInstance().getChangeMetaData(change).getParameters();
+    boolean known = false;
+    for (final Map.Entry<String, ChangeParameterMetaData> entry : parameters.entrySet()) {
+      final String parameterName = entry.getKey();
+      final boolean written = WRITTEN_RELATION_PARAMETERS.contains(parameterName);
+      if (written || READ_RELATION_PARAMETERS.contains(parameterName) || "sequenceName".equals(parameterName)) {
+        final Object value = entry.getValue().getCurrentValue(change);
+        if (value != null) {
+          final String name = qualify(change, parameters, parameterName, value.toString());
+          if ("sequenceName".equals(parameterName)) {
+            writes.add(SEQUENCE_PREFIX + name);
+          } else if (written) {
+            writes.add(name);
+          } else {
+            reads.add(name);
+          }
+          known = true;
+        }
+      }
+    }
+    if (change instanceof AddForeignKeyConstraintChange) {
+      final AddForeignKeyConstraintChange fk = (AddForeignKeyConstraintChange)change;
+      link(foreignKeys, qualify(fk.getBaseTableSchemaName(), fk.getBaseTableName()), qualify(fk.getReferencedTableSchemaName(), fk.getReferencedTableName()));
+    }
+    if (change instanceof ChangeWithColumns) {
+      final List<?> columns = ((ChangeWithColumns<?>)change).getColumns();
+      if (columns != null) {
+        for (final Object c : columns) {
+          if (c instanceof ColumnConfig) {
+            final ColumnConfig column = (ColumnConfig)c;
+            if (column.getDefaultValueSequenceNext() != null) {
+              reads.add(SEQUENCE_PREFIX + qualify(null, column.getDefaultValueSequenceNext().getValue()));
+            }
+            final ConstraintsConfig constraints = column.getConstraints();
+            if (constraints != null) {
+              String referenced = constraints.getReferencedTableName();
+              if (referenced == null && constraints.getReferences() != null) {
+                referenced = constraints.getReferences();
+                final int parenthesis = referenced.indexOf('(');
+                if (parenthesis >= 0) {
+                  referenced = referenced.substring(0, parenthesis);
+                }
+              }
+              if (referenced != null && !referenced.trim().isEmpty()) {
+                final String table = qualify(null, referenced.trim());
+                reads.add(table);
+                for (final String written : writes) {
+                  if (!written.startsWith(SEQUENCE_PREFIX)) {
+                    link(foreignKeys, written, table);
+                  }
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+    return known;
+  }
+
+  /**
+   * Returns the schema-qualified, lower-case form of the object name
+   * held by the supplied parameter of the supplied {@link Change}.
+   *
+   * <p>The schema is taken from the parameter whose name is formed by
+   * replacing {@code TableName} with {@code TableSchemaName} in the
+   * supplied parameter name, if there is one, or from the {@code
+   * schemaName} parameter otherwise.</p>
+   *
+   * @param change the {@link Change}; must not be {@code null}
+   *
+   * @param parameters the {@link Change}'s parameters; must not be
+   * {@code null}
+   *
+   * @param parameterName the name of the parameter; must not be
+   * {@code null}
+   *
+   * @param name the object name; must not be {@code null}
+   *
+   * @return a non-{@code null} name
+   */
+  private static final String qualify(final Change change, final Map<String, ChangeParameterMetaData> parameters, final String parameterName, final String name) {
+    ChangeParameterMetaData schemaParameter = parameters.get(parameterName.replace("TableName", "TableSchemaName"));
+    if (schemaParameter == null || parameterName.equals(schemaParameter.getParameterName())) {
+      schemaParameter = parameters.get("schemaName");
+    }
+    final Object schema = schemaParameter == null ? null : schemaParameter.getCurrentValue(change);
+    return qualify(schema == null ? null : schema.toString(), name);
+  }
+
+  /**
+   * Returns the schema-qualified, lower-case form of the supplied
+   * object name.
+   *
+   * @param schema the schema; may be {@code null}
+   *
+   * @param name the object name; may be {@code null}
+   *
+   * @return a non-{@code null} name
+   */
+  private static final String qualify(final String schema, final String name) {
+    final String n = name == null ? "" : name.toLowerCase(Locale.ENGLISH);
+    if (schema == null || schema.trim().isEmpty()) {
+      return n;
+    }
+    return schema.toLowerCase(Locale.ENGLISH) + "." + n;
+  }
+
+  /**
+   * Records a foreign key link between the two supplied tables in
+   * both directions.
+   *
+   * @param foreignKeys the links; must not be {@code null}
+   *
+   * @param a a table; must not be {@code null}
+   *
+   * @param b another table; must not be {@code null}
+   */
+  private static final void link(final Map<String, Set<String>> foreignKeys, final String a, final String b) {
+    if (!a.equals(b)) {
+      Set<String> set = foreignKeys.get(a);
+      if (set == null) {
+        set = new HashSet<String>();
+        foreignKeys.put(a, set);
+      }
+      set.add(b);
+      set = foreignKeys.get(b);
+      if (set == null) {
+        set = new HashSet<String>();
+        foreignKeys.put(b, set);
+      }
+      set.add(a);
+    }
+  }
+
+  /**
+   * Joins the supplied objects with commas.
+   *
+   * @param objects the objects; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  private static final String join(final Collection<?> objects) {
+    final StringBuilder sb = new StringBuilder();
+    for (final Object object : objects) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(object);
+    }
+    return sb.toString();
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A changeset in a {@link ChangeSetDependencyGraph}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Node {
+
+    /**
+     * The {@link ChangeSet}; never {@code null}.
+     */
+    private final ChangeSet changeSet;
+
+    /**
+     * The zero-based position of the {@link ChangeSet} in the
+     * changelog.
+     */
+    private final int position;
+
+    /**
+     * Whether the {@link ChangeSet} is a barrier.
+     */
+    private final boolean barrier;
+
+    /**
+     * The objects the {@link ChangeSet} reads; never {@code null}.
+     */
+    private final Set<String> reads;
+
+    /**
+     * The objects the {@link ChangeSet} writes; never {@code null}.
+     */
+    private final Set<String> writes;
+
+    /**
+     * The positions of the changesets this one directly depends on.
+     */
+    private Set<Integer> predecessors;
+
+    /**
+     * The zero-based group of this {@link Node}.
+     */
+    private int group;
+
+    /**
+     * Creates a new {@link Node}.
+     *
+     * @param changeSet the {@link ChangeSet}; must not be {@code
+     * null}
+     *
+     * @param position the position of the {@link ChangeSet} in the
+     * changelog
+     *
+     * @param barrier whether the {@link ChangeSet} is a barrier
+     *
+     * @param reads the objects it reads; must not be {@code null}
+     *
+     * @param writes the objects it writes; must not be {@code null}
+     */
+    private Node(final ChangeSet changeSet, final int position, final boolean barrier, final Set<String> reads, final Set<String> writes) {
+      super();
+      this.changeSet = changeSet;
+      this.position = position;
+      this.barrier = barrier;
+      this.reads = Collections.unmodifiableSet(reads);
+      this.writes = Collections.unmodifiableSet(writes);
+      this.predecessors = Collections.emptySet();
+    }
+
+    /**
+     * Returns the {@link ChangeSet}.
+     *
+     * @return the non-{@code null} {@link ChangeSet}
+     */
+    public ChangeSet getChangeSet() {
+      return this.changeSet;
+    }
+
+    /**
+     * Returns the zero-based position of the {@link ChangeSet} in the
+     * changelog.
+     *
+     * @return the position
+     */
+    public int getPosition() {
+      return this.position;
+    }
+
+    /**
+     * Returns the zero-based {@linkplain
+     * ChangeSetDependencyGraph#getGroups() group} of this {@link
+     * Node}.
+     *
+     * @return the group
+     */
+    public int getGroup() {
+      return this.group;
+    }
+
+    /**
+     * Returns {@code true} if the effects of the {@link ChangeSet}
+     * could not be determined, so that it must be applied on its
+     * own.
+     *
+     * @return whether the {@link ChangeSet} is a barrier
+     */
+    public boolean isBarrier() {
+      return this.barrier;
+    }
+
+    /**
+     * Returns the objects the {@link ChangeSet} reads; empty for a
+     * {@linkplain #isBarrier() barrier}.
+     *
+     * @return a non-{@code null}, unmodifiable {@link Set}
+     */
+    public Set<String> getReads() {
+      return this.reads;
+    }
+
+    /**
+     * Returns the objects the {@link ChangeSet} writes; empty for a
+     * {@linkplain #isBarrier() barrier}.
+     *
+     * @return a non-{@code null}, unmodifiable {@link Set}
+     */
+    public Set<String> getWrites() {
+      return this.writes;
+    }
+
+    /**
+     * Returns the {@linkplain #getPosition() positions} of the
+     * changesets this one directly depends on.
+     *
+     * @return a non-{@code null}, unmodifiable {@link Set}
+     */
+    public Set<Integer> getPredecessors() {
+      return this.predecessors;
+    }
+
+    /**
+     * Returns a {@link String} representation of this {@link Node}.
+     *
+     * @return a non-{@code null} {@link String}
+     */
+    @Override
+    public String toString() {
+      return this.changeSet.toString(false) + " (group " + this.group + ")";
+    }
+
+  }
+
+}
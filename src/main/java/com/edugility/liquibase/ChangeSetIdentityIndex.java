@@ -0,0 +1,411 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * An index of the identities of the changesets found in a set of XML
+ * changelogs, used to detect changesets that share an identity.
+ *
+ * <p>Liquibase identifies a changeset by its {@code id}, its {@code
+ * author} and its file path.  The file path is the changeset's
+ * {@code logicalFilePath} attribute if set.  Otherwise it is the
+ * enclosing changelog's {@code logicalFilePath} attribute if set, and
+ * otherwise the path by which the changelog was {@code include}d.
+ * Two changesets with the same identity are treated by Liquibase as
+ * one, usually with unfortunate results.</p>
+ *
+ * <p>Changelogs are {@linkplain #add(ChangeLogResource, String) added}
+ * by reading them with a StAX {@link XMLStreamReader}.  No document
+ * tree is built, and only the attributes needed to compute
+ * identities are retained.  Each changeset costs one hash table
+ * probe, so detection takes time linear in the number of changesets.
+ * Nested {@code include}s are not followed.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class ChangeSetIdentityIndex {
+
+  /**
+   * The {@link XMLInputFactory} used to create {@link
+   * XMLStreamReader}s.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final XMLInputFactory inputFactory;
+
+  /**
+   * The first {@link Identity} seen for each identity key.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #key(String, String, String)
+   */
+  private final Map<String, Identity> identities;
+
+  /**
+   * Creates a new, empty {@link ChangeSetIdentityIndex}.
+   */
+  public ChangeSetIdentityIndex() {
+    super();
+    this.identities = new HashMap<String, Identity>();
+    this.inputFactory = XMLInputFactory.newInstance();
+    this.inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+
+  /**
+   * Returns the number of distinct changeset identities in this
+   * {@link ChangeSetIdentityIndex}.
+   *
+   * @return the number of distinct changeset identities
+   */
+  public int size() {
+    return this.identities.size();
+  }
+
+  /**
+   * Reads the supplied XML changelog, adds the identity of each of
+   * its changesets to this {@link ChangeSetIdentityIndex}, and
+   * returns a {@link Collision} for each changeset whose identity was
+   * already present.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resource the {@link ChangeLogResource} to read; must not
+   * be {@code null}
+   *
+   * @param path the path by which the changelog is {@code include}d,
+   * used as the file path of its changesets unless a {@code
+   * logicalFilePath} is present; may be {@code null} in which case
+   * the {@linkplain ChangeLogResource#toString() resource's URL} will
+   * be used instead
+   *
+   * @return a non-{@code null} {@link List} of {@link Collision}s
+   *
+   * @exception IllegalArgumentException if {@code resource} is {@code
+   * null}
+   *
+   * @exception IOException if the changelog could not be read or is
+   * not well-formed
+   */
+  public List<Collision> add(final ChangeLogResource resource, String path) throws IOException {
+    if (resource == null) {
+      throw new IllegalArgumentException("resource", new NullPointerException("resource"));
+    }
+    if (path == null) {
+      path = resource.toString();
+    }
+    List<Collision> collisions = null;
+    final InputStream stream = resource.openStream();
+    try {
+      final XMLStreamReader reader = this.inputFactory.createXMLStreamReader(resource.toString(), stream);
+      assert reader != null;
+      try {
+        String changeLogFilePath = path;
+        int depth = 0;
+        while (reader.hasNext()) {
+          switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            if (depth == 1) {
+              final String logicalFilePath = reader.getAttributeValue(null, "logicalFilePath");
+              if (logicalFilePath != null && !logicalFilePath.isEmpty()) {
+                changeLogFilePath = logicalFilePath;
+              }
+            } else if (depth == 2 && "changeSet".equals(reader.getLocalName())) {
+              String filePath = reader.getAttributeValue(null, "logicalFilePath");
+              if (filePath == null || filePath.isEmpty()) {
+                filePath = changeLogFilePath;
+              }
+              final Identity identity = new Identity(filePath, reader.getAttributeValue(null, "id"), reader.getAttributeValue(null, "author"), resource, reader.getLocation().getLineNumber());
+              final String key = key(identity.getFilePath(), identity.getId(), identity.getAuthor());
+              final Identity existing = this.identities.get(key);
+              if (existing == null) {
+                this.identities.put(key, identity);
+              } else {
+                if (collisions == null) {
+                  collisions = new ArrayList<Collision>();
+                }
+                collisions.add(new Collision(existing, identity));
+              }
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            depth--;
+            break;
+          default:
+            break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (final XMLStreamException e) {
+      throw new IOException("Could not read " + resource, e);
+    } finally {
+      try {
+        stream.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    if (collisions == null) {
+      return Collections.emptyList();
+    }
+    return collisions;
+  }
+
+  /**
+   * Returns a {@link String} that uniquely represents the supplied
+   * changeset identity.
+   *
+   * @param filePath the file path; may be {@code null}
+   *
+   * @param id the id; may be {@code null}
+   *
+   * @param author the author; may be {@code null}
+   *
+   * @return a non-{@code null} key
+   */
+  private static final String key(final String filePath, final String id, final String author) {
+    return new StringBuilder().append(filePath).append('\u0000').append(id).append('\u0000').append(author).toString();
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The identity of a changeset, together with where it was found.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Identity {
+
+    /**
+     * The file path; may be {@code null}.
+     */
+    private final String filePath;
+
+    /**
+     * The id; may be {@code null}.
+     */
+    private final String id;
+
+    /**
+     * The author; may be {@code null}.
+     */
+    private final String author;
+
+    /**
+     * The {@link ChangeLogResource} in which the changeset was found;
+     * never {@code null}.
+     */
+    private final ChangeLogResource resource;
+
+    /**
+     * The line number at which the changeset was found, or {@code -1}
+     * if unknown.
+     */
+    private final int lineNumber;
+
+    /**
+     * Creates a new {@link Identity}.
+     *
+     * @param filePath the file path; may be {@code null}
+     *
+     * @param id the id; may be {@code null}
+     *
+     * @param author the author; may be {@code null}
+     *
+     * @param resource the {@link ChangeLogResource} in which the
+     * changeset was found; must not be {@code null}
+     *
+     * @param lineNumber the line number at which the changeset was
+     * found, or {@code -1} if unknown
+     *
+     * @exception IllegalArgumentException if {@code resource} is
+     * {@code null}
+     */
+    public Identity(final String filePath, final String id, final String author, final ChangeLogResource resource, final int lineNumber) {
+      super();
+      if (resource == null) {
+        throw new IllegalArgumentException("resource", new NullPointerException("resource"));
+      }
+      this.filePath = filePath;
+      this.id = id;
+      this.author = author;
+      this.resource = resource;
+      this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Returns the file path of the changeset.
+     *
+     * @return the file path, or {@code null}
+     */
+    public String getFilePath() {
+      return this.filePath;
+    }
+
+    /**
+     * Returns the id of the changeset.
+     *
+     * @return the id, or {@code null}
+     */
+    public String getId() {
+      return this.id;
+    }
+
+    /**
+     * Returns the author of the changeset.
+     *
+     * @return the author, or {@code null}
+     */
+    public String getAuthor() {
+      return this.author;
+    }
+
+    /**
+     * Returns the {@link ChangeLogResource} in which the changeset was
+     * found.
+     *
+     * @return a non-{@code null} {@link ChangeLogResource}
+     */
+    public ChangeLogResource getResource() {
+      return this.resource;
+    }
+
+    /**
+     * Returns the line number at which the changeset was found, or
+     * {@code -1} if unknown.
+     *
+     * @return a line number, or {@code -1}
+     */
+    public int getLineNumber() {
+      return this.lineNumber;
+    }
+
+    /**
+     * Returns a {@link String} representation of this {@link
+     * Identity} in the same form as that used by Liquibase: <code><i>filePath</i>::<i>id</i>::<i>author</i></code>.
+     *
+     * @return a non-{@code null} {@link String}
+     */
+    @Override
+    public String toString() {
+      return this.getFilePath() + "::" + this.getId() + "::" + this.getAuthor();
+    }
+
+  }
+
+  /**
+   * A pair of changesets that share an identity.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Collision {
+
+    /**
+     * The {@link Identity} seen first; never {@code null}.
+     */
+    private final Identity first;
+
+    /**
+     * The {@link Identity} seen later; never {@code null}.
+     */
+    private final Identity second;
+
+    /**
+     * Creates a new {@link Collision}.
+     *
+     * @param first the {@link Identity} seen first; must not be
+     * {@code null}
+     *
+     * @param second the {@link Identity} seen later; must not be
+     * {@code null}
+     *
+     * @exception IllegalArgumentException if either parameter is
+     * {@code null}
+     */
+    public Collision(final Identity first, final Identity second) {
+      super();
+      if (first == null) {
+        throw new IllegalArgumentException("first", new NullPointerException("first"));
+      }
+      if (second == null) {
+        throw new IllegalArgumentException("second", new NullPointerException("second"));
+      }
+      this.first = first;
+      this.second = second;
+    }
+
+    /**
+     * Returns the {@link Identity} seen first.
+     *
+     * @return a non-{@code null} {@link Identity}
+     */
+    public Identity getFirst() {
+      return this.first;
+    }
+
+    /**
+     * Returns the {@link Identity} seen later.
+     *
+     * @return a non-{@code null} {@link Identity}
+     */
+    public Identity getSecond() {
+      return this.second;
+    }
+
+  }
+
+}
@@ -0,0 +1,338 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes {@linkplain ChangeSetProfiler.Profile changeset profiles} as
+ * tab-separated reports, reads earlier reports back as baselines, and
+ * finds changesets that exceed their budgets.
+ *
+ * <p>Reports are sorted by descending wall time and have a header
+ * line, so they can be re-sorted with ordinary tools such as {@code
+ * sort -t '\t' -k 2,2nr}.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeSetProfiler
+ */
+public class ChangeSetProfileReport {
+
+  /**
+   * The origin reported for changesets whose origin is not known.
+   */
+  public static final String UNKNOWN_ORIGIN = "(unknown)";
+
+  /**
+   * The header line of the per-changeset report.
+   */
+  private static final String CHANGE_SET_HEADER = "millis\tstatements\trows\texecType\torigin\tfilePath\tid\tauthor";
+
+  /**
+   * The header line of the per-origin report.
+   */
+  private static final String ORIGIN_HEADER = "millis\tstatements\trows\tchangeSets\torigin";
+
+  /**
+   * The platform's line separator.
+   */
+  private static final String LS = System.getProperty("line.separator", "\n");
+
+  /**
+   * The {@link ChangeSetProfiler.Profile}s, sorted by descending wall
+   * time.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final List<ChangeSetProfiler.Profile> profiles;
+
+  /**
+   * The origins of changesets, indexed by changeset file path.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Map<String, String> origins;
+
+  /**
+   * Creates a new {@link ChangeSetProfileReport}.
+   *
+   * @param profiles the {@link ChangeSetProfiler.Profile}s to report;
+   * must not be {@code null}
+   *
+   * @param origins the origins, such as contributing artifacts, of
+   * changesets, indexed by changeset file path; may be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code profiles} is {@code
+   * null}
+   */
+  public ChangeSetProfileReport(final List<? extends ChangeSetProfiler.Profile> profiles, final Map<String, String> origins) {
+    super();
+    if (profiles == null) {
+      throw new IllegalArgumentException("profiles", new NullPointerException("profiles"));
+    }
+    final List<ChangeSetProfiler.Profile> sorted = new ArrayList<ChangeSetProfiler.Profile>(profiles);
+    Collections.sort(sorted, new Comparator<ChangeSetProfiler.Profile>() {
+        @Override
+        public final int compare(final ChangeSetProfiler.Profile a, final ChangeSetProfiler.Profile b) {
+          return a.getNanos() < b.getNanos() ? 1 : a.getNanos() == b.getNanos() ? 0 : -1;
+        }
+      });
+    this.profiles = Collections.unmodifiableList(sorted);
+    if (origins == null) {
+      this.origins = Collections.emptyMap();
+    } else {
+      this.origins = origins;
+    }
+  }
+
+  /**
+   * Returns the {@link ChangeSetProfiler.Profile}s in this report,
+   * sorted by descending wall time.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link List}
+   */
+  public List<ChangeSetProfiler.Profile> getProfiles() {
+    return this.profiles;
+  }
+
+  /**
+   * Returns the origin of the supplied {@link
+   * ChangeSetProfiler.Profile}'s changeset, or {@link
+   * #UNKNOWN_ORIGIN}.
+   *
+   * @param profile the {@link ChangeSetProfiler.Profile}; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} origin
+   */
+  public String getOrigin(final ChangeSetProfiler.Profile profile) {
+    final String origin = this.origins.get(profile.getFilePath());
+    return origin == null ? UNKNOWN_ORIGIN : origin;
+  }
+
+  /**
+   * Writes one line per changeset to the supplied {@link Writer}.
+   *
+   * @param writer the {@link Writer}; must not be {@code null}; will
+   * not be closed
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if the report could not be written
+   */
+  public void writeChangeSets(final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    writer.write(CHANGE_SET_HEADER + LS);
+    for (final ChangeSetProfiler.Profile profile : this.profiles) {
+      writer.write(toMillis(profile.getNanos()) + "\t" + profile.getStatements() + "\t" + profile.getRows() + "\t" + profile.getExecType() + "\t" + this.getOrigin(profile) + "\t" + profile.getFilePath() + "\t" + profile.getId() + "\t" + profile.getAuthor() + LS);
+    }
+  }
+
+  /**
+   * Writes one line per origin, totalling the changesets from that
+   * origin, to the supplied {@link Writer}.
+   *
+   * @param writer the {@link Writer}; must not be {@code null}; will
+   * not be closed
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if the report could not be written
+   */
+  public void writeOrigins(final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    final Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+    for (final ChangeSetProfiler.Profile profile : this.profiles) {
+      final String origin = this.getOrigin(profile);
+      long[] total = totals.get(origin);
+      if (total == null) {
+        total = new long[4];
+        totals.put(origin, total);
+      }
+      total[0] += profile.getNanos();
+      total[1] += profile.getStatements();
+      total[2] += profile.getRows();
+      total[3]++;
+    }
+    final List<Map.Entry<String, long[]>> entries = new ArrayList<Map.Entry<String, long[]>>(totals.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+        @Override
+        public final int compare(final Map.Entry<String, long[]> a, final Map.Entry<String, long[]> b) {
+          final long x = a.getValue()[0];
+          final long y = b.getValue()[0];
+          return x < y ? 1 : x == y ? 0 : -1;
+        }
+      });
+    writer.write(ORIGIN_HEADER + LS);
+    for (final Map.Entry<String, long[]> entry : entries) {
+      final long[] total = entry.getValue();
+      writer.write(toMillis(total[0]) + "\t" + total[1] + "\t" + total[2] + "\t" + total[3] + "\t" + entry.getKey() + LS);
+    }
+  }
+
+  /**
+   * Returns a description of each changeset whose wall time exceeds
+   * its budget.
+   *
+   * <p>A changeset exceeds its budget if it took longer than {@code
+   * maxMillis}, or if it appears in the supplied baseline and took
+   * both more than {@code maxIncreasePercent} percent and more than
+   * {@code minIncreaseMillis} milliseconds longer than it did
+   * there.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param baseline the baseline wall times in milliseconds, indexed
+   * by {@linkplain ChangeSetProfiler.Profile#getIdentity() changeset
+   * identity}, as returned by {@link #readBaseline(Reader)}; may be
+   * {@code null}
+   *
+   * @param maxIncreasePercent the permitted increase over the
+   * baseline, in percent; negative values disable the comparison
+   *
+   * @param minIncreaseMillis the increase over the baseline, in
+   * milliseconds, below which changesets never fail; absorbs timing
+   * noise in very fast changesets
+   *
+   * @param maxMillis the absolute budget for any changeset, in
+   * milliseconds; values less than or equal to {@code 0} disable it
+   *
+   * @return a non-{@code null} {@link List} of descriptions
+   */
+  public List<String> findOverBudget(final Map<String, Double> baseline, final double maxIncreasePercent, final double minIncreaseMillis, final double maxMillis) {
+    final List<String> returnValue = new ArrayList<String>();
+    for (final ChangeSetProfiler.Profile profile : this.profiles) {
+      final double millis = profile.getNanos() / 1000000.0;
+      if (maxMillis > 0.0 && millis > maxMillis) {
+        returnValue.add(String.format(Locale.ENGLISH, "%s (%s) took %.3f ms; the budget is %.3f ms", profile.getIdentity(), this.getOrigin(profile), millis, maxMillis));
+      } else if (baseline != null && maxIncreasePercent >= 0.0) {
+        final Double baselineMillis = baseline.get(profile.getIdentity());
+        if (baselineMillis != null) {
+          final double base = baselineMillis.doubleValue();
+          if (millis - base > minIncreaseMillis && millis > base * (1.0 + maxIncreasePercent / 100.0)) {
+            returnValue.add(String.format(Locale.ENGLISH, "%s (%s) took %.3f ms; the baseline is %.3f ms", profile.getIdentity(), this.getOrigin(profile), millis, base));
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Reads a per-changeset report previously written by {@link
+   * #writeChangeSets(Writer)} and returns its wall times in
+   * milliseconds, indexed by {@linkplain
+   * ChangeSetProfiler.Profile#getIdentity() changeset identity}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param reader the {@link Reader}; must not be {@code null}; will
+   * not be closed
+   *
+   * @return a non-{@code null} {@link Map}
+   *
+   * @exception IllegalArgumentException if {@code reader} is {@code
+   * null}
+   *
+   * @exception IOException if the report could not be read or is
+   * malformed
+   */
+  public static final Map<String, Double> readBaseline(final Reader reader) throws IOException {
+    if (reader == null) {
+      throw new IllegalArgumentException("reader", new NullPointerException("reader"));
+    }
+    final BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader);
+    final String header = bufferedReader.readLine();
+    if (header == null) {
+      return Collections.emptyMap();
+    }
+    final List<String> columns = Arrays.asList(header.split("\t", -1));
+    final int millisColumn = columns.indexOf("millis");
+    final int filePathColumn = columns.indexOf("filePath");
+    final int idColumn = columns.indexOf("id");
+    final int authorColumn = columns.indexOf("author");
+    if (millisColumn < 0 || filePathColumn < 0 || idColumn < 0 || authorColumn < 0) {
+      throw new IOException("Not a changeset profile report: " + header);
+    }
+    final int width = Math.max(Math.max(millisColumn, filePathColumn), Math.max(idColumn, authorColumn)) + 1;
+    final Map<String, Double> returnValue = new HashMap<String, Double>();
+    int lineNumber = 1;
+    String line;
+    while ((line = bufferedReader.readLine()) != null) {
+      lineNumber++;
+      if (!line.isEmpty()) {
+        final String[] fields = line.split("\t", -1);
+        if (fields.length < width) {
+          throw new IOException("Line " + lineNumber + " has " + fields.length + " fields; expected at least " + width);
+        }
+        try {
+          returnValue.put(fields[filePathColumn] + "::" + fields[idColumn] + "::" + fields[authorColumn], Double.valueOf(fields[millisColumn]));
+        } catch (final NumberFormatException e) {
+          throw new IOException("Line " + lineNumber + ": " + fields[millisColumn] + " is not a number", e);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Formats the supplied nanoseconds as milliseconds with three
+   * decimal places.
+   *
+   * @param nanos the nanoseconds
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  private static final String toMillis(final long nanos) {
+    return String.format(Locale.ENGLISH, "%.3f", nanos / 1000000.0);
+  }
+
+}
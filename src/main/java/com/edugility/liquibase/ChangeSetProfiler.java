@@ -0,0 +1,865 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import liquibase.Liquibase;
+
+import liquibase.change.Change;
+
+import liquibase.change.core.CreateTableChange;
+
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.changelog.visitor.ChangeExecListener;
+import liquibase.changelog.visitor.UpdateVisitor;
+
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+
+import liquibase.database.core.H2Database;
+
+import liquibase.database.jvm.JdbcConnection;
+
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+
+import liquibase.lockservice.LockService;
+import liquibase.lockservice.LockServiceFactory;
+
+import liquibase.parser.ChangeLogParserFactory;
+
+import liquibase.resource.ResourceAccessor;
+
+import liquibase.util.StringUtils;
+
+/**
+ * Applies a changelog to an {@linkplain EmbeddedDatabases embedded
+ * database} and records, for each changeset, the wall time it took
+ * and the number of SQL statements it issued and rows they affected.
+ *
+ * <p>Statements are counted by a proxy around the JDBC {@link
+ * Connection}, and only while a changeset is executing, so
+ * Liquibase's own {@code DATABASECHANGELOG} bookkeeping is not
+ * attributed to any changeset.</p>
+ *
+ * <p>If {@linkplain #setVolumeRows(int) volume rows} are requested,
+ * every table created by a {@code createTable} change is filled with
+ * that many generated rows as soon as its changeset has run, so that
+ * later changesets that add indexes or migrate data do so against a
+ * realistic amount of data.  Generation uses <a
+ * href="http://www.h2database.com/">H2</a>-specific SQL and disables
+ * H2's referential integrity checks, so it is supported only on
+ * H2.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeSetProfileReport
+ */
+public class ChangeSetProfiler {
+
+  /**
+   * The JDBC URL of the embedded database; never {@code null}.
+   */
+  private String url;
+
+  /**
+   * The number of rows to generate in each created table.
+   */
+  private int volumeRows;
+
+  /**
+   * The <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders; may be
+   * {@code null}.
+   */
+  private Properties changeLogParameters;
+
+  /**
+   * Creates a new {@link ChangeSetProfiler} that uses the {@linkplain
+   * EmbeddedDatabases#DEFAULT_URL default embedded database}.
+   */
+  public ChangeSetProfiler() {
+    super();
+    this.url = EmbeddedDatabases.DEFAULT_URL;
+  }
+
+  /**
+   * Returns the JDBC URL of the embedded database.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} JDBC URL
+   */
+  public String getUrl() {
+    return this.url;
+  }
+
+  /**
+   * Sets the JDBC URL of the embedded database.  The database it
+   * identifies must be empty.
+   *
+   * @param url the JDBC URL; may be {@code null} in which case the
+   * {@linkplain EmbeddedDatabases#DEFAULT_URL default} will be used
+   */
+  public void setUrl(final String url) {
+    this.url = url == null ? EmbeddedDatabases.DEFAULT_URL : url;
+  }
+
+  /**
+   * Returns the number of rows that will be generated in each table
+   * created by a {@code createTable} change.
+   *
+   * @return the number of rows; {@code 0} if none will be generated
+   */
+  public int getVolumeRows() {
+    return this.volumeRows;
+  }
+
+  /**
+   * Sets the number of rows that will be generated in each table
+   * created by a {@code createTable} change.
+   *
+   * @param volumeRows the number of rows; values less than {@code 1}
+   * disable generation
+   */
+  public void setVolumeRows(final int volumeRows) {
+    this.volumeRows = Math.max(0, volumeRows);
+  }
+
+  /**
+   * Returns the <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the changelog parameters, or {@code null}
+   */
+  public Properties getChangeLogParameters() {
+    return this.changeLogParameters;
+  }
+
+  /**
+   * Sets the <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders.
+   *
+   * @param changeLogParameters the changelog parameters; may be
+   * {@code null}
+   */
+  public void setChangeLogParameters(final Properties changeLogParameters) {
+    this.changeLogParameters = changeLogParameters;
+  }
+
+  /**
+   * Applies the supplied changelog to a fresh embedded database and
+   * returns a {@link Profile} for each changeset that Liquibase
+   * visited, in execution order.
+   *
+   * <p>The embedded database is closed before this method
+   * returns.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeLog the name of the changelog, as understood by the
+   * supplied {@link ResourceAccessor}; must not be {@code null}
+   *
+   * @param resourceAccessor the {@link ResourceAccessor} used to read
+   * the changelog; must not be {@code null}
+   *
+   * @param contexts the comma-separated Liquibase contexts to apply;
+   * may be {@code null}
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of {@link
+   * Profile}s
+   *
+   * @exception IllegalArgumentException if {@code changeLog} or
+   * {@code resourceAccessor} is {@code null}
+   *
+   * @exception LiquibaseException if the changelog could not be
+   * applied, or volume rows were requested for a database other than
+   * H2
+   */
+  public List<Profile> profile(final String changeLog, final ResourceAccessor resourceAccessor, final String contexts) throws LiquibaseException {
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    if (resourceAccessor == null) {
+      throw new IllegalArgumentException("resourceAccessor", new NullPointerException("resourceAccessor"));
+    }
+    final Connection connection = EmbeddedDatabases.connect(this.getUrl(), null, null, null);
+    final Counter counter = new Counter();
+    final Connection countingConnection = (Connection)Proxy.newProxyInstance(ChangeSetProfiler.class.getClassLoader(), new Class<?>[] { Connection.class }, new CountingHandler(connection, counter));
+    final Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(countingConnection));
+    try {
+      final int volumeRows = this.getVolumeRows();
+      if (volumeRows > 0) {
+        if (!(database instanceof H2Database)) {
+          throw new DatabaseException("Volume rows can only be generated in H2 databases, not " + database.getShortName());
+        }
+        try {
+          execute(connection, "SET REFERENTIAL_INTEGRITY FALSE");
+        } catch (final SQLException e) {
+          throw new DatabaseException(e);
+        }
+      }
+      final List<Profile> profiles = new ArrayList<Profile>();
+      final ListeningLiquibase liquibase = new ListeningLiquibase(changeLog, resourceAccessor, database);
+      final Properties changeLogParameters = this.getChangeLogParameters();
+      if (changeLogParameters != null) {
+        for (final String name : changeLogParameters.stringPropertyNames()) {
+          liquibase.setChangeLogParameter(name, changeLogParameters.getProperty(name));
+        }
+      }
+      liquibase.update(contexts, new ChangeExecListener() {
+
+          private long start;
+
+          @Override
+          public final void willRun(final ChangeSet changeSet, final DatabaseChangeLog databaseChangeLog, final Database database, final ChangeSet.RunStatus runStatus) {
+            counter.reset();
+            counter.active = true;
+            this.start = System.nanoTime();
+          }
+
+          @Override
+          public final void ran(final ChangeSet changeSet, final DatabaseChangeLog databaseChangeLog, final Database database, final ChangeSet.ExecType execType) {
+            final long nanos = System.nanoTime() - this.start;
+            counter.active = false;
+            profiles.add(new Profile(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor(), execType == null ? null : execType.value, nanos, counter.statements, counter.rows));
+            if (volumeRows > 0 && execType != null && execType.ran) {
+              try {
+                generateVolumeRows(connection, changeSet, volumeRows);
+              } catch (final SQLException e) {
+                throw new UnexpectedLiquibaseException("Could not generate rows after " + changeSet, e);
+              }
+            }
+          }
+
+          @Override
+          public final void rolledBack(final ChangeSet changeSet, final DatabaseChangeLog databaseChangeLog, final Database database) {
+            counter.active = false;
+          }
+
+        });
+      return Collections.unmodifiableList(profiles);
+    } finally {
+      EmbeddedDatabases.closeQuietly(database);
+    }
+  }
+
+  /**
+   * Fills each table created by the supplied {@link ChangeSet} with
+   * the supplied number of generated rows.
+   *
+   * <p>Values are generated from H2's {@code SYSTEM_RANGE} table
+   * function, so numeric and character columns receive distinct
+   * values and primary and unique keys are satisfied.  Tables with a
+   * mandatory column of a type that cannot be generated are left
+   * empty.</p>
+   *
+   * @param connection the raw, uncounted H2 {@link Connection}; must
+   * not be {@code null}
+   *
+   * @param changeSet the {@link ChangeSet} that just ran; must not be
+   * {@code null}
+   *
+   * @param rows the number of rows to generate; must be positive
+   *
+   * @exception SQLException if the rows could not be generated
+   */
+  private static final void generateVolumeRows(final Connection connection, final ChangeSet changeSet, final int rows) throws SQLException {
+    assert connection != null;
+    assert changeSet != null;
+    assert rows > 0;
+    final List<Change> changes = changeSet.getChanges();
+    if (changes != null) {
+      for (final Change change : changes) {
+        if (change instanceof CreateTableChange) {
+          final CreateTableChange createTable = (CreateTableChange)change;
+          final String sql = toVolumeInsert(connection, createTable.getSchemaName(), createTable.getTableName(), rows);
+          if (sql != null) {
+            execute(connection, sql);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns an {@code INSERT ... SELECT} statement that generates the
+   * supplied number of rows in the named table, or {@code null} if
+   * the table does not exist or has a mandatory column whose values
+   * cannot be generated.
+   *
+   * @param connection the H2 {@link Connection}; must not be {@code
+   * null}
+   *
+   * @param schemaName the schema name; may be {@code null} in which
+   * case the current schema is used
+   *
+   * @param tableName the table name; must not be {@code null}
+   *
+   * @param rows the number of rows to generate
+   *
+   * @return an SQL statement, or {@code null}
+   *
+   * @exception SQLException if the table's columns could not be read
+   */
+  private static final String toVolumeInsert(final Connection connection, final String schemaName, final String tableName, final int rows) throws SQLException {
+    assert connection != null;
+    assert tableName != null;
+    final StringBuilder columns = new StringBuilder();
+    final StringBuilder values = new StringBuilder();
+    String schema = null;
+    String table = null;
+    final PreparedStatement statement = connection.prepareStatement("SELECT TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, TYPE_NAME, CHARACTER_MAXIMUM_LENGTH, NUMERIC_PRECISION, NUMERIC_SCALE, IS_NULLABLE, SEQUENCE_NAME, IS_COMPUTED FROM INFORMATION_SCHEMA.COLUMNS WHERE UPPER(TABLE_NAME) = UPPER(?) AND TABLE_SCHEMA = COALESCE(UPPER(?), SCHEMA()) ORDER BY ORDINAL_POSITION");
+    try {
+      statement.setString(1, tableName);
+      statement.setString(2, schemaName);
+      final ResultSet resultSet = statement.executeQuery();
+      try {
+        while (resultSet.next()) {
+          schema = resultSet.getString(1);
+          table = resultSet.getString(2);
+          if (resultSet.getString(9) != null || resultSet.getBoolean(10)) {
+            // Identity and computed columns generate their own values.
+            continue;
+          }
+          final String value = toVolumeValue(resultSet.getString(4), resultSet.getLong(5), resultSet.getInt(6), resultSet.getInt(7));
+          if (value == null) {
+            if (!"YES".equals(resultSet.getString(8))) {
+              return null;
+            }
+            continue;
+          }
+          if (columns.length() > 0) {
+            columns.append(", ");
+            values.append(", ");
+          }
+          columns.append(quote(resultSet.getString(3)));
+          values.append(value);
+        }
+      } finally {
+        resultSet.close();
+      }
+    } finally {
+      statement.close();
+    }
+    if (table == null || columns.length() == 0) {
+      return null;
+    }
+    return "INSERT INTO " + quote(schema) + "." + quote(table) + " (" + columns + ") SELECT " + values + " FROM SYSTEM_RANGE(1, " + rows + ")";
+  }
+
+  /**
+   * Returns an H2 SQL expression in terms of {@code SYSTEM_RANGE}'s
+   * {@code X} column that generates values of the supplied type, or
+   * {@code null} if no suitable expression is known.
+   *
+   * @param typeName the H2 type name; may be {@code null}
+   *
+   * @param maximumLength the maximum length of character types
+   *
+   * @param precision the precision of numeric types
+   *
+   * @param scale the scale of numeric types
+   *
+   * @return an SQL expression, or {@code null}
+   */
+  private static final String toVolumeValue(final String typeName, final long maximumLength, final int precision, final int scale) {
+    if (typeName == null) {
+      return null;
+    }
+    final String type = typeName.toUpperCase();
+    if ("TINYINT".equals(type)) {
+      return "MOD(X, 128)";
+    } else if ("SMALLINT".equals(type)) {
+      return "MOD(X, 32768)";
+    } else if ("INTEGER".equals(type) || "INT".equals(type) || "BIGINT".equals(type) || "DOUBLE".equals(type) || "REAL".equals(type) || "FLOAT".equals(type)) {
+      return "X";
+    } else if ("DECIMAL".equals(type) || "NUMERIC".equals(type) || "NUMBER".equals(type)) {
+      final int digits = precision - scale;
+      return digits > 0 && digits < 19 ? "MOD(X, " + pow10(digits) + ")" : "X";
+    } else if (type.startsWith("VARCHAR") || type.startsWith("CHAR") || "CLOB".equals(type)) {
+      return maximumLength > 0 && maximumLength < 19 ? "LEFT(CAST(X AS VARCHAR), " + maximumLength + ")" : "CAST(X AS VARCHAR)";
+    } else if ("BOOLEAN".equals(type)) {
+      return "MOD(X, 2) = 0";
+    } else if ("DATE".equals(type) || "TIME".equals(type) || "TIMESTAMP".equals(type)) {
+      return "CURRENT_TIMESTAMP";
+    } else if ("UUID".equals(type)) {
+      return "RANDOM_UUID()";
+    }
+    return null;
+  }
+
+  /**
+   * Returns {@code 10} raised to the supplied power.
+   *
+   * @param power a non-negative power less than {@code 19}
+   *
+   * @return {@code 10} raised to {@code power}
+   */
+  private static final long pow10(final int power) {
+    long returnValue = 1L;
+    for (int i = 0; i < power; i++) {
+      returnValue *= 10L;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the supplied identifier as a quoted SQL identifier.
+   *
+   * @param identifier the identifier; must not be {@code null}
+   *
+   * @return a quoted identifier
+   */
+  private static final String quote(final String identifier) {
+    assert identifier != null;
+    return "\"" + identifier.replace("\"", "\"\"") + "\"";
+  }
+
+  /**
+   * Executes the supplied SQL on the supplied {@link Connection}.
+   *
+   * @param connection the {@link Connection}; must not be {@code
+   * null}
+   *
+   * @param sql the SQL; must not be {@code null}
+   *
+   * @exception SQLException if the SQL could not be executed
+   */
+  private static final void execute(final Connection connection, final String sql) throws SQLException {
+    assert connection != null;
+    assert sql != null;
+    final Statement statement = connection.createStatement();
+    try {
+      statement.execute(sql);
+    } finally {
+      statement.close();
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The execution profile of a single changeset.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Profile {
+
+    /**
+     * The effective file path of the changeset.
+     */
+    private final String filePath;
+
+    /**
+     * The {@code id} of the changeset.
+     */
+    private final String id;
+
+    /**
+     * The {@code author} of the changeset.
+     */
+    private final String author;
+
+    /**
+     * How Liquibase executed the changeset, such as {@code EXECUTED}.
+     */
+    private final String execType;
+
+    /**
+     * The wall time, in nanoseconds, the changeset took.
+     */
+    private final long nanos;
+
+    /**
+     * The number of SQL statements the changeset issued.
+     */
+    private final long statements;
+
+    /**
+     * The number of rows those statements reported affecting.
+     */
+    private final long rows;
+
+    /**
+     * Creates a new {@link Profile}.
+     *
+     * @param filePath the effective file path of the changeset
+     *
+     * @param id the {@code id} of the changeset
+     *
+     * @param author the {@code author} of the changeset
+     *
+     * @param execType how Liquibase executed the changeset
+     *
+     * @param nanos the wall time, in nanoseconds, the changeset took
+     *
+     * @param statements the number of SQL statements the changeset
+     * issued
+     *
+     * @param rows the number of rows those statements reported
+     * affecting
+     */
+    public Profile(final String filePath, final String id, final String author, final String execType, final long nanos, final long statements, final long rows) {
+      super();
+      this.filePath = filePath;
+      this.id = id;
+      this.author = author;
+      this.execType = execType;
+      this.nanos = nanos;
+      this.statements = statements;
+      this.rows = rows;
+    }
+
+    /**
+     * Returns the effective file path of the changeset.
+     *
+     * @return the file path, or {@code null}
+     */
+    public String getFilePath() {
+      return this.filePath;
+    }
+
+    /**
+     * Returns the {@code id} of the changeset.
+     *
+     * @return the id, or {@code null}
+     */
+    public String getId() {
+      return this.id;
+    }
+
+    /**
+     * Returns the {@code author} of the changeset.
+     *
+     * @return the author, or {@code null}
+     */
+    public String getAuthor() {
+      return this.author;
+    }
+
+    /**
+     * Returns a {@link String} that identifies the changeset, of the
+     * form <code><i>filePath</i>::<i>id</i>::<i>author</i></code>.
+     *
+     * @return a non-{@code null} identity
+     */
+    public String getIdentity() {
+      return this.getFilePath() + "::" + this.getId() + "::" + this.getAuthor();
+    }
+
+    /**
+     * Returns how Liquibase executed the changeset, such as {@code
+     * EXECUTED}.
+     *
+     * @return the execution type, or {@code null}
+     */
+    public String getExecType() {
+      return this.execType;
+    }
+
+    /**
+     * Returns the wall time, in nanoseconds, the changeset took.
+     *
+     * @return the wall time in nanoseconds
+     */
+    public long getNanos() {
+      return this.nanos;
+    }
+
+    /**
+     * Returns the number of SQL statements the changeset issued.
+     *
+     * @return the number of statements
+     */
+    public long getStatements() {
+      return this.statements;
+    }
+
+    /**
+     * Returns the number of rows the changeset's statements reported
+     * affecting.
+     *
+     * @return the number of rows
+     */
+    public long getRows() {
+      return this.rows;
+    }
+
+    /**
+     * Returns a {@link String} representation of this {@link
+     * Profile}.
+     *
+     * @return a non-{@code null} {@link String}
+     */
+    @Override
+    public String toString() {
+      return String.format("%s: %d ms, %d statements, %d rows", this.getIdentity(), this.getNanos() / 1000000L, this.getStatements(), this.getRows());
+    }
+
+  }
+
+  /**
+   * Counts statements and affected rows while {@linkplain #active
+   * active}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Counter {
+
+    /**
+     * Whether statements are being counted.
+     */
+    private boolean active;
+
+    /**
+     * The number of statements counted.
+     */
+    private long statements;
+
+    /**
+     * The number of affected rows counted.
+     */
+    private long rows;
+
+    /**
+     * Creates a new {@link Counter}.
+     */
+    private Counter() {
+      super();
+    }
+
+    /**
+     * Resets this {@link Counter}'s counts to zero.
+     */
+    private final void reset() {
+      this.statements = 0L;
+      this.rows = 0L;
+    }
+
+  }
+
+  /**
+   * An {@link InvocationHandler} for proxies of JDBC {@link
+   * Connection}s and {@link Statement}s that counts the statements
+   * executed, and the rows they affect, in a {@link Counter}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class CountingHandler implements InvocationHandler {
+
+    /**
+     * The proxied {@link Connection} or {@link Statement}.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Object delegate;
+
+    /**
+     * The {@link Counter} to update.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Counter counter;
+
+    /**
+     * Creates a new {@link CountingHandler}.
+     *
+     * @param delegate the proxied object; must not be {@code null}
+     *
+     * @param counter the {@link Counter} to update; must not be
+     * {@code null}
+     */
+    private CountingHandler(final Object delegate, final Counter counter) {
+      super();
+      assert delegate != null;
+      assert counter != null;
+      this.delegate = delegate;
+      this.counter = counter;
+    }
+
+    /**
+     * Invokes the supplied {@link Method} on the proxied object,
+     * proxying any {@link Statement} it returns and counting any
+     * statement it executes.
+     *
+     * @param proxy the proxy; ignored
+     *
+     * @param method the {@link Method}; must not be {@code null}
+     *
+     * @param arguments the arguments; may be {@code null}
+     *
+     * @return the result of the invocation
+     *
+     * @exception Throwable if the invocation fails
+     */
+    @Override
+    public final Object invoke(final Object proxy, final Method method, final Object[] arguments) throws Throwable {
+      final Object returnValue;
+      try {
+        returnValue = method.invoke(this.delegate, arguments);
+      } catch (final InvocationTargetException e) {
+        throw e.getCause();
+      }
+      final Class<?> returnType = method.getReturnType();
+      if (returnValue != null && Statement.class.isAssignableFrom(returnType)) {
+        return Proxy.newProxyInstance(ChangeSetProfiler.class.getClassLoader(), new Class<?>[] { returnType }, new CountingHandler(returnValue, this.counter));
+      }
+      if (this.counter.active && this.delegate instanceof Statement && method.getName().startsWith("execute")) {
+        if (returnValue instanceof int[]) {
+          final int[] counts = (int[])returnValue;
+          this.counter.statements += counts.length;
+          for (final int count : counts) {
+            if (count > 0) {
+              this.counter.rows += count;
+            }
+          }
+        } else {
+          this.counter.statements++;
+          if (returnValue instanceof Integer) {
+            this.counter.rows += Math.max(0, ((Integer)returnValue).intValue());
+          } else if (Boolean.FALSE.equals(returnValue)) {
+            this.counter.rows += Math.max(0, ((Statement)this.delegate).getUpdateCount());
+          }
+        }
+      }
+      return returnValue;
+    }
+
+  }
+
+  /**
+   * A {@link Liquibase} that can apply a changelog while notifying a
+   * {@link ChangeExecListener}.
+   *
+   * <p>Liquibase 3.0's {@link Liquibase#update(String)} method does
+   * not pass its {@linkplain
+   * Liquibase#setChangeExecListener(ChangeExecListener) change
+   * execution listener} on to the {@link UpdateVisitor} it uses, so
+   * this class performs the same steps itself.</p>
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class ListeningLiquibase extends Liquibase {
+
+    /**
+     * The name of the changelog to apply; never {@code null}.
+     */
+    private final String changeLog;
+
+    /**
+     * Creates a new {@link ListeningLiquibase}.
+     *
+     * @param changeLog the name of the changelog to apply; must not
+     * be {@code null}
+     *
+     * @param resourceAccessor the {@link ResourceAccessor} used to
+     * read the changelog; must not be {@code null}
+     *
+     * @param database the {@link Database} to update; must not be
+     * {@code null}
+     *
+     * @exception LiquibaseException if the {@link Database} could not
+     * be prepared
+     */
+    private ListeningLiquibase(final String changeLog, final ResourceAccessor resourceAccessor, final Database database) throws LiquibaseException {
+      super(changeLog, resourceAccessor, database);
+      assert changeLog != null;
+      this.changeLog = changeLog;
+    }
+
+    /**
+     * Applies the changelog as {@link Liquibase#update(String)}
+     * does, notifying the supplied {@link ChangeExecListener} as each
+     * changeset runs.
+     *
+     * @param contexts the comma-separated contexts to apply; may be
+     * {@code null}
+     *
+     * @param listener the {@link ChangeExecListener} to notify; may
+     * be {@code null}
+     *
+     * @exception LiquibaseException if the changelog could not be
+     * applied
+     */
+    private final void update(final String contexts, final ChangeExecListener listener) throws LiquibaseException {
+      final String trimmedContexts = StringUtils.trimToNull(contexts);
+      final LockService lockService = LockServiceFactory.getInstance().getLockService(this.database);
+      lockService.waitForLock();
+      try {
+        final ChangeLogParameters parameters = this.getChangeLogParameters();
+        parameters.setContexts(StringUtils.splitAndTrim(trimmedContexts, ","));
+        final ResourceAccessor resourceAccessor = this.getFileOpener();
+        final DatabaseChangeLog databaseChangeLog = ChangeLogParserFactory.getInstance().getParser(this.changeLog, resourceAccessor).parse(this.changeLog, parameters, resourceAccessor);
+        this.checkDatabaseChangeLogTable(true, databaseChangeLog, trimmedContexts);
+        databaseChangeLog.validate(this.database, trimmedContexts);
+        this.getStandardChangelogIterator(trimmedContexts, databaseChangeLog).run(new UpdateVisitor(this.database, listener), this.database);
+      } finally {
+        lockService.releaseLock();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,181 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link ChangeLogPruner.Filter} that keeps only those changesets
+ * that Liquibase would run when given a particular set of contexts.
+ *
+ * <p>The matching rules are those of Liquibase's own {@link
+ * liquibase.changelog.filter.ContextChangeSetFilter}: a changeset
+ * with no {@code context} attribute always runs, and a changeset
+ * with a {@code context} attribute runs if any of its
+ * comma-separated contexts, compared without regard to case, is one
+ * of the configured contexts.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see liquibase.changelog.filter.ContextChangeSetFilter
+ */
+public class ContextChangeSetFilter implements ChangeLogPruner.Filter {
+
+  /**
+   * The status returned for changesets that have no contexts.
+   */
+  public static final String ANY_CONTEXT = "ANY_CONTEXT";
+
+  /**
+   * The status returned for changesets that match one of the
+   * configured contexts.
+   */
+  public static final String MATCHED = "MATCHED";
+
+  /**
+   * The lowercased contexts to keep.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Set<String> contexts;
+
+  /**
+   * Creates a new {@link ContextChangeSetFilter}.
+   *
+   * @param contexts a comma-separated list of contexts, as it would
+   * be supplied to Liquibase at update time; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code contexts} is {@code
+   * null} or contains no contexts
+   */
+  public ContextChangeSetFilter(final String contexts) {
+    this(contexts == null ? null : split(contexts));
+  }
+
+  /**
+   * Creates a new {@link ContextChangeSetFilter}.
+   *
+   * @param contexts the contexts to keep; must not be {@code null}
+   * and must contain at least one non-empty context
+   *
+   * @exception IllegalArgumentException if {@code contexts} is {@code
+   * null} or contains no contexts
+   */
+  public ContextChangeSetFilter(final Collection<? extends String> contexts) {
+    super();
+    if (contexts == null) {
+      throw new IllegalArgumentException("contexts", new NullPointerException("contexts"));
+    }
+    final Set<String> set = new LinkedHashSet<String>();
+    for (final String context : contexts) {
+      if (context != null) {
+        final String trimmed = context.trim();
+        if (!trimmed.isEmpty()) {
+          set.add(trimmed.toLowerCase());
+        }
+      }
+    }
+    if (set.isEmpty()) {
+      throw new IllegalArgumentException("contexts: " + contexts);
+    }
+    this.contexts = Collections.unmodifiableSet(set);
+  }
+
+  /**
+   * Returns the lowercased contexts this {@link
+   * ContextChangeSetFilter} keeps.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link Set}
+   */
+  public Set<String> getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Returns {@link #ANY_CONTEXT} if the identified changeset has no
+   * contexts, {@link #MATCHED} if one of its contexts is one of
+   * {@linkplain #getContexts() this filter's contexts}, and {@code
+   * null} otherwise.
+   *
+   * @param filePath the effective file path of the changeset
+   *
+   * @param id the {@code id} of the changeset
+   *
+   * @param author the {@code author} of the changeset
+   *
+   * @param attributes the {@code changeSet} element's attributes; may
+   * be {@code null}
+   *
+   * @return {@link #ANY_CONTEXT}, {@link #MATCHED} or {@code null}
+   */
+  @Override
+  public String accept(final String filePath, final String id, final String author, final Map<String, String> attributes) {
+    final String context = attributes == null ? null : attributes.get("context");
+    if (context == null) {
+      return ANY_CONTEXT;
+    }
+    final Set<String> changeSetContexts = split(context);
+    if (changeSetContexts.isEmpty()) {
+      return ANY_CONTEXT;
+    }
+    for (final String changeSetContext : changeSetContexts) {
+      if (this.contexts.contains(changeSetContext.toLowerCase())) {
+        return MATCHED;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Splits the supplied comma-separated list of contexts into a
+   * {@link Set} of trimmed, non-empty contexts.
+   *
+   * @param contexts the contexts; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Set}
+   */
+  static final Set<String> split(final String contexts) {
+    assert contexts != null;
+    final Set<String> returnValue = new LinkedHashSet<String>();
+    for (final String context : contexts.split(",")) {
+      final String trimmed = context.trim();
+      if (!trimmed.isEmpty()) {
+        returnValue.add(trimmed);
+      }
+    }
+    return returnValue;
+  }
+
+}
@@ -0,0 +1,181 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URL;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility methods for computing content hashes of changelogs.
+ *
+ * <p>All hashing is streaming: content is read through a fixed-size
+ * buffer and is never held in memory in its entirety.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MessageDigest
+ */
+public final class Digests {
+
+  /**
+   * The name of the {@link MessageDigest} algorithm used by this
+   * class.
+   */
+  public static final String ALGORITHM = "SHA-256";
+
+  /**
+   * Hexadecimal digits, used to format digests.
+   */
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * Creates a new {@link Digests}.
+   */
+  private Digests() {
+    super();
+  }
+
+  /**
+   * Returns a new {@link MessageDigest} implementing the {@linkplain
+   * #ALGORITHM algorithm} used by this class.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a new {@link MessageDigest}; never {@code null}
+   *
+   * @exception IllegalStateException if the Java platform does not
+   * support the {@linkplain #ALGORITHM algorithm}, which is required
+   * of all implementations
+   */
+  public static final MessageDigest newMessageDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Opens the supplied {@link URL}, hashes its contents and returns
+   * the hash formatted as a lowercase hexadecimal {@link String}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param url the {@link URL} to hash; must not be {@code null}
+   *
+   * @return a lowercase hexadecimal {@link String}; never {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if {@code url} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @see #hash(InputStream)
+   */
+  public static final String hash(final URL url) throws IOException {
+    if (url == null) {
+      throw new IllegalArgumentException("url", new NullPointerException("url"));
+    }
+    final InputStream stream = url.openStream();
+    try {
+      return hash(stream);
+    } finally {
+      try {
+        stream.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+  /**
+   * Reads the supplied {@link InputStream} to its end, hashes its
+   * contents and returns the hash formatted as a lowercase
+   * hexadecimal {@link String}.
+   *
+   * <p>The supplied {@link InputStream} is not {@linkplain
+   * InputStream#close() closed}.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param stream the {@link InputStream} to hash; must not be
+   * {@code null}
+   *
+   * @return a lowercase hexadecimal {@link String}; never {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if {@code stream} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  public static final String hash(final InputStream stream) throws IOException {
+    if (stream == null) {
+      throw new IllegalArgumentException("stream", new NullPointerException("stream"));
+    }
+    final MessageDigest digest = newMessageDigest();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = stream.read(buffer)) >= 0) {
+      digest.update(buffer, 0, read);
+    }
+    return toHexString(digest.digest());
+  }
+
+  /**
+   * Formats the supplied {@code byte} array as a lowercase
+   * hexadecimal {@link String}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param bytes the {@code byte} array to format; may be {@code
+   * null} in which case an empty {@link String} will be returned
+   *
+   * @return a lowercase hexadecimal {@link String}; never {@code
+   * null}
+   */
+  public static final String toHexString(final byte[] bytes) {
+    if (bytes == null) {
+      return "";
+    }
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX[(bytes[i] >> 4) & 0x0f];
+      chars[2 * i + 1] = HEX[bytes[i] & 0x0f];
+    }
+    return new String(chars);
+  }
+
+}
@@ -0,0 +1,204 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.lang.reflect.InvocationTargetException;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+
+import java.util.Properties;
+
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+
+import liquibase.database.jvm.JdbcConnection;
+
+import liquibase.exception.DatabaseException;
+
+/**
+ * Utility methods for opening in-process databases, such as <a
+ * href="http://www.h2database.com/">H2</a>, to which changelogs can
+ * be applied without any external database.
+ *
+ * <p>JDBC drivers are loaded directly rather than through {@link
+ * java.sql.DriverManager}, so they may come from a Maven plugin's
+ * own class realm.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public final class EmbeddedDatabases {
+
+  /**
+   * The default JDBC URL: a private, unnamed H2 in-memory database
+   * that exists only as long as its sole connection is open.
+   */
+  public static final String DEFAULT_URL = "jdbc:h2:mem:";
+
+  /**
+   * Creates a new {@link EmbeddedDatabases}.
+   */
+  private EmbeddedDatabases() {
+    super();
+  }
+
+  /**
+   * Opens a connection to the database identified by the supplied
+   * JDBC URL and returns a Liquibase {@link Database} for it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param url the JDBC URL; may be {@code null} in which case the
+   * {@linkplain #DEFAULT_URL default URL} will be used
+   *
+   * @param loader the {@link ClassLoader} from which to load the JDBC
+   * driver; may be {@code null} in which case the {@link ClassLoader}
+   * that loaded this class will be used
+   *
+   * @return a non-{@code null} {@link Database}
+   *
+   * @exception DatabaseException if no driver is known for {@code
+   * url}, or the driver could not be loaded or could not connect
+   */
+  public static final Database open(final String url, final ClassLoader loader) throws DatabaseException {
+    return open(url, null, null, loader);
+  }
+
+  /**
+   * Opens a connection to the database identified by the supplied
+   * JDBC URL as the supplied user and returns a Liquibase {@link
+   * Database} for it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param url the JDBC URL; may be {@code null} in which case the
+   * {@linkplain #DEFAULT_URL default URL} will be used
+   *
+   * @param user the user to connect as; may be {@code null}
+   *
+   * @param password the password of {@code user}; may be {@code null}
+   *
+   * @param loader the {@link ClassLoader} from which to load the JDBC
+   * driver; may be {@code null} in which case the {@link ClassLoader}
+   * that loaded this class will be used
+   *
+   * @return a non-{@code null} {@link Database}
+   *
+   * @exception DatabaseException if no driver is known for {@code
+   * url}, or the driver could not be loaded or could not connect
+   */
+  public static final Database open(final String url, final String user, final String password, final ClassLoader loader) throws DatabaseException {
+    return DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connect(url, user, password, loader)));
+  }
+
+  /**
+   * Opens and returns a JDBC {@link Connection} to the database
+   * identified by the supplied JDBC URL as the supplied user.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param url the JDBC URL; may be {@code null} in which case the
+   * {@linkplain #DEFAULT_URL default URL} will be used
+   *
+   * @param user the user to connect as; may be {@code null}
+   *
+   * @param password the password of {@code user}; may be {@code null}
+   *
+   * @param loader the {@link ClassLoader} from which to load the JDBC
+   * driver; may be {@code null} in which case the {@link ClassLoader}
+   * that loaded this class will be used
+   *
+   * @return a non-{@code null} {@link Connection}
+   *
+   * @exception DatabaseException if no driver is known for {@code
+   * url}, or the driver could not be loaded or could not connect
+   */
+  public static final Connection connect(String url, final String user, final String password, ClassLoader loader) throws DatabaseException {
+    if (url == null) {
+      url = DEFAULT_URL;
+    }
+    if (loader == null) {
+      loader = EmbeddedDatabases.class.getClassLoader();
+    }
+    final String driverClassName = DatabaseFactory.getInstance().findDefaultDriver(url);
+    if (driverClassName == null) {
+      throw new DatabaseException("No JDBC driver is known for " + url);
+    }
+    final Driver driver;
+    try {
+      driver = (Driver)Class.forName(driverClassName, true, loader).getDeclaredConstructor().newInstance();
+    } catch (final ClassNotFoundException e) {
+      throw new DatabaseException("Could not load the JDBC driver " + driverClassName, e);
+    } catch (final NoSuchMethodException e) {
+      throw new DatabaseException("Could not load the JDBC driver " + driverClassName, e);
+    } catch (final InstantiationException e) {
+      throw new DatabaseException("Could not load the JDBC driver " + driverClassName, e);
+    } catch (final IllegalAccessException e) {
+      throw new DatabaseException("Could not load the JDBC driver " + driverClassName, e);
+    } catch (final InvocationTargetException e) {
+      throw new DatabaseException("Could not load the JDBC driver " + driverClassName, e.getCause());
+    }
+    final Connection connection;
+    try {
+      final Properties properties = new Properties();
+      if (user != null) {
+        properties.setProperty("user", user);
+      }
+      if (password != null) {
+        properties.setProperty("password", password);
+      }
+      connection = driver.connect(url, properties);
+    } catch (final SQLException e) {
+      throw new DatabaseException("Could not connect to " + url, e);
+    }
+    if (connection == null) {
+      throw new DatabaseException(driverClassName + " does not accept " + url);
+    }
+    return connection;
+  }
+
+  /**
+   * Closes the supplied {@link Database}, ignoring any failure to do
+   * so.
+   *
+   * @param database the {@link Database} to close; may be {@code
+   * null} in which case no action will be taken
+   */
+  public static final void closeQuietly(final Database database) {
+    if (database != null) {
+      try {
+        database.close();
+      } catch (final DatabaseException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+}
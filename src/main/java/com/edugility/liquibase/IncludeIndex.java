@@ -0,0 +1,387 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A build-time index mapping each {@code include} of an assembled
+ * changelog to the classpath-relative resource name and {@linkplain
+ * Digests content hash} of the changelog it refers to.
+ *
+ * <p>No two {@code include}s of an index share a resource name, so
+ * that each may be found with a single {@link
+ * ClassLoader#getResource(String)} call.</p>
+ *
+ * <h3>Format</h3>
+ *
+ * <p>An index is UTF-8 text.  Blank lines and lines beginning with
+ * "{@code #}" are ignored.  Every other line consists of three
+ * tab-separated fields: the content hash, the classpath-relative
+ * resource name and the {@code include} exactly as it appears in the
+ * assembled changelog.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see IndexedResourceAccessor
+ */
+public final class IncludeIndex {
+
+  /**
+   * The {@link Entry} instances in this {@link IncludeIndex}, indexed
+   * by {@linkplain Entry#getInclude() include}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Map<String, Entry> entries;
+
+  /**
+   * The {@linkplain Entry#getInclude() include} of each {@link Entry}
+   * in this {@link IncludeIndex}, indexed by {@linkplain
+   * Entry#getName() resource name}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Map<String, String> includesByName;
+
+  /**
+   * Creates a new, empty {@link IncludeIndex}.
+   */
+  public IncludeIndex() {
+    super();
+    this.entries = new LinkedHashMap<String, Entry>();
+    this.includesByName = new HashMap<String, String>();
+  }
+
+  /**
+   * Adds an {@link Entry} to this {@link IncludeIndex}, replacing any
+   * existing {@link Entry} for the same {@code include}.
+   *
+   * @param include the {@code include} as it appears in the assembled
+   * changelog; must not be {@code null}
+   *
+   * @param name the classpath-relative resource name; must not be
+   * {@code null}
+   *
+   * @param contentHash the content hash; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if any parameter is {@code
+   * null} or contains a tab or line break, or if {@code name} is
+   * already the resource name of a different {@code include}
+   */
+  public void put(final String include, final String name, final String contentHash) {
+    final Entry entry = new Entry(include, name, contentHash);
+    final String existingInclude = this.includesByName.get(name);
+    if (existingInclude != null && !existingInclude.equals(include)) {
+      throw new IllegalArgumentException("name: " + name + " is already indexed for include " + existingInclude);
+    }
+    final Entry existing = this.entries.put(include, entry);
+    if (existing != null) {
+      this.includesByName.remove(existing.getName());
+    }
+    this.includesByName.put(name, include);
+  }
+
+  /**
+   * Returns the {@link Entry} for the supplied {@code include}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param include the {@code include} as it appears in the assembled
+   * changelog; may be {@code null} in which case {@code null} will be
+   * returned
+   *
+   * @return an {@link Entry}, or {@code null}
+   */
+  public Entry get(final String include) {
+    if (include == null) {
+      return null;
+    }
+    return this.entries.get(include);
+  }
+
+  /**
+   * Returns an unmodifiable {@link Collection} of this {@link
+   * IncludeIndex}'s {@link Entry} instances in insertion order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Collection} of {@link Entry}
+   * instances
+   */
+  public Collection<Entry> getEntries() {
+    return Collections.unmodifiableCollection(this.entries.values());
+  }
+
+  /**
+   * Returns the number of {@link Entry} instances in this {@link
+   * IncludeIndex}.
+   *
+   * @return the number of {@link Entry} instances in this {@link
+   * IncludeIndex}
+   */
+  public int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Writes this {@link IncludeIndex} to the supplied {@link Writer}.
+   *
+   * <p>The supplied {@link Writer} is {@linkplain Writer#flush()
+   * flushed} but not {@linkplain Writer#close() closed}.</p>
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  public void write(final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    writer.write("# " + Digests.ALGORITHM + "\tresource name\tinclude\n");
+    for (final Entry entry : this.entries.values()) {
+      writer.write(entry.getContentHash());
+      writer.write('\t');
+      writer.write(entry.getName());
+      writer.write('\t');
+      writer.write(entry.getInclude());
+      writer.write('\n');
+    }
+    writer.flush();
+  }
+
+  /**
+   * Reads an {@link IncludeIndex} from the supplied {@link
+   * InputStream}, which is decoded as UTF-8.
+   *
+   * <p>The supplied {@link InputStream} is not {@linkplain
+   * InputStream#close() closed}.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param stream the {@link InputStream} to read from; must not be
+   * {@code null}
+   *
+   * @return a new {@link IncludeIndex}; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code stream} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs or if the
+   * index is malformed
+   *
+   * @see #read(Reader)
+   */
+  public static final IncludeIndex read(final InputStream stream) throws IOException {
+    if (stream == null) {
+      throw new IllegalArgumentException("stream", new NullPointerException("stream"));
+    }
+    return read(new InputStreamReader(stream, "UTF-8"));
+  }
+
+  /**
+   * Reads an {@link IncludeIndex} from the supplied {@link Reader}.
+   *
+   * <p>The supplied {@link Reader} is not {@linkplain Reader#close()
+   * closed}.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param reader the {@link Reader} to read from; must not be {@code
+   * null}
+   *
+   * @return a new {@link IncludeIndex}; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code reader} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs or if the
+   * index is malformed
+   */
+  public static final IncludeIndex read(final Reader reader) throws IOException {
+    if (reader == null) {
+      throw new IllegalArgumentException("reader", new NullPointerException("reader"));
+    }
+    final IncludeIndex returnValue = new IncludeIndex();
+    final BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader);
+    String line = null;
+    int lineNumber = 0;
+    while ((line = lines.readLine()) != null) {
+      lineNumber++;
+      if (line.length() > 0 && line.charAt(0) != '#') {
+        final String[] fields = line.split("\t", 3);
+        if (fields.length != 3) {
+          throw new IOException("Malformed include index line " + lineNumber + ": " + line);
+        }
+        try {
+          returnValue.put(fields[2], fields[1], fields[0]);
+        } catch (final IllegalArgumentException e) {
+          throw new IOException("Malformed include index line " + lineNumber + ": " + line, e);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A single entry in an {@link IncludeIndex}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Entry {
+
+    /**
+     * The {@code include} as it appears in the assembled changelog.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final String include;
+
+    /**
+     * The classpath-relative resource name.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final String name;
+
+    /**
+     * The content hash.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final String contentHash;
+
+    /**
+     * Creates a new {@link Entry}.
+     *
+     * @param include the {@code include} as it appears in the
+     * assembled changelog; must not be {@code null}
+     *
+     * @param name the classpath-relative resource name; must not be
+     * {@code null}
+     *
+     * @param contentHash the content hash; must not be {@code null}
+     *
+     * @exception IllegalArgumentException if any parameter is {@code
+     * null} or contains a tab or line break
+     */
+    private Entry(final String include, final String name, final String contentHash) {
+      super();
+      this.include = checkField("include", include);
+      this.name = checkField("name", name);
+      this.contentHash = checkField("contentHash", contentHash);
+    }
+
+    /**
+     * Returns the {@code include} as it appears in the assembled
+     * changelog.
+     *
+     * @return the {@code include}; never {@code null}
+     */
+    public String getInclude() {
+      return this.include;
+    }
+
+    /**
+     * Returns the classpath-relative resource name.
+     *
+     * @return the classpath-relative resource name; never {@code
+     * null}
+     */
+    public String getName() {
+      return this.name;
+    }
+
+    /**
+     * Returns the content hash.
+     *
+     * @return the content hash; never {@code null}
+     */
+    public String getContentHash() {
+      return this.contentHash;
+    }
+
+    /**
+     * Returns a {@link String} representation of this {@link Entry}.
+     *
+     * @return a non-{@code null} {@link String}
+     */
+    @Override
+    public String toString() {
+      return this.include + " -> " + this.name + " (" + this.contentHash + ")";
+    }
+
+    /**
+     * Ensures the supplied field value is non-{@code null} and
+     * contains no tabs or line breaks, and returns it.
+     *
+     * @param fieldName the name of the field, for error reporting
+     *
+     * @param value the value to check
+     *
+     * @return {@code value}
+     *
+     * @exception IllegalArgumentException if {@code value} is {@code
+     * null} or contains a tab or line break
+     */
+    private static final String checkField(final String fieldName, final String value) {
+      if (value == null) {
+        throw new IllegalArgumentException(fieldName, new NullPointerException(fieldName));
+      }
+      if (value.indexOf('\t') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+        throw new IllegalArgumentException(fieldName + ": " + value);
+      }
+      return value;
+    }
+
+  }
+
+}
@@ -0,0 +1,381 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URL;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * A {@link ResourceAccessor} that resolves the {@code include}s of
+ * an assembled changelog using a build-time {@link IncludeIndex}
+ * instead of the build machine's {@link URL}s.
+ *
+ * <p>Each indexed {@code include} is resolved to the classpath
+ * resource that has the indexed classpath-relative name, which the
+ * build guarantees is unique among the changelog's {@code include}s,
+ * so a lookup is one hash table probe followed by one {@link
+ * ClassLoader#getResource(String)} call.  Names that are not indexed,
+ * such as the assembled changelog itself or Liquibase's own XSDs, are
+ * looked up as ordinary classpath resources.</p>
+ *
+ * <p>If {@linkplain #isVerify() verification} is enabled, the first
+ * time each indexed resource is resolved it is also hashed and
+ * checked against the indexed content hash.  Resources that are never
+ * resolved are never hashed.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see IncludeIndex
+ */
+public class IndexedResourceAccessor implements ResourceAccessor {
+
+  /**
+   * The conventional classpath resource name of an {@link
+   * IncludeIndex}: {@value}.
+   */
+  public static final String DEFAULT_INDEX_RESOURCE_NAME = "META-INF/liquibase/changelog.idx";
+
+  /**
+   * The {@link IncludeIndex} consulted by this {@link
+   * IndexedResourceAccessor}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final IncludeIndex index;
+
+  /**
+   * The {@link ClassLoader} used to find resources.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ClassLoader loader;
+
+  /**
+   * Whether resolved resources are checked against their indexed
+   * content hashes.
+   *
+   * @see #isVerify()
+   */
+  private final boolean verify;
+
+  /**
+   * The {@code include}s whose resources have already been verified.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Set<String> verifiedIncludes;
+
+  /**
+   * Creates a new {@link IndexedResourceAccessor} that does not
+   * {@linkplain #isVerify() verify} content hashes.
+   *
+   * @param index the {@link IncludeIndex} to consult; must not be
+   * {@code null}
+   *
+   * @param loader the {@link ClassLoader} to use to find resources;
+   * may be {@code null} in which case the {@linkplain
+   * Thread#getContextClassLoader() context classloader}, or, failing
+   * that, the {@link ClassLoader} that loaded this class will be used
+   * instead
+   *
+   * @exception IllegalArgumentException if {@code index} is {@code
+   * null}
+   *
+   * @see #IndexedResourceAccessor(IncludeIndex, ClassLoader, boolean)
+   */
+  public IndexedResourceAccessor(final IncludeIndex index, final ClassLoader loader) {
+    this(index, loader, false);
+  }
+
+  /**
+   * Creates a new {@link IndexedResourceAccessor}.
+   *
+   * @param index the {@link IncludeIndex} to consult; must not be
+   * {@code null}
+   *
+   * @param loader the {@link ClassLoader} to use to find resources;
+   * may be {@code null} in which case the {@linkplain
+   * Thread#getContextClassLoader() context classloader}, or, failing
+   * that, the {@link ClassLoader} that loaded this class will be used
+   * instead
+   *
+   * @param verify whether each indexed resource should be checked
+   * against its indexed content hash the first time it is resolved
+   *
+   * @exception IllegalArgumentException if {@code index} is {@code
+   * null}
+   */
+  public IndexedResourceAccessor(final IncludeIndex index, final ClassLoader loader, final boolean verify) {
+    super();
+    if (index == null) {
+      throw new IllegalArgumentException("index", new NullPointerException("index"));
+    }
+    this.index = index;
+    this.loader = defaultClassLoader(loader);
+    this.verify = verify;
+    this.verifiedIncludes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  }
+
+  /**
+   * Creates a new {@link IndexedResourceAccessor} whose {@link
+   * IncludeIndex} is read from the classpath resource with the
+   * supplied name.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param indexResourceName the classpath resource name of the
+   * {@link IncludeIndex}; may be {@code null} in which case {@link
+   * #DEFAULT_INDEX_RESOURCE_NAME} will be used instead
+   *
+   * @param loader the {@link ClassLoader} to use; may be {@code
+   * null}
+   *
+   * @return a new {@link IndexedResourceAccessor}; never {@code null}
+   *
+   * @exception IOException if the index could not be found or read
+   *
+   * @see #IndexedResourceAccessor(IncludeIndex, ClassLoader)
+   */
+  public static final IndexedResourceAccessor load(final String indexResourceName, final ClassLoader loader) throws IOException {
+    return load(indexResourceName, loader, false);
+  }
+
+  /**
+   * Creates a new {@link IndexedResourceAccessor} whose {@link
+   * IncludeIndex} is read from the classpath resource with the
+   * supplied name.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param indexResourceName the classpath resource name of the
+   * {@link IncludeIndex}; may be {@code null} in which case {@link
+   * #DEFAULT_INDEX_RESOURCE_NAME} will be used instead
+   *
+   * @param loader the {@link ClassLoader} to use; may be {@code
+   * null}
+   *
+   * @param verify whether each indexed resource should be checked
+   * against its indexed content hash the first time it is resolved
+   *
+   * @return a new {@link IndexedResourceAccessor}; never {@code null}
+   *
+   * @exception IOException if the index could not be found or read
+   *
+   * @see #IndexedResourceAccessor(IncludeIndex, ClassLoader, boolean)
+   */
+  public static final IndexedResourceAccessor load(String indexResourceName, final ClassLoader loader, final boolean verify) throws IOException {
+    if (indexResourceName == null) {
+      indexResourceName = DEFAULT_INDEX_RESOURCE_NAME;
+    }
+    final ClassLoader classLoader = defaultClassLoader(loader);
+    final InputStream stream = classLoader.getResourceAsStream(indexResourceName);
+    if (stream == null) {
+      throw new IOException("Include index not found: " + indexResourceName);
+    }
+    final IncludeIndex index;
+    try {
+      index = IncludeIndex.read(stream);
+    } finally {
+      try {
+        stream.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    return new IndexedResourceAccessor(index, classLoader, verify);
+  }
+
+  /**
+   * Returns the supplied {@link ClassLoader} if it is non-{@code
+   * null}, or else the {@linkplain Thread#getContextClassLoader()
+   * context classloader}, or else the {@link ClassLoader} that loaded
+   * this class.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param loader a {@link ClassLoader}; may be {@code null}
+   *
+   * @return a non-{@code null} {@link ClassLoader}
+   */
+  private static final ClassLoader defaultClassLoader(final ClassLoader loader) {
+    ClassLoader returnValue = loader;
+    if (returnValue == null) {
+      returnValue = Thread.currentThread().getContextClassLoader();
+      if (returnValue == null) {
+        returnValue = IndexedResourceAccessor.class.getClassLoader();
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@link IncludeIndex} consulted by this {@link
+   * IndexedResourceAccessor}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link IncludeIndex}
+   */
+  public IncludeIndex getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Returns {@code true} if each indexed resource is checked against
+   * its indexed content hash the first time it is resolved.
+   *
+   * @return {@code true} if content hashes are verified
+   */
+  public boolean isVerify() {
+    return this.verify;
+  }
+
+  /**
+   * Returns an {@link InputStream} for the supplied {@code include}
+   * or resource name.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param file the {@code include} or resource name; may be {@code
+   * null} in which case {@code null} will be returned
+   *
+   * @return an {@link InputStream}, or {@code null} if {@code file}
+   * is neither indexed nor a classpath resource
+   *
+   * @exception IOException if {@code file} is indexed but no
+   * classpath resource with the indexed name could be found, or its
+   * contents failed {@linkplain #isVerify() verification}, or if an
+   * input/output error occurs
+   *
+   * @see #getURL(IncludeIndex.Entry)
+   */
+  @Override
+  public InputStream getResourceAsStream(final String file) throws IOException {
+    InputStream returnValue = null;
+    if (file != null) {
+      final IncludeIndex.Entry entry = this.index.get(file);
+      if (entry == null) {
+        returnValue = this.loader.getResourceAsStream(file);
+      } else {
+        returnValue = this.getURL(entry).openStream();
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@link URL} of the classpath resource described by
+   * the supplied {@link IncludeIndex.Entry}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param entry the {@link IncludeIndex.Entry}; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link URL}
+   *
+   * @exception IllegalArgumentException if {@code entry} is {@code
+   * null}
+   *
+   * @exception IOException if no classpath resource with the entry's
+   * name could be found, or its contents failed {@linkplain
+   * #isVerify() verification}, or if an input/output error occurs
+   */
+  public URL getURL(final IncludeIndex.Entry entry) throws IOException {
+    if (entry == null) {
+      throw new IllegalArgumentException("entry", new NullPointerException("entry"));
+    }
+    final URL returnValue = this.loader.getResource(entry.getName());
+    if (returnValue == null) {
+      throw new IOException("No classpath resource named " + entry.getName() + " was found for include " + entry.getInclude());
+    }
+    if (this.verify && !this.verifiedIncludes.contains(entry.getInclude())) {
+      final String contentHash = Digests.hash(returnValue);
+      if (!contentHash.equals(entry.getContentHash())) {
+        throw new IOException("The classpath resource " + returnValue + " found for include " + entry.getInclude() + " has content hash " + contentHash + " but " + entry.getContentHash() + " was expected");
+      }
+      this.verifiedIncludes.add(entry.getInclude());
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns an {@link Enumeration} of {@link URL}s representing
+   * classpath resources with the supplied name.
+   *
+   * @param packageName the name of the resources to find; must not
+   * be {@code null}
+   *
+   * @return an {@link Enumeration} of {@link URL}s
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @see ClassLoader#getResources(String)
+   */
+  @Override
+  public Enumeration<URL> getResources(final String packageName) throws IOException {
+    return this.loader.getResources(packageName);
+  }
+
+  /**
+   * Returns the {@link ClassLoader} used by this {@link
+   * IndexedResourceAccessor}.
+   *
+   * @return a non-{@code null} {@link ClassLoader}
+   */
+  @Override
+  public ClassLoader toClassLoader() {
+    return this.loader;
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * IndexedResourceAccessor}.
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public String toString() {
+    return this.getClass().getName() + "(" + this.index.size() + " indexed includes, " + this.loader + ")";
+  }
+
+}
@@ -0,0 +1,372 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Scans jar files and directories for changelogs.
+ *
+ * <p>Scans of jar files may be performed ahead of time, in the
+ * background, and stored in a {@link ChangeLogScanCache} so that a
+ * later scan of the same jar file can simply read the result.</p>
+ *
+ * <p>Resource names may be {@linkplain ResourceNamePatterns
+ * patterns}; each jar file's central directory, or each directory
+ * tree, is then read once however many names there are.</p>
+ *
+ * <p>This class is safe for use by multiple threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public final class JarChangeLogScanner {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * A {@link Comparator} that compares {@link ZipEntry} instances by
+   * {@linkplain ResourceNamePatterns#compareNatural(String, String)
+   * natural order} of their names.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final Comparator<ZipEntry> NATURAL_ENTRY_ORDER = new Comparator<ZipEntry>() {
+      @Override
+      public final int compare(final ZipEntry a, final ZipEntry b) {
+        return ResourceNamePatterns.compareNatural(a.getName(), b.getName());
+      }
+    };
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link JarChangeLogScanner}.
+   */
+  private JarChangeLogScanner() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Scans the supplied jar file for entries with the supplied
+   * resource names and returns a {@link Map} with an entry for every
+   * supplied name and every entry found; names that are not present
+   * in the jar file, and {@linkplain ResourceNamePatterns patterns},
+   * are mapped to {@code null}.
+   *
+   * <p>If any name is a pattern, the jar file's entries are read
+   * once, in a single pass, and matching entries are added in
+   * {@linkplain ResourceNamePatterns#compareNatural(String, String)
+   * natural order}; otherwise each name is simply looked up.</p>
+   *
+   * <p>A file that is not a jar file is treated as one that contains
+   * none of the supplied names, as a {@link java.net.URLClassLoader}
+   * would treat it.</p>
+   *
+   * <p>No entry is read: the {@linkplain
+   * ChangeLogResource#getContentHash() content hash} of each {@link
+   * ChangeLogResource} that is returned is computed only if it is
+   * asked for.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param jarFile the jar file to scan; must not be {@code null}
+   *
+   * @param names the classpath-relative resource names to look for;
+   * must not be {@code null}
+   *
+   * @return an immutable, non-{@code null} {@link Map} of {@link
+   * ChangeLogResource}s indexed by resource name
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   *
+   * @exception IOException if the jar file could not be read
+   */
+  public static Map<String, ChangeLogResource> scan(final File jarFile, final Collection<? extends String> names) throws IOException {
+    if (jarFile == null) {
+      throw new IllegalArgumentException("jarFile", new NullPointerException("jarFile"));
+    }
+    if (names == null) {
+      throw new IllegalArgumentException("names", new NullPointerException("names"));
+    }
+    final Map<String, ChangeLogResource> returnValue = new LinkedHashMap<String, ChangeLogResource>();
+    final String base = String.format("jar:%s!/", jarFile.toURI().toURL().toExternalForm());
+    final JarFile jar;
+    try {
+      jar = new JarFile(jarFile);
+    } catch (final ZipException notAJarFile) {
+      // Behave as a URLClassLoader would: a classpath entry that is
+      // not a jar file simply contains no resources.
+      for (final String name : names) {
+        if (name != null) {
+          returnValue.put(name, null);
+        }
+      }
+      return Collections.unmodifiableMap(returnValue);
+    }
+    try {
+      final ResourceNamePatterns patterns = ResourceNamePatterns.of(names);
+      if (patterns.hasPatterns()) {
+        final List<ZipEntry> matches = new ArrayList<ZipEntry>();
+        final Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+          final ZipEntry entry = entries.nextElement();
+          if (entry != null && !entry.isDirectory() && patterns.indexOf(entry.getName()) >= 0) {
+            matches.add(entry);
+          }
+        }
+        Collections.sort(matches, NATURAL_ENTRY_ORDER);
+        for (final ZipEntry entry : matches) {
+          returnValue.put(entry.getName(), newChangeLogResource(entry, base));
+        }
+      } else {
+        for (final String name : names) {
+          if (name != null) {
+            ChangeLogResource resource = null;
+            final ZipEntry entry = jar.getEntry(name);
+            if (entry != null && !entry.isDirectory()) {
+              resource = newChangeLogResource(entry, base);
+            }
+            returnValue.put(name, resource);
+          }
+        }
+      }
+    } finally {
+      try {
+        jar.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+    // Record every name, found or not, so that a stored scan is
+    // known to have covered it.
+    for (final String name : names) {
+      if (name != null && !returnValue.containsKey(name)) {
+        returnValue.put(name, null);
+      }
+    }
+    return Collections.unmodifiableMap(returnValue);
+  }
+
+  /**
+   * Scans the supplied directory, whose contents appear on the
+   * classpath beneath the supplied target path, for files with the
+   * supplied resource names and returns a {@link Map} with an entry
+   * for every file found.
+   *
+   * <p>If any name is a {@linkplain ResourceNamePatterns pattern},
+   * the directory tree is walked once, skipping subdirectories that
+   * {@linkplain ResourceNamePatterns#canMatchBeneath(String) no name
+   * can reach}; otherwise each name is simply looked up.  The walk is
+   * serial: it is pruned to the directories the patterns can reach,
+   * and reads only directory entries, so on the build output and
+   * resource directories this is used for it is bound by the file
+   * system's metadata cache rather than by a single thread.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param directory the directory to scan; must not be {@code null}
+   *
+   * @param targetPath the classpath-relative directory beneath which
+   * the directory's contents appear, such as a Maven resource's
+   * {@code targetPath}; may be {@code null} if they appear at the
+   * root of the classpath
+   *
+   * @param names the classpath-relative resource names to look for;
+   * must not be {@code null}
+   *
+   * @return an immutable, non-{@code null} {@link Map} of {@link
+   * ChangeLogResource}s indexed by resource name
+   *
+   * @exception IllegalArgumentException if {@code directory} or
+   * {@code names} is {@code null}
+   *
+   * @exception IOException if the directory could not be read
+   */
+  public static Map<String, ChangeLogResource> scanDirectory(final File directory, final String targetPath, final Collection<? extends String> names) throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory", new NullPointerException("directory"));
+    }
+    if (names == null) {
+      throw new IllegalArgumentException("names", new NullPointerException("names"));
+    }
+    final Map<String, ChangeLogResource> returnValue = new LinkedHashMap<String, ChangeLogResource>();
+    final String prefix = toPrefix(targetPath);
+    final ResourceNamePatterns patterns = ResourceNamePatterns.of(names);
+    if (!directory.isDirectory()) {
+      // Nothing to scan.
+    } else if (patterns.hasPatterns()) {
+      if (prefix.isEmpty() || patterns.canMatchBeneath(prefix)) {
+        final Path root = directory.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public final FileVisitResult preVisitDirectory(final Path path, final BasicFileAttributes attributes) {
+              if (!path.equals(root) && !patterns.canMatchBeneath(prefix + relativize(root, path) + "/")) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public final FileVisitResult visitFile(final Path path, final BasicFileAttributes attributes) throws IOException {
+              if (attributes.isRegularFile()) {
+                final String name = prefix + relativize(root, path);
+                if (patterns.indexOf(name) >= 0) {
+                  returnValue.put(name, new ChangeLogResource(path.toFile().toURI().toURL(), name));
+                }
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public final FileVisitResult visitFileFailed(final Path path, final IOException e) {
+              // Behave as a URLClassLoader would: unreadable files
+              // simply are not there.
+              return FileVisitResult.CONTINUE;
+            }
+          });
+      }
+    } else {
+      for (final String name : names) {
+        if (name != null && name.startsWith(prefix)) {
+          final File file = new File(directory, name.substring(prefix.length()));
+          if (file.isFile()) {
+            returnValue.put(name, new ChangeLogResource(file.toURI().toURL(), name));
+          }
+        }
+      }
+    }
+    return Collections.unmodifiableMap(returnValue);
+  }
+
+  /**
+   * Creates a {@link ChangeLogResource} for the supplied jar file
+   * entry without reading it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param entry the entry; must not be {@code null}
+   *
+   * @param base the {@link URL} of the jar file's root, as a {@link
+   * String} ending with {@code !/}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link ChangeLogResource}
+   *
+   * @exception MalformedURLException if a {@link URL} could not be
+   * created
+   */
+  private static final ChangeLogResource newChangeLogResource(final ZipEntry entry, final String base) throws MalformedURLException {
+    assert entry != null;
+    assert base != null;
+    final String name = entry.getName();
+    return new ChangeLogResource(new URL(base + name), name);
+  }
+
+  /**
+   * Returns the supplied classpath-relative target path as a prefix
+   * of resource names: without a leading {@code /}, and with a
+   * trailing {@code /} unless it is empty.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param targetPath the target path; may be {@code null}
+   *
+   * @return a non-{@code null} prefix
+   */
+  private static final String toPrefix(final String targetPath) {
+    String returnValue = targetPath == null ? "" : targetPath.replace('\\', '/');
+    while (returnValue.startsWith("/")) {
+      returnValue = returnValue.substring(1);
+    }
+    while (returnValue.endsWith("/")) {
+      returnValue = returnValue.substring(0, returnValue.length() - 1);
+    }
+    if (!returnValue.isEmpty()) {
+      returnValue = returnValue + "/";
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the supplied {@link Path} relative to the supplied root
+   * as a {@code /}-separated {@link String}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param root the root; must not be {@code null}
+   *
+   * @param path a {@link Path} beneath {@code root}; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} relative name
+   */
+  private static final String relativize(final Path root, final Path path) {
+    return root.relativize(path).toString().replace(File.separatorChar, '/');
+  }
+
+}
@@ -0,0 +1,425 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.channels.FileChannel;
+
+import java.security.MessageDigest;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import liquibase.Liquibase;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.database.Database;
+
+import liquibase.exception.LiquibaseException;
+
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * A cache of file-based embedded <a
+ * href="http://www.h2database.com/">H2</a> databases to which a
+ * changelog has already been applied, keyed by a hash of the
+ * changelog's contents.
+ *
+ * <p>A {@linkplain #computeKey(DatabaseChangeLog, String) key} is
+ * derived from the identity, checksum, contexts, {@code dbms} and
+ * rerun settings of every changeset, so any change that Liquibase
+ * would act upon yields a new key, while reformatting a changelog
+ * does not.  The first time a key is seen the changelog is applied
+ * to a new database in a temporary directory, which is then renamed
+ * into place so that concurrent builds never see a partially
+ * migrated database.  Callers {@linkplain #copy(File, File) copy} a
+ * cached database before using it, so the cached copy is never
+ * modified.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see EmbeddedDatabases
+ */
+public class MigratedDatabaseCache {
+
+  /**
+   * The name of the H2 database within each cached directory.
+   */
+  public static final String DATABASE_NAME = "database";
+
+  /**
+   * The directory beneath which cached databases are stored, one
+   * directory per key.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final File cacheDirectory;
+
+  /**
+   * The <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders; may be
+   * {@code null}.
+   */
+  private Properties changeLogParameters;
+
+  /**
+   * Creates a new {@link MigratedDatabaseCache}.
+   *
+   * @param cacheDirectory the directory beneath which cached
+   * databases are stored; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code cacheDirectory} is
+   * {@code null}
+   */
+  public MigratedDatabaseCache(final File cacheDirectory) {
+    super();
+    if (cacheDirectory == null) {
+      throw new IllegalArgumentException("cacheDirectory", new NullPointerException("cacheDirectory"));
+    }
+    this.cacheDirectory = cacheDirectory;
+  }
+
+  /**
+   * Returns the directory beneath which cached databases are stored.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link File}
+   */
+  public File getCacheDirectory() {
+    return this.cacheDirectory;
+  }
+
+  /**
+   * Returns the <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the changelog parameters, or {@code null}
+   */
+  public Properties getChangeLogParameters() {
+    return this.changeLogParameters;
+  }
+
+  /**
+   * Sets the <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders.
+   *
+   * @param changeLogParameters the changelog parameters; may be
+   * {@code null}
+   */
+  public void setChangeLogParameters(final Properties changeLogParameters) {
+    this.changeLogParameters = changeLogParameters;
+  }
+
+  /**
+   * Returns a hexadecimal key identifying the database that results
+   * from applying the supplied {@link DatabaseChangeLog} with the
+   * supplied contexts.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeLog the parsed changelog; must not be {@code null}
+   *
+   * @param contexts the comma-separated Liquibase contexts that will
+   * be applied; may be {@code null}
+   *
+   * @return a non-{@code null} key
+   *
+   * @exception IllegalArgumentException if {@code changeLog} is
+   * {@code null}
+   */
+  public String computeKey(final DatabaseChangeLog changeLog, final String contexts) {
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    final MessageDigest digest = Digests.newMessageDigest();
+    update(digest, contexts == null ? "" : new TreeSet<String>(ContextChangeSetFilter.split(contexts.toLowerCase())).toString());
+    final List<ChangeSet> changeSets = changeLog.getChangeSets();
+    if (changeSets != null) {
+      for (final ChangeSet changeSet : changeSets) {
+        if (changeSet != null) {
+          update(digest, changeSet.getFilePath());
+          update(digest, changeSet.getId());
+          update(digest, changeSet.getAuthor());
+          update(digest, String.valueOf(changeSet.generateCheckSum()));
+          update(digest, sorted(changeSet.getContexts()));
+          update(digest, sorted(changeSet.getDbmsSet()));
+          update(digest, changeSet.isAlwaysRun() + "," + changeSet.isRunOnChange());
+        }
+      }
+    }
+    return Digests.toHexString(digest.digest());
+  }
+
+  /**
+   * Returns the cached database directory for the supplied key, or
+   * {@code null} if there is none.
+   *
+   * @param key the key; must not be {@code null}
+   *
+   * @return the directory, or {@code null}
+   *
+   * @exception IllegalArgumentException if {@code key} is {@code
+   * null}
+   */
+  public File get(final String key) {
+    if (key == null) {
+      throw new IllegalArgumentException("key", new NullPointerException("key"));
+    }
+    final File directory = new File(this.cacheDirectory, key);
+    return directory.isDirectory() ? directory : null;
+  }
+
+  /**
+   * Applies the supplied changelog to a new database and caches it
+   * under the supplied key, returning the cached database directory.
+   *
+   * <p>If another process caches a database under the same key first,
+   * its database is kept and the new one is discarded.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param key the key, as returned by {@link
+   * #computeKey(DatabaseChangeLog, String)}; must not be {@code null}
+   *
+   * @param changeLog the name of the changelog, as understood by the
+   * supplied {@link ResourceAccessor}; must not be {@code null}
+   *
+   * @param resourceAccessor the {@link ResourceAccessor} used to read
+   * the changelog; must not be {@code null}
+   *
+   * @param contexts the comma-separated Liquibase contexts to apply;
+   * may be {@code null}
+   *
+   * @param user the database user to create; may be {@code null}
+   *
+   * @param password the password of {@code user}; may be {@code null}
+   *
+   * @return the non-{@code null} cached database directory
+   *
+   * @exception IllegalArgumentException if {@code key}, {@code
+   * changeLog} or {@code resourceAccessor} is {@code null}
+   *
+   * @exception LiquibaseException if the changelog could not be
+   * applied
+   *
+   * @exception IOException if the database could not be cached
+   */
+  public File put(final String key, final String changeLog, final ResourceAccessor resourceAccessor, final String contexts, final String user, final String password) throws LiquibaseException, IOException {
+    if (key == null) {
+      throw new IllegalArgumentException("key", new NullPointerException("key"));
+    }
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    if (resourceAccessor == null) {
+      throw new IllegalArgumentException("resourceAccessor", new NullPointerException("resourceAccessor"));
+    }
+    if (!this.cacheDirectory.exists() && !this.cacheDirectory.mkdirs()) {
+      throw new IOException("Could not create directory " + this.cacheDirectory);
+    }
+    final File temporaryDirectory = new File(this.cacheDirectory, key + ".tmp-" + UUID.randomUUID());
+    if (!temporaryDirectory.mkdirs()) {
+      throw new IOException("Could not create directory " + temporaryDirectory);
+    }
+    try {
+      final Database database = EmbeddedDatabases.open(toUrl(temporaryDirectory), user, password, null);
+      try {
+        final Liquibase liquibase = new Liquibase(changeLog, resourceAccessor, database);
+        final Properties changeLogParameters = this.getChangeLogParameters();
+        if (changeLogParameters != null) {
+          for (final String name : changeLogParameters.stringPropertyNames()) {
+            liquibase.setChangeLogParameter(name, changeLogParameters.getProperty(name));
+          }
+        }
+        liquibase.update(contexts);
+      } finally {
+        EmbeddedDatabases.closeQuietly(database);
+      }
+      final File directory = new File(this.cacheDirectory, key);
+      if (!temporaryDirectory.renameTo(directory) && !directory.isDirectory()) {
+        throw new IOException("Could not rename " + temporaryDirectory + " to " + directory);
+      }
+      return directory;
+    } finally {
+      delete(temporaryDirectory);
+    }
+  }
+
+  /**
+   * Returns the H2 JDBC URL of the database in the supplied
+   * directory.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param directory the directory; must not be {@code null}
+   *
+   * @return a non-{@code null} JDBC URL
+   *
+   * @exception IllegalArgumentException if {@code directory} is
+   * {@code null}
+   */
+  public static final String toUrl(final File directory) {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory", new NullPointerException("directory"));
+    }
+    return "jdbc:h2:file:" + new File(directory, DATABASE_NAME).getAbsolutePath().replace('\\', '/');
+  }
+
+  /**
+   * Replaces the contents of the supplied target directory with a
+   * copy of the database files in the supplied cached database
+   * directory.
+   *
+   * <p>Files are copied with {@link FileChannel#transferTo(long,
+   * long, java.nio.channels.WritableByteChannel)}, which lets the
+   * operating system copy them without passing their contents through
+   * the Java heap.  H2 lock files are not copied.</p>
+   *
+   * @param cachedDirectory the cached database directory; must not
+   * be {@code null}
+   *
+   * @param targetDirectory the directory to copy to; must not be
+   * {@code null}
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   *
+   * @exception IOException if the files could not be copied
+   */
+  public static final void copy(final File cachedDirectory, final File targetDirectory) throws IOException {
+    if (cachedDirectory == null) {
+      throw new IllegalArgumentException("cachedDirectory", new NullPointerException("cachedDirectory"));
+    }
+    if (targetDirectory == null) {
+      throw new IllegalArgumentException("targetDirectory", new NullPointerException("targetDirectory"));
+    }
+    delete(targetDirectory);
+    if (!targetDirectory.mkdirs()) {
+      throw new IOException("Could not create directory " + targetDirectory);
+    }
+    final File[] files = cachedDirectory.listFiles();
+    if (files == null) {
+      throw new IOException("Could not list " + cachedDirectory);
+    }
+    for (final File file : files) {
+      if (file.isFile() && !file.getName().endsWith(".lock.db")) {
+        final FileChannel in = new FileInputStream(file).getChannel();
+        try {
+          final FileChannel out = new FileOutputStream(new File(targetDirectory, file.getName())).getChannel();
+          try {
+            final long size = in.size();
+            long position = 0L;
+            while (position < size) {
+              position += in.transferTo(position, size - position, out);
+            }
+          } finally {
+            out.close();
+          }
+        } finally {
+          try {
+            in.close();
+          } catch (final IOException nothingWeCanDo) {
+
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes the supplied file or directory tree, if it exists.
+   *
+   * @param file the file or directory; must not be {@code null}
+   *
+   * @exception IOException if it could not be deleted
+   */
+  private static final void delete(final File file) throws IOException {
+    assert file != null;
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Could not delete " + file);
+    }
+  }
+
+  /**
+   * Returns the supplied {@link Collection} as a sorted {@link
+   * String}.
+   *
+   * @param collection the {@link Collection}; may be {@code null}
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  private static final String sorted(final Collection<String> collection) {
+    if (collection == null) {
+      return String.valueOf(Collections.emptySet());
+    }
+    return new TreeSet<String>(collection).toString();
+  }
+
+  /**
+   * Updates the supplied {@link MessageDigest} with the supplied
+   * {@link String} followed by a separator.
+   *
+   * @param digest the {@link MessageDigest}; must not be {@code null}
+   *
+   * @param value the value; may be {@code null}
+   */
+  private static final void update(final MessageDigest digest, final String value) {
+    assert digest != null;
+    try {
+      digest.update(String.valueOf(value).getBytes("UTF-8"));
+    } catch (final UnsupportedEncodingException utf8IsAlwaysSupported) {
+      throw new IllegalStateException(utf8IsAlwaysSupported);
+    }
+    digest.update((byte)0);
+  }
+
+}
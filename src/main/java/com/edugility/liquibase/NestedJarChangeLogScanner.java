@@ -0,0 +1,1003 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.jar.JarFile;
+
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Scans the jar files nested inside a jar file, such as the {@code
+ * BOOT-INF/lib/*.jar} entries of a repackaged "fat" jar, for
+ * changelogs, without extracting anything to disk.
+ *
+ * <h3>Scanning</h3>
+ *
+ * <p>The outer jar file's central directory is read to locate the
+ * nested jar files.  A nested jar file that is stored uncompressed,
+ * as repackaging tools normally store them, occupies a contiguous
+ * region of the outer file, so its own central directory and
+ * entries are read in place with positional reads.  A nested jar
+ * file that is compressed is instead streamed through an
+ * inflater.</p>
+ *
+ * <h3>{@link URL}s</h3>
+ *
+ * <p>A changelog found this way is identified by a {@link URL} of the
+ * form
+ * <code>jar:file:/<i>outer</i>.jar!/<i>nested</i>.jar!/<i>name</i></code>.
+ * The JDK's own {@code jar:} handler cannot open such {@link URL}s,
+ * so those {@linkplain #newURL(String) created by this class} carry
+ * a handler of their own that reads them the same way they were
+ * scanned; {@link URLResourceAccessor} creates them on demand.</p>
+ *
+ * <p>Only one level of nesting is supported, as are only archives
+ * without ZIP64 extensions; ZIP64 outer archives are scanned through
+ * a {@link JarFile} instead.</p>
+ *
+ * <p>This class is safe for use by multiple threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public final class NestedJarChangeLogScanner {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The separator between an archive and the name of one of its
+   * entries in a {@code jar:} {@link URL}.
+   */
+  public static final String SEPARATOR = "!/";
+
+  /**
+   * The signature of a ZIP end of central directory record.
+   */
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+  /**
+   * The signature of a ZIP central directory file header.
+   */
+  private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+
+  /**
+   * The signature of a ZIP local file header.
+   */
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+  /**
+   * The length of a ZIP end of central directory record without its
+   * comment.
+   */
+  private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+
+  /**
+   * The length of a ZIP local file header without its variable
+   * fields.
+   */
+  private static final int LOCAL_HEADER_LENGTH = 30;
+
+  /**
+   * The {@link Charset} of entry names whose UTF-8 flag is set.
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The {@link Charset} used, as an approximation of IBM code page
+   * 437, for entry names whose UTF-8 flag is not set.
+   */
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+  /**
+   * A {@link Comparator} ordering {@link Entry} instances by
+   * {@linkplain ResourceNamePatterns#compareNatural(String, String)
+   * natural order} of their names.
+   */
+  private static final Comparator<Entry> NATURAL_ENTRY_ORDER = new Comparator<Entry>() {
+      @Override
+      public final int compare(final Entry a, final Entry b) {
+        return ResourceNamePatterns.compareNatural(a.name, b.name);
+      }
+    };
+
+  /**
+   * The {@link URLStreamHandler} for nested {@code jar:} {@link
+   * URL}s.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final URLStreamHandler HANDLER = new Handler();
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link NestedJarChangeLogScanner}.
+   */
+  private NestedJarChangeLogScanner() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Scans the jar files nested in the supplied jar file whose entry
+   * names match the supplied nested archive names for changelogs with
+   * the supplied resource names, and returns a {@link Map} of those
+   * found.
+   *
+   * <p>Keys are of the form
+   * <code><i>nested</i>.jar!/<i>name</i></code>; nested jar files
+   * are scanned in {@linkplain
+   * ResourceNamePatterns#compareNatural(String, String) natural
+   * order}, as are the changelogs within each.  Changelogs in nested
+   * jar files that are stored uncompressed are located in place and
+   * are not read; their {@linkplain
+   * ChangeLogResource#getContentHash() content hashes} are computed
+   * only if asked for.  A compressed nested jar file must be inflated
+   * to be scanned at all, so the content hashes of the changelogs
+   * within it are computed as they stream past, sparing a second
+   * inflation later.  A file that is not a jar file contains
+   * nothing.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param jarFile the outer jar file; must not be {@code null}
+   *
+   * @param nestedArchiveNames the names of, or {@linkplain
+   * ResourceNamePatterns patterns} matching, the entries of {@code
+   * jarFile} that are jar files to scan, such as {@code
+   * BOOT-INF/lib/*.jar}; must not be {@code null}
+   *
+   * @param names the names of, or patterns matching, the changelogs
+   * to look for in each nested jar file; must not be {@code null}
+   *
+   * @return an immutable, non-{@code null} {@link Map} of {@link
+   * ChangeLogResource}s
+   *
+   * @exception IllegalArgumentException if any parameter is {@code
+   * null}
+   *
+   * @exception IOException if the jar file could not be read
+   */
+  public static Map<String, ChangeLogResource> scan(final File jarFile, final Collection<? extends String> nestedArchiveNames, final Collection<? extends String> names) throws IOException {
+    if (jarFile == null) {
+      throw new IllegalArgumentException("jarFile", new NullPointerException("jarFile"));
+    }
+    if (nestedArchiveNames == null) {
+      throw new IllegalArgumentException("nestedArchiveNames", new NullPointerException("nestedArchiveNames"));
+    }
+    if (names == null) {
+      throw new IllegalArgumentException("names", new NullPointerException("names"));
+    }
+    final Map<String, ChangeLogResource> returnValue = new LinkedHashMap<String, ChangeLogResource>();
+    if (!nestedArchiveNames.isEmpty() && !names.isEmpty() && jarFile.isFile()) {
+      final ResourceNamePatterns archives = ResourceNamePatterns.of(nestedArchiveNames);
+      final ResourceNamePatterns patterns = ResourceNamePatterns.of(names);
+      final RandomAccessFile file = new RandomAccessFile(jarFile, "r");
+      try {
+        final FileChannel channel = file.getChannel();
+        List<Entry> outerEntries = null;
+        try {
+          outerEntries = readCentralDirectory(channel, 0L, channel.size());
+        } catch (final ZipException notReadableInPlace) {
+          outerEntries = null;
+        }
+        if (outerEntries == null) {
+          scanStreaming(jarFile, archives, patterns, returnValue);
+        } else {
+          for (final Entry outerEntry : select(outerEntries, archives)) {
+            if (outerEntry.method == ZipEntry.STORED) {
+              final long start = dataOffset(channel, 0L, outerEntry);
+              List<Entry> innerEntries = null;
+              try {
+                innerEntries = readCentralDirectory(channel, start, outerEntry.size);
+              } catch (final ZipException notReadableInPlace) {
+                innerEntries = null;
+              }
+              if (innerEntries == null) {
+                scanStreaming(jarFile, outerEntry.name, openEntry(channel, 0L, outerEntry), patterns, returnValue);
+              } else {
+                for (final Entry innerEntry : select(innerEntries, patterns)) {
+                  put(returnValue, jarFile, outerEntry.name, innerEntry.name, null);
+                }
+              }
+            } else {
+              scanStreaming(jarFile, outerEntry.name, openEntry(channel, 0L, outerEntry), patterns, returnValue);
+            }
+          }
+        }
+      } finally {
+        close(file);
+      }
+    }
+    return Collections.unmodifiableMap(returnValue);
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link String} is a {@code
+   * jar:} {@link URL} naming an entry of a nested jar file.
+   *
+   * @param url the {@link String} to test; may be {@code null}
+   *
+   * @return {@code true} if {@code url} names a nested entry
+   */
+  public static boolean isNested(final String url) {
+    if (url == null || !url.startsWith("jar:")) {
+      return false;
+    }
+    final int first = url.indexOf(SEPARATOR);
+    return first >= 0 && url.indexOf(SEPARATOR, first + SEPARATOR.length()) >= 0;
+  }
+
+  /**
+   * Returns a {@link URL} for the supplied {@linkplain
+   * #isNested(String) nested} {@code jar:} {@link URL} {@link String}
+   * that can be {@linkplain URL#openStream() opened}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param spec the {@link URL} {@link String}; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link URL}
+   *
+   * @exception MalformedURLException if {@code spec} is not a nested
+   * {@code jar:} {@link URL}
+   */
+  public static URL newURL(final String spec) throws MalformedURLException {
+    if (!isNested(spec)) {
+      throw new MalformedURLException("Not a nested jar URL: " + spec);
+    }
+    return new URL(null, spec, HANDLER);
+  }
+
+  /**
+   * Creates a {@link ChangeLogResource} for the supplied entry of the
+   * supplied nested jar file and adds it to the supplied {@link Map}.
+   *
+   * @param map the {@link Map}; must not be {@code null}
+   *
+   * @param jarFile the outer jar file; must not be {@code null}
+   *
+   * @param nestedName the name of the nested jar file; must not be
+   * {@code null}
+   *
+   * @param name the name of the entry; must not be {@code null}
+   *
+   * @param contentHash the content hash of the entry; may be {@code
+   * null} in which case it will be computed on first use
+   *
+   * @exception MalformedURLException if a {@link URL} could not be
+   * created
+   */
+  private static final void put(final Map<String, ChangeLogResource> map, final File jarFile, final String nestedName, final String name, final String contentHash) throws MalformedURLException {
+    final URL url = newURL("jar:" + jarFile.toURI().toURL().toExternalForm() + SEPARATOR + nestedName + SEPARATOR + name);
+    map.put(nestedName + SEPARATOR + name, new ChangeLogResource(url, name, contentHash));
+  }
+
+  /**
+   * Returns those of the supplied {@link Entry} instances that are
+   * not directories and match the supplied {@link
+   * ResourceNamePatterns}, in natural order.
+   *
+   * @param entries the {@link Entry} instances; must not be {@code
+   * null}
+   *
+   * @param patterns the {@link ResourceNamePatterns}; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link List}
+   */
+  private static final List<Entry> select(final List<Entry> entries, final ResourceNamePatterns patterns) {
+    final List<Entry> returnValue = new ArrayList<Entry>();
+    for (final Entry entry : entries) {
+      if (!entry.name.endsWith("/") && patterns.indexOf(entry.name) >= 0) {
+        returnValue.add(entry);
+      }
+    }
+    Collections.sort(returnValue, NATURAL_ENTRY_ORDER);
+    return returnValue;
+  }
+
+  /**
+   * Scans the supplied jar file through a {@link JarFile}, streaming
+   * each nested jar file.
+   *
+   * @param jarFile the outer jar file; must not be {@code null}
+   *
+   * @param archives the nested archive patterns; must not be {@code
+   * null}
+   *
+   * @param patterns the changelog patterns; must not be {@code null}
+   *
+   * @param map the {@link Map} to add to; must not be {@code null}
+   *
+   * @exception IOException if the jar file could not be read
+   */
+  private static final void scanStreaming(final File jarFile, final ResourceNamePatterns archives, final ResourceNamePatterns patterns, final Map<String, ChangeLogResource> map) throws IOException {
+    final JarFile jar;
+    try {
+      jar = new JarFile(jarFile);
+    } catch (final ZipException notAJarFile) {
+      return;
+    }
+    try {
+      final List<ZipEntry> nestedEntries = new ArrayList<ZipEntry>();
+      final Enumeration<? extends ZipEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        if (!entry.isDirectory() && archives.indexOf(entry.getName()) >= 0) {
+          nestedEntries.add(entry);
+        }
+      }
+      Collections.sort(nestedEntries, new Comparator<ZipEntry>() {
+          @Override
+          public final int compare(final ZipEntry a, final ZipEntry b) {
+            return ResourceNamePatterns.compareNatural(a.getName(), b.getName());
+          }
+        });
+      for (final ZipEntry entry : nestedEntries) {
+        scanStreaming(jarFile, entry.getName(), jar.getInputStream(entry), patterns, map);
+      }
+    } finally {
+      close(jar);
+    }
+  }
+
+  /**
+   * Scans the nested jar file whose contents the supplied {@link
+   * InputStream} reads, and closes it.
+   *
+   * @param jarFile the outer jar file; must not be {@code null}
+   *
+   * @param nestedName the name of the nested jar file; must not be
+   * {@code null}
+   *
+   * @param stream an {@link InputStream} reading the nested jar file;
+   * must not be {@code null}
+   *
+   * @param patterns the changelog patterns; must not be {@code null}
+   *
+   * @param map the {@link Map} to add to; must not be {@code null}
+   *
+   * @exception IOException if the nested jar file could not be read
+   */
+  private static final void scanStreaming(final File jarFile, final String nestedName, final InputStream stream, final ResourceNamePatterns patterns, final Map<String, ChangeLogResource> map) throws IOException {
+    final ZipInputStream zip = new ZipInputStream(stream);
+    try {
+      final Map<String, String> found = new LinkedHashMap<String, String>();
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        if (!entry.isDirectory() && patterns.indexOf(entry.getName()) >= 0) {
+          found.put(entry.getName(), Digests.hash(zip));
+        }
+      }
+      final List<String> sortedNames = new ArrayList<String>(found.keySet());
+      Collections.sort(sortedNames, ResourceNamePatterns.NATURAL_ORDER);
+      for (final String name : sortedNames) {
+        put(map, jarFile, nestedName, name, found.get(name));
+      }
+    } catch (final ZipException notAJarFile) {
+      // A nested entry that is not a jar file contains nothing.
+    } finally {
+      close(zip);
+    }
+  }
+
+  /**
+   * Reads the central directory of the ZIP archive occupying the
+   * supplied region of the supplied {@link FileChannel}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param channel the {@link FileChannel}; must not be {@code null}
+   *
+   * @param start the position of the archive within the channel
+   *
+   * @param length the length of the archive
+   *
+   * @return a non-{@code null} {@link List} of {@link Entry}
+   * instances, in central directory order
+   *
+   * @exception ZipException if the region does not hold a ZIP archive
+   * this class can read in place
+   *
+   * @exception IOException if the channel could not be read
+   */
+  private static final List<Entry> readCentralDirectory(final FileChannel channel, final long start, final long length) throws IOException {
+    if (length < END_OF_CENTRAL_DIRECTORY_LENGTH) {
+      throw new ZipException("Too short to be a zip file");
+    }
+    final int tailLength = (int)Math.min(length, END_OF_CENTRAL_DIRECTORY_LENGTH + 0xFFFF);
+    final ByteBuffer tail = read(channel, start + length - tailLength, tailLength);
+    int end = -1;
+    for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+      if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new ZipException("No end of central directory record");
+    }
+    final int count = tail.getShort(end + 10) & 0xFFFF;
+    final long size = tail.getInt(end + 12) & 0xFFFFFFFFL;
+    final long offset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+    if (count == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+      throw new ZipException("ZIP64 archives are not read in place");
+    }
+    if (offset + size > length) {
+      throw new ZipException("Central directory out of bounds");
+    }
+    final ByteBuffer directory = read(channel, start + offset, (int)size);
+    final List<Entry> returnValue = new ArrayList<Entry>(count);
+    int position = 0;
+    for (int i = 0; i < count; i++) {
+      if (position + 46 > size || directory.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+        throw new ZipException("Malformed central directory");
+      }
+      final int flags = directory.getShort(position + 8) & 0xFFFF;
+      final Entry entry = new Entry();
+      entry.method = directory.getShort(position + 10) & 0xFFFF;
+      entry.compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+      entry.size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+      final int nameLength = directory.getShort(position + 28) & 0xFFFF;
+      final int extraLength = directory.getShort(position + 30) & 0xFFFF;
+      final int commentLength = directory.getShort(position + 32) & 0xFFFF;
+      entry.localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+      if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.localHeaderOffset == 0xFFFFFFFFL) {
+        throw new ZipException("ZIP64 entries are not read in place");
+      }
+      final byte[] name = new byte[nameLength];
+      directory.position(position + 46);
+      directory.get(name);
+      entry.name = new String(name, (flags & 0x800) != 0 ? UTF_8 : ISO_8859_1);
+      returnValue.add(entry);
+      position += 46 + nameLength + extraLength + commentLength;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the position, within the supplied {@link FileChannel}, of
+   * the data of the supplied {@link Entry} of the archive starting at
+   * the supplied position.
+   *
+   * @param channel the {@link FileChannel}; must not be {@code null}
+   *
+   * @param start the position of the archive within the channel
+   *
+   * @param entry the {@link Entry}; must not be {@code null}
+   *
+   * @return the position of the entry's data
+   *
+   * @exception ZipException if the entry's local header is malformed
+   *
+   * @exception IOException if the channel could not be read
+   */
+  private static final long dataOffset(final FileChannel channel, final long start, final Entry entry) throws IOException {
+    final ByteBuffer header = read(channel, start + entry.localHeaderOffset, LOCAL_HEADER_LENGTH);
+    if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+      throw new ZipException("Malformed local header for " + entry.name);
+    }
+    return start + entry.localHeaderOffset + LOCAL_HEADER_LENGTH + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+  }
+
+  /**
+   * Returns an {@link InputStream} reading the uncompressed contents
+   * of the supplied {@link Entry} of the archive starting at the
+   * supplied position, in place.
+   *
+   * <p>The {@link InputStream} does not close the channel.</p>
+   *
+   * @param channel the {@link FileChannel}; must not be {@code null}
+   *
+   * @param start the position of the archive within the channel
+   *
+   * @param entry the {@link Entry}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link InputStream}
+   *
+   * @exception ZipException if the entry uses an unsupported
+   * compression method
+   *
+   * @exception IOException if the channel could not be read
+   */
+  private static final InputStream openEntry(final FileChannel channel, final long start, final Entry entry) throws IOException {
+    final long offset = dataOffset(channel, start, entry);
+    final InputStream returnValue;
+    if (entry.method == ZipEntry.STORED) {
+      returnValue = new ChannelInputStream(channel, offset, entry.size, false);
+    } else if (entry.method == ZipEntry.DEFLATED) {
+      final Inflater inflater = new Inflater(true);
+      returnValue = new InflaterInputStream(new ChannelInputStream(channel, offset, entry.compressedSize, true), inflater, 8192) {
+          @Override
+          public final void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              inflater.end();
+            }
+          }
+        };
+    } else {
+      throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Opens the supplied nested {@code jar:} {@link URL}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param url the {@link URL}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link InputStream}
+   *
+   * @exception IOException if the {@link URL} could not be opened
+   */
+  private static final InputStream open(final URL url) throws IOException {
+    final String spec = url.toExternalForm();
+    final int first = spec.indexOf(SEPARATOR);
+    final int second = spec.indexOf(SEPARATOR, first + SEPARATOR.length());
+    if (!isNested(spec)) {
+      throw new MalformedURLException("Not a nested jar URL: " + spec);
+    }
+    final File jarFile;
+    try {
+      jarFile = new File(URI.create(spec.substring("jar:".length(), first)));
+    } catch (final IllegalArgumentException e) {
+      throw (MalformedURLException)new MalformedURLException("Not a nested jar URL: " + spec).initCause(e);
+    }
+    final String nestedName = spec.substring(first + SEPARATOR.length(), second);
+    final String name = spec.substring(second + SEPARATOR.length());
+    final RandomAccessFile file = new RandomAccessFile(jarFile, "r");
+    boolean opened = false;
+    try {
+      final FileChannel channel = file.getChannel();
+      InputStream nested = null;
+      List<Entry> outerEntries = null;
+      try {
+        outerEntries = readCentralDirectory(channel, 0L, channel.size());
+      } catch (final ZipException notReadableInPlace) {
+        outerEntries = null;
+      }
+      if (outerEntries == null) {
+        close(file);
+        opened = true;
+        final JarFile jar = new JarFile(jarFile);
+        final ZipEntry entry = jar.getEntry(nestedName);
+        if (entry == null) {
+          close(jar);
+          throw new FileNotFoundException(spec);
+        }
+        return find(new ZipInputStream(jar.getInputStream(entry)), name, spec, jar);
+      }
+      final Entry outerEntry = find(outerEntries, nestedName, spec);
+      if (outerEntry.method == ZipEntry.STORED) {
+        final long start = dataOffset(channel, 0L, outerEntry);
+        List<Entry> innerEntries = null;
+        try {
+          innerEntries = readCentralDirectory(channel, start, outerEntry.size);
+        } catch (final ZipException notReadableInPlace) {
+          innerEntries = null;
+        }
+        if (innerEntries != null) {
+          nested = new ClosingInputStream(openEntry(channel, start, find(innerEntries, name, spec)), file);
+          opened = true;
+          return nested;
+        }
+      }
+      nested = find(new ZipInputStream(openEntry(channel, 0L, outerEntry)), name, spec, file);
+      opened = true;
+      return nested;
+    } finally {
+      if (!opened) {
+        close(file);
+      }
+    }
+  }
+
+  /**
+   * Returns the {@link Entry} with the supplied name.
+   *
+   * @param entries the {@link Entry} instances to search; must not be
+   * {@code null}
+   *
+   * @param name the name; must not be {@code null}
+   *
+   * @param spec the {@link URL} being opened, for error reporting;
+   * must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Entry}
+   *
+   * @exception FileNotFoundException if there is no such {@link
+   * Entry}
+   */
+  private static final Entry find(final List<Entry> entries, final String name, final String spec) throws FileNotFoundException {
+    for (final Entry entry : entries) {
+      if (name.equals(entry.name)) {
+        return entry;
+      }
+    }
+    throw new FileNotFoundException(spec);
+  }
+
+  /**
+   * Positions the supplied {@link ZipInputStream} at the entry with
+   * the supplied name and returns an {@link InputStream} reading it
+   * that, when closed, closes both the {@link ZipInputStream} and the
+   * supplied {@link Closeable}.
+   *
+   * @param zip the {@link ZipInputStream}; must not be {@code null}
+   *
+   * @param name the entry name; must not be {@code null}
+   *
+   * @param spec the {@link URL} being opened, for error reporting;
+   * must not be {@code null}
+   *
+   * @param resource the {@link Closeable} underlying {@code zip};
+   * must not be {@code null}
+   *
+   * @return a non-{@code null} {@link InputStream}
+   *
+   * @exception FileNotFoundException if there is no such entry
+   *
+   * @exception IOException if the stream could not be read
+   */
+  private static final InputStream find(final ZipInputStream zip, final String name, final String spec, final Closeable resource) throws IOException {
+    boolean found = false;
+    try {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        if (name.equals(entry.getName())) {
+          found = true;
+          return new ClosingInputStream(zip, resource);
+        }
+      }
+      throw new FileNotFoundException(spec);
+    } finally {
+      if (!found) {
+        close(zip);
+        close(resource);
+      }
+    }
+  }
+
+  /**
+   * Reads the supplied number of bytes at the supplied position of
+   * the supplied {@link FileChannel} into a new little-endian {@link
+   * ByteBuffer}.
+   *
+   * @param channel the {@link FileChannel}; must not be {@code null}
+   *
+   * @param position the position to read from
+   *
+   * @param length the number of bytes to read
+   *
+   * @return a non-{@code null}, little-endian {@link ByteBuffer}
+   *
+   * @exception EOFException if the channel ends first
+   *
+   * @exception IOException if the channel could not be read
+   */
+  private static final ByteBuffer read(final FileChannel channel, final long position, final int length) throws IOException {
+    final ByteBuffer returnValue = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (returnValue.hasRemaining()) {
+      if (channel.read(returnValue, position + returnValue.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    returnValue.clear();
+    return returnValue;
+  }
+
+  /**
+   * Closes the supplied {@link Closeable}, ignoring any {@link
+   * IOException}.
+   *
+   * @param closeable the {@link Closeable}; may be {@code null}
+   */
+  private static final void close(final Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A ZIP central directory entry.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Entry {
+
+    /**
+     * The entry's name.
+     */
+    private String name;
+
+    /**
+     * The entry's compression method.
+     */
+    private int method;
+
+    /**
+     * The entry's compressed size.
+     */
+    private long compressedSize;
+
+    /**
+     * The entry's uncompressed size.
+     */
+    private long size;
+
+    /**
+     * The position of the entry's local header relative to the start
+     * of its archive.
+     */
+    private long localHeaderOffset;
+
+    /**
+     * Creates a new {@link Entry}.
+     */
+    private Entry() {
+      super();
+    }
+
+  }
+
+  /**
+   * An {@link InputStream} reading a region of a {@link FileChannel}
+   * with positional reads, so that the channel's own position is
+   * neither used nor changed.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class ChannelInputStream extends InputStream {
+
+    /**
+     * The {@link FileChannel} to read.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The position of the next byte to read.
+     */
+    private long position;
+
+    /**
+     * The number of bytes of the region left to read.
+     */
+    private long remaining;
+
+    /**
+     * Whether a single extra zero byte is still to be supplied after
+     * the region, as an {@link Inflater} in {@code nowrap} mode
+     * requires.
+     */
+    private boolean pad;
+
+    /**
+     * Creates a new {@link ChannelInputStream}.
+     *
+     * @param channel the {@link FileChannel}; must not be {@code
+     * null}
+     *
+     * @param position the position of the region
+     *
+     * @param length the length of the region
+     *
+     * @param pad whether to supply an extra zero byte after the region
+     */
+    private ChannelInputStream(final FileChannel channel, final long position, final long length, final boolean pad) {
+      super();
+      this.channel = channel;
+      this.position = position;
+      this.remaining = length;
+      this.pad = pad;
+    }
+
+    @Override
+    public final int read() throws IOException {
+      final byte[] b = new byte[1];
+      final int read = this.read(b, 0, 1);
+      return read < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public final int read(final byte[] b, final int offset, final int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (this.remaining <= 0L) {
+        if (this.pad) {
+          this.pad = false;
+          b[offset] = 0;
+          return 1;
+        }
+        return -1;
+      }
+      final int read = this.channel.read(ByteBuffer.wrap(b, offset, (int)Math.min(length, this.remaining)), this.position);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      this.position += read;
+      this.remaining -= read;
+      return read;
+    }
+
+    @Override
+    public final int available() {
+      return (int)Math.min(Integer.MAX_VALUE, this.remaining);
+    }
+
+  }
+
+  /**
+   * A {@link FilterInputStream} that closes another {@link Closeable}
+   * when it is closed.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class ClosingInputStream extends FilterInputStream {
+
+    /**
+     * The {@link Closeable} to close.
+     */
+    private final Closeable resource;
+
+    /**
+     * Creates a new {@link ClosingInputStream}.
+     *
+     * @param in the {@link InputStream} to read; must not be {@code
+     * null}
+     *
+     * @param resource the {@link Closeable} to close; must not be
+     * {@code null}
+     */
+    private ClosingInputStream(final InputStream in, final Closeable resource) {
+      super(in);
+      this.resource = resource;
+    }
+
+    @Override
+    public final void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        NestedJarChangeLogScanner.close(this.resource);
+      }
+    }
+
+  }
+
+  /**
+   * The {@link URLStreamHandler} for nested {@code jar:} {@link
+   * URL}s.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Handler extends URLStreamHandler {
+
+    /**
+     * Creates a new {@link Handler}.
+     */
+    private Handler() {
+      super();
+    }
+
+    /**
+     * Keeps everything after the {@code jar:} scheme as the {@link
+     * URL}'s path, as the JDK's own {@code jar:} handler does.
+     */
+    @Override
+    protected final void parseURL(final URL url, final String spec, final int start, final int limit) {
+      this.setURL(url, "jar", "", -1, null, null, spec.substring(start, limit), null, null);
+    }
+
+    @Override
+    protected final URLConnection openConnection(final URL url) {
+      return new URLConnection(url) {
+        @Override
+        public final void connect() {
+          this.connected = true;
+        }
+
+        @Override
+        public final InputStream getInputStream() throws IOException {
+          this.connect();
+          return open(this.getURL());
+        }
+      };
+    }
+
+  }
+
+}
@@ -0,0 +1,747 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.lang.reflect.InvocationTargetException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import liquibase.change.Change;
+import liquibase.change.ChangeFactory;
+
+import liquibase.change.core.LoadDataChange;
+
+import liquibase.changelog.ChangeSet;
+
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.DerbyDatabase;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.HsqlDatabase;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.core.SQLiteDatabase;
+
+import liquibase.datatype.DataTypeFactory;
+
+import liquibase.exception.LiquibaseException;
+
+import liquibase.logging.LogFactory;
+
+import liquibase.sql.Sql;
+
+import liquibase.sql.visitor.SqlVisitor;
+
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+
+import liquibase.sqlgenerator.core.InsertGenerator;
+
+import liquibase.statement.DatabaseFunction;
+import liquibase.statement.SqlStatement;
+
+import liquibase.statement.core.CreateDatabaseChangeLogTableStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.MarkChangeSetRanStatement;
+
+/**
+ * Renders a list of {@link ChangeSet}s as a SQL script for a given
+ * {@link Database} dialect without connecting to any database.
+ *
+ * <p>SQL is produced by Liquibase's own {@link SqlGeneratorFactory},
+ * so it is the same SQL Liquibase would issue, modified by any
+ * applicable {@code modifySql} elements.  Preconditions cannot be
+ * evaluated offline and are ignored, and every changeset is treated
+ * as not yet applied.</p>
+ *
+ * <p>{@link ChangeSet}s are grouped into runs that share a file path,
+ * which is to say one run per {@code include} of an assembled
+ * changelog.  The runs are rendered in parallel, each against its own
+ * {@link Database} instance, and concatenated in their original
+ * order.  When changesets are {@linkplain #isTrackChangeSets()
+ * tracked}, the script begins by creating the {@code
+ * DATABASECHANGELOG} table, and the statements that record each
+ * changeset in it are rendered during concatenation so that their
+ * {@code ORDEREXECUTED} values are sequential.</p>
+ *
+ * <p>Consecutive rows inserted by a {@code loadData} change into the
+ * same columns of the same table are coalesced into multi-row {@code
+ * INSERT} statements of up to {@linkplain #getLoadDataBatchSize()
+ * batch size} rows, on those dialects that {@linkplain
+ * #supportsMultiRowInsert(Database) support them}.  Each row is built
+ * from the {@link InsertStatement}'s column values, formatted as
+ * Liquibase's {@link InsertGenerator} would format them.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see #render(String, List, Writer, int)
+ */
+public class OfflineSqlRenderer {
+
+  /**
+   * The {@link InsertGenerator} whose {@link
+   * InsertGenerator#looksLikeFunctionCall(String, Database)} method
+   * decides whether a {@link String} column value is quoted.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final InsertGenerator INSERT_GENERATOR = new InsertGenerator();
+
+  /**
+   * The {@link Database} implementation class that determines the
+   * dialect.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Class<? extends Database> databaseClass;
+
+  /**
+   * The maximum number of rows in a coalesced {@code INSERT}
+   * statement.
+   */
+  private int loadDataBatchSize;
+
+  /**
+   * Whether statements recording each changeset in the {@code
+   * DATABASECHANGELOG} table are rendered.
+   */
+  private boolean trackChangeSets;
+
+  /**
+   * The line separator to use.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final String lineSeparator;
+
+  /**
+   * Creates a new {@link OfflineSqlRenderer}.
+   *
+   * @param databaseClass the {@link Database} implementation class
+   * that determines the SQL dialect; must not be {@code null} and
+   * must have a public no-argument constructor
+   *
+   * @exception IllegalArgumentException if {@code databaseClass} is
+   * {@code null}
+   *
+   * @see #newDatabase(String)
+   */
+  public OfflineSqlRenderer(final Class<? extends Database> databaseClass) {
+    super();
+    if (databaseClass == null) {
+      throw new IllegalArgumentException("databaseClass", new NullPointerException("databaseClass"));
+    }
+    this.databaseClass = databaseClass;
+    this.loadDataBatchSize = 100;
+    this.trackChangeSets = true;
+    this.lineSeparator = System.getProperty("line.separator", "\n");
+  }
+
+  /**
+   * Returns a new {@link Database} whose {@linkplain
+   * Database#getShortName() short name} is the supplied {@link
+   * String}, such as {@code postgresql} or {@code oracle}, drawn from
+   * those {@linkplain DatabaseFactory#getImplementedDatabases()
+   * implemented by Liquibase}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param shortName the short name; must not be {@code null}
+   *
+   * @return a new, unconnected {@link Database}; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code shortName} is
+   * {@code null} or does not name a known {@link Database}
+   */
+  public static final Database newDatabase(final String shortName) {
+    if (shortName == null) {
+      throw new IllegalArgumentException("shortName", new NullPointerException("shortName"));
+    }
+    final List<String> known = new ArrayList<String>();
+    final List<Database> databases = DatabaseFactory.getInstance().getImplementedDatabases();
+    if (databases != null) {
+      for (final Database database : databases) {
+        if (database != null) {
+          if (shortName.equalsIgnoreCase(database.getShortName())) {
+            return newDatabase(database.getClass());
+          }
+          known.add(database.getShortName());
+        }
+      }
+    }
+    throw new IllegalArgumentException("Unknown database: " + shortName + "; known databases: " + known);
+  }
+
+  /**
+   * Returns a new instance of the supplied {@link Database} class.
+   *
+   * @param databaseClass the class; must not be {@code null}
+   *
+   * @return a new {@link Database}; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code databaseClass}
+   * could not be instantiated
+   */
+  private static final Database newDatabase(final Class<? extends Database> databaseClass) {
+    assert databaseClass != null;
+    try {
+      return databaseClass.getDeclaredConstructor().newInstance();
+    } catch (final NoSuchMethodException e) {
+      throw new IllegalArgumentException(databaseClass.getName(), e);
+    } catch (final InstantiationException e) {
+      throw new IllegalArgumentException(databaseClass.getName(), e);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalArgumentException(databaseClass.getName(), e);
+    } catch (final InvocationTargetException e) {
+      throw new IllegalArgumentException(databaseClass.getName(), e.getCause());
+    }
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link Database} accepts
+   * {@code INSERT} statements with more than one row in their {@code
+   * VALUES} clause.
+   *
+   * @param database the {@link Database}; may be {@code null} in
+   * which case {@code false} will be returned
+   *
+   * @return {@code true} if multi-row {@code INSERT}s are supported;
+   * {@code false} otherwise
+   */
+  public static boolean supportsMultiRowInsert(final Database database) {
+    return
+      database instanceof PostgresDatabase ||
+      database instanceof MySQLDatabase ||
+      database instanceof H2Database ||
+      database instanceof HsqlDatabase ||
+      database instanceof MSSQLDatabase ||
+      database instanceof DB2Database ||
+      database instanceof DerbyDatabase ||
+      database instanceof SQLiteDatabase;
+  }
+
+  /**
+   * Returns the maximum number of rows in a coalesced {@code INSERT}
+   * statement; {@code 100} by default.
+   *
+   * @return the maximum number of rows; a value less than {@code 2}
+   * disables coalescing
+   *
+   * @see #setLoadDataBatchSize(int)
+   */
+  public int getLoadDataBatchSize() {
+    return this.loadDataBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of rows in a coalesced {@code INSERT}
+   * statement.
+   *
+   * @param loadDataBatchSize the maximum number of rows; a value less
+   * than {@code 2} disables coalescing
+   *
+   * @see #getLoadDataBatchSize()
+   */
+  public void setLoadDataBatchSize(final int loadDataBatchSize) {
+    this.loadDataBatchSize = loadDataBatchSize;
+  }
+
+  /**
+   * Returns {@code true} if the statements creating the {@code
+   * DATABASECHANGELOG} table and recording each changeset in it will
+   * be rendered; {@code true} by default.
+   *
+   * @return {@code true} if changesets will be tracked
+   *
+   * @see #setTrackChangeSets(boolean)
+   */
+  public boolean isTrackChangeSets() {
+    return this.trackChangeSets;
+  }
+
+  /**
+   * Sets whether the statements creating the {@code
+   * DATABASECHANGELOG} table and recording each changeset in it will
+   * be rendered.
+   *
+   * @param trackChangeSets whether changesets will be tracked
+   *
+   * @see #isTrackChangeSets()
+   */
+  public void setTrackChangeSets(final boolean trackChangeSets) {
+    this.trackChangeSets = trackChangeSets;
+  }
+
+  /**
+   * Renders the supplied {@link ChangeSet}s as a SQL script and
+   * writes it to the supplied {@link Writer}.
+   *
+   * @param changeLogPath the path of the changelog being rendered,
+   * used only in the script's header comment; may be {@code null}
+   *
+   * @param changeSets the {@link ChangeSet}s to render, in order; may
+   * be {@code null}
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}; will not be closed
+   *
+   * @param threads the maximum number of threads to use; if less
+   * than {@code 1} then the {@linkplain Runtime#availableProcessors()
+   * number of available processors} will be used instead
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @exception LiquibaseException if SQL could not be generated
+   */
+  public void render(final String changeLogPath, final List<? extends ChangeSet> changeSets, final Writer writer, int threads) throws IOException, LiquibaseException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    final Database trackingDatabase = newDatabase(this.databaseClass);
+    final String shortName = trackingDatabase.getShortName();
+    final String nl = this.lineSeparator;
+    writer.write("-- *********************************************************************" + nl);
+    writer.write("-- Update Database Script" + nl);
+    writer.write("-- *********************************************************************" + nl);
+    writer.write("-- Change Log: " + changeLogPath + nl);
+    writer.write("-- Rendered offline for: " + shortName + nl + nl);
+    if (this.isTrackChangeSets()) {
+      writer.write("-- Create Database Change Log Table" + nl);
+      this.writeSql(SqlGeneratorFactory.getInstance().generateSql(new CreateDatabaseChangeLogTableStatement(), trackingDatabase), writer);
+    }
+
+    final List<List<ChangeSet>> runs = new ArrayList<List<ChangeSet>>();
+    if (changeSets != null) {
+      List<ChangeSet> run = null;
+      String filePath = null;
+      for (final ChangeSet changeSet : changeSets) {
+        if (changeSet != null && isApplicable(changeSet, shortName)) {
+          if (run == null || !equals(filePath, changeSet.getFilePath())) {
+            run = new ArrayList<ChangeSet>();
+            runs.add(run);
+            filePath = changeSet.getFilePath();
+          }
+          run.add(changeSet);
+        }
+      }
+    }
+    if (runs.isEmpty()) {
+      return;
+    }
+
+    if (threads < 1) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    threads = Math.min(threads, runs.size());
+    warmUp();
+
+    final List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>(runs.size());
+    final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      for (final List<ChangeSet> run : runs) {
+        futures.add(executorService.submit(new Callable<List<String>>() {
+            @Override
+            public final List<String> call() throws LiquibaseException {
+              final Database database = newDatabase(databaseClass);
+              final List<String> returnValue = new ArrayList<String>(run.size());
+              for (final ChangeSet changeSet : run) {
+                returnValue.add(renderChangeSet(changeSet, database));
+              }
+              return returnValue;
+            }
+          }));
+      }
+      for (int i = 0; i < runs.size(); i++) {
+        final List<ChangeSet> run = runs.get(i);
+        final List<String> rendered;
+        try {
+          rendered = futures.get(i).get();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while rendering SQL", e);
+        } catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof LiquibaseException) {
+            throw (LiquibaseException)cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+          } else if (cause instanceof Error) {
+            throw (Error)cause;
+          }
+          throw new LiquibaseException(cause);
+        }
+        assert rendered != null;
+        assert rendered.size() == run.size();
+        for (int j = 0; j < run.size(); j++) {
+          final ChangeSet changeSet = run.get(j);
+          writer.write("-- Changeset " + changeSet.toString(false) + nl);
+          writer.write(rendered.get(j));
+          if (this.isTrackChangeSets()) {
+            this.writeSql(SqlGeneratorFactory.getInstance().generateSql(new MarkChangeSetRanStatement(changeSet, ChangeSet.ExecType.EXECUTED), trackingDatabase), writer);
+          }
+          writer.write(nl);
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Renders the SQL for the supplied {@link ChangeSet}, without any
+   * header or tracking statements, and returns it.
+   *
+   * @param changeSet the {@link ChangeSet}; must not be {@code null}
+   *
+   * @param database the {@link Database} to render for; must not be
+   * {@code null}
+   *
+   * @return the rendered SQL; never {@code null}
+   *
+   * @exception LiquibaseException if SQL could not be generated
+   */
+  private final String renderChangeSet(final ChangeSet changeSet, final Database database) throws LiquibaseException {
+    assert changeSet != null;
+    assert database != null;
+    final List<SqlVisitor> visitors = new ArrayList<SqlVisitor>();
+    final List<SqlVisitor> allVisitors = changeSet.getSqlVisitors();
+    if (allVisitors != null) {
+      for (final SqlVisitor visitor : allVisitors) {
+        if (visitor != null && !visitor.isApplyToRollback() && isApplicable(visitor.getApplicableDbms(), database.getShortName())) {
+          visitors.add(visitor);
+        }
+      }
+    }
+    final StringBuilder sb = new StringBuilder();
+    final List<Change> changes = changeSet.getChanges();
+    if (changes != null) {
+      for (final Change change : changes) {
+        if (change != null) {
+          if (!change.supports(database)) {
+            throw new LiquibaseException(changeSet + ": " + change.getClass().getName() + " is not supported on " + database.getShortName());
+          }
+          final boolean coalesce = change instanceof LoadDataChange && this.getLoadDataBatchSize() > 1 && supportsMultiRowInsert(database);
+          StringBuilder insert = null;
+          String insertPrefix = null;
+          String insertDelimiter = null;
+          int rows = 0;
+          final SqlStatement[] statements = change.generateStatements(database);
+          if (statements != null) {
+            for (final SqlStatement statement : statements) {
+              final Sql[] sqls = SqlGeneratorFactory.getInstance().generateSql(statement, database);
+              if (sqls != null) {
+                String prefix = null;
+                String row = null;
+                if (coalesce && statement.getClass() == InsertStatement.class && sqls.length == 1 && sqls[0] != null) {
+                  final InsertStatement insertStatement = (InsertStatement)statement;
+                  prefix = insertPrefix(insertStatement, database);
+                  if (prefix != null) {
+                    row = insertRow(insertStatement, database);
+                    if (!sqls[0].toSql().equals(prefix + row)) {
+                      // This dialect's generator renders the statement
+                      // some other way; leave it alone.
+                      prefix = null;
+                    }
+                  }
+                }
+                if (prefix != null) {
+                  if (rows > 0 && rows < this.getLoadDataBatchSize() && prefix.equals(insertPrefix)) {
+                    insert.append(",").append(this.lineSeparator).append("  ").append(row);
+                    rows++;
+                  } else {
+                    if (rows > 0) {
+                      this.append(sb, insert.toString(), insertDelimiter, visitors, database);
+                    }
+                    insert = new StringBuilder(prefix).append(row);
+                    insertPrefix = prefix;
+                    insertDelimiter = delimiterOf(sqls[0]);
+                    rows = 1;
+                  }
+                } else {
+                  if (rows > 0) {
+                    this.append(sb, insert.toString(), insertDelimiter, visitors, database);
+                    rows = 0;
+                  }
+                  for (final Sql sql : sqls) {
+                    if (sql != null) {
+                      this.append(sb, sql.toSql(), delimiterOf(sql), visitors, database);
+                    }
+                  }
+                }
+              }
+            }
+          }
+          if (rows > 0) {
+            this.append(sb, insert.toString(), insertDelimiter, visitors, database);
+          }
+        }
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Initializes Liquibase's lazily created singletons on the calling
+   * thread so that the threads rendering changesets never race to
+   * create them.
+   */
+  private static final void warmUp() {
+    LogFactory.getLogger();
+    DatabaseFactory.getInstance();
+    ChangeFactory.getInstance();
+    DataTypeFactory.getInstance();
+    SqlGeneratorFactory.getInstance();
+  }
+
+  /**
+   * Returns the part of the {@code INSERT} statement Liquibase would
+   * generate for the supplied {@link InsertStatement} that precedes
+   * its row of values, or {@code null} if the statement has no column
+   * values.
+   *
+   * <p>Two {@link InsertStatement}s with equal prefixes insert into
+   * the same columns of the same table and may be coalesced.</p>
+   *
+   * @param statement the {@link InsertStatement}; must not be {@code
+   * null}
+   *
+   * @param database the {@link Database}; must not be {@code null}
+   *
+   * @return the prefix, ending with {@code VALUES }, or {@code null}
+   */
+  private static final String insertPrefix(final InsertStatement statement, final Database database) {
+    assert statement != null;
+    assert database != null;
+    final Map<String, Object> columnValues = statement.getColumnValues();
+    if (columnValues == null || columnValues.isEmpty()) {
+      return null;
+    }
+    final String catalogName = statement.getCatalogName();
+    final String schemaName = statement.getSchemaName();
+    final String tableName = statement.getTableName();
+    final StringBuilder sb = new StringBuilder("INSERT INTO ");
+    sb.append(database.escapeTableName(catalogName, schemaName, tableName)).append(" (");
+    final Iterator<String> columnNames = columnValues.keySet().iterator();
+    while (columnNames.hasNext()) {
+      sb.append(database.escapeColumnName(catalogName, schemaName, tableName, columnNames.next()));
+      if (columnNames.hasNext()) {
+        sb.append(", ");
+      }
+    }
+    return sb.append(") VALUES ").toString();
+  }
+
+  /**
+   * Returns the parenthesized row of values Liquibase would generate
+   * for the supplied {@link InsertStatement}, each formatted as
+   * {@link InsertGenerator} formats it.
+   *
+   * @param statement the {@link InsertStatement}; must not be {@code
+   * null}
+   *
+   * @param database the {@link Database}; must not be {@code null}
+   *
+   * @return the row; never {@code null}
+   */
+  private static final String insertRow(final InsertStatement statement, final Database database) {
+    assert statement != null;
+    assert database != null;
+    final StringBuilder sb = new StringBuilder("(");
+    final Iterator<Entry<String, Object>> entries = statement.getColumnValues().entrySet().iterator();
+    while (entries.hasNext()) {
+      final Object value = entries.next().getValue();
+      if (value == null || "NULL".equalsIgnoreCase(value.toString())) {
+        sb.append("NULL");
+      } else if (value instanceof String && !INSERT_GENERATOR.looksLikeFunctionCall((String)value, database)) {
+        sb.append(DataTypeFactory.getInstance().fromObject(value, database).objectToSql(value, database));
+      } else if (value instanceof Date) {
+        sb.append(database.getDateLiteral((Date)value));
+      } else if (value instanceof Boolean) {
+        if (((Boolean)value).booleanValue()) {
+          sb.append(DataTypeFactory.getInstance().getTrueBooleanValue(database));
+        } else {
+          sb.append(DataTypeFactory.getInstance().getFalseBooleanValue(database));
+        }
+      } else if (value instanceof DatabaseFunction) {
+        sb.append(database.generateDatabaseFunctionValue((DatabaseFunction)value));
+      } else {
+        sb.append(value);
+      }
+      if (entries.hasNext()) {
+        sb.append(", ");
+      }
+    }
+    return sb.append(")").toString();
+  }
+
+  /**
+   * Applies the supplied {@link SqlVisitor}s to the supplied SQL and
+   * appends the result, followed by the supplied end delimiter and a
+   * blank line, to the supplied {@link StringBuilder}.
+   *
+   * @param sb the {@link StringBuilder}; must not be {@code null}
+   *
+   * @param sql the SQL; must not be {@code null}
+   *
+   * @param delimiter the end delimiter; must not be {@code null}
+   *
+   * @param visitors the {@link SqlVisitor}s; must not be {@code null}
+   *
+   * @param database the {@link Database}; must not be {@code null}
+   */
+  private final void append(final StringBuilder sb, final String sql, final String delimiter, final List<? extends SqlVisitor> visitors, final Database database) {
+    assert sb != null;
+    sb.append(modify(sql, visitors, database)).append(delimiter).append(this.lineSeparator).append(this.lineSeparator);
+  }
+
+  /**
+   * Writes the supplied {@link Sql}s to the supplied {@link Writer},
+   * each followed by its end delimiter and a blank line.
+   *
+   * @param sqls the {@link Sql}s; may be {@code null}
+   *
+   * @param writer the {@link Writer}; must not be {@code null}
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  private final void writeSql(final Sql[] sqls, final Writer writer) throws IOException {
+    assert writer != null;
+    if (sqls != null) {
+      for (final Sql sql : sqls) {
+        if (sql != null) {
+          writer.write(sql.toSql() + delimiterOf(sql) + this.lineSeparator + this.lineSeparator);
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies the supplied {@link SqlVisitor}s to the supplied SQL.
+   *
+   * @param sql the SQL; must not be {@code null}
+   *
+   * @param visitors the {@link SqlVisitor}s; must not be {@code null}
+   *
+   * @param database the {@link Database}; must not be {@code null}
+   *
+   * @return the modified SQL
+   */
+  private static final String modify(String sql, final List<? extends SqlVisitor> visitors, final Database database) {
+    assert visitors != null;
+    for (final SqlVisitor visitor : visitors) {
+      sql = visitor.modifySql(sql, database);
+    }
+    return sql;
+  }
+
+  /**
+   * Returns the end delimiter of the supplied {@link Sql}, or {@code
+   * ;} if it does not specify one.
+   *
+   * @param sql the {@link Sql}; must not be {@code null}
+   *
+   * @return a non-{@code null} end delimiter
+   */
+  private static final String delimiterOf(final Sql sql) {
+    assert sql != null;
+    final String delimiter = sql.getEndDelimiter();
+    if (delimiter == null) {
+      return ";";
+    }
+    return delimiter;
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link ChangeSet} applies to
+   * the database with the supplied short name.
+   *
+   * @param changeSet the {@link ChangeSet}; must not be {@code null}
+   *
+   * @param shortName the short name; may be {@code null}
+   *
+   * @return {@code true} if the {@link ChangeSet} applies
+   */
+  private static final boolean isApplicable(final ChangeSet changeSet, final String shortName) {
+    assert changeSet != null;
+    return isApplicable(changeSet.getDbmsSet(), shortName);
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link Set} of database
+   * short names is {@code null}, empty, or contains the supplied
+   * short name.
+   *
+   * @param dbms the {@link Set}; may be {@code null}
+   *
+   * @param shortName the short name; may be {@code null}
+   *
+   * @return {@code true} if the short name is applicable
+   */
+  private static final boolean isApplicable(final Set<String> dbms, final String shortName) {
+    return dbms == null || dbms.isEmpty() || dbms.contains(shortName);
+  }
+
+  /**
+   * Returns {@code true} if the two supplied {@link String}s are
+   * both {@code null} or are equal.
+   *
+   * @param a the first {@link String}; may be {@code null}
+   *
+   * @param b the second {@link String}; may be {@code null}
+   *
+   * @return {@code true} if the two {@link String}s are equal
+   */
+  private static final boolean equals(final String a, final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+}
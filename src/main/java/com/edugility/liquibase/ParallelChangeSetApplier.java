@@ -0,0 +1,295 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.changelog.filter.ContextChangeSetFilter;
+import liquibase.changelog.filter.DbmsChangeSetFilter;
+
+import liquibase.database.Database;
+
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.MigrationFailedException;
+
+import liquibase.util.StringUtils;
+
+/**
+ * Applies a changelog to a fresh, private, in-memory <a
+ * href="http://www.h2database.com/">H2</a> database by executing the
+ * {@linkplain ChangeSetDependencyGraph#getGroups() groups} of its
+ * {@linkplain ChangeSetDependencyGraph dependency graph} one after
+ * another, and the changesets within each group concurrently.
+ *
+ * <p>The database is opened in H2's {@code MULTI_THREADED} mode so
+ * that statements on different connections can actually run at the
+ * same time.  Each worker thread has its own connection.  Changesets
+ * are recorded in {@code DATABASECHANGELOG} by a single connection,
+ * in changelog order, after each group has finished, so the history
+ * looks as if the changelog had been applied serially.</p>
+ *
+ * <p>This class exists to measure how much faster a changelog could
+ * be applied in parallel; comparing a run with one thread against a
+ * run with several gives the achievable speedup.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeSetDependencyGraph
+ */
+public class ParallelChangeSetApplier {
+
+  /**
+   * The number of worker threads; always positive.
+   */
+  private int threads;
+
+  /**
+   * Creates a new {@link ParallelChangeSetApplier} that uses one
+   * thread per {@linkplain Runtime#availableProcessors() available
+   * processor}.
+   */
+  public ParallelChangeSetApplier() {
+    super();
+    this.threads = Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Returns the number of worker threads.
+   *
+   * @return a positive number of threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Sets the number of worker threads.
+   *
+   * @param threads the number of threads; values less than {@code 1}
+   * select one thread per {@linkplain Runtime#availableProcessors()
+   * available processor}
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+  }
+
+  /**
+   * Applies the supplied changelog to a fresh in-memory database and
+   * returns the dependency graph that was followed together with the
+   * time it took.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeLog the parsed changelog; must not be {@code null}
+   *
+   * @param contexts the comma-separated Liquibase contexts to apply;
+   * may be {@code null}
+   *
+   * @return a non-{@code null} {@link Result}
+   *
+   * @exception IllegalArgumentException if {@code changeLog} is
+   * {@code null}
+   *
+   * @exception LiquibaseException if a changeset failed
+   *
+   * @exception InterruptedException if the current thread was
+   * interrupted
+   */
+  public Result apply(final DatabaseChangeLog changeLog, final String contexts) throws LiquibaseException, InterruptedException {
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    final String trimmedContexts = StringUtils.trimToNull(contexts);
+    final int threads = this.getThreads();
+    final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MULTI_THREADED=1";
+    final Database database = EmbeddedDatabases.open(url, null);
+    final BlockingQueue<Database> workers = new ArrayBlockingQueue<Database>(threads);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      database.checkDatabaseChangeLogTable(false, changeLog, trimmedContexts);
+      database.commit();
+      final ContextChangeSetFilter contextFilter;
+      if (trimmedContexts == null) {
+        contextFilter = new ContextChangeSetFilter();
+      } else {
+        contextFilter = new ContextChangeSetFilter(trimmedContexts.split(","));
+      }
+      final DbmsChangeSetFilter dbmsFilter = new DbmsChangeSetFilter(database);
+      final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+      for (final ChangeSet changeSet : changeLog.getChangeSets()) {
+        if (contextFilter.accepts(changeSet) && dbmsFilter.accepts(changeSet)) {
+          changeSets.add(changeSet);
+        }
+      }
+      final ChangeSetDependencyGraph graph = ChangeSetDependencyGraph.build(changeSets);
+      for (int i = 0; i < threads; i++) {
+        workers.add(EmbeddedDatabases.open(url, null));
+      }
+
+      final long start = System.nanoTime();
+      for (final List<ChangeSetDependencyGraph.Node> group : graph.getGroups()) {
+        final List<Future<ChangeSet.ExecType>> futures = new ArrayList<Future<ChangeSet.ExecType>>(group.size());
+        for (final ChangeSetDependencyGraph.Node node : group) {
+          futures.add(executor.submit(new Callable<ChangeSet.ExecType>() {
+              @Override
+              public final ChangeSet.ExecType call() throws LiquibaseException, InterruptedException {
+                final Database worker = workers.take();
+                try {
+                  final ChangeSet.ExecType execType = node.getChangeSet().execute(changeLog, worker);
+                  worker.commit();
+                  return execType;
+                } finally {
+                  workers.put(worker);
+                }
+              }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+          final ChangeSet.ExecType execType;
+          try {
+            execType = futures.get(i).get();
+          } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof LiquibaseException) {
+              throw (LiquibaseException)cause;
+            } else if (cause instanceof RuntimeException) {
+              throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+              throw (Error)cause;
+            }
+            throw new MigrationFailedException(group.get(i).getChangeSet(), cause);
+          }
+          database.markChangeSetExecStatus(group.get(i).getChangeSet(), execType);
+        }
+        database.commit();
+      }
+      return new Result(graph, threads, System.nanoTime() - start);
+    } finally {
+      executor.shutdownNow();
+      for (final Database worker : workers) {
+        EmbeddedDatabases.closeQuietly(worker);
+      }
+      EmbeddedDatabases.closeQuietly(database);
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The outcome of {@linkplain
+   * ParallelChangeSetApplier#apply(DatabaseChangeLog, String)
+   * applying} a changelog.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Result {
+
+    /**
+     * The {@link ChangeSetDependencyGraph} that was followed; never
+     * {@code null}.
+     */
+    private final ChangeSetDependencyGraph graph;
+
+    /**
+     * The number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * The nanoseconds spent applying changesets.
+     */
+    private final long nanos;
+
+    /**
+     * Creates a new {@link Result}.
+     *
+     * @param graph the {@link ChangeSetDependencyGraph} that was
+     * followed; must not be {@code null}
+     *
+     * @param threads the number of worker threads
+     *
+     * @param nanos the nanoseconds spent applying changesets
+     */
+    private Result(final ChangeSetDependencyGraph graph, final int threads, final long nanos) {
+      super();
+      this.graph = graph;
+      this.threads = threads;
+      this.nanos = nanos;
+    }
+
+    /**
+     * Returns the {@link ChangeSetDependencyGraph} that was
+     * followed.
+     *
+     * @return the non-{@code null} {@link ChangeSetDependencyGraph}
+     */
+    public ChangeSetDependencyGraph getGraph() {
+      return this.graph;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of threads
+     */
+    public int getThreads() {
+      return this.threads;
+    }
+
+    /**
+     * Returns the nanoseconds spent applying changesets, excluding
+     * database setup.
+     *
+     * @return the nanoseconds
+     */
+    public long getNanos() {
+      return this.nanos;
+    }
+
+  }
+
+}
@@ -0,0 +1,110 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.util.Map;
+
+/**
+ * A {@link ChangeLogPruner.Filter} that keeps changesets that a
+ * {@link RanChangeSetIndex} does not record as having been applied.
+ *
+ * <p>Changesets marked {@code runAlways} or {@code runOnChange} are
+ * always kept, since whether they are pending depends on their
+ * checksums; Liquibase will skip them at update time if they have not
+ * changed.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see RanChangeSetIndex
+ */
+public class PendingChangeSetFilter implements ChangeLogPruner.Filter {
+
+  /**
+   * The status returned for changesets that have not been applied.
+   */
+  public static final String PENDING = "PENDING";
+
+  /**
+   * The status returned for applied changesets that are kept because
+   * they are {@code runAlways} or {@code runOnChange}.
+   */
+  public static final String RERUNNABLE = "RERUNNABLE";
+
+  /**
+   * The {@link RanChangeSetIndex} that records applied changesets.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final RanChangeSetIndex ranChangeSets;
+
+  /**
+   * Creates a new {@link PendingChangeSetFilter}.
+   *
+   * @param ranChangeSets the {@link RanChangeSetIndex} recording
+   * applied changesets; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code ranChangeSets} is
+   * {@code null}
+   */
+  public PendingChangeSetFilter(final RanChangeSetIndex ranChangeSets) {
+    super();
+    if (ranChangeSets == null) {
+      throw new IllegalArgumentException("ranChangeSets", new NullPointerException("ranChangeSets"));
+    }
+    this.ranChangeSets = ranChangeSets;
+  }
+
+  /**
+   * Returns {@link #PENDING} if the identified changeset has not been
+   * applied, {@link #RERUNNABLE} if it has been applied but is {@code
+   * runAlways} or {@code runOnChange}, and {@code null} otherwise.
+   *
+   * @param filePath the effective file path of the changeset
+   *
+   * @param id the {@code id} of the changeset
+   *
+   * @param author the {@code author} of the changeset
+   *
+   * @param attributes the {@code changeSet} element's attributes;
+   * must not be {@code null}
+   *
+   * @return {@link #PENDING}, {@link #RERUNNABLE} or {@code null}
+   */
+  @Override
+  public String accept(final String filePath, final String id, final String author, final Map<String, String> attributes) {
+    if (!this.ranChangeSets.matches(filePath, id, author)) {
+      return PENDING;
+    }
+    if (attributes != null && ("true".equalsIgnoreCase(attributes.get("runAlways")) || "true".equalsIgnoreCase(attributes.get("runOnChange")))) {
+      return RERUNNABLE;
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,376 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import java.nio.ByteBuffer;
+
+import java.security.MessageDigest;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import liquibase.changelog.ChangeSet;
+
+import liquibase.util.csv.CSVReader;
+
+/**
+ * A compact set of the identities of the changesets recorded in a
+ * {@code DATABASECHANGELOG} table, typically loaded from a CSV export
+ * of that table.
+ *
+ * <p>Identities are compared as Liquibase compares them: the {@code
+ * FILENAME}, with backslashes treated as forward slashes, the {@code
+ * ID} and the {@code AUTHOR}, all case-insensitively.  Each identity
+ * is stored as a 128-bit hash of those three values in an
+ * open-addressing hash table of {@code long}s, so an export of
+ * millions of rows occupies tens of megabytes regardless of how long
+ * its file names are.  The probability of two distinct identities
+ * sharing a hash is negligible.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see #read(Reader, char)
+ */
+public class RanChangeSetIndex {
+
+  /**
+   * The initial capacity of the hash table; must be a power of two.
+   */
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * The high 64 bits of each stored hash, or {@code 0} in an empty
+   * slot together with a {@code 0} in {@link #low}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private long[] high;
+
+  /**
+   * The low 64 bits of each stored hash.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private long[] low;
+
+  /**
+   * Whether the identity in each slot has been {@linkplain
+   * #matches(String, String, String) matched}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private boolean[] matched;
+
+  /**
+   * The number of identities stored.
+   */
+  private int size;
+
+  /**
+   * The number of stored identities that have been {@linkplain
+   * #matches(String, String, String) matched}.
+   */
+  private int matchedCount;
+
+  /**
+   * The {@link MessageDigest} used to hash identities.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final MessageDigest digest;
+
+  /**
+   * Creates a new, empty {@link RanChangeSetIndex}.
+   */
+  public RanChangeSetIndex() {
+    super();
+    this.high = new long[INITIAL_CAPACITY];
+    this.low = new long[INITIAL_CAPACITY];
+    this.matched = new boolean[INITIAL_CAPACITY];
+    this.digest = Digests.newMessageDigest();
+  }
+
+  /**
+   * Reads a CSV export of a {@code DATABASECHANGELOG} table and
+   * returns a new {@link RanChangeSetIndex} containing the identity
+   * of each row.
+   *
+   * <p>The first row must be a header row naming the columns; the
+   * {@code ID}, {@code AUTHOR} and {@code FILENAME} columns are
+   * located by name, case-insensitively, and all other columns are
+   * ignored.  Rows are read one at a time.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param reader the {@link Reader} to read from; must not be {@code
+   * null}; will not be closed
+   *
+   * @param separator the field separator, usually {@code ,}
+   *
+   * @return a new {@link RanChangeSetIndex}; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code reader} is {@code
+   * null}
+   *
+   * @exception IOException if the export could not be read or lacks
+   * a required column
+   */
+  public static RanChangeSetIndex read(final Reader reader, final char separator) throws IOException {
+    if (reader == null) {
+      throw new IllegalArgumentException("reader", new NullPointerException("reader"));
+    }
+    final CSVReader csvReader = new CSVReader(reader, separator);
+    final String[] header = csvReader.readNext();
+    if (header == null) {
+      throw new IOException("The DATABASECHANGELOG export is empty");
+    }
+    final int idColumn = indexOf(header, "ID");
+    final int authorColumn = indexOf(header, "AUTHOR");
+    final int fileNameColumn = indexOf(header, "FILENAME");
+    final int minimumLength = Math.max(idColumn, Math.max(authorColumn, fileNameColumn)) + 1;
+    final RanChangeSetIndex index = new RanChangeSetIndex();
+    int line = 1;
+    String[] row;
+    while ((row = csvReader.readNext()) != null) {
+      line++;
+      if (row.length == 1 && row[0].trim().isEmpty()) {
+        continue;
+      }
+      if (row.length < minimumLength) {
+        throw new IOException("Row " + line + " of the DATABASECHANGELOG export has " + row.length + " columns; expected at least " + minimumLength);
+      }
+      index.add(row[fileNameColumn], row[idColumn], row[authorColumn]);
+    }
+    return index;
+  }
+
+  /**
+   * Returns the index of the supplied column name in the supplied
+   * header row.
+   *
+   * @param header the header row; must not be {@code null}
+   *
+   * @param name the column name; must not be {@code null}
+   *
+   * @return the index of the column
+   *
+   * @exception IOException if the column is not present
+   */
+  private static final int indexOf(final String[] header, final String name) throws IOException {
+    assert header != null;
+    assert name != null;
+    for (int i = 0; i < header.length; i++) {
+      if (header[i] != null && name.equalsIgnoreCase(header[i].trim())) {
+        return i;
+      }
+    }
+    throw new IOException("The DATABASECHANGELOG export has no " + name + " column; columns: " + Arrays.asList(header));
+  }
+
+  /**
+   * Returns the number of distinct identities in this {@link
+   * RanChangeSetIndex}.
+   *
+   * @return the number of distinct identities
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the number of distinct identities in this {@link
+   * RanChangeSetIndex} that have not been {@linkplain
+   * #matches(String, String, String) matched}: that is, changesets
+   * that were applied to the database but that are not (or are no
+   * longer) present in the changelog.
+   *
+   * @return the number of unmatched identities
+   */
+  public int getUnmatchedCount() {
+    return this.size - this.matchedCount;
+  }
+
+  /**
+   * Adds the supplied identity to this {@link RanChangeSetIndex}.
+   *
+   * @param filePath the file path; may be {@code null}
+   *
+   * @param id the id; may be {@code null}
+   *
+   * @param author the author; may be {@code null}
+   *
+   * @return {@code true} if the identity was not already present
+   */
+  public boolean add(final String filePath, final String id, final String author) {
+    if ((this.size + 1) * 2 > this.high.length) {
+      this.resize(this.high.length * 2);
+    }
+    final ByteBuffer hash = this.hash(filePath, id, author);
+    final long h = hash.getLong(0);
+    final long l = hash.getLong(8);
+    final int slot = this.slotOf(h, l);
+    if (this.high[slot] == h && this.low[slot] == l && (h != 0L || l != 0L)) {
+      return false;
+    }
+    this.high[slot] = h;
+    this.low[slot] = l;
+    this.size++;
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if the supplied identity is present in this
+   * {@link RanChangeSetIndex}, and records that it was matched.
+   *
+   * @param filePath the file path; may be {@code null}
+   *
+   * @param id the id; may be {@code null}
+   *
+   * @param author the author; may be {@code null}
+   *
+   * @return {@code true} if the identity is present
+   *
+   * @see #getUnmatchedCount()
+   */
+  public boolean matches(final String filePath, final String id, final String author) {
+    final ByteBuffer hash = this.hash(filePath, id, author);
+    final long h = hash.getLong(0);
+    final long l = hash.getLong(8);
+    final int slot = this.slotOf(h, l);
+    if (this.high[slot] == h && this.low[slot] == l && (h != 0L || l != 0L)) {
+      if (!this.matched[slot]) {
+        this.matched[slot] = true;
+        this.matchedCount++;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns {@code true} if the identity of the supplied {@link
+   * ChangeSet} is present in this {@link RanChangeSetIndex}, and
+   * records that it was matched.
+   *
+   * @param changeSet the {@link ChangeSet}; must not be {@code null}
+   *
+   * @return {@code true} if the identity is present
+   *
+   * @exception IllegalArgumentException if {@code changeSet} is
+   * {@code null}
+   */
+  public boolean matches(final ChangeSet changeSet) {
+    if (changeSet == null) {
+      throw new IllegalArgumentException("changeSet", new NullPointerException("changeSet"));
+    }
+    return this.matches(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor());
+  }
+
+  /**
+   * Returns the slot that either holds the supplied hash or is the
+   * empty slot at which it would be stored.
+   *
+   * @param h the high 64 bits of the hash
+   *
+   * @param l the low 64 bits of the hash
+   *
+   * @return a slot index
+   */
+  private final int slotOf(final long h, final long l) {
+    final int mask = this.high.length - 1;
+    int slot = (int)h & mask;
+    while (this.high[slot] != 0L || this.low[slot] != 0L) {
+      if (this.high[slot] == h && this.low[slot] == l) {
+        break;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Grows the hash table to the supplied capacity, rehashing every
+   * stored identity.
+   *
+   * @param capacity the new capacity; must be a power of two
+   */
+  private final void resize(final int capacity) {
+    final long[] oldHigh = this.high;
+    final long[] oldLow = this.low;
+    final boolean[] oldMatched = this.matched;
+    this.high = new long[capacity];
+    this.low = new long[capacity];
+    this.matched = new boolean[capacity];
+    for (int i = 0; i < oldHigh.length; i++) {
+      if (oldHigh[i] != 0L || oldLow[i] != 0L) {
+        final int slot = this.slotOf(oldHigh[i], oldLow[i]);
+        this.high[slot] = oldHigh[i];
+        this.low[slot] = oldLow[i];
+        this.matched[slot] = oldMatched[i];
+      }
+    }
+  }
+
+  /**
+   * Returns a {@link ByteBuffer} whose first 16 bytes are the hash of
+   * the supplied identity, normalized as Liquibase compares
+   * identities.
+   *
+   * @param filePath the file path; may be {@code null}
+   *
+   * @param id the id; may be {@code null}
+   *
+   * @param author the author; may be {@code null}
+   *
+   * @return a {@link ByteBuffer}; never {@code null}
+   */
+  private final ByteBuffer hash(final String filePath, final String id, final String author) {
+    final StringBuilder sb = new StringBuilder();
+    if (filePath != null) {
+      sb.append(filePath.replace('\\', '/'));
+    }
+    sb.append('\u0000');
+    if (id != null) {
+      sb.append(id);
+    }
+    sb.append('\u0000');
+    if (author != null) {
+      sb.append(author);
+    }
+    this.digest.reset();
+    return ByteBuffer.wrap(this.digest.digest(sb.toString().toUpperCase(Locale.ENGLISH).getBytes(ChangeLogManifestWriter.UTF_8)));
+  }
+
+}
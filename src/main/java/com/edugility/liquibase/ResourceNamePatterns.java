@@ -0,0 +1,765 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import java.util.regex.Pattern;
+
+/**
+ * A compiled list of changelog resource names, each of which is
+ * either an exact classpath-relative resource name or a pattern
+ * matching any number of them.
+ *
+ * <h3>Syntax</h3>
+ *
+ * <p>A name beginning with {@code regex:} is a {@linkplain Pattern
+ * regular expression} that must match an entire resource name.  A
+ * name beginning with {@code glob:}, or containing any of the
+ * characters {@code *}, {@code ?}, {@code [} or <code>{</code>, is a
+ * glob: {@code *} matches any characters but {@code /}, {@code **}
+ * matches any characters at all (and {@code **}{@code /} also
+ * matches nothing), {@code ?} matches one character but {@code /},
+ * {@code [...]} matches a character class ({@code [!...]} negates
+ * it), <code>{a,b}</code> matches either alternative, and {@code \}
+ * escapes the next character.  So {@code
+ * META-INF/liquibase/**}{@code /*.xml} matches every XML file
+ * beneath {@code META-INF/liquibase}, and {@code
+ * db/changelog-*.xml} every versioned changelog in {@code db}.  Any
+ * other name is an exact resource name, as before.</p>
+ *
+ * <h3>Matching</h3>
+ *
+ * <p>The literal prefix of every name&mdash;all of an exact name, and
+ * the part of a pattern before its first special character&mdash;is
+ * stored in a prefix trie.  {@linkplain #indexOf(String) Matching} a
+ * resource name walks the trie once along that name and consults
+ * only the patterns whose prefixes it passes through, so a jar
+ * file's entries or a directory's files can be matched against all
+ * names in a single pass, and {@linkplain #canMatchBeneath(String)
+ * directories} that no name can reach need not be walked at all.  A
+ * resource name belongs to the first name, in list order, that
+ * matches it.</p>
+ *
+ * <h3>Order</h3>
+ *
+ * <p>Within one classpath entry, the resources {@linkplain
+ * #select(Iterable, String) selected} by a pattern are returned in
+ * {@linkplain #compareNatural(String, String) natural order}, in
+ * which runs of digits compare numerically, so {@code
+ * changelog-1.9.xml} precedes {@code changelog-1.10.xml}.</p>
+ *
+ * <p>Instances of this class are immutable and safe for use by
+ * multiple threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public final class ResourceNamePatterns {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The prefix marking a name as a regular expression.
+   */
+  public static final String REGEX_PREFIX = "regex:";
+
+  /**
+   * The prefix marking a name as a glob.
+   */
+  public static final String GLOB_PREFIX = "glob:";
+
+  /**
+   * A {@link Comparator} that compares {@link String}s in
+   * {@linkplain #compareNatural(String, String) natural order}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  public static final Comparator<String> NATURAL_ORDER = new Comparator<String>() {
+      @Override
+      public final int compare(final String a, final String b) {
+        return compareNatural(a, b);
+      }
+    };
+
+  /**
+   * A {@link Comparator} that compares {@link ChangeLogResource}s by
+   * {@linkplain #compareNatural(String, String) natural order} of
+   * their {@linkplain ChangeLogResource#getName() names}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final Comparator<ChangeLogResource> NATURAL_NAME_ORDER = new Comparator<ChangeLogResource>() {
+      @Override
+      public final int compare(final ChangeLogResource a, final ChangeLogResource b) {
+        return compareNatural(a.getName(), b.getName());
+      }
+    };
+
+  /**
+   * Previously compiled instances, indexed by the names they were
+   * compiled from.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #of(Collection)
+   */
+  private static final ConcurrentMap<List<String>, ResourceNamePatterns> cache = new ConcurrentHashMap<List<String>, ResourceNamePatterns>();
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The names this {@link ResourceNamePatterns} was compiled from, in
+   * order; elements may be {@code null}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final List<String> names;
+
+  /**
+   * The {@link Pattern} compiled from each name, or {@code null} for
+   * exact names, indexed in the same way as {@link #names}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Pattern[] patterns;
+
+  /**
+   * The position of each name's first occurrence, indexed by name.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Map<String, Integer> indices;
+
+  /**
+   * The root of the prefix trie.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Node root;
+
+  /**
+   * Whether any name is a pattern.
+   */
+  private final boolean hasPatterns;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ResourceNamePatterns}.
+   *
+   * @param names the names to compile; must not be {@code null};
+   * elements may be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code names} is {@code
+   * null} or contains a malformed pattern
+   *
+   * @see #of(Collection)
+   */
+  public ResourceNamePatterns(final Collection<? extends String> names) {
+    super();
+    if (names == null) {
+      throw new IllegalArgumentException("names", new NullPointerException("names"));
+    }
+    this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+    this.patterns = new Pattern[this.names.size()];
+    this.indices = new HashMap<String, Integer>();
+    this.root = new Node();
+    boolean hasPatterns = false;
+    for (int i = 0; i < this.patterns.length; i++) {
+      final String name = this.names.get(i);
+      if (name != null) {
+        if (!this.indices.containsKey(name)) {
+          this.indices.put(name, Integer.valueOf(i));
+        }
+        final String prefix;
+        if (name.startsWith(REGEX_PREFIX)) {
+          final String regex = name.substring(REGEX_PREFIX.length());
+          this.patterns[i] = compile(regex, name);
+          prefix = regexPrefix(regex);
+        } else if (name.startsWith(GLOB_PREFIX) || isPattern(name)) {
+          final String glob = name.startsWith(GLOB_PREFIX) ? name.substring(GLOB_PREFIX.length()) : name;
+          this.patterns[i] = compile(globToRegex(glob), name);
+          prefix = globPrefix(glob);
+        } else {
+          prefix = name;
+        }
+        if (this.patterns[i] != null) {
+          hasPatterns = true;
+        }
+        this.root.add(prefix, i);
+      }
+    }
+    this.hasPatterns = hasPatterns;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the names this {@link ResourceNamePatterns} was compiled
+   * from, in order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link List}; elements
+   * may be {@code null}
+   */
+  public List<String> getNames() {
+    return this.names;
+  }
+
+  /**
+   * Returns {@code true} if any of the names is a pattern rather than
+   * an exact resource name.
+   *
+   * @return {@code true} if any name is a pattern
+   */
+  public boolean hasPatterns() {
+    return this.hasPatterns;
+  }
+
+  /**
+   * Returns the position of the first {@linkplain #getNames() name}
+   * that matches the supplied resource name, or {@code -1} if none
+   * does.
+   *
+   * @param resourceName a classpath-relative resource name; may be
+   * {@code null} in which case {@code -1} is returned
+   *
+   * @return a position in {@link #getNames()}, or {@code -1}
+   */
+  public int indexOf(final String resourceName) {
+    int returnValue = -1;
+    if (resourceName != null) {
+      final int length = resourceName.length();
+      Node node = this.root;
+      int position = 0;
+      while (node != null) {
+        for (int i = 0; i < node.size; i++) {
+          final int index = node.indices[i];
+          if (returnValue >= 0 && index >= returnValue) {
+            break;
+          }
+          final Pattern pattern = this.patterns[index];
+          if (pattern == null ? position == length : pattern.matcher(resourceName).matches()) {
+            returnValue = index;
+            break;
+          }
+        }
+        if (position == length) {
+          break;
+        }
+        node = node.children == null ? null : node.children.get(Character.valueOf(resourceName.charAt(position)));
+        position++;
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns {@code true} if a resource whose name begins with the
+   * supplied directory prefix could match one of the {@linkplain
+   * #getNames() names}.
+   *
+   * @param directoryPrefix a classpath-relative directory name ending
+   * with {@code /}; must not be {@code null}
+   *
+   * @return {@code true} if the directory may contain matching
+   * resources
+   *
+   * @exception IllegalArgumentException if {@code directoryPrefix} is
+   * {@code null}
+   */
+  public boolean canMatchBeneath(final String directoryPrefix) {
+    if (directoryPrefix == null) {
+      throw new IllegalArgumentException("directoryPrefix", new NullPointerException("directoryPrefix"));
+    }
+    Node node = this.root;
+    for (int position = 0; position < directoryPrefix.length(); position++) {
+      for (int i = 0; i < node.size; i++) {
+        if (this.patterns[node.indices[i]] != null) {
+          return true;
+        }
+      }
+      node = node.children == null ? null : node.children.get(Character.valueOf(directoryPrefix.charAt(position)));
+      if (node == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns those of the supplied {@link ChangeLogResource}s whose
+   * {@linkplain ChangeLogResource#getName() names} belong to the
+   * supplied name, that is, whose {@linkplain #indexOf(String) first
+   * matching name} is it, in {@linkplain #compareNatural(String,
+   * String) natural order}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param <T> the kind of {@link ChangeLogResource}
+   *
+   * @param resources the {@link ChangeLogResource}s to select from,
+   * typically those found in a single classpath entry; may be {@code
+   * null}; elements may be {@code null}
+   *
+   * @param name one of the {@linkplain #getNames() names}; may be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link List}
+   */
+  public <T extends ChangeLogResource> List<T> select(final Iterable<? extends T> resources, final String name) {
+    final List<T> returnValue = new ArrayList<T>();
+    final Integer index = name == null ? null : this.indices.get(name);
+    if (resources != null && index != null) {
+      for (final T resource : resources) {
+        if (resource != null && this.indexOf(resource.getName()) == index.intValue()) {
+          returnValue.add(resource);
+        }
+      }
+      if (returnValue.size() > 1) {
+        Collections.sort(returnValue, NATURAL_NAME_ORDER);
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * ResourceNamePatterns}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public String toString() {
+    return this.names.toString();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns a {@link ResourceNamePatterns} compiled from the supplied
+   * names, reusing one compiled earlier from equal names if possible.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param names the names to compile; must not be {@code null};
+   * elements may be {@code null}
+   *
+   * @return a non-{@code null} {@link ResourceNamePatterns}
+   *
+   * @exception IllegalArgumentException if {@code names} is {@code
+   * null} or contains a malformed pattern
+   */
+  public static ResourceNamePatterns of(final Collection<? extends String> names) {
+    if (names == null) {
+      throw new IllegalArgumentException("names", new NullPointerException("names"));
+    }
+    final List<String> key = new ArrayList<String>(names);
+    ResourceNamePatterns returnValue = cache.get(key);
+    if (returnValue == null) {
+      returnValue = new ResourceNamePatterns(key);
+      final ResourceNamePatterns existing = cache.putIfAbsent(key, returnValue);
+      if (existing != null) {
+        returnValue = existing;
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns {@code true} if the supplied name is a pattern rather
+   * than an exact resource name.
+   *
+   * @param name the name; may be {@code null}
+   *
+   * @return {@code true} if {@code name} is a pattern
+   */
+  public static boolean isPattern(final String name) {
+    if (name == null) {
+      return false;
+    }
+    if (name.startsWith(REGEX_PREFIX) || name.startsWith(GLOB_PREFIX)) {
+      return true;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      switch (name.charAt(i)) {
+      case '*':
+      case '?':
+      case '[':
+      case '{':
+        return true;
+      default:
+        break;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compares two {@link String}s in natural order: runs of digits are
+   * compared by numeric value and everything else character by
+   * character, so that, for example, {@code changelog-1.9.xml} sorts
+   * before {@code changelog-1.10.xml}.  Strings that are equal in
+   * natural order but differ, such as {@code v01} and {@code v1}, are
+   * then compared lexicographically.
+   *
+   * @param a the first {@link String}; must not be {@code null}
+   *
+   * @param b the second {@link String}; must not be {@code null}
+   *
+   * @return a negative integer, zero or a positive integer as {@code
+   * a} sorts before, with or after {@code b}
+   */
+  public static int compareNatural(final String a, final String b) {
+    final int aLength = a.length();
+    final int bLength = b.length();
+    int i = 0;
+    int j = 0;
+    while (i < aLength && j < bLength) {
+      final char ac = a.charAt(i);
+      final char bc = b.charAt(j);
+      if (isDigit(ac) && isDigit(bc)) {
+        int aStart = i;
+        int bStart = j;
+        while (aStart < aLength - 1 && a.charAt(aStart) == '0' && isDigit(a.charAt(aStart + 1))) {
+          aStart++;
+        }
+        while (bStart < bLength - 1 && b.charAt(bStart) == '0' && isDigit(b.charAt(bStart + 1))) {
+          bStart++;
+        }
+        int aEnd = aStart;
+        while (aEnd < aLength && isDigit(a.charAt(aEnd))) {
+          aEnd++;
+        }
+        int bEnd = bStart;
+        while (bEnd < bLength && isDigit(b.charAt(bEnd))) {
+          bEnd++;
+        }
+        final int digits = (aEnd - aStart) - (bEnd - bStart);
+        if (digits != 0) {
+          return digits;
+        }
+        for (int k = 0; k < aEnd - aStart; k++) {
+          final int difference = a.charAt(aStart + k) - b.charAt(bStart + k);
+          if (difference != 0) {
+            return difference;
+          }
+        }
+        i = aEnd;
+        j = bEnd;
+      } else {
+        if (ac != bc) {
+          return ac - bc;
+        }
+        i++;
+        j++;
+      }
+    }
+    final int remaining = (aLength - i) - (bLength - j);
+    if (remaining != 0) {
+      return remaining;
+    }
+    return a.compareTo(b);
+  }
+
+  /**
+   * Returns {@code true} if the supplied character is an ASCII digit.
+   *
+   * @param c the character
+   *
+   * @return {@code true} if {@code c} is an ASCII digit
+   */
+  private static final boolean isDigit(final char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Compiles the supplied regular expression.
+   *
+   * @param regex the regular expression; must not be {@code null}
+   *
+   * @param name the name it came from, for error reporting; must not
+   * be {@code null}
+   *
+   * @return a non-{@code null} {@link Pattern}
+   *
+   * @exception IllegalArgumentException if {@code regex} is malformed
+   */
+  private static final Pattern compile(final String regex, final String name) {
+    try {
+      return Pattern.compile(regex);
+    } catch (final RuntimeException e) {
+      throw new IllegalArgumentException("Malformed changelog resource pattern: " + name, e);
+    }
+  }
+
+  /**
+   * Translates the supplied glob into an equivalent regular
+   * expression.
+   *
+   * @param glob the glob; must not be {@code null}
+   *
+   * @return a non-{@code null} regular expression
+   *
+   * @exception IllegalArgumentException if {@code glob} is malformed
+   */
+  private static final String globToRegex(final String glob) {
+    assert glob != null;
+    final StringBuilder sb = new StringBuilder();
+    boolean inClass = false;
+    int alternatives = 0;
+    final int length = glob.length();
+    for (int i = 0; i < length; i++) {
+      final char c = glob.charAt(i);
+      if (inClass) {
+        if (c == ']') {
+          inClass = false;
+          sb.append(']');
+        } else if (c == '\\' && i + 1 < length) {
+          sb.append('\\').append(glob.charAt(++i));
+        } else if (c == '[' || c == '&') {
+          sb.append('\\').append(c);
+        } else {
+          sb.append(c);
+        }
+        continue;
+      }
+      switch (c) {
+      case '*':
+        if (i + 1 < length && glob.charAt(i + 1) == '*') {
+          i++;
+          if (i + 1 < length && glob.charAt(i + 1) == '/') {
+            i++;
+            sb.append("(?:.*/)?");
+          } else {
+            sb.append(".*");
+          }
+        } else {
+          sb.append("[^/]*");
+        }
+        break;
+      case '?':
+        sb.append("[^/]");
+        break;
+      case '[':
+        // A character class never matches a directory separator.
+        inClass = true;
+        sb.append("(?!/)[");
+        if (i + 1 < length && glob.charAt(i + 1) == '!') {
+          i++;
+          sb.append('^');
+        }
+        break;
+      case '{':
+        alternatives++;
+        sb.append("(?:");
+        break;
+      case '}':
+        if (alternatives > 0) {
+          alternatives--;
+          sb.append(')');
+        } else {
+          sb.append("\\}");
+        }
+        break;
+      case ',':
+        sb.append(alternatives > 0 ? "|" : ",");
+        break;
+      case '\\':
+        if (i + 1 < length) {
+          sb.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+        } else {
+          sb.append("\\\\");
+        }
+        break;
+      default:
+        sb.append(Pattern.quote(String.valueOf(c)));
+        break;
+      }
+    }
+    if (inClass || alternatives > 0) {
+      throw new IllegalArgumentException("Malformed glob: " + glob);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the literal prefix of the supplied glob: the part before
+   * its first special character.
+   *
+   * @param glob the glob; must not be {@code null}
+   *
+   * @return a non-{@code null} prefix
+   */
+  private static final String globPrefix(final String glob) {
+    assert glob != null;
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < glob.length(); i++) {
+      final char c = glob.charAt(i);
+      if (c == '*' || c == '?' || c == '[' || c == '{' || c == '\\') {
+        break;
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns a literal prefix that every match of the supplied regular
+   * expression must begin with, which may be empty.
+   *
+   * @param regex the regular expression; must not be {@code null}
+   *
+   * @return a non-{@code null} prefix
+   */
+  private static final String regexPrefix(final String regex) {
+    assert regex != null;
+    final StringBuilder sb = new StringBuilder();
+    if (regex.indexOf('|') < 0) {
+      for (int i = 0; i < regex.length(); i++) {
+        final char c = regex.charAt(i);
+        if ("\\.[]{}()*+?^$".indexOf(c) >= 0) {
+          break;
+        }
+        if (i + 1 < regex.length() && "*+?{".indexOf(regex.charAt(i + 1)) >= 0) {
+          break;
+        }
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A node in a prefix trie of names.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Node {
+
+    /**
+     * The children of this {@link Node}, indexed by character.
+     *
+     * <p>This field may be {@code null}.</p>
+     */
+    private Map<Character, Node> children;
+
+    /**
+     * The positions of the names whose literal prefixes end at this
+     * {@link Node}, in ascending order.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private int[] indices;
+
+    /**
+     * The number of valid elements in {@link #indices}.
+     */
+    private int size;
+
+    /**
+     * Creates a new {@link Node}.
+     */
+    private Node() {
+      super();
+      this.indices = new int[0];
+    }
+
+    /**
+     * Adds the name at the supplied position, whose literal prefix is
+     * supplied, beneath this {@link Node}.
+     *
+     * @param prefix the literal prefix; must not be {@code null}
+     *
+     * @param index the position of the name
+     */
+    private final void add(final String prefix, final int index) {
+      Node node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        if (node.children == null) {
+          node.children = new HashMap<Character, Node>();
+        }
+        final Character c = Character.valueOf(prefix.charAt(i));
+        Node child = node.children.get(c);
+        if (child == null) {
+          child = new Node();
+          node.children.put(c, child);
+        }
+        node = child;
+      }
+      if (node.size == node.indices.length) {
+        final int[] indices = new int[Math.max(2, node.size * 2)];
+        System.arraycopy(node.indices, 0, indices, 0, node.size);
+        node.indices = indices;
+      }
+      node.indices[node.size++] = index;
+    }
+
+  }
+
+}
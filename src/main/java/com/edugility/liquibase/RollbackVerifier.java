@@ -0,0 +1,1007 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import liquibase.Liquibase;
+
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+
+import liquibase.database.jvm.JdbcConnection;
+
+import liquibase.exception.LiquibaseException;
+
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Verifies that the rollback blocks of a set of interdependent
+ * changelogs actually work by running {@code update}, {@code
+ * rollback} and {@code update} again for each changelog on its own
+ * private, in-memory <a href="http://www.h2database.com/">H2</a>
+ * database.
+ *
+ * <p>Changelogs are grouped into {@linkplain Unit units}, typically
+ * one per contributing artifact, each of which may name other units
+ * as prerequisites.  Units are verified in topological order; units
+ * that do not depend on one another are verified in parallel.  Each
+ * unit starts from a copy of the state its prerequisites leave
+ * behind: as soon as a unit's first {@code update} succeeds, an H2
+ * {@code SCRIPT} snapshot of its database is taken, and dependent
+ * units restore that snapshot into fresh databases rather than
+ * replaying the whole history.  If a prerequisite's first {@code
+ * update} fails, its dependents are {@linkplain Status#SKIPPED
+ * skipped}.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see Unit
+ *
+ * @see Result
+ */
+public class RollbackVerifier {
+
+  /**
+   * The number of threads to use; always positive.
+   */
+  private int threads;
+
+  /**
+   * The comma-separated Liquibase contexts to apply; may be {@code
+   * null}.
+   */
+  private String contexts;
+
+  /**
+   * The <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders; may be
+   * {@code null}.
+   */
+  private Properties changeLogParameters;
+
+  /**
+   * Creates a new {@link RollbackVerifier} that uses one thread per
+   * {@linkplain Runtime#availableProcessors() available processor}.
+   */
+  public RollbackVerifier() {
+    super();
+    this.threads = Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Returns the number of threads that will verify units in
+   * parallel.
+   *
+   * @return a positive number of threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Sets the number of threads that will verify units in parallel.
+   *
+   * @param threads the number of threads; values less than {@code 1}
+   * select one thread per {@linkplain Runtime#availableProcessors()
+   * available processor}
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+  }
+
+  /**
+   * Returns the comma-separated Liquibase contexts to apply.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the contexts, or {@code null}
+   */
+  public String getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Sets the comma-separated Liquibase contexts to apply.
+   *
+   * @param contexts the contexts; may be {@code null} in which case
+   * all changesets will be applied
+   */
+  public void setContexts(final String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Returns the <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the changelog parameters, or {@code null}
+   */
+  public Properties getChangeLogParameters() {
+    return this.changeLogParameters;
+  }
+
+  /**
+   * Sets the <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a> used to expand {@code ${...}} placeholders.
+   *
+   * @param changeLogParameters the changelog parameters; may be
+   * {@code null}
+   */
+  public void setChangeLogParameters(final Properties changeLogParameters) {
+    this.changeLogParameters = changeLogParameters;
+  }
+
+  /**
+   * Verifies the supplied {@link Unit}s and returns a {@link Result}
+   * for each, in the topological order in which they were verified.
+   *
+   * <p>Prerequisites that do not name one of the supplied units are
+   * ignored.  Among units that do not depend on one another, the
+   * supplied order is preserved.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param units the {@link Unit}s to verify; must not be {@code
+   * null}
+   *
+   * @param resourceAccessor the {@link ResourceAccessor} used to
+   * read changelogs; must not be {@code null}
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of {@link
+   * Result}s
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}, if two units have the same name, or if the units'
+   * prerequisites form a cycle
+   *
+   * @exception InterruptedException if the current thread was
+   * interrupted while waiting for verification to finish
+   */
+  public List<Result> verify(final Collection<? extends Unit> units, final ResourceAccessor resourceAccessor) throws InterruptedException {
+    if (units == null) {
+      throw new IllegalArgumentException("units", new NullPointerException("units"));
+    }
+    if (resourceAccessor == null) {
+      throw new IllegalArgumentException("resourceAccessor", new NullPointerException("resourceAccessor"));
+    }
+    final List<Unit> sorted = sort(units);
+    final Map<String, Set<String>> closures = new HashMap<String, Set<String>>();
+    final Map<String, Snapshot> snapshots = new HashMap<String, Snapshot>();
+    for (final Unit unit : sorted) {
+      final Set<String> closure = new LinkedHashSet<String>();
+      for (final Unit candidate : sorted) {
+        if (candidate == unit) {
+          break;
+        }
+        if (unit.getPrerequisites().contains(candidate.getName())) {
+          closure.addAll(closures.get(candidate.getName()));
+          closure.add(candidate.getName());
+        }
+      }
+      closures.put(unit.getName(), sortedSubset(sorted, closure));
+      snapshots.put(unit.getName(), new Snapshot());
+    }
+
+    final List<Future<Result>> futures = new ArrayList<Future<Result>>(sorted.size());
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.getThreads(), Math.max(1, sorted.size())));
+    try {
+      // Units are submitted in topological order to a FIFO queue, so
+      // a task only ever waits for tasks that have already started.
+      final Map<String, Unit> byName = new HashMap<String, Unit>();
+      for (final Unit unit : sorted) {
+        byName.put(unit.getName(), unit);
+      }
+      for (final Unit unit : sorted) {
+        futures.add(executor.submit(new Callable<Result>() {
+            @Override
+            public final Result call() throws InterruptedException {
+              return verify(unit, byName, closures, snapshots, resourceAccessor);
+            }
+          }));
+      }
+      final List<Result> returnValue = new ArrayList<Result>(futures.size());
+      for (final Future<Result> future : futures) {
+        try {
+          returnValue.add(future.get());
+        } catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+          } else if (cause instanceof Error) {
+            throw (Error)cause;
+          } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException)cause;
+          }
+          throw new IllegalStateException(cause);
+        }
+      }
+      return Collections.unmodifiableList(returnValue);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Verifies a single {@link Unit} once the snapshot it starts from
+   * is available.
+   *
+   * @param unit the {@link Unit}; must not be {@code null}
+   *
+   * @param units all {@link Unit}s, indexed by name; must not be
+   * {@code null}
+   *
+   * @param closures the transitive prerequisites of every unit, in
+   * topological order, indexed by unit name; must not be {@code null}
+   *
+   * @param snapshots the {@link Snapshot} of every unit, indexed by
+   * unit name; must not be {@code null}
+   *
+   * @param resourceAccessor the {@link ResourceAccessor}; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link Result}
+   *
+   * @exception InterruptedException if the current thread was
+   * interrupted while waiting for a prerequisite's snapshot
+   */
+  private final Result verify(final Unit unit, final Map<String, Unit> units, final Map<String, Set<String>> closures, final Map<String, Snapshot> snapshots, final ResourceAccessor resourceAccessor) throws InterruptedException {
+    assert unit != null;
+    final String name = unit.getName();
+    final Set<String> closure = closures.get(name);
+    final Snapshot snapshot = snapshots.get(name);
+    final boolean needed = this.isPrerequisite(name, closures);
+
+    // Start from the snapshot of whichever direct prerequisite
+    // covers the most of this unit's prerequisites, and apply the
+    // rest of them directly.
+    String base = null;
+    for (final String prerequisite : closure) {
+      if (unit.getPrerequisites().contains(prerequisite) && (base == null || closures.get(prerequisite).size() > closures.get(base).size())) {
+        base = prerequisite;
+      }
+    }
+    List<String> script = null;
+    if (base != null) {
+      script = snapshots.get(base).await();
+      if (script == null) {
+        snapshot.publish(null);
+        return new Result(name, Status.SKIPPED, null, "Prerequisite " + base + " could not be applied", null, 0, 0L, 0L, 0L, 0L);
+      }
+    }
+
+    String phase = "setup";
+    int changeSetCount = 0;
+    final long[] nanos = new long[4];
+    Connection connection = null;
+    boolean published = false;
+    try {
+      long start = System.nanoTime();
+      connection = EmbeddedDatabases.connect(EmbeddedDatabases.DEFAULT_URL, null, null, null);
+      if (script != null) {
+        restore(connection, script);
+      }
+      if (base != null) {
+        final Set<String> covered = closures.get(base);
+        for (final String prerequisite : closure) {
+          if (!prerequisite.equals(base) && !covered.contains(prerequisite)) {
+            phase = "setup (" + prerequisite + ")";
+            for (final String changeLog : units.get(prerequisite).getChangeLogs()) {
+              this.liquibase(changeLog, resourceAccessor, connection).update(this.getContexts());
+            }
+          }
+        }
+      }
+      nanos[0] = System.nanoTime() - start;
+
+      phase = "update";
+      start = System.nanoTime();
+      final List<String> changeLogs = unit.getChangeLogs();
+      final int[] counts = new int[changeLogs.size()];
+      for (int i = 0; i < counts.length; i++) {
+        final Liquibase liquibase = this.liquibase(changeLogs.get(i), resourceAccessor, connection);
+        counts[i] = liquibase.listUnrunChangeSets(this.getContexts()).size();
+        changeSetCount += counts[i];
+        liquibase.update(this.getContexts());
+      }
+      nanos[1] = System.nanoTime() - start;
+      if (needed) {
+        snapshot.publish(script(connection));
+      }
+      published = true;
+
+      phase = "rollback";
+      start = System.nanoTime();
+      for (int i = counts.length - 1; i >= 0; i--) {
+        if (counts[i] > 0) {
+          this.liquibase(changeLogs.get(i), resourceAccessor, connection).rollback(counts[i], this.getContexts());
+        }
+      }
+      nanos[2] = System.nanoTime() - start;
+
+      phase = "update after rollback";
+      start = System.nanoTime();
+      for (final String changeLog : changeLogs) {
+        this.liquibase(changeLog, resourceAccessor, connection).update(this.getContexts());
+      }
+      nanos[3] = System.nanoTime() - start;
+      return new Result(name, Status.PASSED, null, null, null, changeSetCount, nanos[0], nanos[1], nanos[2], nanos[3]);
+    } catch (final LiquibaseException e) {
+      return new Result(name, Status.FAILED, phase, e.getMessage(), e, changeSetCount, nanos[0], nanos[1], nanos[2], nanos[3]);
+    } catch (final SQLException e) {
+      return new Result(name, Status.FAILED, phase, e.getMessage(), e, changeSetCount, nanos[0], nanos[1], nanos[2], nanos[3]);
+    } catch (final RuntimeException e) {
+      return new Result(name, Status.FAILED, phase, e.toString(), e, changeSetCount, nanos[0], nanos[1], nanos[2], nanos[3]);
+    } finally {
+      if (!published) {
+        snapshot.publish(null);
+      }
+      if (connection != null) {
+        try {
+          connection.close();
+        } catch (final SQLException nothingWeCanDo) {
+
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a new {@link Liquibase} that will apply the supplied
+   * changelog using the supplied {@link Connection}.
+   *
+   * <p>A new {@link Database} is created each time so that no
+   * {@linkplain Database#getRanChangeSetList() cached history} from
+   * a previous operation is reused.</p>
+   *
+   * @param changeLog the name of the changelog; must not be {@code
+   * null}
+   *
+   * @param resourceAccessor the {@link ResourceAccessor}; must not be
+   * {@code null}
+   *
+   * @param connection the {@link Connection}; must not be {@code
+   * null}
+   *
+   * @return a new {@link Liquibase}
+   *
+   * @exception LiquibaseException if the {@link Liquibase} could not
+   * be created
+   */
+  private final Liquibase liquibase(final String changeLog, final ResourceAccessor resourceAccessor, final Connection connection) throws LiquibaseException {
+    final Liquibase liquibase = new Liquibase(changeLog, resourceAccessor, DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection)));
+    final Properties changeLogParameters = this.getChangeLogParameters();
+    if (changeLogParameters != null) {
+      for (final String name : changeLogParameters.stringPropertyNames()) {
+        liquibase.setChangeLogParameter(name, changeLogParameters.getProperty(name));
+      }
+    }
+    return liquibase;
+  }
+
+  /**
+   * Returns {@code true} if the unit with the supplied name is a
+   * prerequisite of any unit.
+   *
+   * @param name the unit name; must not be {@code null}
+   *
+   * @param closures the transitive prerequisites of every unit; must
+   * not be {@code null}
+   *
+   * @return {@code true} if some unit depends on the named unit
+   */
+  private final boolean isPrerequisite(final String name, final Map<String, Set<String>> closures) {
+    for (final Set<String> closure : closures.values()) {
+      if (closure.contains(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the supplied {@link Unit}s in a stable topological order.
+   *
+   * @param units the {@link Unit}s; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link List}
+   *
+   * @exception IllegalArgumentException if two units have the same
+   * name or the units' prerequisites form a cycle
+   */
+  private static final List<Unit> sort(final Collection<? extends Unit> units) {
+    assert units != null;
+    final Map<String, Unit> byName = new LinkedHashMap<String, Unit>();
+    for (final Unit unit : units) {
+      if (unit != null && byName.put(unit.getName(), unit) != null) {
+        throw new IllegalArgumentException("Duplicate unit: " + unit.getName());
+      }
+    }
+    final List<Unit> returnValue = new ArrayList<Unit>(byName.size());
+    final Set<String> visiting = new LinkedHashSet<String>();
+    final Set<String> visited = new LinkedHashSet<String>();
+    for (final Unit unit : byName.values()) {
+      visit(unit, byName, visiting, visited, returnValue);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Adds the supplied {@link Unit} to the supplied {@link List} after
+   * its prerequisites, depth first.
+   *
+   * @param unit the {@link Unit}; must not be {@code null}
+   *
+   * @param units all {@link Unit}s, indexed by name; must not be
+   * {@code null}
+   *
+   * @param visiting the names of units whose prerequisites are being
+   * visited; must not be {@code null}
+   *
+   * @param visited the names of units already added; must not be
+   * {@code null}
+   *
+   * @param sorted the {@link List} to add to; must not be {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if a cycle is found
+   */
+  private static final void visit(final Unit unit, final Map<String, Unit> units, final Set<String> visiting, final Set<String> visited, final List<Unit> sorted) {
+    final String name = unit.getName();
+    if (!visited.contains(name)) {
+      if (!visiting.add(name)) {
+        throw new IllegalArgumentException("Prerequisite cycle: " + visiting + " -> " + name);
+      }
+      for (final String prerequisite : unit.getPrerequisites()) {
+        final Unit u = units.get(prerequisite);
+        if (u != null) {
+          visit(u, units, visiting, visited, sorted);
+        }
+      }
+      visiting.remove(name);
+      visited.add(name);
+      sorted.add(unit);
+    }
+  }
+
+  /**
+   * Returns those names in the supplied {@link Set} in the order of
+   * the supplied sorted {@link Unit}s.
+   *
+   * @param sorted the sorted {@link Unit}s; must not be {@code null}
+   *
+   * @param names the names; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Set}
+   */
+  private static final Set<String> sortedSubset(final List<Unit> sorted, final Set<String> names) {
+    final Set<String> returnValue = new LinkedHashSet<String>();
+    for (final Unit unit : sorted) {
+      if (names.contains(unit.getName())) {
+        returnValue.add(unit.getName());
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns an H2 {@code SCRIPT} of the database behind the supplied
+   * {@link Connection}.
+   *
+   * @param connection the {@link Connection}; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link List} of SQL statements
+   *
+   * @exception SQLException if the script could not be produced
+   */
+  private static final List<String> script(final Connection connection) throws SQLException {
+    final List<String> returnValue = new ArrayList<String>();
+    final Statement statement = connection.createStatement();
+    try {
+      final ResultSet resultSet = statement.executeQuery("SCRIPT NOPASSWORDS");
+      while (resultSet.next()) {
+        returnValue.add(resultSet.getString(1));
+      }
+    } finally {
+      statement.close();
+    }
+    return returnValue;
+  }
+
+  /**
+   * Executes the supplied {@linkplain #script(Connection) script}
+   * against the database behind the supplied {@link Connection}.
+   *
+   * @param connection the {@link Connection}; must not be {@code
+   * null}
+   *
+   * @param script the SQL statements; must not be {@code null}
+   *
+   * @exception SQLException if the script could not be executed
+   */
+  private static final void restore(final Connection connection, final List<String> script) throws SQLException {
+    final Statement statement = connection.createStatement();
+    try {
+      for (final String sql : script) {
+        if (!sql.startsWith("CREATE USER ")) {
+          statement.execute(sql);
+        }
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The outcome of {@linkplain RollbackVerifier#verify(Collection,
+   * ResourceAccessor) verifying} a {@link Unit}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static enum Status {
+
+    /**
+     * Indicates that {@code update}, {@code rollback} and {@code
+     * update} all succeeded.
+     */
+    PASSED,
+
+    /**
+     * Indicates that one of the phases failed.
+     */
+    FAILED,
+
+    /**
+     * Indicates that the unit was not verified because one of its
+     * prerequisites could not be applied.
+     */
+    SKIPPED;
+
+  }
+
+  /**
+   * A named group of changelogs, such as those contributed by a
+   * single artifact, to be verified together.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Unit {
+
+    /**
+     * The name of this {@link Unit}; never {@code null}.
+     */
+    private final String name;
+
+    /**
+     * The changelogs of this {@link Unit}, in application order;
+     * never {@code null}.
+     */
+    private final List<String> changeLogs;
+
+    /**
+     * The names of the units whose changelogs must be applied before
+     * this one's; never {@code null}.
+     */
+    private final Set<String> prerequisites;
+
+    /**
+     * Creates a new {@link Unit}.
+     *
+     * @param name the name; must not be {@code null}
+     *
+     * @param changeLogs the changelog names, as understood by the
+     * {@link ResourceAccessor} that will be used, in application
+     * order; must not be {@code null}
+     *
+     * @param prerequisites the names of the units that must be
+     * applied first; may be {@code null}
+     *
+     * @exception IllegalArgumentException if {@code name} or {@code
+     * changeLogs} is {@code null}
+     */
+    public Unit(final String name, final Collection<String> changeLogs, final Collection<String> prerequisites) {
+      super();
+      if (name == null) {
+        throw new IllegalArgumentException("name", new NullPointerException("name"));
+      }
+      if (changeLogs == null) {
+        throw new IllegalArgumentException("changeLogs", new NullPointerException("changeLogs"));
+      }
+      this.name = name;
+      this.changeLogs = Collections.unmodifiableList(new ArrayList<String>(changeLogs));
+      if (prerequisites == null) {
+        this.prerequisites = Collections.emptySet();
+      } else {
+        this.prerequisites = Collections.unmodifiableSet(new LinkedHashSet<String>(prerequisites));
+      }
+    }
+
+    /**
+     * Returns the name of this {@link Unit}.
+     *
+     * @return the non-{@code null} name
+     */
+    public String getName() {
+      return this.name;
+    }
+
+    /**
+     * Returns the changelogs of this {@link Unit}, in application
+     * order.
+     *
+     * @return a non-{@code null}, unmodifiable {@link List}
+     */
+    public List<String> getChangeLogs() {
+      return this.changeLogs;
+    }
+
+    /**
+     * Returns the names of the units that must be applied before
+     * this one.
+     *
+     * @return a non-{@code null}, unmodifiable {@link Set}
+     */
+    public Set<String> getPrerequisites() {
+      return this.prerequisites;
+    }
+
+    /**
+     * Returns the name of this {@link Unit}.
+     *
+     * @return the non-{@code null} name
+     */
+    @Override
+    public String toString() {
+      return this.name;
+    }
+
+  }
+
+  /**
+   * The result of verifying a {@link Unit}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static final class Result {
+
+    /**
+     * The name of the verified {@link Unit}; never {@code null}.
+     */
+    private final String name;
+
+    /**
+     * The {@link Status}; never {@code null}.
+     */
+    private final Status status;
+
+    /**
+     * The phase that failed; may be {@code null}.
+     */
+    private final String phase;
+
+    /**
+     * A description of the problem; may be {@code null}.
+     */
+    private final String message;
+
+    /**
+     * The cause of failure; may be {@code null}.
+     */
+    private final Throwable cause;
+
+    /**
+     * The number of changesets applied by the first {@code update}.
+     */
+    private final int changeSetCount;
+
+    /**
+     * The nanoseconds spent preparing the database.
+     */
+    private final long setupNanos;
+
+    /**
+     * The nanoseconds spent in the first {@code update}.
+     */
+    private final long updateNanos;
+
+    /**
+     * The nanoseconds spent in the {@code rollback}.
+     */
+    private final long rollbackNanos;
+
+    /**
+     * The nanoseconds spent in the second {@code update}.
+     */
+    private final long reupdateNanos;
+
+    /**
+     * Creates a new {@link Result}.
+     *
+     * @param name the name of the verified {@link Unit}; must not be
+     * {@code null}
+     *
+     * @param status the {@link Status}; must not be {@code null}
+     *
+     * @param phase the phase that failed; may be {@code null}
+     *
+     * @param message a description of the problem; may be {@code
+     * null}
+     *
+     * @param cause the cause of failure; may be {@code null}
+     *
+     * @param changeSetCount the number of changesets applied by the
+     * first {@code update}
+     *
+     * @param setupNanos the nanoseconds spent preparing the database
+     *
+     * @param updateNanos the nanoseconds spent in the first {@code
+     * update}
+     *
+     * @param rollbackNanos the nanoseconds spent in the {@code
+     * rollback}
+     *
+     * @param reupdateNanos the nanoseconds spent in the second {@code
+     * update}
+     *
+     * @exception IllegalArgumentException if {@code name} or {@code
+     * status} is {@code null}
+     */
+    public Result(final String name, final Status status, final String phase, final String message, final Throwable cause, final int changeSetCount, final long setupNanos, final long updateNanos, final long rollbackNanos, final long reupdateNanos) {
+      super();
+      if (name == null) {
+        throw new IllegalArgumentException("name", new NullPointerException("name"));
+      }
+      if (status == null) {
+        throw new IllegalArgumentException("status", new NullPointerException("status"));
+      }
+      this.name = name;
+      this.status = status;
+      this.phase = phase;
+      this.message = message;
+      this.cause = cause;
+      this.changeSetCount = changeSetCount;
+      this.setupNanos = setupNanos;
+      this.updateNanos = updateNanos;
+      this.rollbackNanos = rollbackNanos;
+      this.reupdateNanos = reupdateNanos;
+    }
+
+    /**
+     * Returns the name of the verified {@link Unit}.
+     *
+     * @return the non-{@code null} name
+     */
+    public String getName() {
+      return this.name;
+    }
+
+    /**
+     * Returns the {@link Status}.
+     *
+     * @return the non-{@code null} {@link Status}
+     */
+    public Status getStatus() {
+      return this.status;
+    }
+
+    /**
+     * Returns the phase that failed, such as {@code rollback}.
+     *
+     * @return the phase, or {@code null}
+     */
+    public String getPhase() {
+      return this.phase;
+    }
+
+    /**
+     * Returns a description of the problem.
+     *
+     * @return a description, or {@code null}
+     */
+    public String getMessage() {
+      return this.message;
+    }
+
+    /**
+     * Returns the cause of failure.
+     *
+     * @return a {@link Throwable}, or {@code null}
+     */
+    public Throwable getCause() {
+      return this.cause;
+    }
+
+    /**
+     * Returns the number of changesets applied by the first {@code
+     * update}.
+     *
+     * @return the number of changesets
+     */
+    public int getChangeSetCount() {
+      return this.changeSetCount;
+    }
+
+    /**
+     * Returns the nanoseconds spent restoring the prerequisite state.
+     *
+     * @return the nanoseconds
+     */
+    public long getSetupNanos() {
+      return this.setupNanos;
+    }
+
+    /**
+     * Returns the nanoseconds spent in the first {@code update}.
+     *
+     * @return the nanoseconds
+     */
+    public long getUpdateNanos() {
+      return this.updateNanos;
+    }
+
+    /**
+     * Returns the nanoseconds spent in the {@code rollback}.
+     *
+     * @return the nanoseconds
+     */
+    public long getRollbackNanos() {
+      return this.rollbackNanos;
+    }
+
+    /**
+     * Returns the nanoseconds spent in the second {@code update}.
+     *
+     * @return the nanoseconds
+     */
+    public long getReupdateNanos() {
+      return this.reupdateNanos;
+    }
+
+    /**
+     * Returns the total nanoseconds spent verifying the {@link Unit}.
+     *
+     * @return the nanoseconds
+     */
+    public long getNanos() {
+      return this.setupNanos + this.updateNanos + this.rollbackNanos + this.reupdateNanos;
+    }
+
+    /**
+     * Returns a {@link String} representation of this {@link Result}.
+     *
+     * @return a non-{@code null} {@link String}
+     */
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder(this.name).append(": ").append(this.status);
+      if (this.phase != null) {
+        sb.append(" during ").append(this.phase);
+      }
+      if (this.message != null) {
+        sb.append(": ").append(this.message);
+      }
+      return sb.toString();
+    }
+
+  }
+
+  /**
+   * The state left behind by a {@link Unit}'s first {@code update},
+   * published once for any number of waiting dependents.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Snapshot {
+
+    /**
+     * Released when the script is published.
+     */
+    private final CountDownLatch latch;
+
+    /**
+     * The script; {@code null} if the unit could not be applied.
+     */
+    private volatile List<String> script;
+
+    /**
+     * Creates a new {@link Snapshot}.
+     */
+    private Snapshot() {
+      super();
+      this.latch = new CountDownLatch(1);
+    }
+
+    /**
+     * Publishes the supplied script.  Only the first call has any
+     * effect.
+     *
+     * @param script the script; may be {@code null} if the unit could
+     * not be applied
+     */
+    private final synchronized void publish(final List<String> script) {
+      if (this.latch.getCount() > 0L) {
+        this.script = script;
+        this.latch.countDown();
+      }
+    }
+
+    /**
+     * Waits for and returns the published script.
+     *
+     * @return the script, or {@code null} if the unit could not be
+     * applied
+     *
+     * @exception InterruptedException if the current thread was
+     * interrupted while waiting
+     */
+    private final List<String> await() throws InterruptedException {
+      this.latch.await();
+      return this.script;
+    }
+
+  }
+
+}
@@ -0,0 +1,209 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.util.Enumeration;
+
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * A {@link ResourceAccessor} that understands the absolute {@code
+ * file:} and {@code jar:} {@link URL}s that an assembled changelog
+ * {@code include}s, and that otherwise falls back to {@linkplain
+ * ClassLoader#getResourceAsStream(String) classpath} and filesystem
+ * lookups.
+ *
+ * <p>Liquibase's stock {@link ResourceAccessor} implementations
+ * treat the {@code file} attribute of an {@code include} element as
+ * either a classpath resource name or a filesystem path.  The
+ * changelogs assembled by this project, by contrast, typically
+ * include fragments by their full {@link URL}s.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ResourceAccessor
+ */
+public class URLResourceAccessor implements ResourceAccessor {
+
+  /**
+   * The {@link ClassLoader} used to find non-{@link URL} resources.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #URLResourceAccessor(ClassLoader)
+   */
+  private final ClassLoader loader;
+
+  /**
+   * Creates a new {@link URLResourceAccessor} that uses the {@link
+   * ClassLoader} that loaded this class for non-{@link URL}
+   * resources.
+   *
+   * @see #URLResourceAccessor(ClassLoader)
+   */
+  public URLResourceAccessor() {
+    this(null);
+  }
+
+  /**
+   * Creates a new {@link URLResourceAccessor}.
+   *
+   * @param loader the {@link ClassLoader} to use to find resources
+   * whose names are not {@link URL}s; may be {@code null} in which
+   * case the {@link ClassLoader} that loaded this class will be used
+   * instead
+   */
+  public URLResourceAccessor(final ClassLoader loader) {
+    super();
+    if (loader == null) {
+      this.loader = this.getClass().getClassLoader();
+    } else {
+      this.loader = loader;
+    }
+  }
+
+  /**
+   * Returns an {@link InputStream} for the supplied resource name,
+   * which may be an absolute {@link URL}, a filesystem path or a
+   * classpath resource name, in that order of preference.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param file the name of the resource; may be {@code null} in
+   * which case {@code null} will be returned
+   *
+   * @return an {@link InputStream}, or {@code null} if the resource
+   * could not be found
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @see #toURL(String)
+   */
+  @Override
+  public InputStream getResourceAsStream(final String file) throws IOException {
+    InputStream returnValue = null;
+    if (file != null) {
+      final URL url = toURL(file);
+      if (url != null) {
+        returnValue = url.openStream();
+      } else {
+        final File f = new File(file);
+        if (f.isFile()) {
+          returnValue = new FileInputStream(f);
+        } else {
+          returnValue = this.loader.getResourceAsStream(file);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns an {@link Enumeration} of {@link URL}s representing
+   * classpath resources with the supplied name.
+   *
+   * @param packageName the name of the resources to find; must not
+   * be {@code null}
+   *
+   * @return an {@link Enumeration} of {@link URL}s; never {@code
+   * null}
+   *
+   * @exception IOException if an input/output error occurs
+   *
+   * @see ClassLoader#getResources(String)
+   */
+  @Override
+  public Enumeration<URL> getResources(final String packageName) throws IOException {
+    return this.loader.getResources(packageName);
+  }
+
+  /**
+   * Returns the {@link ClassLoader} supplied at construction time.
+   *
+   * @return a {@link ClassLoader}; never {@code null}
+   */
+  @Override
+  public ClassLoader toClassLoader() {
+    return this.loader;
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * URLResourceAccessor}.
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public String toString() {
+    return this.getClass().getName() + "(" + this.loader + ")";
+  }
+
+  /**
+   * Returns a {@link URL} for the supplied {@link String} if and only
+   * if it is an absolute {@link URL} with a scheme at least two
+   * characters long (so that Windows drive letters are not mistaken
+   * for schemes).  {@linkplain NestedJarChangeLogScanner#isNested(String)
+   * Nested} {@code jar:} {@link URL}s are created so that they can be
+   * opened.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param file the {@link String} to convert; may be {@code null}
+   * in which case {@code null} will be returned
+   *
+   * @return a {@link URL}, or {@code null}
+   */
+  static final URL toURL(final String file) {
+    URL returnValue = null;
+    if (file != null) {
+      final int colonIndex = file.indexOf(':');
+      if (colonIndex > 1) {
+        try {
+          if (NestedJarChangeLogScanner.isNested(file)) {
+            returnValue = NestedJarChangeLogScanner.newURL(file);
+          } else {
+            returnValue = new URL(file);
+          }
+        } catch (final MalformedURLException notAURL) {
+          returnValue = null;
+        }
+      }
+    }
+    return returnValue;
+  }
+
+}
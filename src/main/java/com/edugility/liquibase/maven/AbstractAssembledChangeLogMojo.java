@@ -0,0 +1,303 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Properties;
+
+import com.edugility.liquibase.URLResourceAccessor;
+
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.exception.LiquibaseException;
+
+import liquibase.parser.ChangeLogParser;
+import liquibase.parser.ChangeLogParserFactory;
+
+import liquibase.resource.ResourceAccessor;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * An {@link AbstractLiquibaseMojo} that operates on a changelog that
+ * has already been {@linkplain AssembleChangeLogMojo assembled}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see AssembleChangeLogMojo
+ */
+public abstract class AbstractAssembledChangeLogMojo extends AbstractLiquibaseMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * Whether or not this plugin execution should be skipped; {@code
+   * false} by default.
+   *
+   * @see #getSkip()
+   *
+   * @see #setSkip(boolean)
+   */
+  @Parameter(defaultValue = "false")
+  private boolean skip;
+
+  /**
+   * The assembled changelog to operate on; normally the {@code
+   * outputFile} of the {@link AssembleChangeLogMojo
+   * assembleChangeLog} goal;
+   * <code>${project.build.directory}/generated-sources/liquibase/changelog.xml</code>
+   * by default.
+   *
+   * @see #getChangeLogFile()
+   *
+   * @see #setChangeLogFile(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/generated-sources/liquibase/changelog.xml", required = true)
+  private File changeLogFile;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link AbstractAssembledChangeLogMojo}.
+   */
+  protected AbstractAssembledChangeLogMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns {@code true} if the {@link #execute()} method should take
+   * no action.
+   *
+   * @return {@code true} if the {@link #execute()} method should take
+   * no action; {@code false} otherwise
+   *
+   * @see #setSkip(boolean)
+   */
+  public boolean getSkip() {
+    return this.skip;
+  }
+
+  /**
+   * Sets whether the {@link #execute()} method will take any action.
+   *
+   * @param skip if {@code true}, then the {@link #execute()} method
+   * will take no action
+   *
+   * @see #getSkip()
+   */
+  public void setSkip(final boolean skip) {
+    this.skip = skip;
+  }
+
+  /**
+   * Returns the assembled changelog {@link File} this {@link
+   * AbstractAssembledChangeLogMojo} operates on.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setChangeLogFile(File)
+   */
+  public File getChangeLogFile() {
+    return this.changeLogFile;
+  }
+
+  /**
+   * Sets the assembled changelog {@link File} this {@link
+   * AbstractAssembledChangeLogMojo} operates on.
+   *
+   * @param changeLogFile the {@link File}; may be {@code null}
+   *
+   * @see #getChangeLogFile()
+   */
+  public void setChangeLogFile(final File changeLogFile) {
+    this.changeLogFile = changeLogFile;
+  }
+
+  /**
+   * Returns a {@link ResourceAccessor} capable of resolving the
+   * {@code include}s of an assembled changelog.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The default implementation returns a new {@link
+   * URLResourceAccessor} that falls back to the {@link ClassLoader}
+   * that loaded this class, which can "see" the XSDs bundled with
+   * Liquibase.</p>
+   *
+   * @return a non-{@code null} {@link ResourceAccessor}
+   *
+   * @see URLResourceAccessor
+   */
+  public ResourceAccessor getResourceAccessor() {
+    return new URLResourceAccessor(this.getClass().getClassLoader());
+  }
+
+  /**
+   * Parses the supplied changelog, together with all of its {@code
+   * include}s, using Liquibase and returns the result.
+   *
+   * <p>{@code ${...}} placeholders are expanded using the
+   * {@linkplain #getChangeLogParameters() configured changelog
+   * parameters}, so the result is the changelog that runs at
+   * application time.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeLog the name of the changelog to parse as
+   * understood by the {@linkplain #getResourceAccessor() resource
+   * accessor}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link DatabaseChangeLog}
+   *
+   * @exception IllegalArgumentException if {@code changeLog} is
+   * {@code null}
+   *
+   * @exception LiquibaseException if the changelog could not be
+   * parsed
+   *
+   * @see ChangeLogParserFactory#getParser(String, ResourceAccessor)
+   */
+  public DatabaseChangeLog parseChangeLog(final String changeLog) throws LiquibaseException {
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    final ResourceAccessor resourceAccessor = this.getResourceAccessor();
+    final ChangeLogParser parser = ChangeLogParserFactory.getInstance().getParser(changeLog, resourceAccessor);
+    assert parser != null;
+    return parser.parse(changeLog, this.newChangeLogParameters(), resourceAccessor);
+  }
+
+  /**
+   * Returns a new {@link ChangeLogParameters} populated with the
+   * {@linkplain #getChangeLogParameters() configured changelog
+   * parameters}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a new {@link ChangeLogParameters}; never {@code null}
+   *
+   * @see #getChangeLogParameters()
+   */
+  protected ChangeLogParameters newChangeLogParameters() {
+    final ChangeLogParameters returnValue = new ChangeLogParameters();
+    final Properties changeLogParameters = this.getChangeLogParameters();
+    if (changeLogParameters != null) {
+      for (final String name : changeLogParameters.stringPropertyNames()) {
+        returnValue.set(name, changeLogParameters.getProperty(name));
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Executes this {@link AbstractAssembledChangeLogMojo} by ensuring
+   * that the {@linkplain #getChangeLogFile() assembled changelog}
+   * exists and then calling the {@link #execute(File)} method.
+   *
+   * @exception MojoExecutionException if the {@link #execute(File)}
+   * method throws it
+   *
+   * @exception MojoFailureException if the assembled changelog does
+   * not exist, or if the {@link #execute(File)} method throws it
+   *
+   * @see #execute(File)
+   */
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    final Log log = this.getLog();
+    if (this.getSkip()) {
+      if (log != null && log.isDebugEnabled()) {
+        log.debug("Skipping execution by request");
+      }
+    } else {
+      final File changeLogFile = this.getChangeLogFile();
+      if (changeLogFile == null) {
+        throw new IllegalStateException("this.getChangeLogFile()", new NullPointerException("this.getChangeLogFile()"));
+      }
+      if (!changeLogFile.isFile()) {
+        throw new MojoFailureException("The assembled changelog " + changeLogFile + " does not exist; has the assembleChangeLog goal run?");
+      }
+      this.execute(changeLogFile);
+    }
+  }
+
+  /**
+   * Performs the work of this {@link AbstractAssembledChangeLogMojo}
+   * against the supplied, extant, assembled changelog.
+   *
+   * @param changeLogFile the assembled changelog; will never be
+   * {@code null} and will always {@linkplain File#isFile() exist}
+   *
+   * @exception MojoExecutionException if an unexpected error occurs
+   *
+   * @exception MojoFailureException if the work could not be
+   * performed
+   */
+  protected abstract void execute(final File changeLogFile) throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Creates the supplied directory and any missing parents if it
+   * does not exist.
+   *
+   * @param directory the directory; may be {@code null} in which case
+   * no action will be taken
+   *
+   * @exception IOException if the directory could not be created
+   */
+  protected static final void mkdirs(final File directory) throws IOException {
+    if (directory != null && !directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Could not create directory " + directory);
+    }
+  }
+
+}
@@ -27,9 +27,12 @@
  */
 package com.edugility.liquibase.maven;
 
+import java.util.Properties;
+
 import org.apache.maven.plugin.AbstractMojo;
 
 import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
 
 import org.apache.maven.project.MavenProject;
 
@@ -58,6 +61,22 @@ public abstract class AbstractLiquibaseMojo extends AbstractMojo {
   @Component
   private MavenProject project;
 
+  /**
+   * A set of {@link Properties} defining <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a>; {@code null} by default.
+   *
+   * @see #getChangeLogParameters()
+   *
+   * @see #setChangeLogParameters(Properties)
+   *
+   * @see <a
+   * href="http://maven.apache.org/guides/mini/guide-configuring-plugins.html#Mapping_Properties">Guide
+   * to Configuring Plug-Ins</a>
+   */
+  @Parameter
+  private Properties changeLogParameters;
+
   /**
    * Creates a new {@link AbstractLiquibaseMojo}.
    */
@@ -92,4 +111,35 @@ public abstract class AbstractLiquibaseMojo extends AbstractMojo {
     this.project = project;
   }
 
+  /**
+   * Returns a {@link Properties} object containing <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a>.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Properties} object containing <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a>, or {@code null}
+   *
+   * @see #setChangeLogParameters(Properties)
+   */
+  public Properties getChangeLogParameters() {
+    return this.changeLogParameters;
+  }
+
+  /**
+   * Installs a {@link Properties} object containing <a
+   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
+   * parameters</a>.
+   *
+   * @param parameters the changelog parameters to use; may be {@code
+   * null}
+   *
+   * @see #getChangeLogParameters()
+   */
+  public void setChangeLogParameters(final Properties parameters) {
+    this.changeLogParameters = parameters;
+  }
+
 }
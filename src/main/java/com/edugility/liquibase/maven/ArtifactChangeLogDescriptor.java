@@ -0,0 +1,150 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import com.edugility.liquibase.ChangeLogDescriptor;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * A {@link ChangeLogDescriptor} for an {@link
+ * ArtifactChangeLogResource}, which additionally lets a template read
+ * the coordinates, scope and dependency depth of the {@link Artifact}
+ * in which the changelog was found, such as {@code
+ * resource.artifactId} or {@code resource.depth}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogDescriptor
+ */
+public class ArtifactChangeLogDescriptor extends ChangeLogDescriptor {
+
+  /**
+   * The depth of the {@link Artifact} in the dependency graph, or
+   * {@code -1} if it is not known.
+   *
+   * @see #getDepth()
+   */
+  private final int depth;
+
+  /**
+   * Creates a new {@link ArtifactChangeLogDescriptor}.
+   *
+   * @param resource the {@link ArtifactChangeLogResource} to
+   * describe; must not be {@code null}
+   *
+   * @param include the {@code include} by which the assembled
+   * changelog refers to it; must not be {@code null}
+   *
+   * @param depth the depth of the resource's {@link Artifact} in the
+   * dependency graph, where the project's direct dependencies have a
+   * depth of {@code 1}, or {@code -1} if it is not known
+   *
+   * @exception IllegalArgumentException if either {@code resource} or
+   * {@code include} is {@code null}
+   */
+  public ArtifactChangeLogDescriptor(final ArtifactChangeLogResource resource, final String include, final int depth) {
+    super(resource, include);
+    this.depth = depth;
+  }
+
+  /**
+   * Returns the {@link Artifact} in which the changelog was found.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Artifact}
+   */
+  public Artifact getArtifact() {
+    return ((ArtifactChangeLogResource)this.getResource()).getArtifact();
+  }
+
+  /**
+   * Returns the group identifier of the {@link Artifact} in which the
+   * changelog was found.
+   *
+   * @return the group identifier, or {@code null}
+   */
+  public String getGroupId() {
+    return this.getArtifact().getGroupId();
+  }
+
+  /**
+   * Returns the artifact identifier of the {@link Artifact} in which
+   * the changelog was found.
+   *
+   * @return the artifact identifier, or {@code null}
+   */
+  public String getArtifactId() {
+    return this.getArtifact().getArtifactId();
+  }
+
+  /**
+   * Returns the version of the {@link Artifact} in which the
+   * changelog was found.
+   *
+   * @return the version, or {@code null}
+   */
+  public String getVersion() {
+    return this.getArtifact().getVersion();
+  }
+
+  /**
+   * Returns the classifier of the {@link Artifact} in which the
+   * changelog was found.
+   *
+   * @return the classifier, or {@code null}
+   */
+  public String getClassifier() {
+    return this.getArtifact().getClassifier();
+  }
+
+  /**
+   * Returns the scope of the {@link Artifact} in which the changelog
+   * was found, such as {@code compile} or {@code test}.
+   *
+   * @return the scope, or {@code null}
+   */
+  public String getScope() {
+    return this.getArtifact().getScope();
+  }
+
+  /**
+   * Returns the depth of the {@link Artifact} in which the changelog
+   * was found in the dependency graph: {@code 1} for a direct
+   * dependency of the project, {@code 2} for a dependency of one of
+   * those, and so on, or {@code -1} if it is not known.
+   *
+   * @return the depth of the {@link Artifact}, or {@code -1}
+   */
+  public int getDepth() {
+    return this.depth;
+  }
+
+}
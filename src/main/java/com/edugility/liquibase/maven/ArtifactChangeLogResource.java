@@ -0,0 +1,119 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.net.URL;
+
+import com.edugility.liquibase.ChangeLogResource;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * A {@link ChangeLogResource} that was found in a particular {@link
+ * Artifact}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogResource
+ */
+public class ArtifactChangeLogResource extends ChangeLogResource {
+
+  /**
+   * The {@link Artifact} in which the changelog was found.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getArtifact()
+   */
+  private final Artifact artifact;
+
+  /**
+   * Creates a new {@link ArtifactChangeLogResource}.
+   *
+   * @param url the {@link URL} of the changelog; must not be {@code
+   * null}
+   *
+   * @param name the classpath-relative resource name under which the
+   * changelog was found; must not be {@code null}
+   *
+   * @param artifact the {@link Artifact} in which the changelog was
+   * found; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if any parameter is {@code
+   * null}
+   */
+  public ArtifactChangeLogResource(final URL url, final String name, final Artifact artifact) {
+    super(url, name);
+    if (artifact == null) {
+      throw new IllegalArgumentException("artifact", new NullPointerException("artifact"));
+    }
+    this.artifact = artifact;
+  }
+
+  /**
+   * Creates a new {@link ArtifactChangeLogResource} whose {@linkplain
+   * #getContentHash() content hash} has already been computed.
+   *
+   * @param url the {@link URL} of the changelog; must not be {@code
+   * null}
+   *
+   * @param name the classpath-relative resource name under which the
+   * changelog was found; must not be {@code null}
+   *
+   * @param contentHash the content hash of the changelog; may be
+   * {@code null} in which case it will be computed on first use
+   *
+   * @param artifact the {@link Artifact} in which the changelog was
+   * found; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code url}, {@code name}
+   * or {@code artifact} is {@code null}
+   *
+   * @see ChangeLogResource#ChangeLogResource(URL, String, String)
+   */
+  public ArtifactChangeLogResource(final URL url, final String name, final String contentHash, final Artifact artifact) {
+    super(url, name, contentHash);
+    if (artifact == null) {
+      throw new IllegalArgumentException("artifact", new NullPointerException("artifact"));
+    }
+    this.artifact = artifact;
+  }
+
+  /**
+   * Returns the {@link Artifact} in which the changelog was found.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Artifact}
+   */
+  public Artifact getArtifact() {
+    return this.artifact;
+  }
+
+}
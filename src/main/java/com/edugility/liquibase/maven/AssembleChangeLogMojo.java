@@ -30,10 +30,12 @@ package com.edugility.liquibase.maven;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 
@@ -45,13 +47,37 @@ import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-
-import com.edugility.maven.Artifacts;
+import java.util.Set;
+import java.util.TreeMap;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.edugility.liquibase.ChangeLogAssembler;
+import com.edugility.liquibase.ChangeLogAssemblerDaemon; // for javadoc only
+import com.edugility.liquibase.ChangeLogAssemblerDaemonClient;
+import com.edugility.liquibase.ChangeLogDescriptor;
+import com.edugility.liquibase.ChangeLogPruner;
+import com.edugility.liquibase.ChangeLogResource;
+import com.edugility.liquibase.ChangeLogScanCache;
+import com.edugility.liquibase.ChangeLogValidator; // for javadoc only
+import com.edugility.liquibase.ChangeSetIdentityIndex; // for javadoc only
+import com.edugility.liquibase.ContextChangeSetFilter;
+import com.edugility.liquibase.IncludeIndex;
+import com.edugility.liquibase.IndexedResourceAccessor; // for javadoc only
+import com.edugility.liquibase.JarChangeLogScanner;
+import com.edugility.liquibase.NestedJarChangeLogScanner;
+import com.edugility.liquibase.ResourceNamePatterns;
+import com.edugility.liquibase.URLResourceAccessor; // for javadoc only
 
 import org.apache.maven.artifact.Artifact;
 
@@ -63,22 +89,32 @@ import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
 
 import org.apache.maven.artifact.repository.ArtifactRepository;
 
+import org.apache.maven.execution.MavenSession;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
 import org.apache.maven.plugin.logging.Log;
 
 import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 
 import org.apache.maven.model.Build;
+import org.apache.maven.model.Resource;
 
 import org.apache.maven.project.MavenProject;
 
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+import org.apache.maven.shared.dependency.graph.DependencyNode;
+
+import liquibase.resource.ResourceAccessor;
+
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.SessionData;
 
 import org.mvel2.integration.impl.MapVariableResolverFactory;
 
@@ -94,12 +130,21 @@ import org.mvel2.templates.TemplateRuntime;
  * href="http://www.liquibase.org/documentation/include.html">includes</a>
  * them all in dependency order.
  *
+ * <p>This goal is bound to the {@code generate-resources} phase by
+ * default.  When the {@linkplain #getIncludeMode() include mode} is
+ * {@link IncludeMode#CLASSPATH CLASSPATH}, it adds the {@linkplain
+ * #getClasspathIncludeDirectory() classpath include directory} to the
+ * project's resources, and so must run no later than the {@code
+ * generate-resources} phase for the fragments copied there to be
+ * processed into the project's output directory by the {@code
+ * process-resources} phase.</p>
+ *
  * @author <a href="http://about.me/lairdnelson"
  * target="_parent">Laird Nelson</a>
  *
  * @see AbstractLiquibaseMojo
  */
-@Mojo(name = "assembleChangeLog", requiresDependencyResolution = ResolutionScope.TEST)
+@Mojo(name = "assembleChangeLog", defaultPhase = LifecyclePhase.GENERATE_RESOURCES, requiresDependencyResolution = ResolutionScope.TEST)
 public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
 
 
@@ -114,6 +159,16 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    */
   private static final String LS = System.getProperty("line.separator", "\n");
 
+  /**
+   * The key under which the {@link
+   * BackgroundScanLifecycleParticipant} publishes a {@link Map} of
+   * the {@link Future}s of its scans, indexed by {@linkplain
+   * #getBackgroundScanKey(File, File) jar file and scan cache
+   * directory}, in the {@linkplain SessionData session data} of the
+   * current {@link MavenSession}.
+   */
+  static final String BACKGROUND_SCANS_KEY = AssembleChangeLogMojo.class.getName() + ".backgroundScans";
+
 
   /*
    * Instance fields and plugin parameters.
@@ -164,6 +219,29 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
   @Parameter(defaultValue = "${localRepository}", readonly = true, required = true)
   private ArtifactRepository localRepository;
 
+  /**
+   * The {@link MavenProject}s in the current reactor, injected by
+   * Maven.  Dependencies on any of them are read from their build
+   * output directories rather than from their packaged files.
+   *
+   * @see #getReactorProjects()
+   *
+   * @see #setReactorProjects(List)
+   */
+  @Parameter(defaultValue = "${reactorProjects}", readonly = true)
+  private List<MavenProject> reactorProjects;
+
+  /**
+   * The current {@link MavenSession}, injected by Maven.  Background
+   * scans that are still running are found through it.
+   *
+   * @see #getSession()
+   *
+   * @see #setSession(MavenSession)
+   */
+  @Parameter(defaultValue = "${session}", readonly = true)
+  private MavenSession session;
+
   /**
    * An {@link ArtifactFilter} to use to limit what dependencies are
    * scanned for changelog fragments; {@code null} by default.
@@ -182,7 +260,10 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
   /**
    * A list of classpath resource names that identity <a
    * href="http://liquibase.org/">Liquibase</a> changelogs; {@code
-   * META-INF/liquibase/changelog.xml} by default.
+   * META-INF/liquibase/changelog.xml} by default.  Names may also be
+   * {@linkplain ResourceNamePatterns glob or regular expression
+   * patterns}, such as {@code META-INF/liquibase/**}{@code /*.xml} or
+   * {@code db/changelog-*.xml}.
    *
    * @see #getChangeLogResourceNames()
    *
@@ -191,13 +272,44 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
   @Parameter(defaultValue = "META-INF/liquibase/changelog.xml", required = true)
   private List<String> changeLogResourceNames;
 
+  /**
+   * A list of the names of, or {@linkplain ResourceNamePatterns
+   * patterns} matching, entries of dependency jar files that are
+   * themselves jar files to be searched for changelogs, such as the
+   * {@code BOOT-INF/lib/*.jar} or {@code lib/*.jar} entries of
+   * repackaged "fat" jars; empty, meaning that nested jar files are
+   * not searched, by default.
+   *
+   * <p>Changelogs found in nested jar files are not on any
+   * classpath, and their {@link URL}s can be opened only by this
+   * plugin's {@link URLResourceAccessor}.  They should therefore be
+   * used together with an {@link #includeMode} of {@link
+   * IncludeMode#CLASSPATH CLASSPATH}, which copies them into the
+   * {@linkplain #getClasspathIncludeDirectory() classpath include
+   * directory}; in {@link IncludeMode#URL URL} mode a warning is
+   * logged for each of them.</p>
+   *
+   * @see #getNestedArchiveNames()
+   *
+   * @see #setNestedArchiveNames(List)
+   *
+   * @see NestedJarChangeLogScanner
+   */
+  @Parameter
+  private List<String> nestedArchiveNames;
+
   /**
    * The classpath resource name of the <a
    * href="http://mvel.codehaus.org/">MVEL</a> template that will be
    * used to aggregate all the changelog fragments together; {@code
    * changelog-template.mvl} by default; typically found within this
    * plugin's own {@code .jar} file, but users may wish to supply an
-   * alternate template.
+   * alternate template.  A template's {@code resources} variable is a
+   * list of {@link ChangeLogDescriptor}s, each of which prints as its
+   * {@code include} and also offers details such as {@code
+   * artifactId}, {@code scope}, {@code depth}, {@code size}, {@code
+   * contentHash} and {@code changeSetCount}; the costly ones are
+   * computed only if the template reads them.
    *
    * @see #getChangeLogTemplateResourceName()
    *
@@ -234,22 +346,6 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
   @Parameter(defaultValue = "3.0", required = true)
   private String databaseChangeLogXsdVersion;
 
-  /**
-   * A set of {@link Properties} defining <a
-   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
-   * parameters</a>; {@code null} by default.
-   *
-   * @see #getChangeLogParameters()
-   *
-   * @see #setChangeLogParameters(Properties)
-   *
-   * @see <a
-   * href="http://maven.apache.org/guides/mini/guide-configuring-plugins.html#Mapping_Properties">Guide
-   * to Configuring Plug-Ins</a>
-   */
-  @Parameter
-  private Properties changeLogParameters;
-
   /**
    * The character encoding to use while reading in the changelog <a
    * href="http://mvel.codehaus.org/">MVEL</a> template;
@@ -282,6 +378,229 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
   @Parameter(required = true, defaultValue = "${project.build.sourceEncoding}")
   private String changeLogCharacterEncoding;
 
+  /**
+   * The file to which an {@link IncludeIndex} describing each {@code
+   * include} of the generated changelog will be written; {@code null}
+   * (no index) by default.
+   *
+   * <p>Packaged at the classpath resource name {@value
+   * IndexedResourceAccessor#DEFAULT_INDEX_RESOURCE_NAME}, such an
+   * index lets an {@link IndexedResourceAccessor} resolve the
+   * changelog's {@code include}s at runtime without the build
+   * machine's {@link URL}s.  Changelog fragments whose resource names
+   * are not unique are copied into the {@linkplain
+   * #getClasspathIncludeDirectory() classpath include directory} under
+   * unique names so that each can be found with a single classpath
+   * lookup.</p>
+   *
+   * @see #getIncludeIndexFile()
+   *
+   * @see #setIncludeIndexFile(File)
+   */
+  @Parameter
+  private File includeIndexFile;
+
+  /**
+   * How the generated changelog refers to the changelog fragments it
+   * {@code include}s; {@link IncludeMode#URL URL} by default.
+   *
+   * @see #getIncludeMode()
+   *
+   * @see #setIncludeMode(IncludeMode)
+   */
+  @Parameter(defaultValue = "URL", required = true)
+  private IncludeMode includeMode;
+
+  /**
+   * The directory into which changelog fragments whose resource names
+   * are not unique are copied under artifact-specific resource names
+   * when the {@linkplain #getIncludeMode() include mode} is {@link
+   * IncludeMode#CLASSPATH CLASSPATH};
+   * <code>${project.build.directory}/generated-resources/liquibase</code>
+   * by default.  This directory is added to the project's resources,
+   * so this goal must be bound to a phase no later than {@code
+   * generate-resources} if this directory is to be processed into
+   * the project's output directory.
+   *
+   * @see #getClasspathIncludeDirectory()
+   *
+   * @see #setClasspathIncludeDirectory(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/generated-resources/liquibase", required = true)
+  private File classpathIncludeDirectory;
+
+  /**
+   * Whether changelog fragments whose contents are byte-for-byte
+   * identical to those of a fragment found earlier in topological
+   * order should be dropped from the generated changelog; {@code
+   * false} by default.
+   *
+   * <p>Dropping a fragment changes the generated changelog, so
+   * projects must opt in.</p>
+   *
+   * @see #isDeduplicate()
+   *
+   * @see #setDeduplicate(boolean)
+   */
+  @Parameter(defaultValue = "false")
+  private boolean deduplicate;
+
+  /**
+   * Whether every discovered XML changelog fragment should be
+   * validated against the Liquibase XML Schema bundled with Liquibase
+   * whose version is given by the {@link
+   * #getDatabaseChangeLogXsdVersion() databaseChangeLogXsdVersion}
+   * parameter; {@code false} by default.
+   *
+   * @see #isValidate()
+   *
+   * @see #setValidate(boolean)
+   */
+  @Parameter(defaultValue = "false")
+  private boolean validate;
+
+  /**
+   * The maximum number of threads to use when {@linkplain
+   * #isValidate() validating} changelog fragments; {@code 0}, meaning
+   * the number of available processors, by default.
+   *
+   * @see #getValidationThreads()
+   *
+   * @see #setValidationThreads(int)
+   */
+  @Parameter(defaultValue = "0")
+  private int validationThreads;
+
+  /**
+   * The maximum number of threads to use when resolving dependency
+   * {@link Artifact}s that are not yet present in the local
+   * repository; {@code 4} by default.  A value of {@code 1} resolves
+   * them one at a time, in topological order, as before.
+   *
+   * @see #getResolutionThreads()
+   *
+   * @see #setResolutionThreads(int)
+   */
+  @Parameter(defaultValue = "4")
+  private int resolutionThreads;
+
+  /**
+   * The time, in nanoseconds, that resolving each dependency {@link
+   * Artifact} took during the most recent {@linkplain
+   * #getArtifactsInTopologicalOrder() dependency resolution}, indexed
+   * by {@linkplain Artifact#getId() artifact identifier}.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getResolutionTimes()
+   */
+  private Map<String, Long> resolutionTimes;
+
+  /**
+   * The depth of each {@link Artifact} in the dependency graph read
+   * during the most recent {@linkplain
+   * #getArtifactsInTopologicalOrder() dependency resolution}, indexed
+   * by {@linkplain Artifact#getId() artifact identifier}.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #toDescriptors(Map)
+   */
+  private Map<String, Integer> dependencyDepths;
+
+  /**
+   * The position of each {@link Artifact} in the topological order
+   * computed during the most recent {@linkplain
+   * #getArtifactsInTopologicalOrder() dependency resolution}, indexed
+   * by {@linkplain Artifact#getId() artifact identifier}.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #deduplicate(Collection)
+   */
+  private Map<String, Integer> topologicalIndices;
+
+  /**
+   * Whether the build should fail if two discovered XML changelog
+   * fragments define changesets with the same {@code id}, {@code
+   * author} and file path; {@code false} by default, so that builds
+   * that assemble fragments they do not control do not start failing
+   * merely by upgrading this plugin.
+   *
+   * @see #isCheckDuplicateChangeSets()
+   *
+   * @see #setCheckDuplicateChangeSets(boolean)
+   */
+  @Parameter(defaultValue = "false")
+  private boolean checkDuplicateChangeSets;
+
+  /**
+   * A {@link Map} of names to comma-separated lists of Liquibase
+   * contexts; for each entry, a copy of the assembled changelog is
+   * written next to the {@linkplain #getOutputFile() output file}
+   * that contains only those changesets that Liquibase would run
+   * given the entry's contexts.  The copy's file name is that of the
+   * output file with a hyphen and the entry's name inserted before
+   * its extension, so an entry named {@code production} yields {@code
+   * changelog-production.xml} by default.
+   *
+   * <p>Example:</p>
+   *
+   * <pre>&lt;contextChangeLogs&gt;
+   *  &lt;production&gt;production&lt;/production&gt;
+   *  &lt;qa&gt;test,qa&lt;/qa&gt;
+   *&lt;/contextChangeLogs&gt;</pre>
+   *
+   * @see #getContextChangeLogs()
+   *
+   * @see #setContextChangeLogs(Map)
+   *
+   * @see #writeContextChangeLogs(Map, File)
+   */
+  @Parameter
+  private Map<String, String> contextChangeLogs;
+
+  /**
+   * The port on the loopback interface on which a {@link
+   * ChangeLogAssemblerDaemon} is listening, or {@code 0} (the default)
+   * to assemble entirely in process.
+   *
+   * <p>When set, jar files are scanned and the template is merged by
+   * the daemon, which keeps both warm between builds.  If the daemon
+   * cannot be reached, assembly silently falls back to running in
+   * process.  A template merged by the daemon sees the {@code
+   * databaseChangeLogXsdVersion}, {@code changeLogParameters} and
+   * {@code resources} variables, but not this mojo's own
+   * properties.</p>
+   *
+   * @see #getDaemonPort()
+   *
+   * @see #setDaemonPort(int)
+   */
+  @Parameter(defaultValue = "0")
+  private int daemonPort;
+
+  /**
+   * The file in which the {@link ChangeLogAssemblerDaemon} records its
+   * authentication token; {@code
+   * ${user.home}/.liquibase-maven-plugin/daemon-}<i>port</i>{@code
+   * .token} by default.
+   *
+   * @see #getDaemonTokenFile()
+   *
+   * @see #setDaemonTokenFile(File)
+   */
+  @Parameter
+  private File daemonTokenFile;
+
+  /**
+   * Whether the {@link ChangeLogAssemblerDaemon} has already been
+   * found to be unreachable during this execution.
+   *
+   * @see #getDaemonClient()
+   */
+  private boolean daemonUnavailable;
+
 
   /*
    * Constructors.
@@ -370,6 +689,55 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
     this.localRepository = localRepository;
   }
 
+  /**
+   * Returns the {@link MavenProject}s in the current reactor.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link List} of {@link MavenProject}s, or {@code null}
+   *
+   * @see #setReactorProjects(List)
+   */
+  public List<MavenProject> getReactorProjects() {
+    return this.reactorProjects;
+  }
+
+  /**
+   * Sets the {@link MavenProject}s in the current reactor.
+   *
+   * @param reactorProjects a {@link List} of {@link MavenProject}s;
+   * may be {@code null}
+   *
+   * @see #getReactorProjects()
+   */
+  public void setReactorProjects(final List<MavenProject> reactorProjects) {
+    this.reactorProjects = reactorProjects;
+  }
+
+  /**
+   * Returns the current {@link MavenSession}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link MavenSession}, or {@code null}
+   *
+   * @see #setSession(MavenSession)
+   */
+  public MavenSession getSession() {
+    return this.session;
+  }
+
+  /**
+   * Sets the current {@link MavenSession}.
+   *
+   * @param session the {@link MavenSession}; may be {@code null}
+   *
+   * @see #getSession()
+   */
+  public void setSession(final MavenSession session) {
+    this.session = session;
+  }
+
 
   /**
    * Returns an {@link ArtifactFilter} that may be used to filter the
@@ -451,7 +819,8 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    * Returns a {@link List} of {@link String}s, each element of which
    * is a name of a {@linkplain ClassLoader#getResource(String)
    * classpath resource} that might identify an actual changelog
-   * fragment.
+   * fragment, or a {@linkplain ResourceNamePatterns pattern} matching
+   * such names.
    *
    * <p>This method may return {@code null}.</p>
    *
@@ -481,6 +850,40 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
     this.changeLogResourceNames = changeLogResourceNames;
   }
 
+  /**
+   * Returns a {@link List} of {@link String}s, each element of which
+   * is the name of, or a {@linkplain ResourceNamePatterns pattern}
+   * matching, entries of dependency jar files that are themselves jar
+   * files to be searched for changelogs.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link List} of {@link String}s, or {@code null}
+   *
+   * @see #setNestedArchiveNames(List)
+   *
+   * @see NestedJarChangeLogScanner#scan(File, Collection, Collection)
+   */
+  public List<String> getNestedArchiveNames() {
+    return this.nestedArchiveNames;
+  }
+
+  /**
+   * Sets the {@link List} of {@link String}s identifying entries of
+   * dependency jar files that are themselves jar files to be
+   * searched for changelogs.
+   *
+   * @param nestedArchiveNames a {@link List} of {@link String}s, each
+   * element of which is the name of, or a {@linkplain
+   * ResourceNamePatterns pattern} matching, such entries; may be
+   * {@code null} in which case nested jar files will not be searched
+   *
+   * @see #getNestedArchiveNames()
+   */
+  public void setNestedArchiveNames(final List<String> nestedArchiveNames) {
+    this.nestedArchiveNames = nestedArchiveNames;
+  }
+
 
   /**
    * Returns the {@linkplain ClassLoader#getResource(String) classpath
@@ -562,38 +965,6 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
   }
 
 
-  /**
-   * Returns a {@link Properties} object containing <a
-   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
-   * parameters</a>.
-   *
-   * <p>This method may return {@code null}.</p>
-   *
-   * @return a {@link Properties} object containing <a
-   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
-   * parameters</a>, or {@code null}
-   *
-   * @see #setChangeLogParameters(Properties)
-   */
-  public Properties getChangeLogParameters() {
-    return this.changeLogParameters;
-  }
-
-  /**
-   * Installs a {@link Properties} object containing <a
-   * href="http://www.liquibase.org/documentation/changelog_parameters.html">changelog
-   * parameters</a>.
-   *
-   * @param parameters the changelog parameters to use; may be {@code
-   * null}
-   *
-   * @see #getChangeLogParameters()
-   */
-  public void setChangeLogParameters(final Properties parameters) {
-    this.changeLogParameters = parameters;
-  }
-
-
   /**
    * Returns the character encoding used to {@linkplain #write(String,
    * Collection, File) write the assembled changelog}.
@@ -681,115 +1052,646 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
 
 
   /**
-   * Returns the {@link DependencyGraphBuilder} used by this {@link
-   * AssembleChangeLogMojo} to perform dependency resolution.
+   * Returns the {@link File} to which an {@link IncludeIndex}
+   * describing each {@code include} of the generated changelog will
+   * be written.
    *
    * <p>This method may return {@code null}.</p>
    *
-   * @return a {@link DependencyGraphBuilder}, or {@code null}
+   * @return a {@link File}, or {@code null} if no index should be
+   * written
    *
-   * @see DependencyGraphBuilder
+   * @see #setIncludeIndexFile(File)
    *
-   * @see #setDependencyGraphBuilder(DependencyGraphBuilder)
+   * @see IndexedResourceAccessor
    */
-  public DependencyGraphBuilder getDependencyGraphBuilder() {
-    return this.dependencyGraphBuilder;
+  public File getIncludeIndexFile() {
+    return this.includeIndexFile;
   }
 
   /**
-   * Sets the {@link DependencyGraphBuilder} used by this {@link
-   * AssembleChangeLogMojo} to perform dependency resolution.
-   *
-   * @param dependencyGraphBuilder the {@link DependencyGraphBuilder}
-   * to use; must not be {@code null}
+   * Sets the {@link File} to which an {@link IncludeIndex} describing
+   * each {@code include} of the generated changelog will be written.
    *
-   * @exception IllegalArgumentException if {@code
-   * dependencyGraphBuilder} is {@code null}
+   * @param file the {@link File}; may be {@code null} in which case
+   * no index will be written; if non-{@code null}, then must not be
+   * {@linkplain File#isDirectory() a directory}
    *
-   * @see DependencyGraphBuilder
+   * @exception IllegalArgumentException if {@code file} is a
+   * directory
    *
-   * @see #getDependencyGraphBuilder()
+   * @see #getIncludeIndexFile()
    */
-  public void setDependencyGraphBuilder(final DependencyGraphBuilder dependencyGraphBuilder) {
-    if (dependencyGraphBuilder == null) {
-      throw new IllegalArgumentException("dependencyGraphBuilder", new NullPointerException("dependencyGraphBuilder"));
+  public void setIncludeIndexFile(final File file) {
+    if (file != null && file.isDirectory()) {
+      throw new IllegalArgumentException("file", new IOException("file.isDirectory()"));
     }
-    this.dependencyGraphBuilder = dependencyGraphBuilder;
+    this.includeIndexFile = file;
   }
 
 
-  /*
-   * Non-trivial accessors and mutators.
+  /**
+   * Returns the {@link IncludeMode} governing how the generated
+   * changelog refers to the changelog fragments it {@code include}s.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return an {@link IncludeMode}, or {@code null}
+   *
+   * @see #setIncludeMode(IncludeMode)
+   */
+  public IncludeMode getIncludeMode() {
+    return this.includeMode;
+  }
+
+  /**
+   * Sets the {@link IncludeMode} governing how the generated
+   * changelog refers to the changelog fragments it {@code include}s.
+   *
+   * @param includeMode the new {@link IncludeMode}; may be {@code
+   * null} in which case {@link IncludeMode#URL} will be used instead
+   *
+   * @see #getIncludeMode()
    */
+  public void setIncludeMode(final IncludeMode includeMode) {
+    if (includeMode == null) {
+      this.includeMode = IncludeMode.URL;
+    } else {
+      this.includeMode = includeMode;
+    }
+  }
 
 
   /**
-   * Examines the {@linkplain #getProject() current
-   * <code>MavenProject</code>}'s dependencies, {@linkplain
-   * #getArtifactResolver() resolving} them if necessary, and
-   * assembles and returns a {@link Collection} whose elements are
-   * {@link URL}s representing reachable changelog fragments that are
-   * classpath resources.
+   * Returns the directory into which changelog fragments whose
+   * resource names are not unique are copied when the {@linkplain
+   * #getIncludeMode() include mode} is {@link IncludeMode#CLASSPATH
+   * CLASSPATH}.
    *
    * <p>This method may return {@code null}.</p>
    *
-   * <p>This method calls the {@link #getChangeLogResources(Iterable)}
-   * method.</p>
+   * @return a directory, or {@code null}
    *
-   * <p>This method invokes the {@link
-   * Artifacts#getArtifactsInTopologicalOrder(MavenProject,
-   * DependencyGraphBuilder, ArtifactFilter, ArtifactResolver,
-   * ArtifactRepository)} method.</p>
+   * @see #setClasspathIncludeDirectory(File)
+   */
+  public File getClasspathIncludeDirectory() {
+    return this.classpathIncludeDirectory;
+  }
+
+  /**
+   * Sets the directory into which changelog fragments whose resource
+   * names are not unique are copied when the {@linkplain
+   * #getIncludeMode() include mode} is {@link IncludeMode#CLASSPATH
+   * CLASSPATH}.
    *
-   * @return a {@link Collection} of {@link URL}s to classpath
-   * resources that are changelog fragments, or {@code null}
+   * @param directory the directory; may be {@code null}; if
+   * non-{@code null} then must not be {@linkplain File#isFile() a
+   * file}
    *
-   * @exception IllegalStateException if the return value of {@link
-   * #getProject()}, {@link #getDependencyGraphBuilder()} or {@link
-   * #getArtifactResolver()} is {@code null}
-   * 
-   * @exception ArtifactResolutionException if there was a problem
-   * {@linkplain ArtifactResolver#resolve(ArtifactResolutionRequest)
-   * resolving} a given {@link Artifact} representing a dependency
+   * @exception IllegalArgumentException if {@code directory} is a
+   * file
    *
-   * @exception DependencyGraphBuilderException if there was a problem
-   * with dependency resolution
+   * @see #getClasspathIncludeDirectory()
+   */
+  public void setClasspathIncludeDirectory(final File directory) {
+    if (directory != null && directory.isFile()) {
+      throw new IllegalArgumentException("directory", new IOException("directory.isFile()"));
+    }
+    this.classpathIncludeDirectory = directory;
+  }
+
+  /**
+   * Returns {@code true} if changelog fragments whose contents are
+   * identical to those of a fragment found earlier in topological
+   * order will be dropped from the generated changelog.
    *
-   * @exception IOException if there was a problem with input or
-   * output
+   * @return {@code true} if duplicate changelog fragments will be
+   * dropped; {@code false} otherwise
    *
-   * @see #getChangeLogResources(Iterable)
+   * @see #setDeduplicate(boolean)
    *
-   * @see Artifacts#getArtifactsInTopologicalOrder(MavenProject,
-   * DependencyGraphBuilder, ArtifactFilter, ArtifactResolver,
-   * ArtifactRepository)
+   * @see #deduplicate(Collection)
    */
-  public final Collection<? extends URL> getChangeLogResources() throws ArtifactResolutionException, DependencyGraphBuilderException, IOException {
-    final MavenProject project = this.getProject();
-    if (project == null) {
-      throw new IllegalStateException("this.getProject()", new NullPointerException("this.getProject()"));
-    }
-    final DependencyGraphBuilder dependencyGraphBuilder = this.getDependencyGraphBuilder();
-    if (dependencyGraphBuilder == null) {
-      throw new IllegalStateException("this.getDependencyGraphBuilder()", new NullPointerException("this.getDependencyGraphBuilder()"));
-    }
-    final ArtifactResolver resolver = this.getArtifactResolver();
+  public boolean isDeduplicate() {
+    return this.deduplicate;
+  }
+
+  /**
+   * Sets whether changelog fragments whose contents are identical to
+   * those of a fragment found earlier in topological order will be
+   * dropped from the generated changelog.
+   *
+   * @param deduplicate whether duplicate changelog fragments will be
+   * dropped
+   *
+   * @see #isDeduplicate()
+   */
+  public void setDeduplicate(final boolean deduplicate) {
+    this.deduplicate = deduplicate;
+  }
+
+  /**
+   * Returns {@code true} if every discovered XML changelog fragment
+   * will be validated against the bundled Liquibase XML Schema.
+   *
+   * @return {@code true} if changelog fragments will be validated;
+   * {@code false} otherwise
+   *
+   * @see #setValidate(boolean)
+   *
+   * @see #validate(Collection)
+   */
+  public boolean isValidate() {
+    return this.validate;
+  }
+
+  /**
+   * Sets whether every discovered XML changelog fragment will be
+   * validated against the bundled Liquibase XML Schema.
+   *
+   * @param validate whether changelog fragments will be validated
+   *
+   * @see #isValidate()
+   */
+  public void setValidate(final boolean validate) {
+    this.validate = validate;
+  }
+
+  /**
+   * Returns the maximum number of threads to use when {@linkplain
+   * #isValidate() validating} changelog fragments.  A return value
+   * less than {@code 1} means the number of available processors.
+   *
+   * @return the maximum number of validation threads
+   *
+   * @see #setValidationThreads(int)
+   */
+  public int getValidationThreads() {
+    return this.validationThreads;
+  }
+
+  /**
+   * Sets the maximum number of threads to use when {@linkplain
+   * #isValidate() validating} changelog fragments.
+   *
+   * @param validationThreads the maximum number of validation
+   * threads; if less than {@code 1} then the number of available
+   * processors will be used
+   *
+   * @see #getValidationThreads()
+   */
+  public void setValidationThreads(final int validationThreads) {
+    this.validationThreads = validationThreads;
+  }
+
+  /**
+   * Returns the maximum number of threads to use when resolving
+   * dependency {@link Artifact}s that are not yet present in the
+   * local repository.  A return value of {@code 1} means that they
+   * will be resolved one at a time; a return value less than {@code
+   * 1} means the number of available processors.
+   *
+   * @return the maximum number of resolution threads
+   *
+   * @see #setResolutionThreads(int)
+   */
+  public int getResolutionThreads() {
+    return this.resolutionThreads;
+  }
+
+  /**
+   * Sets the maximum number of threads to use when resolving
+   * dependency {@link Artifact}s that are not yet present in the
+   * local repository.
+   *
+   * @param resolutionThreads the maximum number of resolution
+   * threads; {@code 1} resolves them one at a time; if less than
+   * {@code 1} then the number of available processors will be used
+   *
+   * @see #getResolutionThreads()
+   */
+  public void setResolutionThreads(final int resolutionThreads) {
+    this.resolutionThreads = resolutionThreads;
+  }
+
+  /**
+   * Returns the time, in nanoseconds, that resolving each dependency
+   * {@link Artifact} took during the most recent {@linkplain
+   * #getArtifactsInTopologicalOrder() dependency resolution}, indexed
+   * by {@linkplain Artifact#getId() artifact identifier} and ordered
+   * from slowest to fastest.
+   *
+   * <p>This method never returns {@code null}.  Artifacts that were
+   * already resolved are not included.</p>
+   *
+   * @return a non-{@code null}, immutable {@link Map} of resolution
+   * times
+   *
+   * @see ConcurrentArtifactResolver#getResolutionTimes()
+   */
+  public Map<String, Long> getResolutionTimes() {
+    if (this.resolutionTimes == null) {
+      return Collections.emptyMap();
+    }
+    return this.resolutionTimes;
+  }
+
+  /**
+   * Returns {@code true} if the discovered XML changelog fragments
+   * will be checked for changesets that share an identity.
+   *
+   * @return {@code true} if duplicate changesets will be checked for;
+   * {@code false} otherwise
+   *
+   * @see #setCheckDuplicateChangeSets(boolean)
+   *
+   * @see #checkDuplicateChangeSets(Map)
+   */
+  public boolean isCheckDuplicateChangeSets() {
+    return this.checkDuplicateChangeSets;
+  }
+
+  /**
+   * Sets whether the discovered XML changelog fragments will be
+   * checked for changesets that share an identity.
+   *
+   * @param checkDuplicateChangeSets whether duplicate changesets will
+   * be checked for
+   *
+   * @see #isCheckDuplicateChangeSets()
+   */
+  public void setCheckDuplicateChangeSets(final boolean checkDuplicateChangeSets) {
+    this.checkDuplicateChangeSets = checkDuplicateChangeSets;
+  }
+
+  /**
+   * Returns a {@link Map} of names to comma-separated lists of
+   * Liquibase contexts for which context-specific changelogs will be
+   * written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Map} of names to contexts, or {@code null}
+   *
+   * @see #setContextChangeLogs(Map)
+   *
+   * @see #writeContextChangeLogs(Map, File)
+   */
+  public Map<String, String> getContextChangeLogs() {
+    return this.contextChangeLogs;
+  }
+
+  /**
+   * Sets the {@link Map} of names to comma-separated lists of
+   * Liquibase contexts for which context-specific changelogs will be
+   * written.
+   *
+   * @param contextChangeLogs a {@link Map} of names to contexts; may
+   * be {@code null}
+   *
+   * @see #getContextChangeLogs()
+   */
+  public void setContextChangeLogs(final Map<String, String> contextChangeLogs) {
+    this.contextChangeLogs = contextChangeLogs;
+  }
+
+  /**
+   * Returns the port on which a {@link ChangeLogAssemblerDaemon} is
+   * listening, or {@code 0} if assembly happens entirely in process.
+   *
+   * @return the daemon port, or {@code 0}
+   *
+   * @see #setDaemonPort(int)
+   */
+  public int getDaemonPort() {
+    return this.daemonPort;
+  }
+
+  /**
+   * Sets the port on which a {@link ChangeLogAssemblerDaemon} is
+   * listening.
+   *
+   * @param daemonPort the daemon port, or {@code 0} to assemble
+   * entirely in process
+   *
+   * @see #getDaemonPort()
+   */
+  public void setDaemonPort(final int daemonPort) {
+    this.daemonPort = daemonPort;
+  }
+
+  /**
+   * Returns the file in which the {@link ChangeLogAssemblerDaemon}
+   * records its authentication token.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null} if the {@linkplain
+   * ChangeLogAssemblerDaemonClient#getDefaultTokenFile(int) default}
+   * should be used
+   *
+   * @see #setDaemonTokenFile(File)
+   */
+  public File getDaemonTokenFile() {
+    return this.daemonTokenFile;
+  }
+
+  /**
+   * Sets the file in which the {@link ChangeLogAssemblerDaemon}
+   * records its authentication token.
+   *
+   * @param daemonTokenFile a {@link File}; may be {@code null} in
+   * which case the {@linkplain
+   * ChangeLogAssemblerDaemonClient#getDefaultTokenFile(int) default}
+   * will be used
+   *
+   * @see #getDaemonTokenFile()
+   */
+  public void setDaemonTokenFile(final File daemonTokenFile) {
+    this.daemonTokenFile = daemonTokenFile;
+  }
+
+  /**
+   * Returns a {@link ChangeLogAssemblerDaemonClient} for the
+   * {@linkplain #getDaemonPort() configured daemon}, or {@code null}
+   * if no daemon is configured or it has already proven unreachable.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link ChangeLogAssemblerDaemonClient}, or {@code null}
+   */
+  private final ChangeLogAssemblerDaemonClient getDaemonClient() {
+    ChangeLogAssemblerDaemonClient returnValue = null;
+    final int port = this.getDaemonPort();
+    if (port > 0 && !this.daemonUnavailable) {
+      returnValue = new ChangeLogAssemblerDaemonClient(port, this.getDaemonTokenFile());
+    }
+    return returnValue;
+  }
+
+  /**
+   * Records that the {@linkplain #getDaemonPort() configured daemon}
+   * could not be used, so that the rest of this execution proceeds in
+   * process.
+   *
+   * @param cause the {@link IOException} describing why; must not be
+   * {@code null}
+   */
+  private final void daemonUnavailable(final IOException cause) {
+    assert cause != null;
+    this.daemonUnavailable = true;
+    final Log log = this.getLog();
+    if (log != null && log.isInfoEnabled()) {
+      log.info(String.format("Assembly daemon on port %d unavailable (%s); assembling in process", this.getDaemonPort(), cause.getMessage()));
+    }
+  }
+
+
+  /**
+   * Returns the {@link DependencyGraphBuilder} used by this {@link
+   * AssembleChangeLogMojo} to perform dependency resolution.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link DependencyGraphBuilder}, or {@code null}
+   *
+   * @see DependencyGraphBuilder
+   *
+   * @see #setDependencyGraphBuilder(DependencyGraphBuilder)
+   */
+  public DependencyGraphBuilder getDependencyGraphBuilder() {
+    return this.dependencyGraphBuilder;
+  }
+
+  /**
+   * Sets the {@link DependencyGraphBuilder} used by this {@link
+   * AssembleChangeLogMojo} to perform dependency resolution.
+   *
+   * @param dependencyGraphBuilder the {@link DependencyGraphBuilder}
+   * to use; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code
+   * dependencyGraphBuilder} is {@code null}
+   *
+   * @see DependencyGraphBuilder
+   *
+   * @see #getDependencyGraphBuilder()
+   */
+  public void setDependencyGraphBuilder(final DependencyGraphBuilder dependencyGraphBuilder) {
+    if (dependencyGraphBuilder == null) {
+      throw new IllegalArgumentException("dependencyGraphBuilder", new NullPointerException("dependencyGraphBuilder"));
+    }
+    this.dependencyGraphBuilder = dependencyGraphBuilder;
+  }
+
+
+  /*
+   * Non-trivial accessors and mutators.
+   */
+
+
+  /**
+   * Examines the {@linkplain #getProject() current
+   * <code>MavenProject</code>}'s dependencies, {@linkplain
+   * #getArtifactResolver() resolving} them if necessary, and
+   * assembles and returns a {@link Collection} whose elements are
+   * {@link URL}s representing reachable changelog fragments that are
+   * classpath resources.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * <p>This method calls the {@link
+   * #getChangeLogResourceDescriptors()} method.</p>
+   *
+   * @return a {@link Collection} of {@link URL}s to classpath
+   * resources that are changelog fragments, or {@code null}
+   *
+   * @exception IllegalStateException if the return value of {@link
+   * #getProject()}, {@link #getDependencyGraphBuilder()} or {@link
+   * #getArtifactResolver()} is {@code null}
+   * 
+   * @exception ArtifactResolutionException if there was a problem
+   * {@linkplain ArtifactResolver#resolve(ArtifactResolutionRequest)
+   * resolving} a given {@link Artifact} representing a dependency
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution
+   *
+   * @exception IOException if there was a problem with input or
+   * output
+   *
+   * @see #getChangeLogResourceDescriptors()
+   */
+  public final Collection<? extends URL> getChangeLogResources() throws ArtifactResolutionException, DependencyGraphBuilderException, IOException {
+    return urlsOf(this.getChangeLogResourceDescriptors());
+  }
+
+  /**
+   * Examines the {@linkplain #getProject() current
+   * <code>MavenProject</code>}'s dependencies, {@linkplain
+   * #getArtifactResolver() resolving} them if necessary, and
+   * assembles and returns a {@link Collection} of {@link
+   * ChangeLogResource}s representing reachable changelog fragments
+   * that are classpath resources.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>This method calls the {@link
+   * #getChangeLogResourceDescriptors(Iterable)} method.</p>
+   *
+   * <p>This method invokes the {@link
+   * TopologicalArtifactSorter#getArtifactsInTopologicalOrder(MavenProject,
+   * DependencyGraphBuilder, ArtifactFilter, ArtifactResolver,
+   * ArtifactRepository)} method.</p>
+   *
+   * @return a {@link Collection} of {@link ChangeLogResource}s
+   * representing classpath resources that are changelog fragments;
+   * never {@code null}
+   *
+   * @exception IllegalStateException if the return value of {@link
+   * #getProject()}, {@link #getDependencyGraphBuilder()} or {@link
+   * #getArtifactResolver()} is {@code null}
+   * 
+   * @exception ArtifactResolutionException if there was a problem
+   * {@linkplain ArtifactResolver#resolve(ArtifactResolutionRequest)
+   * resolving} a given {@link Artifact} representing a dependency
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution
+   *
+   * @exception IOException if there was a problem with input or
+   * output
+   *
+   * @see #getChangeLogResourceDescriptors(Iterable)
+   *
+   * @see TopologicalArtifactSorter#getArtifactsInTopologicalOrder(MavenProject,
+   * DependencyGraphBuilder, ArtifactFilter, ArtifactResolver,
+   * ArtifactRepository)
+   */
+  public final Collection<? extends ChangeLogResource> getChangeLogResourceDescriptors() throws ArtifactResolutionException, DependencyGraphBuilderException, IOException {
+    final Collection<? extends Artifact> artifacts = this.getArtifactsInTopologicalOrder();
+    Collection<? extends ChangeLogResource> resources = null;
+    if (artifacts != null && !artifacts.isEmpty()) {
+      resources = getChangeLogResourceDescriptors(artifacts);
+    }
+    if (resources == null) {
+      resources = Collections.emptySet();
+    }
+    return resources;
+  }
+
+  /**
+   * Retrieves and resolves the {@linkplain #getProject() current
+   * project}'s dependencies that pass the {@linkplain
+   * #getArtifactFilter() artifact filter} and returns them in
+   * topological order, from the artifact with the least dependencies
+   * to the current project.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Collection} of {@link Artifact}s, or {@code
+   * null}
+   *
+   * @exception IllegalStateException if the return value of {@link
+   * #getProject()}, {@link #getDependencyGraphBuilder()} or {@link
+   * #getArtifactResolver()} is {@code null}
+   *
+   * @exception ArtifactResolutionException if there was a problem
+   * {@linkplain ArtifactResolver#resolve(ArtifactResolutionRequest)
+   * resolving} a given {@link Artifact} representing a dependency
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution, or the dependency graph is cyclic
+   *
+   * @see TopologicalArtifactSorter#sort(DependencyNode)
+   */
+  public final Collection<? extends Artifact> getArtifactsInTopologicalOrder() throws ArtifactResolutionException, DependencyGraphBuilderException {
+    final MavenProject project = this.getProject();
+    if (project == null) {
+      throw new IllegalStateException("this.getProject()", new NullPointerException("this.getProject()"));
+    }
+    final DependencyGraphBuilder dependencyGraphBuilder = this.getDependencyGraphBuilder();
+    if (dependencyGraphBuilder == null) {
+      throw new IllegalStateException("this.getDependencyGraphBuilder()", new NullPointerException("this.getDependencyGraphBuilder()"));
+    }
+    final ArtifactResolver resolver = this.getArtifactResolver();
     if (resolver == null) {
       throw new IllegalStateException("this.getArtifactResolver()", new NullPointerException("this.getArtifactResolver()"));
     }
-    final Collection<? extends Artifact> artifacts = new Artifacts().getArtifactsInTopologicalOrder(project,
-                                                                                                    dependencyGraphBuilder,
-                                                                                                    this.getArtifactFilter(),
-                                                                                                    resolver,
-                                                                                                    this.getLocalRepository());
-    Collection<? extends URL> urls = null;
-    if (artifacts != null && !artifacts.isEmpty()) {
-      urls = getChangeLogResources(artifacts);
+    final ArtifactRepository localRepository = this.getLocalRepository();
+    final List<ArtifactRepository> remoteRepositories = new ArrayList<ArtifactRepository>();
+    final List<?> projectRemoteRepositories = project.getRemoteArtifactRepositories();
+    if (projectRemoteRepositories != null) {
+      for (final Object repository : projectRemoteRepositories) {
+        if (repository instanceof ArtifactRepository) {
+          remoteRepositories.add((ArtifactRepository)repository);
+        }
+      }
     }
-    if (urls == null) {
-      urls = Collections.emptySet();
+    final TopologicalArtifactSorter sorter = new TopologicalArtifactSorter();
+    final DependencyNode root = dependencyGraphBuilder.buildDependencyGraph(project, this.getArtifactFilter());
+    final List<Artifact> returnValue = sorter.sort(root);
+    this.dependencyDepths = sorter.getDepths(root);
+    final Map<String, Integer> topologicalIndices = new HashMap<String, Integer>();
+    for (final Artifact artifact : returnValue) {
+      if (artifact != null && !topologicalIndices.containsKey(artifact.getId())) {
+        topologicalIndices.put(artifact.getId(), Integer.valueOf(topologicalIndices.size()));
+      }
+    }
+    this.topologicalIndices = topologicalIndices;
+    if (!returnValue.isEmpty()) {
+      // The last artifact is the project's own, which is not resolved.
+      final List<Artifact> dependencies = returnValue.subList(0, returnValue.size() - 1);
+      final int resolutionThreads = this.getResolutionThreads();
+      if (resolutionThreads == 1) {
+        this.resolutionTimes = null;
+        sorter.resolve(dependencies, resolver, localRepository, remoteRepositories);
+      } else {
+        final ConcurrentArtifactResolver concurrentResolver = new ConcurrentArtifactResolver(resolver, resolutionThreads);
+        try {
+          concurrentResolver.prefetch(dependencies, localRepository, remoteRepositories);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        sorter.resolve(dependencies, concurrentResolver, localRepository, remoteRepositories);
+        this.resolutionTimes = concurrentResolver.getResolutionTimes();
+        this.logResolutionTimes(this.resolutionTimes);
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Logs the supplied resolution times: each one at debug level, and
+   * a summary of the total and the slowest few at info level.
+   *
+   * @param resolutionTimes a {@link Map} of resolution times in
+   * nanoseconds indexed by artifact identifier and ordered from
+   * slowest to fastest; may be {@code null}
+   */
+  private final void logResolutionTimes(final Map<String, Long> resolutionTimes) {
+    final Log log = this.getLog();
+    if (log != null && resolutionTimes != null && !resolutionTimes.isEmpty()) {
+      long total = 0L;
+      final StringBuilder slowest = new StringBuilder();
+      int i = 0;
+      for (final Map.Entry<String, Long> entry : resolutionTimes.entrySet()) {
+        final long millis = entry.getValue().longValue() / 1000000L;
+        total += entry.getValue().longValue();
+        if (log.isDebugEnabled()) {
+          log.debug("Resolved " + entry.getKey() + " in " + millis + " ms");
+        }
+        if (i++ < 5) {
+          if (slowest.length() > 0) {
+            slowest.append(", ");
+          }
+          slowest.append(entry.getKey()).append(" (").append(millis).append(" ms)");
+        }
+      }
+      if (log.isInfoEnabled()) {
+        log.info("Resolved " + resolutionTimes.size() + " artifact(s) in " + (total / 1000000L) + " ms of resolver time; slowest: " + slowest);
+      }
     }
-    return urls;
   }
 
   /**
@@ -803,8 +1705,45 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    * @param artifacts an {@link Iterable} of {@link Artifact}s; may be
    * {@code null}
    *
-   * @return a {@link Collection} of {@link URL}s representing
-   * changelog resources found among the supplied {@link Artifact}s
+   * @return a {@link Collection} of {@link URL}s representing
+   * changelog resources found among the supplied {@link Artifact}s
+   *
+   * @exception IOException if an input/output error occurs such as
+   * the kind that might be thrown by the {@link
+   * ClassLoader#getResources(String)} method
+   *
+   * @see #getChangeLogResourceDescriptors(Iterable)
+   */
+  public Collection<? extends URL> getChangeLogResources(final Iterable<? extends Artifact> artifacts) throws IOException {
+    return urlsOf(this.getChangeLogResourceDescriptors(artifacts));
+  }
+
+  /**
+   * Given an {@link Iterable} of {@link Artifact}s, and given a
+   * non-{@code null}, non-empty return value from the {@link
+   * #getChangeLogResourceNames()} method, this method returns a
+   * {@link Collection} of {@link ArtifactChangeLogResource}s
+   * representing changelog {@linkplain ClassLoader#getResources(String)
+   * resources found} among the supplied {@link Artifact}s.
+   *
+   * <p>Resources are returned grouped by resource name, in the order
+   * in which the names were {@linkplain #getChangeLogResourceNames()
+   * specified}, and, within each name, in the order of the supplied
+   * {@link Artifact}s.  Resources matching a {@linkplain
+   * ResourceNamePatterns pattern} are, within each {@link Artifact},
+   * in {@linkplain ResourceNamePatterns#compareNatural(String, String)
+   * natural order}.  Resources found in {@linkplain
+   * #getNestedArchiveNames() nested jar files} follow those found
+   * directly in the same {@link Artifact}.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param artifacts an {@link Iterable} of {@link Artifact}s; may be
+   * {@code null}
+   *
+   * @return a {@link Collection} of {@link ChangeLogResource}s
+   * representing changelog resources found among the supplied {@link
+   * Artifact}s; never {@code null}
    *
    * @exception IOException if an input/output error occurs such as
    * the kind that might be thrown by the {@link
@@ -814,24 +1753,85 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    *
    * @see ClassLoader#getResources(String)
    */
-  public Collection<? extends URL> getChangeLogResources(final Iterable<? extends Artifact> artifacts) throws IOException {
+  public Collection<? extends ChangeLogResource> getChangeLogResourceDescriptors(final Iterable<? extends Artifact> artifacts) throws IOException {
     final Log log = this.getLog();
-    Collection<URL> returnValue = null;
-    final ClassLoader loader = this.toClassLoader(artifacts);
-    if (loader != null) {
-      final Iterable<String> changeLogResourceNames = this.getChangeLogResourceNames();
+    Collection<ChangeLogResource> returnValue = this.scanWithDaemon(artifacts);
+    if (returnValue == null && artifacts != null) {
+      final List<String> changeLogResourceNames = this.getChangeLogResourceNames();
       if (log != null && log.isDebugEnabled()) {
         log.debug(String.format("Change log resource names: %s", changeLogResourceNames));
       }
       if (changeLogResourceNames == null) {
         throw new IllegalStateException("this.getChangeLogResourceNames()", new NullPointerException("this.getChangeLogResourceNames()"));
       }
-      returnValue = new ArrayList<URL>();
-      for (final String name : changeLogResourceNames) {
-        if (name != null) {
-          final Enumeration<URL> urls = loader.getResources(name);
-          if (urls != null) {
-            returnValue.addAll(Collections.list(urls));
+      final ResourceNamePatterns patterns = ResourceNamePatterns.of(changeLogResourceNames);
+      final List<String> nestedArchiveNames = this.getNestedArchiveNames();
+      final boolean nested = nestedArchiveNames != null && !nestedArchiveNames.isEmpty();
+      final Map<Artifact, URLClassLoader> loaders = new LinkedHashMap<Artifact, URLClassLoader>();
+      try {
+        final Map<Artifact, Map<String, ChangeLogResource>> scans = new HashMap<Artifact, Map<String, ChangeLogResource>>();
+        for (final Artifact artifact : artifacts) {
+          Map<String, ChangeLogResource> scan = this.scanReactorProject(artifact, changeLogResourceNames);
+          if (scan == null) {
+            scan = this.collectBackgroundScan(artifact, changeLogResourceNames);
+          }
+          if (scan == null && (patterns.hasPatterns() || nested)) {
+            // A ClassLoader cannot enumerate its resources, nor see
+            // into nested jar files, so scan the artifact's files
+            // directly.
+            scan = this.scanArtifact(artifact, changeLogResourceNames);
+          }
+          if (scan != null && nested) {
+            scan = this.addNestedScans(scan, filesOf(this.toURLs(artifact)), changeLogResourceNames);
+          }
+          if (scan != null) {
+            scans.put(artifact, scan);
+            loaders.put(artifact, null);
+          } else {
+            final URLClassLoader loader = this.toClassLoader(artifact);
+            if (loader != null) {
+              loaders.put(artifact, loader);
+            }
+          }
+        }
+        if (!loaders.isEmpty()) {
+          if (log != null && log.isDebugEnabled() && !scans.isEmpty()) {
+            log.debug(String.format("Using reactor or background scans of %d of %d artifact(s)", scans.size(), loaders.size()));
+          }
+          returnValue = new ArrayList<ChangeLogResource>();
+          for (final String name : changeLogResourceNames) {
+            if (name != null) {
+              for (final Map.Entry<Artifact, URLClassLoader> entry : loaders.entrySet()) {
+                final ClassLoader loader = entry.getValue();
+                if (loader == null) {
+                  for (final ChangeLogResource resource : patterns.select(scans.get(entry.getKey()).values(), name)) {
+                    returnValue.add(new ArtifactChangeLogResource(resource.getURL(), resource.getName(), resource.getContentHashIfComputed(), entry.getKey()));
+                  }
+                } else {
+                  final Enumeration<URL> urls = loader.getResources(name);
+                  if (urls != null) {
+                    while (urls.hasMoreElements()) {
+                      final URL url = urls.nextElement();
+                      if (url != null) {
+                        returnValue.add(new ArtifactChangeLogResource(url, name, entry.getKey()));
+                      }
+                    }
+                  }
+                }
+              }
+            }
+          }
+        }
+      } finally {
+        // The loaders' open jar files must not outlive discovery;
+        // the URLs found remain usable without them.
+        for (final URLClassLoader loader : loaders.values()) {
+          if (loader != null) {
+            try {
+              loader.close();
+            } catch (final IOException nothingWeCanDo) {
+
+            }
           }
         }
       }
@@ -843,6 +1843,499 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
   }
 
 
+  /**
+   * Asks the {@linkplain #getDaemonPort() configured daemon} to find
+   * the {@linkplain #getChangeLogResourceNames() changelog resources}
+   * in the supplied {@link Artifact}s, in the same order as {@link
+   * #getChangeLogResourceDescriptors(Iterable)} would, and returns
+   * them, or returns {@code null} if there is no daemon or it could
+   * not be used.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param artifacts the {@link Artifact}s to search; may be {@code
+   * null}
+   *
+   * @return a {@link Collection} of {@link ChangeLogResource}s, or
+   * {@code null}
+   *
+   * @exception IOException if an {@link Artifact}'s location could not
+   * be expressed as a {@link URL}, or a reactor project's directories
+   * could not be read
+   *
+   * @see ChangeLogAssemblerDaemonClient#scan(List, List)
+   */
+  private final Collection<ChangeLogResource> scanWithDaemon(final Iterable<? extends Artifact> artifacts) throws IOException {
+    Collection<ChangeLogResource> returnValue = null;
+    final ChangeLogAssemblerDaemonClient client = this.getDaemonClient();
+    final List<String> names = this.getChangeLogResourceNames();
+    if (client != null && artifacts != null && names != null) {
+      final List<Artifact> owners = new ArrayList<Artifact>();
+      final List<Map<String, ChangeLogResource>> scans = new ArrayList<Map<String, ChangeLogResource>>();
+      final List<File> entries = new ArrayList<File>();
+      final List<File> files = new ArrayList<File>();
+      for (final Artifact artifact : artifacts) {
+        if (artifact != null) {
+          final Map<String, ChangeLogResource> reactorScan = this.scanReactorProject(artifact, names);
+          if (reactorScan != null) {
+            owners.add(artifact);
+            scans.add(reactorScan);
+            files.add(null);
+          } else {
+            for (final URL url : this.toURLs(artifact)) {
+              final File file = new File(URI.create(url.toExternalForm()));
+              owners.add(artifact);
+              scans.add(null);
+              files.add(file);
+              entries.add(file);
+            }
+          }
+        }
+      }
+      try {
+        final List<Map<String, ChangeLogResource>> daemonScans = client.scan(entries, names);
+        if (daemonScans.size() != entries.size()) {
+          throw new IOException("Expected " + entries.size() + " scans but received " + daemonScans.size());
+        }
+        final Iterator<Map<String, ChangeLogResource>> daemonScanIterator = daemonScans.iterator();
+        final List<String> nestedArchiveNames = this.getNestedArchiveNames();
+        for (int i = 0; i < scans.size(); i++) {
+          if (scans.get(i) == null) {
+            scans.set(i, daemonScanIterator.next());
+          }
+          if (files.get(i) != null && nestedArchiveNames != null && !nestedArchiveNames.isEmpty()) {
+            // The daemon does not look into nested jar files.
+            scans.set(i, this.addNestedScans(scans.get(i), Collections.singleton(files.get(i)), names));
+          }
+        }
+        final ResourceNamePatterns patterns = ResourceNamePatterns.of(names);
+        returnValue = new ArrayList<ChangeLogResource>();
+        for (final String name : names) {
+          if (name != null) {
+            for (int i = 0; i < scans.size(); i++) {
+              for (final ChangeLogResource resource : patterns.select(scans.get(i).values(), name)) {
+                returnValue.add(new ArtifactChangeLogResource(resource.getURL(), resource.getName(), resource.getContentHashIfComputed(), owners.get(i)));
+              }
+            }
+          }
+        }
+        final Log log = this.getLog();
+        if (log != null && log.isDebugEnabled()) {
+          log.debug(String.format("Assembly daemon scanned %d classpath entries", entries.size()));
+        }
+      } catch (final IOException e) {
+        this.daemonUnavailable(e);
+        returnValue = null;
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * If the supplied {@link Artifact} is produced by another project in
+   * the current reactor, returns the changelog resources with the
+   * supplied names that that project provides without its having been
+   * packaged; otherwise returns {@code null}.
+   *
+   * <p>Each name is looked up first in the project's build output
+   * directory (its test output directory for a test jar) and then,
+   * so that resources are found even before the {@code
+   * process-resources} phase has run, in each of its unfiltered
+   * resource directories, honoring {@linkplain
+   * Resource#getTargetPath() target paths}.  The first match wins.
+   * Resource {@code include}s and {@code exclude}s are not consulted,
+   * so a warning is logged whenever a changelog is found only by this
+   * fallback.  Exact resource names cost one file system query
+   * each; {@linkplain ResourceNamePatterns patterns} cost one walk of
+   * each directory, pruned to the directories they can match.</p>
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param artifact the {@link Artifact} in question; may be {@code
+   * null}
+   *
+   * @param names the resource names of interest; must not be {@code
+   * null}
+   *
+   * @return a {@link Map} of {@link ChangeLogResource}s indexed by
+   * resource name, or {@code null}
+   *
+   * @exception IOException if a directory could not be read
+   *
+   * @see #getReactorProject(Artifact)
+   */
+  private final Map<String, ChangeLogResource> scanReactorProject(final Artifact artifact, final Collection<? extends String> names) throws IOException {
+    assert names != null;
+    Map<String, ChangeLogResource> returnValue = null;
+    final MavenProject reactorProject = this.getReactorProject(artifact);
+    if (reactorProject != null) {
+      returnValue = new HashMap<String, ChangeLogResource>();
+      final Build build = reactorProject.getBuild();
+      if (build != null) {
+        final boolean tests = isTestArtifact(artifact);
+        final String outputDirectory = tests ? build.getTestOutputDirectory() : build.getOutputDirectory();
+        final List<Resource> resources = tests ? build.getTestResources() : build.getResources();
+        if (outputDirectory != null) {
+          putFound(returnValue, JarChangeLogScanner.scanDirectory(new File(outputDirectory), null, names));
+        }
+        if (resources != null) {
+          final Map<String, ChangeLogResource> unprocessed = new LinkedHashMap<String, ChangeLogResource>();
+          for (final Resource resource : resources) {
+            if (resource != null && !resource.isFiltering() && resource.getDirectory() != null) {
+              putFound(unprocessed, JarChangeLogScanner.scanDirectory(new File(resource.getDirectory()), resource.getTargetPath(), names));
+            }
+          }
+          unprocessed.keySet().removeAll(returnValue.keySet());
+          if (!unprocessed.isEmpty()) {
+            putFound(returnValue, unprocessed);
+            final Log log = this.getLog();
+            if (log != null && log.isWarnEnabled()) {
+              log.warn(String.format("Reading %s from the resource directories of reactor project %s because its output directory, %s, does not contain them yet; resource includes and excludes are not honored", unprocessed.keySet(), reactorProject.getId(), outputDirectory));
+            }
+          }
+        }
+      }
+      final Log log = this.getLog();
+      if (log != null && log.isDebugEnabled()) {
+        log.debug(String.format("Read %s from reactor project %s: %s", artifact, reactorProject.getId(), returnValue.values()));
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@link MavenProject} in the {@linkplain
+   * #getReactorProjects() current reactor}, other than the {@linkplain
+   * #getProject() current project}, that produces the supplied {@link
+   * Artifact}, or {@code null} if there is none.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param artifact the {@link Artifact} in question; may be {@code
+   * null}
+   *
+   * @return a {@link MavenProject}, or {@code null}
+   */
+  private final MavenProject getReactorProject(final Artifact artifact) {
+    MavenProject returnValue = null;
+    final List<MavenProject> reactorProjects = this.getReactorProjects();
+    if (artifact != null && reactorProjects != null && artifact.getGroupId() != null && artifact.getArtifactId() != null) {
+      final MavenProject project = this.getProject();
+      for (final MavenProject reactorProject : reactorProjects) {
+        if (reactorProject != null &&
+            artifact.getGroupId().equals(reactorProject.getGroupId()) &&
+            artifact.getArtifactId().equals(reactorProject.getArtifactId()) &&
+            isVersionOf(artifact, reactorProject) &&
+            (project == null || !(reactorProject.getGroupId().equals(project.getGroupId()) && reactorProject.getArtifactId().equals(project.getArtifactId())))) {
+          returnValue = reactorProject;
+          break;
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link Artifact} is a test
+   * jar.
+   *
+   * @param artifact the {@link Artifact}; may be {@code null}
+   *
+   * @return {@code true} if the supplied {@link Artifact} is a test
+   * jar
+   */
+  private static final boolean isTestArtifact(final Artifact artifact) {
+    return artifact != null && ("tests".equals(artifact.getClassifier()) || "test-jar".equals(artifact.getType()));
+  }
+
+  /**
+   * Adds each {@link ChangeLogResource} found in the supplied scan to
+   * the supplied {@link Map} unless one with the same name has
+   * already been found.
+   *
+   * @param found the {@link Map} to add to; must not be {@code null}
+   *
+   * @param scan the scan; must not be {@code null}
+   */
+  private static final void putFound(final Map<String, ChangeLogResource> found, final Map<String, ChangeLogResource> scan) {
+    assert found != null;
+    assert scan != null;
+    for (final Map.Entry<String, ChangeLogResource> entry : scan.entrySet()) {
+      if (entry.getValue() != null && found.get(entry.getKey()) == null) {
+        found.put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Scans the files {@linkplain #toURLs(Artifact) making up} the
+   * supplied {@link Artifact} directly, jar files with a {@link
+   * JarChangeLogScanner} and directories by walking them, and returns
+   * the changelog resources found.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param artifact the {@link Artifact}; may be {@code null}
+   *
+   * @param names the resource names of interest; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link Map} of {@link
+   * ChangeLogResource}s indexed by resource name
+   *
+   * @exception IOException if a file could not be read
+   *
+   * @see JarChangeLogScanner#scan(File, Collection)
+   *
+   * @see JarChangeLogScanner#scanDirectory(File, String, Collection)
+   */
+  private final Map<String, ChangeLogResource> scanArtifact(final Artifact artifact, final Collection<? extends String> names) throws IOException {
+    assert names != null;
+    final Map<String, ChangeLogResource> returnValue = new LinkedHashMap<String, ChangeLogResource>();
+    if (artifact != null) {
+      for (final URL url : this.toURLs(artifact)) {
+        final File file = new File(URI.create(url.toExternalForm()));
+        if (file.isFile()) {
+          putFound(returnValue, JarChangeLogScanner.scan(file, names));
+        } else if (file.isDirectory()) {
+          putFound(returnValue, JarChangeLogScanner.scanDirectory(file, null, names));
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a new {@link Map} containing the contents of the supplied
+   * scan followed by the changelog resources found in the jar files
+   * {@linkplain #getNestedArchiveNames() nested} in the supplied
+   * files.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param scan the scan to extend; must not be {@code null}
+   *
+   * @param files the files whose nested jar files should be scanned;
+   * must not be {@code null}; those that are not jar files are
+   * skipped
+   *
+   * @param names the resource names of interest; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link Map} of {@link
+   * ChangeLogResource}s
+   *
+   * @exception IOException if a file could not be read
+   *
+   * @see NestedJarChangeLogScanner#scan(File, Collection, Collection)
+   */
+  private final Map<String, ChangeLogResource> addNestedScans(final Map<String, ChangeLogResource> scan, final Iterable<? extends File> files, final Collection<? extends String> names) throws IOException {
+    assert scan != null;
+    assert files != null;
+    assert names != null;
+    final Map<String, ChangeLogResource> returnValue = new LinkedHashMap<String, ChangeLogResource>(scan);
+    final List<String> nestedArchiveNames = this.getNestedArchiveNames();
+    if (nestedArchiveNames != null) {
+      final Log log = this.getLog();
+      for (final File file : files) {
+        if (file != null && file.isFile()) {
+          final Map<String, ChangeLogResource> nestedScan = NestedJarChangeLogScanner.scan(file, nestedArchiveNames, names);
+          if (log != null && log.isDebugEnabled() && !nestedScan.isEmpty()) {
+            log.debug(String.format("Found in nested jar files of %s: %s", file, nestedScan.keySet()));
+          }
+          putFound(returnValue, nestedScan);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@link File}s that the supplied {@code file:} {@link
+   * URL}s designate.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param urls the {@link URL}s; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of {@link File}s
+   */
+  private static final List<File> filesOf(final Iterable<? extends URL> urls) {
+    assert urls != null;
+    final List<File> returnValue = new ArrayList<File>();
+    for (final URL url : urls) {
+      if (url != null) {
+        returnValue.add(new File(URI.create(url.toExternalForm())));
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link ChangeLogResource} was
+   * found in a {@linkplain #getNestedArchiveNames() nested jar file}.
+   *
+   * @param resource the {@link ChangeLogResource}; must not be {@code
+   * null}
+   *
+   * @return {@code true} if the resource was found in a nested jar
+   * file
+   */
+  private static final boolean isNested(final ChangeLogResource resource) {
+    assert resource != null;
+    final URL url = resource.getURL();
+    return url != null && NestedJarChangeLogScanner.isNested(url.toExternalForm());
+  }
+
+  /**
+   * Returns the result of a background scan of the supplied {@link
+   * Artifact}'s jar file for the supplied resource names, if the
+   * {@link BackgroundScanLifecycleParticipant} has {@linkplain
+   * ChangeLogScanCache#put(File, Map) stored} one in the {@linkplain
+   * #getScanCacheDirectory(MavenProject) scan cache directory}, or
+   * {@code null} if the {@link Artifact} must be scanned in the
+   * foreground.
+   *
+   * <p>If the participant's scan of the jar file is still running,
+   * this method {@linkplain #awaitBackgroundScan(File, File) waits}
+   * for it to finish rather than scanning the same jar file
+   * again.</p>
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param artifact the {@link Artifact} in question; may be {@code
+   * null}
+   *
+   * @param names the resource names of interest; must not be {@code
+   * null}
+   *
+   * @return a {@link Map} of {@link ChangeLogResource}s indexed by
+   * resource name, or {@code null}
+   *
+   * @see ChangeLogScanCache#get(File, Collection)
+   */
+  private final Map<String, ChangeLogResource> collectBackgroundScan(final Artifact artifact, final Collection<? extends String> names) {
+    assert names != null;
+    Map<String, ChangeLogResource> returnValue = null;
+    if (artifact != null) {
+      final File file = artifact.getFile();
+      final MavenProject project = this.getProject();
+      if (file != null && file.isFile() && project != null) {
+        final File directory = getScanCacheDirectory(project);
+        if (directory != null) {
+          this.awaitBackgroundScan(file, directory);
+          if (directory.isDirectory()) {
+            returnValue = new ChangeLogScanCache(directory).get(file, names);
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Waits for the {@link BackgroundScanLifecycleParticipant}'s scan
+   * of the supplied jar file into the supplied scan cache directory
+   * to finish, if one was submitted.
+   *
+   * <p>The participant may be loaded by a different class realm, so
+   * its scans are found only through JDK types stored in the
+   * {@linkplain SessionData session data} under {@link
+   * #BACKGROUND_SCANS_KEY}.  A failed or interrupted wait is logged
+   * at debug level; the caller then scans the jar file itself.</p>
+   *
+   * @param jarFile the jar file; must not be {@code null}
+   *
+   * @param directory the scan cache directory; must not be {@code
+   * null}
+   */
+  private final void awaitBackgroundScan(final File jarFile, final File directory) {
+    assert jarFile != null;
+    assert directory != null;
+    final MavenSession session = this.getSession();
+    if (session != null) {
+      final RepositorySystemSession repositorySession = session.getRepositorySession();
+      if (repositorySession != null) {
+        final SessionData data = repositorySession.getData();
+        if (data != null) {
+          final Object scans = data.get(BACKGROUND_SCANS_KEY);
+          if (scans instanceof Map) {
+            final Object scan = ((Map<?, ?>)scans).get(getBackgroundScanKey(jarFile, directory));
+            if (scan instanceof Future) {
+              final Log log = this.getLog();
+              try {
+                ((Future<?>)scan).get();
+              } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (log != null && log.isDebugEnabled()) {
+                  log.debug("Interrupted while waiting for the background scan of " + jarFile, e);
+                }
+              } catch (final ExecutionException e) {
+                if (log != null && log.isDebugEnabled()) {
+                  log.debug("Background scan of " + jarFile + " failed", e);
+                }
+              } catch (final CancellationException e) {
+                if (log != null && log.isDebugEnabled()) {
+                  log.debug("Background scan of " + jarFile + " was cancelled", e);
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the key under which the {@link
+   * BackgroundScanLifecycleParticipant} publishes the {@link Future}
+   * of its scan of the supplied jar file into the supplied scan cache
+   * directory.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param jarFile the jar file; must not be {@code null}
+   *
+   * @param directory the scan cache directory; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} key
+   *
+   * @see #BACKGROUND_SCANS_KEY
+   */
+  static final String getBackgroundScanKey(final File jarFile, final File directory) {
+    assert jarFile != null;
+    assert directory != null;
+    return jarFile.getAbsolutePath() + "|" + directory.getAbsolutePath();
+  }
+
+  /**
+   * Returns the directory in which the {@link
+   * BackgroundScanLifecycleParticipant} stores its scans of the
+   * supplied {@link MavenProject}'s jar dependencies, or {@code null}
+   * if the project has no build directory.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param project the {@link MavenProject} in question; must not be
+   * {@code null}
+   *
+   * @return a {@link File}, or {@code null}
+   */
+  static final File getScanCacheDirectory(final MavenProject project) {
+    assert project != null;
+    File returnValue = null;
+    final Build build = project.getBuild();
+    if (build != null) {
+      final String directory = build.getDirectory();
+      if (directory != null) {
+        returnValue = new File(directory, "liquibase-scan-cache");
+      }
+    }
+    return returnValue;
+  }
+
+
   /**
    * Using an appropriate {@link ClassLoader}, returns a {@link URL}
    * that may be used to {@linkplain URL#openStream() get} the
@@ -1010,7 +2503,7 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    * <li>Verifies that the template can be read and has contents</li>
    *
    * <li>{@linkplain
-   * Artifacts#getArtifactsInTopologicalOrder(MavenProject,
+   * TopologicalArtifactSorter#getArtifactsInTopologicalOrder(MavenProject,
    * DependencyGraphBuilder, ArtifactFilter, ArtifactResolver,
    * ArtifactRepository) Retrieves and resolves the project's
    * dependencies and sorts them in topological order} from the
@@ -1018,21 +2511,43 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    * the current project} (which by definition has the most
    * dependencies)</li>
    *
-   * <li>Builds a {@link ClassLoader} that can "see" the {@linkplain
-   * Artifact#getFile() <code>File</code>s associated with those
-   * <code>Artifact</code>s} and uses it to {@linkplain
+   * <li>Builds a {@link ClassLoader} for each of those {@link
+   * Artifact}s that can "see" the {@linkplain Artifact#getFile()
+   * <code>File</code>s associated with it} and uses it to {@linkplain
    * ClassLoader#getResources(String) find} the {@linkplain
    * #getChangeLogResourceNames() specified changelog resources}</li>
+   *
+   * <li>{@linkplain #deduplicate(Collection) Drops} changelog
+   * fragments whose contents duplicate those of a fragment found
+   * earlier, if the {@link #isDeduplicate() deduplicate} parameter is
+   * {@code true}</li>
+   *
+   * <li>{@linkplain #validate(Collection) Validates} the changelog
+   * fragments against the bundled Liquibase XML Schema, if the {@link
+   * #isValidate() validate} parameter is {@code true}</li>
    * 
-   * <li>Passes a {@link Collection} of {@link URL}s representing (in
-   * most cases) {@code file:} or {@code jar:} {@link URL}s through
-   * the {@linkplain TemplateRuntime MVEL template engine}, thus
-   * merging the template and the {@link URL}s into an aggregating
-   * changelog</li>
+   * <li>{@linkplain #toIncludes(Collection) Determines how} each
+   * changelog fragment should be {@code include}d, according to the
+   * {@linkplain #getIncludeMode() include mode}</li>
+   *
+   * <li>{@linkplain #checkDuplicateChangeSets(Map) Verifies} that no
+   * two changesets share an identity, if the {@link
+   * #isCheckDuplicateChangeSets() checkDuplicateChangeSets} parameter
+   * is {@code true}</li>
+   *
+   * <li>Passes a {@link Collection} of {@code include}s representing
+   * (in most cases) {@code file:} or {@code jar:} {@link URL}s or
+   * classpath-relative resource names through the {@linkplain
+   * TemplateRuntime MVEL template engine}, thus merging the template
+   * and the {@code include}s into an aggregating changelog</li>
    *
    * <li>{@linkplain #write(String, Collection, File) Writes} the
    * resulting changelog to the destination denoted by the {@link
    * #getOutputFile() outputFile} parameter</li>
+   *
+   * <li>{@linkplain #writeIncludeIndex(Map, IncludeMode) Writes} an {@link
+   * IncludeIndex} describing each {@code include} if the {@link
+   * #getIncludeIndexFile() includeIndexFile} parameter is set</li>
    * 
    * </ul>
    *
@@ -1048,11 +2563,23 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    *
    * @see #getChangeLogTemplateResource()
    *
-   * @see #getChangeLogResources()
+   * @see #getChangeLogResourceDescriptors()
    *
    * @see #getOutputFile()
    *
    * @see #write(String, Collection, File)
+   *
+   * @see #deduplicate(Collection)
+   *
+   * @see #validate(Collection)
+   *
+   * @see #toIncludes(Collection)
+   *
+   * @see #checkDuplicateChangeSets(Map)
+   *
+   * @see #writeIncludeIndex(Map, IncludeMode)
+   *
+   * @see #writeContextChangeLogs(Map, File)
    */
   public final void assembleChangeLog() throws ArtifactResolutionException, DependencyGraphBuilderException, IOException {
     final Log log = this.getLog();
@@ -1066,34 +2593,117 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
         log.debug(String.format("Change log template contents: %s", templateContents));
       }
       if (templateContents != null) {
-        final Collection<? extends URL> urls = this.getChangeLogResources();
-        if (log != null && log.isDebugEnabled()) {
-          log.debug(String.format("Change log resources: %s", urls));
+        this.assembleChangeLog(templateContents, this.getChangeLogResourceDescriptors());
+      }
+    }
+  }
+
+  /**
+   * Assembles the supplied changelog fragments into the {@linkplain
+   * #getOutputFile() output file} using the supplied template
+   * contents, performing every step of the {@link
+   * #assembleChangeLog()} method after discovery.
+   *
+   * @param templateContents the contents of the changelog template;
+   * must not be {@code null}
+   *
+   * @param resources the discovered changelog fragments, in
+   * discovery order; may be {@code null}
+   *
+   * @exception IOException if there was a problem with input or
+   * output
+   *
+   * @see #assembleChangeLog()
+   */
+  public final void assembleChangeLog(final String templateContents, Collection<? extends ChangeLogResource> resources) throws IOException {
+    final Log log = this.getLog();
+    if (this.isDeduplicate()) {
+      resources = this.deduplicate(resources);
+    }
+    if (this.isValidate()) {
+      this.validate(resources);
+    }
+    if (log != null && log.isDebugEnabled()) {
+      log.debug(String.format("Change log resources: %s", resources));
+    }
+    if (resources != null && !resources.isEmpty()) {
+      final File outputFile = this.getOutputFile();
+      if (log != null && log.isDebugEnabled()) {
+        log.debug(String.format("Output file: %s", outputFile));
+      }
+      if (outputFile != null) {
+        final Map<ChangeLogResource, String> includes = this.toIncludes(resources);
+        assert includes != null;
+        if (this.isCheckDuplicateChangeSets()) {
+          this.checkDuplicateChangeSets(includes);
         }
-        if (urls != null && !urls.isEmpty()) {
-          final File outputFile = this.getOutputFile();
-          if (log != null && log.isDebugEnabled()) {
-            log.debug(String.format("Output file: %s", outputFile));
-          }
-          if (outputFile != null) {
-            this.write(templateContents, urls, outputFile);
-          }
+        this.write(templateContents, this.toDescriptors(includes), outputFile);
+        this.writeIncludeIndex(includes, this.getIncludeMode());
+        this.writeContextChangeLogs(includes, outputFile);
+      }
+    }
+  }
+
+  /**
+   * Returns a {@link List} of {@link ChangeLogDescriptor}s, one for
+   * each of the supplied {@link ChangeLogResource}s and their {@code
+   * include}s, in order, for use as a template's {@code resources}
+   * variable.
+   *
+   * <p>{@link ArtifactChangeLogResource}s are described by {@link
+   * ArtifactChangeLogDescriptor}s carrying the depth of their {@link
+   * Artifact} in the dependency graph.  Nothing is read from any
+   * changelog by this method.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param includes a {@link Map} of {@link ChangeLogResource}s to
+   * {@code include}s, as returned by the {@link
+   * #toIncludes(Collection)} method; may be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of {@link
+   * ChangeLogDescriptor}s
+   *
+   * @see ChangeLogDescriptor
+   */
+  protected List<ChangeLogDescriptor> toDescriptors(final Map<? extends ChangeLogResource, ? extends String> includes) {
+    final List<ChangeLogDescriptor> returnValue = new ArrayList<ChangeLogDescriptor>();
+    if (includes != null) {
+      final Map<String, Integer> depths = this.dependencyDepths;
+      for (final Map.Entry<? extends ChangeLogResource, ? extends String> entry : includes.entrySet()) {
+        final ChangeLogResource resource = entry.getKey();
+        final String include = entry.getValue();
+        if (resource instanceof ArtifactChangeLogResource && include != null) {
+          final Integer depth = depths == null ? null : depths.get(((ArtifactChangeLogResource)resource).getArtifact().getId());
+          returnValue.add(new ArtifactChangeLogDescriptor((ArtifactChangeLogResource)resource, include, depth == null ? -1 : depth.intValue()));
+        } else if (resource != null && include != null) {
+          returnValue.add(new ChangeLogDescriptor(resource, include));
         }
       }
     }
+    return returnValue;
   }
 
   /**
-   * Writes appropriate representations of the supplied {@link URL}s
-   * as interpreted and merged into the supplied {@code template}
-   * contents to the {@link File} represented by the {@code
+   * Writes appropriate representations of the supplied {@code
+   * include}s as interpreted and merged into the supplied {@code
+   * template} contents to the {@link File} represented by the {@code
    * outputFile} parameter value.
    *
+   * <p>The {@link Collection} of {@code include}s becomes the
+   * template's {@code resources} variable.  Only the default template
+   * is rendered by the {@linkplain #getDaemonPort() daemon}, which
+   * sees nothing but the string form of each {@code include}; custom
+   * templates are always rendered here so that they may read the
+   * attributes of {@link ChangeLogDescriptor}s.</p>
+   *
    * @param template an <a href="http://mvel.codehaus.org/">MVEL</a>
    * template; may be {@code null} in which case no action will be
    * taken
    *
-   * @param urls a {@link Collection} of {@link URL}s representing
+   * @param urls a {@link Collection} of {@code include}s&mdash;{@link
+   * ChangeLogDescriptor}s, {@link URL}s or classpath-relative
+   * resource names&mdash;representing
    * existing changelog fragment resources, sorted in topological
    * dependency order; may be {@code null} in which case no action
    * will be taken
@@ -1109,8 +2719,8 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    * contained syntax errors
    *
    * @exception TemplateRuntimeError if there was a problem merging
-   * the supplied {@link Collection} of {@link URL}s with the compiled
-   * version of the supplied {@code template}
+   * the supplied {@link Collection} of {@code include}s with the
+   * compiled version of the supplied {@code template}
    *
    * @see #getOutputFile()
    *
@@ -1118,14 +2728,17 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    *
    * @see #getChangeLogResourceNames()
    */
-  public void write(final String template, final Collection<? extends URL> urls, final File outputFile) throws IOException {
+  public void write(final String template, final Collection<?> urls, final File outputFile) throws IOException {
     if (template != null && urls != null && !urls.isEmpty() && outputFile != null) {
-      final CompiledTemplate compiledTemplate = TemplateCompiler.compileTemplate(template);
-      assert compiledTemplate != null;
-      final Map<Object, Object> variables = new HashMap<Object, Object>();
-      variables.put("databaseChangeLogXsdVersion", this.getDatabaseChangeLogXsdVersion());
-      variables.put("changeLogParameters", this.getChangeLogParameters());
-      variables.put("resources", urls);
+      String rendered = null;
+      final ChangeLogAssemblerDaemonClient client = this.getChangeLogTemplateResourceName() == null ? this.getDaemonClient() : null;
+      if (client != null) {
+        try {
+          rendered = client.render(template, this.getDatabaseChangeLogXsdVersion(), this.getChangeLogParameters(), urls);
+        } catch (final IOException e) {
+          this.daemonUnavailable(e);
+        }
+      }
       String encoding = this.getChangeLogCharacterEncoding();
       if (encoding == null) {
         encoding = "UTF-8";
@@ -1136,7 +2749,17 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
       }
       final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), encoding));
       try {
-        TemplateRuntime.execute(compiledTemplate, this, new MapVariableResolverFactory(variables), null /* no TemplateRegistry */, new TemplateOutputWriter(writer));
+        if (rendered != null) {
+          writer.write(rendered);
+        } else {
+          final CompiledTemplate compiledTemplate = TemplateCompiler.compileTemplate(template);
+          assert compiledTemplate != null;
+          final Map<Object, Object> variables = new HashMap<Object, Object>();
+          variables.put("databaseChangeLogXsdVersion", this.getDatabaseChangeLogXsdVersion());
+          variables.put("changeLogParameters", this.getChangeLogParameters());
+          variables.put("resources", urls);
+          TemplateRuntime.execute(compiledTemplate, this, new MapVariableResolverFactory(variables), null /* no TemplateRegistry */, new TemplateOutputWriter(writer));
+        }
       } finally {
         try {
           writer.flush();
@@ -1152,6 +2775,606 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
     }
   }
 
+  /**
+   * Returns a new {@link Collection} containing those of the supplied
+   * {@link ChangeLogResource}s whose {@linkplain
+   * ChangeLogResource#getContentHash() contents} have not already
+   * been seen in an {@link Artifact} earlier in topological order.
+   *
+   * <p>The supplied {@link ChangeLogResource}s are ordinarily ordered
+   * by changelog resource name first and by {@link Artifact} second,
+   * so the copy of a changelog fragment that is retained is the one
+   * found in the {@link Artifact} that comes first in the
+   * {@linkplain #getArtifactsInTopologicalOrder() topological order},
+   * not merely the one that comes first in iteration order.  Those
+   * retained keep their relative order.  Each dropped duplicate is
+   * reported as a warning.  This typically happens when the same changelog is
+   * found in both <code>target/classes</code> and
+   * <code>target/test-classes</code>, or in both a regular artifact
+   * and a shaded artifact or test-jar.</p>
+   *
+   * <p>Hashing reads each changelog fragment as a stream and does not
+   * buffer it in memory.  Content hashes are memoized by each {@link
+   * ChangeLogResource}, so they are not recomputed if later needed by
+   * the {@linkplain #writeIncludeIndex(Map, IncludeMode) include index}.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources the {@link ChangeLogResource}s to deduplicate;
+   * may be {@code null}
+   *
+   * @return a non-{@code null} {@link Collection} of {@link
+   * ChangeLogResource}s, in the same order as they were supplied,
+   * without duplicates
+   *
+   * @exception IOException if a changelog fragment could not be read
+   *
+   * @see ChangeLogResource#getContentHash()
+   */
+  public Collection<? extends ChangeLogResource> deduplicate(final Collection<? extends ChangeLogResource> resources) throws IOException {
+    final Collection<ChangeLogResource> returnValue;
+    if (resources == null || resources.isEmpty()) {
+      returnValue = Collections.emptySet();
+    } else {
+      final Log log = this.getLog();
+      final Map<ChangeLogResource, ChangeLogResource> dropped = new LinkedHashMap<ChangeLogResource, ChangeLogResource>();
+      final Map<String, Integer> topologicalIndices = this.topologicalIndices;
+      final List<ChangeLogResource> candidates = new ArrayList<ChangeLogResource>(resources);
+      if (topologicalIndices != null && !topologicalIndices.isEmpty()) {
+        // A stable sort, so within an artifact the original order
+        // decides which copy is retained.
+        Collections.sort(candidates, new Comparator<ChangeLogResource>() {
+            @Override
+            public final int compare(final ChangeLogResource a, final ChangeLogResource b) {
+              return topologicalIndex(a, topologicalIndices) - topologicalIndex(b, topologicalIndices);
+            }
+          });
+      }
+      final Set<ChangeLogResource> retained = new HashSet<ChangeLogResource>(this.newChangeLogAssembler().deduplicate(candidates, dropped));
+      returnValue = new ArrayList<ChangeLogResource>(retained.size());
+      for (final ChangeLogResource resource : resources) {
+        if (retained.contains(resource)) {
+          returnValue.add(resource);
+        }
+      }
+      if (log != null && log.isWarnEnabled()) {
+        for (final Map.Entry<ChangeLogResource, ChangeLogResource> entry : dropped.entrySet()) {
+          final ChangeLogResource resource = entry.getKey();
+          final ChangeLogResource original = entry.getValue();
+          log.warn(String.format("Dropping changelog %s%s; its contents duplicate those of %s%s", resource, describeArtifact(resource), original, describeArtifact(original)));
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Validates those of the supplied {@link ChangeLogResource}s whose
+   * {@linkplain ChangeLogResource#getName() names} end with {@code
+   * .xml} against the Liquibase XML Schema bundled with Liquibase
+   * whose version is given by the {@link
+   * #getDatabaseChangeLogXsdVersion() databaseChangeLogXsdVersion}
+   * parameter.
+   *
+   * <p>Validation is performed offline, in parallel, on a pool of at
+   * most {@link #getValidationThreads() validationThreads} threads.
+   * All problems found in all changelog fragments are reported
+   * together, each with the coordinates of the {@link Artifact} in
+   * which it was found.</p>
+   *
+   * @param resources the {@link ChangeLogResource}s to validate; may
+   * be {@code null} in which case no action will be taken
+   *
+   * @exception IOException if any changelog fragment could not be
+   * read or is invalid; its message describes every problem found
+   *
+   * @see ChangeLogValidator
+   */
+  public void validate(final Collection<? extends ChangeLogResource> resources) throws IOException {
+    if (resources != null && !resources.isEmpty()) {
+      final Log log = this.getLog();
+      if (log != null && log.isDebugEnabled()) {
+        log.debug(String.format("Validating changelog(s) against the Liquibase %s XML Schema", this.getDatabaseChangeLogXsdVersion()));
+      }
+      this.newChangeLogAssembler().validate(resources);
+    }
+  }
+
+  /**
+   * Verifies that no two changesets defined by those of the supplied
+   * {@link ChangeLogResource}s whose {@linkplain
+   * ChangeLogResource#getName() names} end with {@code .xml} share an
+   * {@code id}, {@code author} and file path.
+   *
+   * <p>The file path of a changeset is computed as Liquibase computes
+   * it, using the {@code include} by which its changelog is included
+   * when no {@code logicalFilePath} is specified.  Changelogs are
+   * read in a streaming fashion and only changeset identities are
+   * retained, so this check runs in time and memory linear in the
+   * number of changesets.</p>
+   *
+   * @param includes a {@link Map} of {@link ChangeLogResource}s to
+   * the {@code include}s by which they are included, in order; may be
+   * {@code null} in which case no action will be taken
+   *
+   * @exception IOException if a changelog fragment could not be read,
+   * or if any changesets share an identity; its message describes
+   * every such collision together with the coordinates of the {@link
+   * Artifact}s involved
+   *
+   * @see ChangeSetIdentityIndex
+   */
+  public void checkDuplicateChangeSets(final Map<? extends ChangeLogResource, ? extends String> includes) throws IOException {
+    if (includes != null && !includes.isEmpty()) {
+      final int size = this.newChangeLogAssembler().checkDuplicateChangeSets(includes);
+      final Log log = this.getLog();
+      if (log != null && log.isDebugEnabled()) {
+        log.debug(String.format("Checked %d distinct changeset identities", size));
+      }
+    }
+  }
+
+  /**
+   * Returns a new {@link ChangeLogAssembler} configured from this
+   * {@link AssembleChangeLogMojo}'s parameters that describes the
+   * origin of each changelog fragment by the {@link Artifact} in which
+   * it was found.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a new, non-{@code null} {@link ChangeLogAssembler}
+   */
+  private final ChangeLogAssembler newChangeLogAssembler() {
+    final ChangeLogAssembler assembler = new ChangeLogAssembler() {
+        @Override
+        protected final String describeOrigin(final ChangeLogResource resource) {
+          return describeArtifact(resource);
+        }
+      };
+    assembler.setChangeLogResourceNames(this.getChangeLogResourceNames());
+    assembler.setDatabaseChangeLogXsdVersion(this.getDatabaseChangeLogXsdVersion());
+    assembler.setChangeLogParameters(this.getChangeLogParameters());
+    assembler.setDeduplicate(this.isDeduplicate());
+    assembler.setValidate(this.isValidate());
+    assembler.setValidationThreads(this.getValidationThreads());
+    assembler.setCheckDuplicateChangeSets(this.isCheckDuplicateChangeSets());
+    return assembler;
+  }
+
+  /**
+   * Returns the position in topological order of the {@link Artifact}
+   * from which the supplied {@link ChangeLogResource} came, or {@link
+   * Integer#MAX_VALUE} if it is not an {@link
+   * ArtifactChangeLogResource} or its {@link Artifact} is not present
+   * in the supplied {@link Map}.
+   *
+   * @param resource the {@link ChangeLogResource} in question; may be
+   * {@code null}
+   *
+   * @param topologicalIndices a {@link Map} of topological positions
+   * indexed by {@linkplain Artifact#getId() artifact identifier}; must
+   * not be {@code null}
+   *
+   * @return a non-negative position
+   */
+  private static final int topologicalIndex(final ChangeLogResource resource, final Map<String, Integer> topologicalIndices) {
+    int returnValue = Integer.MAX_VALUE;
+    if (resource instanceof ArtifactChangeLogResource) {
+      final Artifact artifact = ((ArtifactChangeLogResource)resource).getArtifact();
+      if (artifact != null) {
+        final Integer index = topologicalIndices.get(artifact.getId());
+        if (index != null) {
+          returnValue = index.intValue();
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a parenthesized description of the {@link Artifact} from
+   * which the supplied {@link ChangeLogResource} came, suitable for
+   * appending to a log message, or an empty {@link String} if it is
+   * not an {@link ArtifactChangeLogResource}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resource the {@link ChangeLogResource} in question; may be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  private static final String describeArtifact(final ChangeLogResource resource) {
+    final String returnValue;
+    if (resource instanceof ArtifactChangeLogResource) {
+      returnValue = " (" + ((ArtifactChangeLogResource)resource).getArtifact() + ")";
+    } else {
+      returnValue = "";
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a {@link Map} associating each of the supplied {@link
+   * ChangeLogResource}s with the {@code include} by which the
+   * generated changelog should refer to it, according to the
+   * {@linkplain #getIncludeMode() include mode}.
+   *
+   * <p>In {@link IncludeMode#URL URL} mode, each {@link
+   * ChangeLogResource} is {@code include}d by its {@link URL}.  A
+   * {@link ChangeLogResource} found in a {@linkplain
+   * #getNestedArchiveNames() nested archive} has a {@link URL} of the
+   * form <code>jar:file:<i>outer.jar</i>!/<i>inner.jar</i>!/<i>name</i></code>,
+   * which neither the JDK nor Liquibase can open on its own, so a
+   * warning is logged for each such {@link ChangeLogResource}.</p>
+   *
+   * <p>In {@link IncludeMode#CLASSPATH CLASSPATH} mode, each {@link
+   * ChangeLogResource} is {@code include}d by its {@linkplain
+   * ChangeLogResource#getName() classpath-relative resource name}.
+   * If several {@link ChangeLogResource}s share a resource name, then
+   * each of them is instead copied into the {@linkplain
+   * #getClasspathIncludeDirectory() classpath include directory}
+   * under a {@linkplain #disambiguate(ChangeLogResource, Set) unique,
+   * artifact-specific resource name} by which it is {@code
+   * include}d, and that directory is added to the {@linkplain
+   * #getProject() project}'s resources.  A {@link ChangeLogResource}
+   * found in a {@linkplain #getNestedArchiveNames() nested archive}
+   * is not on any classpath, so it is always copied in this way.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources the {@link ChangeLogResource}s to be included in
+   * the generated changelog, in order; may be {@code null}
+   *
+   * @return a non-{@code null}, ordered {@link Map} of {@link
+   * ChangeLogResource}s to {@code include}s
+   *
+   * @exception IOException if a changelog fragment could not be
+   * copied
+   *
+   * @see #getIncludeMode()
+   */
+  public Map<ChangeLogResource, String> toIncludes(final Collection<? extends ChangeLogResource> resources) throws IOException {
+    final Map<ChangeLogResource, String> returnValue = new LinkedHashMap<ChangeLogResource, String>();
+    if (resources != null && !resources.isEmpty()) {
+      if (this.getIncludeMode() != IncludeMode.CLASSPATH) {
+        final Log log = this.getLog();
+        for (final ChangeLogResource resource : resources) {
+          if (resource != null) {
+            if (isNested(resource) && log != null && log.isWarnEnabled()) {
+              log.warn(String.format("Including changelog %s%s by a nested jar URL; only this plugin's URLResourceAccessor can open it, so the assembled changelog will not be usable by Liquibase on its own. Set includeMode to CLASSPATH to copy nested changelogs into %s instead.", resource, describeArtifact(resource), this.getClasspathIncludeDirectory()));
+            }
+            returnValue.put(resource, resource.toString());
+          }
+        }
+      } else {
+        final Set<String> names = new HashSet<String>();
+        final Set<String> duplicateNames = new HashSet<String>();
+        for (final ChangeLogResource resource : resources) {
+          if (resource != null && !isNested(resource) && !names.add(resource.getName())) {
+            duplicateNames.add(resource.getName());
+          }
+        }
+        final Set<String> usedNames = new HashSet<String>(names);
+        File directory = null;
+        for (final ChangeLogResource resource : resources) {
+          if (resource != null) {
+            final String name = resource.getName();
+            if (!isNested(resource) && !duplicateNames.contains(name)) {
+              returnValue.put(resource, name);
+            } else {
+              if (directory == null) {
+                directory = this.getClasspathIncludeDirectory();
+                if (directory == null) {
+                  throw new IllegalStateException("this.getClasspathIncludeDirectory()", new NullPointerException("this.getClasspathIncludeDirectory()"));
+                }
+              }
+              final String uniqueName = this.disambiguate(resource, usedNames);
+              assert uniqueName != null;
+              copy(resource, new File(directory, uniqueName));
+              returnValue.put(resource, uniqueName);
+            }
+          }
+        }
+        if (directory != null) {
+          this.addResourceDirectory(directory);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a classpath-relative resource name, not already present
+   * in the supplied {@link Set} of used names, under which the
+   * supplied {@link ChangeLogResource} may be unambiguously found,
+   * and adds it to that {@link Set}.
+   *
+   * <p>The name returned is of the form
+   * <code>liquibase-includes/<i>groupId</i>/<i>artifactId</i>/<i>name</i></code>,
+   * where <code><i>name</i></code> is the {@linkplain
+   * ChangeLogResource#getName() resource's original name}.  A numeric
+   * suffix is appended to the <code><i>artifactId</i></code> segment
+   * if necessary to ensure uniqueness.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resource the {@link ChangeLogResource} in question; must
+   * not be {@code null}
+   *
+   * @param usedNames the {@link Set} of names already in use; must
+   * not be {@code null}; will be modified
+   *
+   * @return a unique classpath-relative resource name; never {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   */
+  protected String disambiguate(final ChangeLogResource resource, final Set<String> usedNames) {
+    if (resource == null) {
+      throw new IllegalArgumentException("resource", new NullPointerException("resource"));
+    }
+    if (usedNames == null) {
+      throw new IllegalArgumentException("usedNames", new NullPointerException("usedNames"));
+    }
+    final String prefix;
+    if (resource instanceof ArtifactChangeLogResource) {
+      final Artifact artifact = ((ArtifactChangeLogResource)resource).getArtifact();
+      prefix = "liquibase-includes/" + artifact.getGroupId() + "/" + artifact.getArtifactId();
+    } else {
+      prefix = "liquibase-includes/unknown";
+    }
+    String returnValue = prefix + "/" + resource.getName();
+    for (int i = 2; !usedNames.add(returnValue); i++) {
+      returnValue = prefix + "-" + i + "/" + resource.getName();
+    }
+    return returnValue;
+  }
+
+  /**
+   * Adds the supplied directory to the {@linkplain #getProject()
+   * current project}'s resources, unless it is already present.
+   *
+   * @param directory the directory to add; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code directory} is
+   * {@code null}
+   */
+  private final void addResourceDirectory(final File directory) {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory", new NullPointerException("directory"));
+    }
+    final MavenProject project = this.getProject();
+    if (project != null) {
+      final String path = directory.getAbsolutePath();
+      final List<?> resources = project.getResources();
+      if (resources != null) {
+        for (final Object resource : resources) {
+          if (resource instanceof Resource && path.equals(((Resource)resource).getDirectory())) {
+            return;
+          }
+        }
+      }
+      final Resource resource = new Resource();
+      resource.setDirectory(path);
+      project.addResource(resource);
+    }
+  }
+
+  /**
+   * Copies the contents of the supplied {@link ChangeLogResource} to
+   * the supplied {@link File}, creating parent directories as
+   * necessary.
+   *
+   * @param resource the {@link ChangeLogResource} to copy; must not
+   * be {@code null}
+   *
+   * @param file the destination {@link File}; must not be {@code
+   * null}; will be overwritten
+   *
+   * @exception IOException if an input/output error occurs
+   */
+  private static final void copy(final ChangeLogResource resource, final File file) throws IOException {
+    assert resource != null;
+    assert file != null;
+    final File parent = file.getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Could not create parent directory chain for " + file);
+    }
+    final InputStream in = resource.openStream();
+    try {
+      final OutputStream out = new FileOutputStream(file);
+      try {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        try {
+          out.close();
+        } catch (final IOException ignore) {
+          // ignore on purpose
+        }
+      }
+    } finally {
+      try {
+        in.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+  /**
+   * Writes an {@link IncludeIndex} describing each of the supplied
+   * {@code include}s to the {@linkplain #getIncludeIndexFile()
+   * include index file}, if there is one.
+   *
+   * <p>In {@link IncludeMode#CLASSPATH CLASSPATH} mode each {@code
+   * include} is itself the classpath-relative resource name recorded
+   * in the index.  In {@link IncludeMode#URL URL} mode each {@code
+   * include} is a {@link URL}, and the {@linkplain
+   * ChangeLogResource#getName() resource name} under which its
+   * {@link ChangeLogResource} was found is recorded instead, unless
+   * another {@code include} shares it or it was found in a nested
+   * archive; such a changelog fragment is instead copied into the
+   * {@linkplain #getClasspathIncludeDirectory() classpath include
+   * directory} under a {@linkplain #disambiguate(ChangeLogResource,
+   * Set) unique resource name}, which is recorded, and that directory
+   * is added to the {@linkplain #getProject() project}'s resources.
+   * Every recorded resource name is therefore unique.</p>
+   *
+   * <p>Each {@link ChangeLogResource} is {@linkplain
+   * ChangeLogResource#getContentHash() hashed} as part of this
+   * operation.</p>
+   *
+   * @param includes a {@link Map} of the {@link ChangeLogResource}s
+   * that were included in the generated changelog, in order, to the
+   * {@code include}s by which they were included; may be {@code
+   * null} in which case no action will be taken
+   *
+   * @param includeMode the {@link IncludeMode} by which the {@code
+   * include}s were {@linkplain #toIncludes(Collection) produced}; may
+   * be {@code null} in which case {@link IncludeMode#URL} will be
+   * assumed
+   *
+   * @exception IOException if there was a problem reading a
+   * changelog or writing the index
+   *
+   * @see #getIncludeIndexFile()
+   *
+   * @see IncludeIndex#write(Writer)
+   */
+  public void writeIncludeIndex(final Map<? extends ChangeLogResource, ? extends String> includes, final IncludeMode includeMode) throws IOException {
+    final File includeIndexFile = this.getIncludeIndexFile();
+    if (includeIndexFile != null && includes != null) {
+      final boolean urls = includeMode != IncludeMode.CLASSPATH;
+      final Set<String> usedNames = new HashSet<String>();
+      final Set<String> duplicateNames = new HashSet<String>();
+      for (final Map.Entry<? extends ChangeLogResource, ? extends String> entry : includes.entrySet()) {
+        final ChangeLogResource resource = entry.getKey();
+        final String include = entry.getValue();
+        if (resource != null && include != null) {
+          final String name = urls ? resource.getName() : include;
+          if (!usedNames.add(name)) {
+            duplicateNames.add(name);
+          }
+        }
+      }
+      final IncludeIndex index = new IncludeIndex();
+      File directory = null;
+      for (final Map.Entry<? extends ChangeLogResource, ? extends String> entry : includes.entrySet()) {
+        final ChangeLogResource resource = entry.getKey();
+        final String include = entry.getValue();
+        if (resource != null && include != null) {
+          String name;
+          if (urls) {
+            name = resource.getName();
+            if (duplicateNames.contains(name) || isNested(resource)) {
+              if (directory == null) {
+                directory = this.getClasspathIncludeDirectory();
+                if (directory == null) {
+                  throw new IllegalStateException("this.getClasspathIncludeDirectory()", new NullPointerException("this.getClasspathIncludeDirectory()"));
+                }
+              }
+              name = this.disambiguate(resource, usedNames);
+              assert name != null;
+              copy(resource, new File(directory, name));
+            }
+          } else {
+            name = include;
+          }
+          index.put(include, name, resource.getContentHash());
+        }
+      }
+      if (directory != null) {
+        this.addResourceDirectory(directory);
+      }
+      final File parent = includeIndexFile.getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs()) {
+        throw new IOException("Could not create parent directory chain for " + includeIndexFile);
+      }
+      final Log log = this.getLog();
+      if (log != null && log.isDebugEnabled()) {
+        log.debug(String.format("Writing include index with %d entries to %s", index.size(), includeIndexFile));
+      }
+      final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(includeIndexFile), "UTF-8"));
+      try {
+        index.write(writer);
+      } finally {
+        try {
+          writer.close();
+        } catch (final IOException ignore) {
+          // ignore on purpose
+        }
+      }
+    }
+  }
+
+  /**
+   * For each entry in the {@linkplain #getContextChangeLogs() context
+   * changelogs map}, writes a copy of the assembled changelog that
+   * contains only those changesets that Liquibase would run given the
+   * entry's contexts.
+   *
+   * <p>The supplied {@code include}s are read directly from their
+   * {@link ChangeLogResource}s, one StAX event at a time, so they
+   * need not be resolvable from this plugin's classpath.  Pruned
+   * copies of the {@code include}d changelogs are written to a
+   * directory next to each context-specific changelog; see {@link
+   * ChangeLogPruner#prune(String, ResourceAccessor, File,
+   * Writer)}.</p>
+   *
+   * @param includes a {@link Map} of the {@link ChangeLogResource}s
+   * that were included in the generated changelog, in order, to the
+   * {@code include}s by which they were included; may be {@code
+   * null} in which case no action will be taken
+   *
+   * @param outputFile the assembled changelog; may be {@code null}
+   * in which case no action will be taken
+   *
+   * @exception IOException if a changelog could not be read or
+   * written
+   *
+   * @see #getContextChangeLogs()
+   *
+   * @see ContextChangeSetFilter
+   */
+  public void writeContextChangeLogs(final Map<? extends ChangeLogResource, ? extends String> includes, final File outputFile) throws IOException {
+    final Map<String, String> contextChangeLogs = this.getContextChangeLogs();
+    if (contextChangeLogs != null && !contextChangeLogs.isEmpty() && includes != null && outputFile != null) {
+      final Map<String, ChangeLogResource> resources = new HashMap<String, ChangeLogResource>();
+      for (final Map.Entry<? extends ChangeLogResource, ? extends String> entry : includes.entrySet()) {
+        final ChangeLogResource resource = entry.getKey();
+        final String include = entry.getValue();
+        if (resource != null && include != null) {
+          resources.put(include, resource);
+        }
+      }
+      final ResourceAccessor resourceAccessor = new IncludeResourceAccessor(outputFile, resources);
+      final String outputFileName = outputFile.getName();
+      final int dot = outputFileName.lastIndexOf('.');
+      final String baseName = dot < 0 ? outputFileName : outputFileName.substring(0, dot);
+      final String extension = dot < 0 ? "" : outputFileName.substring(dot);
+      final Log log = this.getLog();
+      for (final Map.Entry<String, String> entry : new TreeMap<String, String>(contextChangeLogs).entrySet()) {
+        final String name = entry.getKey();
+        final String contexts = entry.getValue();
+        if (name == null || name.isEmpty() || contexts == null || contexts.trim().isEmpty()) {
+          throw new IOException("Invalid contextChangeLogs entry: " + name + " = " + contexts);
+        }
+        final File contextChangeLog = new File(outputFile.getParentFile(), baseName + "-" + name + extension);
+        final ChangeLogPruner.Summary summary = new ChangeLogPruner(new ContextChangeSetFilter(contexts)).prune(outputFile.getAbsolutePath(), resourceAccessor, contextChangeLog, null);
+        assert summary != null;
+        if (log != null && log.isInfoEnabled()) {
+          log.info(String.format("Contexts %s: %s; wrote %s", contexts, summary, contextChangeLog));
+        }
+      }
+    }
+  }
+
   /**
    * Given a {@link URL} to a changelog template, fully reads that
    * template into memory and returns it, uninterpolated, as a {@link
@@ -1170,7 +3393,7 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    *
    * @see #getTemplateCharacterEncoding()
    */
-  private final String readTemplate(final URL changeLogTemplateResource) throws IOException {
+  protected final String readTemplate(final URL changeLogTemplateResource) throws IOException {
     final Log log = this.getLog();
     if (changeLogTemplateResource == null) {
       throw new IllegalArgumentException("changeLogTemplateResource", new NullPointerException("changeLogTemplateResource"));
@@ -1216,15 +3439,49 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
   }
 
   /**
-   * Creates and returns a new {@link ClassLoader} whose classpath
-   * encompasses reachable changelog resources found among the
-   * supplied {@link Artifact}s.
+   * Returns a {@link Collection} of the {@linkplain
+   * ChangeLogResource#getURL() <code>URL</code>s} of the supplied
+   * {@link ChangeLogResource}s, in order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources the {@link ChangeLogResource}s; may be {@code
+   * null} in which case an empty {@link Collection} will be returned
+   *
+   * @return a non-{@code null} {@link Collection} of {@link URL}s
+   */
+  private static final Collection<? extends URL> urlsOf(final Collection<? extends ChangeLogResource> resources) {
+    final Collection<URL> returnValue;
+    if (resources == null || resources.isEmpty()) {
+      returnValue = Collections.emptySet();
+    } else {
+      returnValue = new ArrayList<URL>(resources.size());
+      for (final ChangeLogResource resource : resources) {
+        if (resource != null) {
+          returnValue.add(resource.getURL());
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Creates and returns a new {@link URLClassLoader} whose classpath
+   * encompasses exactly the {@linkplain #toURLs(Artifact) locations}
+   * of the supplied {@link Artifact}.  Callers must {@linkplain
+   * URLClassLoader#close() close} it.
    *
    * <p>This method may return {@code null}.</p>
    *
-   * @param artifacts an {@link Iterable} of {@link Artifact}s, some
-   * of whose members may house changelog fragments; may be {@code
-   * null} in which case {@code null} will be returned
+   * <h4>Design Notes</h4>
+   *
+   * <p>The {@link ClassLoader} returned has no parent other than the
+   * bootstrap loader, so that every resource it finds can be
+   * attributed to the supplied {@link Artifact}.</p>
+   *
+   * @param artifact an {@link Artifact} that may house changelog
+   * fragments; may be {@code null} in which case {@code null} will be
+   * returned
    *
    * @return an appropriate {@link ClassLoader}, or {@code null}
    *
@@ -1233,22 +3490,16 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    *
    * @see #toURLs(Artifact)
    */
-  private final ClassLoader toClassLoader(final Iterable<? extends Artifact> artifacts) throws MalformedURLException {
+  private final URLClassLoader toClassLoader(final Artifact artifact) throws MalformedURLException {
     final Log log = this.getLog();
-    ClassLoader loader = null;
-    if (artifacts != null) {
-      final Collection<URL> urls = new ArrayList<URL>();
-      for (final Artifact artifact : artifacts) {
-        final Collection<? extends URL> classpathElements = this.toURLs(artifact);
-        if (classpathElements != null && !classpathElements.isEmpty()) {
-          urls.addAll(classpathElements);
-        }
-      }
-      if (!urls.isEmpty()) {
+    URLClassLoader loader = null;
+    if (artifact != null) {
+      final Collection<? extends URL> urls = this.toURLs(artifact);
+      if (urls != null && !urls.isEmpty()) {
         if (log != null && log.isDebugEnabled()) {
-          log.debug(String.format("Creating URLClassLoader with the following classpath: %s", urls));
+          log.debug(String.format("Creating URLClassLoader for %s with the following classpath: %s", artifact, urls));
         }
-        loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), Thread.currentThread().getContextClassLoader());
+        loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), null);
       }
     }
     return loader;
@@ -1266,9 +3517,15 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    * instead of a single {@link URL} because an {@link Artifact}
    * representing the {@linkplain #getProject() current project being
    * built} has two conceptual locations for our purposes: the test
-   * output directory and the build output directory.  All other
+   * output directory and the build output directory.  An {@link
+   * Artifact} produced by another project in the {@linkplain
+   * #getReactorProjects() current reactor} is located at that
+   * project's build output directory (or test output directory, for a
+   * test jar), so that it need not have been packaged.  All other
    * {@link Artifact}s have exactly one location, <em>viz.</em> {@link
-   * Artifact#getFile()}.</p>
+   * Artifact#getFile()}.  A resolved {@link Artifact} representing a
+   * different version of the current project, such as a previous
+   * release, is treated like any other.</p>
    *
    * @param artifact the {@link Artifact} for which {@link URL}s
    * should be returned; may be {@code null} in which case an
@@ -1292,7 +3549,7 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
    *
    * @see URI#toURL()
    */
-  private final Collection<? extends URL> toURLs(final Artifact artifact) throws MalformedURLException {
+  protected final Collection<? extends URL> toURLs(final Artifact artifact) throws MalformedURLException {
     Collection<URL> urls = null;
     if (artifact != null) {
 
@@ -1306,7 +3563,7 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
         final MavenProject project = this.getProject();
         if (project != null && groupId.equals(project.getGroupId())) {
           final String artifactId = artifact.getArtifactId();
-          if (artifactId != null && artifactId.equals(project.getArtifactId())) {
+          if (artifactId != null && artifactId.equals(project.getArtifactId()) && (artifact.getFile() == null || isVersionOf(artifact, project))) {
             final Build build = project.getBuild();
             if (build != null) {
               urls = new ArrayList<URL>();
@@ -1317,6 +3574,22 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
         }
       }
 
+      // If the artifact is produced by another project in the
+      // reactor, then look in that project's output directory, so
+      // that it need not have been packaged or installed first.
+      if (urls == null) {
+        final MavenProject reactorProject = this.getReactorProject(artifact);
+        if (reactorProject != null) {
+          final Build build = reactorProject.getBuild();
+          if (build != null) {
+            final String outputDirectory = isTestArtifact(artifact) ? build.getTestOutputDirectory() : build.getOutputDirectory();
+            if (outputDirectory != null) {
+              urls = Collections.singleton(new File(outputDirectory).toURI().toURL());
+            }
+          }
+        }
+      }
+
       // If on the other hand the artifact was just a garden-variety
       // direct or transitive dependency, then just add its file: URL
       // directly.
@@ -1337,4 +3610,136 @@ public class AssembleChangeLogMojo extends AbstractLiquibaseMojo {
     return urls;
   }
 
+  /**
+   * Returns {@code true} if the supplied {@link Artifact} has the
+   * same version as the supplied {@link MavenProject}.
+   *
+   * @param artifact the {@link Artifact}; must not be {@code null}
+   *
+   * @param project the {@link MavenProject}; must not be {@code null}
+   *
+   * @return {@code true} if the versions are the same
+   */
+  private static final boolean isVersionOf(final Artifact artifact, final MavenProject project) {
+    assert artifact != null;
+    assert project != null;
+    final String version = project.getVersion();
+    return version == null || version.equals(artifact.getBaseVersion()) || version.equals(artifact.getVersion());
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A {@link ResourceAccessor} that opens the assembled changelog
+   * from its {@link File} and each of its {@code include}s from the
+   * {@link ChangeLogResource} it was generated from.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   *
+   * @see #writeContextChangeLogs(Map, File)
+   */
+  private static final class IncludeResourceAccessor implements ResourceAccessor {
+
+    /**
+     * The assembled changelog.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final File changeLogFile;
+
+    /**
+     * The {@link ChangeLogResource}s indexed by their {@code
+     * include}s.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Map<String, ChangeLogResource> resources;
+
+    /**
+     * Creates a new {@link IncludeResourceAccessor}.
+     *
+     * @param changeLogFile the assembled changelog; must not be {@code
+     * null}
+     *
+     * @param resources the {@link ChangeLogResource}s indexed by
+     * their {@code include}s; must not be {@code null}
+     */
+    private IncludeResourceAccessor(final File changeLogFile, final Map<String, ChangeLogResource> resources) {
+      super();
+      assert changeLogFile != null;
+      assert resources != null;
+      this.changeLogFile = changeLogFile;
+      this.resources = resources;
+    }
+
+    /**
+     * Opens the named changelog, or returns {@code null} if it is
+     * neither the assembled changelog nor one of its {@code
+     * include}s.
+     *
+     * @param name the name of the changelog; may be {@code null}
+     *
+     * @return an {@link InputStream}, or {@code null}
+     *
+     * @exception IOException if the changelog could not be opened
+     */
+    @Override
+    public final InputStream getResourceAsStream(final String name) throws IOException {
+      if (name == null) {
+        return null;
+      }
+      if (name.equals(this.changeLogFile.getAbsolutePath())) {
+        return new FileInputStream(this.changeLogFile);
+      }
+      final ChangeLogResource resource = this.resources.get(name);
+      if (resource == null) {
+        return null;
+      }
+      return resource.openStream();
+    }
+
+    /**
+     * Returns an {@link Enumeration} of the {@link URL} of the named
+     * changelog, which will be empty if it is neither the assembled
+     * changelog nor one of its {@code include}s.
+     *
+     * @param name the name of the changelog; may be {@code null}
+     *
+     * @return a non-{@code null} {@link Enumeration}
+     *
+     * @exception IOException if a {@link URL} could not be formed
+     */
+    @Override
+    public final Enumeration<URL> getResources(final String name) throws IOException {
+      final Collection<URL> urls = new ArrayList<URL>();
+      if (name != null) {
+        if (name.equals(this.changeLogFile.getAbsolutePath())) {
+          urls.add(this.changeLogFile.toURI().toURL());
+        } else {
+          final ChangeLogResource resource = this.resources.get(name);
+          if (resource != null) {
+            urls.add(resource.getURL());
+          }
+        }
+      }
+      return Collections.enumeration(urls);
+    }
+
+    /**
+     * Returns the {@link ClassLoader} that loaded this class.
+     *
+     * @return a non-{@code null} {@link ClassLoader}
+     */
+    @Override
+    public final ClassLoader toClassLoader() {
+      return IncludeResourceAccessor.class.getClassLoader();
+    }
+
+  }
+
 }
@@ -0,0 +1,639 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map; // for javadoc only
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import com.edugility.liquibase.ChangeLogScanCache;
+import com.edugility.liquibase.JarChangeLogScanner;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+
+import org.apache.maven.artifact.Artifact;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+
+import org.apache.maven.project.MavenProject;
+
+import org.codehaus.plexus.logging.Logger;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.SessionData;
+
+/**
+ * An {@link AbstractMavenLifecycleParticipant} that, as soon as a
+ * project's dependencies have been resolved, starts {@linkplain
+ * JarChangeLogScanner#scan(File, Collection) scanning} its jar
+ * dependencies for changelogs in the background and {@linkplain
+ * ChangeLogScanCache#put(File, Map) stores} the results in the
+ * project's {@linkplain
+ * AssembleChangeLogMojo#getScanCacheDirectory(MavenProject) scan
+ * cache directory}, so that the work overlaps with compilation and
+ * testing and the {@link AssembleChangeLogMojo} can simply read the
+ * results when it finally runs.
+ *
+ * <p>This participant is active only when this plugin is declared
+ * with {@code <extensions>true</extensions>}.  Without it, or for any
+ * jar file whose scan has not been stored by the time the {@link
+ * AssembleChangeLogMojo} needs it, the {@link AssembleChangeLogMojo}
+ * scans as it always has.</p>
+ *
+ * <p>Build extensions are loaded by a class realm of their own,
+ * which on Maven 3.0.x is not the realm that loads this plugin's
+ * mojos, so the two do not share static state.  The scans are
+ * therefore handed off through the file system.  So that the {@link
+ * AssembleChangeLogMojo} can wait for a scan that is still running
+ * rather than repeat it, the {@link Future} of every submitted scan
+ * is also published, using only JDK types, in the {@linkplain
+ * SessionData session data} of the {@link MavenSession} under {@link
+ * AssembleChangeLogMojo#BACKGROUND_SCANS_KEY}.  Since stored scans are
+ * keyed by each jar file's path, length and last modification time,
+ * they also remain usable by later builds until the project is
+ * cleaned.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see JarChangeLogScanner
+ *
+ * @see ChangeLogScanCache
+ */
+public class BackgroundScanLifecycleParticipant extends AbstractMavenLifecycleParticipant {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The {@linkplain Plugin#getKey() key} of this plugin.
+   */
+  private static final String PLUGIN_KEY = Plugin.constructKey("com.edugility", "liquibase-maven-plugin");
+
+  /**
+   * The changelog resource name used when a project does not
+   * configure any; must match the default value of the {@link
+   * AssembleChangeLogMojo#getChangeLogResourceNames()
+   * changeLogResourceNames} parameter.
+   */
+  private static final String DEFAULT_CHANGE_LOG_RESOURCE_NAME = "META-INF/liquibase/changelog.xml";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link Logger} injected by the container.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private Logger logger;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link BackgroundScanLifecycleParticipant}.
+   */
+  public BackgroundScanLifecycleParticipant() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Installs an {@link ExecutionListener} that will start background
+   * scans as each project that uses this plugin has its dependencies
+   * resolved.
+   *
+   * @param session the {@link MavenSession} in effect; may be {@code
+   * null} in which case no action will be taken
+   *
+   * @exception MavenExecutionException if an error occurs
+   */
+  @Override
+  public void afterProjectsRead(final MavenSession session) throws MavenExecutionException {
+    if (session != null) {
+      final MavenExecutionRequest request = session.getRequest();
+      final Collection<? extends MavenProject> projects = session.getProjects();
+      if (request != null && projects != null) {
+        boolean used = false;
+        for (final MavenProject project : projects) {
+          if (project != null && getPlugin(project) != null) {
+            used = true;
+            break;
+          }
+        }
+        if (used) {
+          final ScanningExecutionListener listener = new ScanningExecutionListener(request.getExecutionListener(), this.logger);
+          final RepositorySystemSession repositorySession = session.getRepositorySession();
+          if (repositorySession != null) {
+            final SessionData data = repositorySession.getData();
+            if (data != null) {
+              data.set(AssembleChangeLogMojo.BACKGROUND_SCANS_KEY, listener.scans);
+            }
+          }
+          request.setExecutionListener(listener);
+          if (this.logger != null && this.logger.isDebugEnabled()) {
+            this.logger.debug("Background changelog scanning enabled");
+          }
+        }
+      }
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the {@link Plugin} representing this plugin in the
+   * supplied {@link MavenProject}'s build, or {@code null} if the
+   * project does not use it.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param project the {@link MavenProject} to inspect; must not be
+   * {@code null}
+   *
+   * @return a {@link Plugin}, or {@code null}
+   */
+  private static final Plugin getPlugin(final MavenProject project) {
+    assert project != null;
+    Plugin returnValue = null;
+    final Build build = project.getBuild();
+    if (build != null) {
+      returnValue = build.getPluginsAsMap().get(PLUGIN_KEY);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the changelog resource names configured for this plugin
+   * in the supplied {@link MavenProject}, across all of its
+   * executions, or the default name if none is configured.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param plugin the {@link Plugin} to inspect; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link Collection} of resource names
+   */
+  private static final Collection<String> getChangeLogResourceNames(final Plugin plugin) {
+    assert plugin != null;
+    final Set<String> names = new LinkedHashSet<String>();
+    addChangeLogResourceNames(plugin.getConfiguration(), names);
+    final List<PluginExecution> executions = plugin.getExecutions();
+    if (executions != null) {
+      for (final PluginExecution execution : executions) {
+        if (execution != null) {
+          addChangeLogResourceNames(execution.getConfiguration(), names);
+        }
+      }
+    }
+    if (names.isEmpty()) {
+      names.add(DEFAULT_CHANGE_LOG_RESOURCE_NAME);
+    }
+    return names;
+  }
+
+  /**
+   * Adds any {@code changeLogResourceNames} found in the supplied
+   * plugin configuration to the supplied {@link Set}.
+   *
+   * @param configuration the configuration, normally an {@link
+   * Xpp3Dom}; may be {@code null}
+   *
+   * @param names the {@link Set} to add to; must not be {@code null}
+   */
+  private static final void addChangeLogResourceNames(final Object configuration, final Set<String> names) {
+    assert names != null;
+    if (configuration instanceof Xpp3Dom) {
+      final Xpp3Dom changeLogResourceNames = ((Xpp3Dom)configuration).getChild("changeLogResourceNames");
+      if (changeLogResourceNames != null) {
+        final Xpp3Dom[] children = changeLogResourceNames.getChildren();
+        if (children != null) {
+          for (final Xpp3Dom child : children) {
+            if (child != null) {
+              final String value = child.getValue();
+              if (value != null && !value.trim().isEmpty() && !value.contains("${")) {
+                names.add(value.trim());
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * An {@link ExecutionListener} that starts background scans of a
+   * project's jar dependencies whenever a mojo starts, which is after
+   * Maven has resolved whatever dependencies that mojo requires, and
+   * that forwards every event to the {@link ExecutionListener} it
+   * replaced.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class ScanningExecutionListener implements ExecutionListener {
+
+    /**
+     * The {@link ExecutionListener} that was installed before this
+     * one.
+     *
+     * <p>This field may be {@code null}.</p>
+     */
+    private final ExecutionListener delegate;
+
+    /**
+     * The {@link Logger} to use.
+     *
+     * <p>This field may be {@code null}.</p>
+     */
+    private final Logger logger;
+
+    /**
+     * The {@link ExecutorService} that performs the scans.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The {@link Future}s of the scans that have been submitted,
+     * indexed by {@linkplain
+     * AssembleChangeLogMojo#getBackgroundScanKey(File, File) jar file
+     * and scan cache directory}.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final ConcurrentMap<String, Future<?>> scans;
+
+    /**
+     * Creates a new {@link ScanningExecutionListener}.
+     *
+     * @param delegate the {@link ExecutionListener} to forward events
+     * to; may be {@code null}
+     *
+     * @param logger the {@link Logger} to use; may be {@code null}
+     */
+    private ScanningExecutionListener(final ExecutionListener delegate, final Logger logger) {
+      super();
+      this.delegate = delegate;
+      this.logger = logger;
+      this.scans = new ConcurrentHashMap<String, Future<?>>();
+      this.executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+          @Override
+          public final Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "liquibase-background-scan");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    }
+
+    /**
+     * Submits background scans for every resolved jar dependency of
+     * the project that the supplied {@link ExecutionEvent} concerns,
+     * provided that it uses this plugin.
+     *
+     * @param event the {@link ExecutionEvent}; may be {@code null}
+     */
+    private final void scan(final ExecutionEvent event) {
+      if (event != null) {
+        final MavenProject project = event.getProject();
+        if (project != null) {
+          final Plugin plugin = getPlugin(project);
+          if (plugin != null) {
+            final Set<?> artifacts = project.getArtifacts();
+            if (artifacts != null && !artifacts.isEmpty()) {
+              final File directory = AssembleChangeLogMojo.getScanCacheDirectory(project);
+              if (directory != null) {
+                final ChangeLogScanCache cache = new ChangeLogScanCache(directory);
+                final Collection<String> names = getChangeLogResourceNames(plugin);
+                final Collection<?> snapshot;
+                synchronized (artifacts) {
+                  snapshot = new ArrayList<Object>(artifacts);
+                }
+                int count = 0;
+                for (final Object artifact : snapshot) {
+                  if (artifact instanceof Artifact) {
+                    final File file = ((Artifact)artifact).getFile();
+                    if (file != null && file.isFile() && file.getName().endsWith(".jar")) {
+                      final FutureTask<Void> task = new FutureTask<Void>(new ScanTask(cache, file, names, this.logger), null);
+                      if (this.scans.putIfAbsent(AssembleChangeLogMojo.getBackgroundScanKey(file, directory), task) == null) {
+                        this.executor.execute(task);
+                        count++;
+                      }
+                    }
+                  }
+                }
+                if (this.logger != null && this.logger.isDebugEnabled()) {
+                  this.logger.debug(String.format("Scanning %d jar(s) of %s for %s in the background", count, project.getId(), names));
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    @Override
+    public final void projectDiscoveryStarted(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.projectDiscoveryStarted(event);
+      }
+    }
+
+    @Override
+    public final void sessionStarted(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.sessionStarted(event);
+      }
+    }
+
+    /**
+     * Stops the background scanning threads and forwards the event.
+     *
+     * @param event the {@link ExecutionEvent}; may be {@code null}
+     */
+    @Override
+    public final void sessionEnded(final ExecutionEvent event) {
+      this.executor.shutdownNow();
+      if (this.delegate != null) {
+        this.delegate.sessionEnded(event);
+      }
+    }
+
+    @Override
+    public final void projectSkipped(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.projectSkipped(event);
+      }
+    }
+
+    @Override
+    public final void projectStarted(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.projectStarted(event);
+      }
+    }
+
+    @Override
+    public final void projectSucceeded(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.projectSucceeded(event);
+      }
+    }
+
+    @Override
+    public final void projectFailed(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.projectFailed(event);
+      }
+    }
+
+    @Override
+    public final void mojoSkipped(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.mojoSkipped(event);
+      }
+    }
+
+    /**
+     * {@linkplain #scan(ExecutionEvent) Starts background scans} and
+     * forwards the event.
+     *
+     * @param event the {@link ExecutionEvent}; may be {@code null}
+     */
+    @Override
+    public final void mojoStarted(final ExecutionEvent event) {
+      try {
+        this.scan(event);
+      } catch (final RuntimeException e) {
+        if (this.logger != null && this.logger.isDebugEnabled()) {
+          this.logger.debug("Background changelog scanning failed", e);
+        }
+      }
+      if (this.delegate != null) {
+        this.delegate.mojoStarted(event);
+      }
+    }
+
+    @Override
+    public final void mojoSucceeded(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.mojoSucceeded(event);
+      }
+    }
+
+    @Override
+    public final void mojoFailed(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.mojoFailed(event);
+      }
+    }
+
+    @Override
+    public final void forkStarted(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.forkStarted(event);
+      }
+    }
+
+    @Override
+    public final void forkSucceeded(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.forkSucceeded(event);
+      }
+    }
+
+    @Override
+    public final void forkFailed(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.forkFailed(event);
+      }
+    }
+
+    @Override
+    public final void forkedProjectStarted(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.forkedProjectStarted(event);
+      }
+    }
+
+    @Override
+    public final void forkedProjectSucceeded(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.forkedProjectSucceeded(event);
+      }
+    }
+
+    @Override
+    public final void forkedProjectFailed(final ExecutionEvent event) {
+      if (this.delegate != null) {
+        this.delegate.forkedProjectFailed(event);
+      }
+    }
+
+  }
+
+  /**
+   * A {@link Runnable} that {@linkplain JarChangeLogScanner#scan(File,
+   * Collection) scans} a jar file and {@linkplain
+   * ChangeLogScanCache#put(File, Map) stores} the result, unless a
+   * usable scan is already stored.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class ScanTask implements Runnable {
+
+    /**
+     * The {@link ChangeLogScanCache} to store the scan in.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final ChangeLogScanCache cache;
+
+    /**
+     * The jar file to scan.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final File jarFile;
+
+    /**
+     * The resource names to look for.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Collection<String> names;
+
+    /**
+     * The {@link Logger} to use.
+     *
+     * <p>This field may be {@code null}.</p>
+     */
+    private final Logger logger;
+
+    /**
+     * Creates a new {@link ScanTask}.
+     *
+     * @param cache the {@link ChangeLogScanCache} to store the scan
+     * in; must not be {@code null}
+     *
+     * @param jarFile the jar file to scan; must not be {@code null}
+     *
+     * @param names the resource names to look for; must not be {@code
+     * null}
+     *
+     * @param logger the {@link Logger} to use; may be {@code null}
+     */
+    private ScanTask(final ChangeLogScanCache cache, final File jarFile, final Collection<String> names, final Logger logger) {
+      super();
+      assert cache != null;
+      assert jarFile != null;
+      assert names != null;
+      this.cache = cache;
+      this.jarFile = jarFile;
+      this.names = names;
+      this.logger = logger;
+    }
+
+    /**
+     * Scans the jar file and stores the result, logging any failure
+     * at debug level; the {@link AssembleChangeLogMojo} will then
+     * scan the jar file itself.
+     */
+    @Override
+    public final void run() {
+      try {
+        if (this.cache.get(this.jarFile, this.names) == null) {
+          this.cache.put(this.jarFile, JarChangeLogScanner.scan(this.jarFile, this.names));
+        }
+      } catch (final IOException e) {
+        if (this.logger != null && this.logger.isDebugEnabled()) {
+          this.logger.debug("Background changelog scan of " + this.jarFile + " failed", e);
+        }
+      } catch (final RuntimeException e) {
+        if (this.logger != null && this.logger.isDebugEnabled()) {
+          this.logger.debug("Background changelog scan of " + this.jarFile + " failed", e);
+        }
+      }
+    }
+
+  }
+
+}
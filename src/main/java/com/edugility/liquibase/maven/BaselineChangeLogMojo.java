@@ -0,0 +1,378 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.List;
+
+import com.edugility.liquibase.BaselineGenerator;
+import com.edugility.liquibase.EmbeddedDatabases;
+
+import liquibase.changelog.RanChangeSet;
+
+import liquibase.exception.LiquibaseException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Applies an {@linkplain AssembleChangeLogMojo assembled changelog}
+ * to an embedded, in-process database and writes a squashed baseline
+ * changelog that recreates the resulting schema and data in one pass
+ * and marks every historical changeset as applied.
+ *
+ * <p>No external database is needed; by default a private <a
+ * href="http://www.h2database.com/">H2</a> in-memory database is
+ * used and discarded.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see BaselineGenerator
+ */
+@Mojo(name = "baselineChangeLog")
+public class BaselineChangeLogMojo extends AbstractAssembledChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The JDBC URL of the embedded database to which the changelog
+   * will be applied; it must identify an empty database and its
+   * driver must be on the plugin's classpath; <code>jdbc:h2:mem:</code>
+   * by default.  H2's compatibility modes (for example
+   * <code>jdbc:h2:mem:;MODE=PostgreSQL</code>) may help changelogs
+   * written for another database apply cleanly.
+   *
+   * @see #getUrl()
+   *
+   * @see #setUrl(String)
+   */
+  @Parameter(defaultValue = EmbeddedDatabases.DEFAULT_URL, required = true)
+  private String url;
+
+  /**
+   * The comma-separated Liquibase contexts to apply; all changesets
+   * are applied by default.
+   *
+   * @see #getContexts()
+   *
+   * @see #setContexts(String)
+   */
+  @Parameter
+  private String contexts;
+
+  /**
+   * The baseline changelog that will be written;
+   * <code>${project.build.directory}/liquibase/baseline/changelog.xml</code>
+   * by default.
+   *
+   * @see #getBaselineChangeLogFile()
+   *
+   * @see #setBaselineChangeLogFile(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/liquibase/baseline/changelog.xml", required = true)
+  private File baselineChangeLogFile;
+
+  /**
+   * The {@code author} of the generated changesets; {@code baseline}
+   * by default.
+   *
+   * @see #getChangeSetAuthor()
+   *
+   * @see #setChangeSetAuthor(String)
+   */
+  @Parameter(defaultValue = "baseline", required = true)
+  private String changeSetAuthor;
+
+  /**
+   * The comma-separated types of database objects to capture, as
+   * understood by Liquibase's {@code diffTypes} option; by default
+   * Liquibase's standard types together with {@code data}.
+   *
+   * @see #getDiffTypes()
+   *
+   * @see #setDiffTypes(String)
+   */
+  @Parameter(defaultValue = "tables,views,columns,indexes,foreignkeys,primarykeys,uniqueconstraints,sequences,data", required = true)
+  private String diffTypes;
+
+  /**
+   * The directory to which captured data will be written as CSV
+   * files referenced by {@code loadData} changes; if not set, data is
+   * captured as {@code insert} changes within the baseline itself.
+   *
+   * @see #getDataDirectory()
+   *
+   * @see #setDataDirectory(File)
+   */
+  @Parameter
+  private File dataDirectory;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link BaselineChangeLogMojo}.
+   */
+  public BaselineChangeLogMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the JDBC URL of the embedded database.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the JDBC URL, or {@code null}
+   *
+   * @see #setUrl(String)
+   */
+  public String getUrl() {
+    return this.url;
+  }
+
+  /**
+   * Sets the JDBC URL of the embedded database.
+   *
+   * @param url the JDBC URL; may be {@code null} in which case
+   * {@link EmbeddedDatabases#DEFAULT_URL} will be used
+   *
+   * @see #getUrl()
+   */
+  public void setUrl(final String url) {
+    this.url = url;
+  }
+
+  /**
+   * Returns the comma-separated Liquibase contexts to apply.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the contexts, or {@code null}
+   *
+   * @see #setContexts(String)
+   */
+  public String getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Sets the comma-separated Liquibase contexts to apply.
+   *
+   * @param contexts the contexts; may be {@code null}
+   *
+   * @see #getContexts()
+   */
+  public void setContexts(final String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Returns the baseline changelog {@link File} that will be
+   * written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setBaselineChangeLogFile(File)
+   */
+  public File getBaselineChangeLogFile() {
+    return this.baselineChangeLogFile;
+  }
+
+  /**
+   * Sets the baseline changelog {@link File} that will be written.
+   *
+   * @param file the {@link File}; if non-{@code null}, then must not
+   * be {@linkplain File#isDirectory() a directory}
+   *
+   * @exception IllegalArgumentException if {@code file} is a
+   * directory
+   *
+   * @see #getBaselineChangeLogFile()
+   */
+  public void setBaselineChangeLogFile(final File file) {
+    if (file != null && file.isDirectory()) {
+      throw new IllegalArgumentException("file", new IOException("file.isDirectory()"));
+    }
+    this.baselineChangeLogFile = file;
+  }
+
+  /**
+   * Returns the {@code author} of the generated changesets.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the author, or {@code null}
+   *
+   * @see #setChangeSetAuthor(String)
+   */
+  public String getChangeSetAuthor() {
+    return this.changeSetAuthor;
+  }
+
+  /**
+   * Sets the {@code author} of the generated changesets.
+   *
+   * @param changeSetAuthor the author; may be {@code null}
+   *
+   * @see #getChangeSetAuthor()
+   */
+  public void setChangeSetAuthor(final String changeSetAuthor) {
+    this.changeSetAuthor = changeSetAuthor;
+  }
+
+  /**
+   * Returns the comma-separated types of database objects to
+   * capture.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the types, or {@code null}
+   *
+   * @see #setDiffTypes(String)
+   */
+  public String getDiffTypes() {
+    return this.diffTypes;
+  }
+
+  /**
+   * Sets the comma-separated types of database objects to capture.
+   *
+   * @param diffTypes the types; may be {@code null} in which case
+   * Liquibase's defaults, which exclude data, will be used
+   *
+   * @see #getDiffTypes()
+   */
+  public void setDiffTypes(final String diffTypes) {
+    this.diffTypes = diffTypes;
+  }
+
+  /**
+   * Returns the directory to which captured data will be written as
+   * CSV files.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the directory, or {@code null}
+   *
+   * @see #setDataDirectory(File)
+   */
+  public File getDataDirectory() {
+    return this.dataDirectory;
+  }
+
+  /**
+   * Sets the directory to which captured data will be written as CSV
+   * files.
+   *
+   * @param directory the directory; may be {@code null}
+   *
+   * @see #getDataDirectory()
+   */
+  public void setDataDirectory(final File directory) {
+    this.dataDirectory = directory;
+  }
+
+  /**
+   * Applies the supplied assembled changelog to the {@linkplain
+   * #getUrl() embedded database} and writes the {@linkplain
+   * #getBaselineChangeLogFile() baseline changelog}.
+   *
+   * @param changeLogFile the assembled changelog; must not be {@code
+   * null}
+   *
+   * @exception MojoFailureException if the changelog could not be
+   * applied or the baseline could not be written
+   */
+  @Override
+  protected void execute(final File changeLogFile) throws MojoExecutionException, MojoFailureException {
+    if (changeLogFile == null) {
+      throw new IllegalArgumentException("changeLogFile", new NullPointerException("changeLogFile"));
+    }
+    final Log log = this.getLog();
+    final File baselineChangeLogFile = this.getBaselineChangeLogFile();
+    if (baselineChangeLogFile == null) {
+      throw new IllegalStateException("this.getBaselineChangeLogFile()", new NullPointerException("this.getBaselineChangeLogFile()"));
+    }
+    final BaselineGenerator generator = new BaselineGenerator();
+    generator.setUrl(this.getUrl());
+    generator.setContexts(this.getContexts());
+    generator.setChangeLogParameters(this.getChangeLogParameters());
+    generator.setChangeSetAuthor(this.getChangeSetAuthor());
+    generator.setDiffTypes(this.getDiffTypes());
+    final File dataDirectory = this.getDataDirectory();
+    try {
+      if (dataDirectory != null) {
+        mkdirs(dataDirectory);
+        generator.setDataDirectory(dataDirectory.getAbsolutePath());
+      }
+      mkdirs(baselineChangeLogFile.getParentFile());
+      final List<RanChangeSet> ranChangeSets;
+      final OutputStream out = new BufferedOutputStream(new FileOutputStream(baselineChangeLogFile));
+      try {
+        ranChangeSets = generator.generate(changeLogFile.getAbsolutePath(), this.getResourceAccessor(), out);
+      } finally {
+        out.close();
+      }
+      assert ranChangeSets != null;
+      if (log != null && log.isInfoEnabled()) {
+        log.info(String.format("Wrote %s, which marks %d changesets as applied", baselineChangeLogFile, ranChangeSets.size()));
+      }
+    } catch (final LiquibaseException e) {
+      throw new MojoFailureException("Failure generating baseline changelog", e);
+    } catch (final IOException e) {
+      throw new MojoFailureException("Failure generating baseline changelog", e);
+    }
+  }
+
+}
@@ -0,0 +1,391 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.resolver.ResolutionListener;
+
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+
+import org.apache.maven.wagon.events.TransferListener;
+
+/**
+ * An {@link ArtifactResolver} that can {@linkplain #prefetch(Collection,
+ * ArtifactRepository, List) resolve} a set of independent {@link
+ * Artifact}s concurrently ahead of time, and that then answers
+ * {@linkplain #resolve(ArtifactResolutionRequest) single-artifact
+ * resolution requests} for any of them immediately, delegating
+ * everything else to another {@link ArtifactResolver}.
+ *
+ * <p>This lets a caller that resolves artifacts one at a time in a
+ * particular order, such as {@link
+ * TopologicalArtifactSorter#resolve(Collection, ArtifactResolver,
+ * ArtifactRepository, List)}, keep its
+ * ordering contract while the blocking input/output happens in
+ * parallel beforehand.  A failed prefetch is simply forgotten; the
+ * caller's own request for that artifact then goes to the delegate
+ * and fails, or succeeds, exactly as it would have.</p>
+ *
+ * <p>The time taken to resolve each artifact, whether prefetched or
+ * not, is {@linkplain #getResolutionTimes() recorded}.</p>
+ *
+ * <p>The delegate must be safe for concurrent use.  Maven's own
+ * resolver is, provided that the worker threads can see the current
+ * build session; since they are created by the thread that calls
+ * {@link #prefetch(Collection, ArtifactRepository, List)}, they
+ * inherit it.  Because the delegate is an ordinary {@link
+ * ArtifactResolver}, one backed by a file-based stand-in repository
+ * may be substituted for testing.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class ConcurrentArtifactResolver implements ArtifactResolver {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link ArtifactResolver} that does the actual work.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ArtifactResolver delegate;
+
+  /**
+   * The maximum number of concurrent resolutions.
+   */
+  private final int threads;
+
+  /**
+   * The files of successfully prefetched {@link Artifact}s, indexed by
+   * {@linkplain Artifact#getId() artifact identifier}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ConcurrentMap<String, File> prefetched;
+
+  /**
+   * The time, in nanoseconds, that resolving each {@link Artifact}
+   * took, indexed by {@linkplain Artifact#getId() artifact
+   * identifier}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ConcurrentMap<String, Long> resolutionTimes;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ConcurrentArtifactResolver}.
+   *
+   * @param delegate the {@link ArtifactResolver} that will do the
+   * actual work; must not be {@code null} and must be safe for
+   * concurrent use
+   *
+   * @param threads the maximum number of concurrent resolutions;
+   * values less than {@code 1} mean the number of available
+   * processors
+   *
+   * @exception IllegalArgumentException if {@code delegate} is {@code
+   * null}
+   */
+  public ConcurrentArtifactResolver(final ArtifactResolver delegate, final int threads) {
+    super();
+    if (delegate == null) {
+      throw new IllegalArgumentException("delegate", new NullPointerException("delegate"));
+    }
+    this.delegate = delegate;
+    if (threads < 1) {
+      this.threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    } else {
+      this.threads = threads;
+    }
+    this.prefetched = new ConcurrentHashMap<String, File>();
+    this.resolutionTimes = new ConcurrentHashMap<String, Long>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Resolves those of the supplied {@link Artifact}s that are not
+   * already resolved, concurrently, on at most the configured number
+   * of threads, and returns the number that were resolved
+   * successfully.
+   *
+   * <p>Each {@link Artifact} is resolved on its own, without its
+   * transitive dependencies; the supplied {@link Artifact}s are
+   * expected to already be the complete set of interest, such as the
+   * nodes of a dependency graph.  Failures are not reported here.</p>
+   *
+   * <p>The worker threads resolve {@linkplain
+   * ArtifactUtils#copyArtifact(Artifact) copies} of the supplied
+   * {@link Artifact}s, which may be shared with the rest of the build,
+   * and record only the resulting files.  The supplied {@link
+   * Artifact}s themselves are left untouched until the caller's own
+   * thread {@linkplain #resolve(ArtifactResolutionRequest) resolves}
+   * them.</p>
+   *
+   * @param artifacts the {@link Artifact}s to resolve; may be {@code
+   * null}
+   *
+   * @param localRepository the local {@link ArtifactRepository}; may
+   * be {@code null}
+   *
+   * @param remoteRepositories the remote {@link ArtifactRepository}
+   * instances to resolve from; may be {@code null}
+   *
+   * @return the number of {@link Artifact}s resolved
+   *
+   * @exception InterruptedException if the current {@link Thread} was
+   * interrupted while waiting for resolution to finish
+   */
+  public int prefetch(final Collection<? extends Artifact> artifacts, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories) throws InterruptedException {
+    int returnValue = 0;
+    if (artifacts != null && !artifacts.isEmpty()) {
+      final Map<String, Artifact> unresolved = new LinkedHashMap<String, Artifact>();
+      for (final Artifact artifact : artifacts) {
+        if (artifact != null && (artifact.getFile() == null || !artifact.isResolved()) && !this.prefetched.containsKey(artifact.getId())) {
+          unresolved.put(artifact.getId(), artifact);
+        }
+      }
+      if (!unresolved.isEmpty()) {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, unresolved.size()));
+        try {
+          for (final Artifact original : unresolved.values()) {
+            // Artifacts are not thread-safe and the originals may be
+            // read elsewhere, so each worker mutates only a private
+            // copy.
+            final Artifact artifact = ArtifactUtils.copyArtifact(original);
+            executor.execute(new Runnable() {
+                @Override
+                public final void run() {
+                  final ArtifactResolutionRequest request = new ArtifactResolutionRequest();
+                  request.setArtifact(artifact);
+                  request.setResolveRoot(true);
+                  request.setResolveTransitively(false);
+                  request.setLocalRepository(localRepository);
+                  request.setRemoteRepositories(remoteRepositories);
+                  try {
+                    final ArtifactResolutionResult result = timedResolve(request);
+                    if (result != null && result.isSuccess() && artifact.getFile() != null) {
+                      prefetched.put(artifact.getId(), artifact.getFile());
+                    }
+                  } catch (final RuntimeException forgetIt) {
+                    // The caller's own request for this artifact will
+                    // report the problem.
+                  }
+                }
+              });
+          }
+        } finally {
+          executor.shutdown();
+        }
+        while (!executor.awaitTermination(1L, TimeUnit.SECONDS)) {
+          // keep waiting
+        }
+        for (final String id : unresolved.keySet()) {
+          if (this.prefetched.containsKey(id)) {
+            returnValue++;
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the time, in nanoseconds, that resolving each {@link
+   * Artifact} took, indexed by {@linkplain Artifact#getId() artifact
+   * identifier} and ordered from slowest to fastest.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return an immutable, non-{@code null} {@link Map}
+   */
+  public Map<String, Long> getResolutionTimes() {
+    final List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(this.resolutionTimes.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public final int compare(final Map.Entry<String, Long> a, final Map.Entry<String, Long> b) {
+          return b.getValue().compareTo(a.getValue());
+        }
+      });
+    final Map<String, Long> returnValue = new LinkedHashMap<String, Long>();
+    for (final Map.Entry<String, Long> entry : entries) {
+      returnValue.put(entry.getKey(), entry.getValue());
+    }
+    return Collections.unmodifiableMap(returnValue);
+  }
+
+  /**
+   * Resolves the {@link Artifact} described by the supplied {@link
+   * ArtifactResolutionRequest}, answering immediately if it was
+   * {@linkplain #prefetch(Collection, ArtifactRepository, List)
+   * prefetched} and the request is not transitive, and otherwise
+   * delegating it.
+   *
+   * @param request the {@link ArtifactResolutionRequest}; may be
+   * {@code null}
+   *
+   * @return an {@link ArtifactResolutionResult}
+   */
+  @Override
+  public ArtifactResolutionResult resolve(final ArtifactResolutionRequest request) {
+    ArtifactResolutionResult returnValue = null;
+    if (request != null && !request.isResolveTransitively()) {
+      final Artifact artifact = request.getArtifact();
+      if (artifact != null) {
+        final File file = this.prefetched.get(artifact.getId());
+        if (file != null) {
+          artifact.setFile(file);
+          artifact.setResolved(true);
+          returnValue = new ArtifactResolutionResult();
+          returnValue.setOriginatingArtifact(artifact);
+          returnValue.addArtifact(artifact);
+        }
+      }
+    }
+    if (returnValue == null) {
+      returnValue = this.timedResolve(request);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Delegates the supplied {@link ArtifactResolutionRequest} and
+   * records how long it took.
+   *
+   * @param request the {@link ArtifactResolutionRequest}; may be
+   * {@code null}
+   *
+   * @return the delegate's {@link ArtifactResolutionResult}
+   */
+  private final ArtifactResolutionResult timedResolve(final ArtifactResolutionRequest request) {
+    final long start = System.nanoTime();
+    try {
+      return this.delegate.resolve(request);
+    } finally {
+      if (request != null && request.getArtifact() != null) {
+        this.resolutionTimes.put(request.getArtifact().getId(), Long.valueOf(System.nanoTime() - start));
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories, final org.apache.maven.artifact.metadata.ArtifactMetadataSource source, final ArtifactFilter filter) throws ArtifactResolutionException, ArtifactNotFoundException {
+    return this.delegate.resolveTransitively(artifacts, originatingArtifact, localRepository, remoteRepositories, source, filter);
+  }
+
+  @Override
+  @SuppressWarnings({"deprecation", "rawtypes"})
+  public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final Map managedVersions, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories, final org.apache.maven.artifact.metadata.ArtifactMetadataSource source) throws ArtifactResolutionException, ArtifactNotFoundException {
+    return this.delegate.resolveTransitively(artifacts, originatingArtifact, managedVersions, localRepository, remoteRepositories, source);
+  }
+
+  @Override
+  @SuppressWarnings({"deprecation", "rawtypes"})
+  public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final Map managedVersions, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories, final org.apache.maven.artifact.metadata.ArtifactMetadataSource source, final ArtifactFilter filter) throws ArtifactResolutionException, ArtifactNotFoundException {
+    return this.delegate.resolveTransitively(artifacts, originatingArtifact, managedVersions, localRepository, remoteRepositories, source, filter);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository, final org.apache.maven.artifact.metadata.ArtifactMetadataSource source) throws ArtifactResolutionException, ArtifactNotFoundException {
+    return this.delegate.resolveTransitively(artifacts, originatingArtifact, remoteRepositories, localRepository, source);
+  }
+
+  @Override
+  @SuppressWarnings({"deprecation", "rawtypes"})
+  public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final Map managedVersions, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories, final org.apache.maven.artifact.metadata.ArtifactMetadataSource source, final ArtifactFilter filter, final List<ResolutionListener> listeners) throws ArtifactResolutionException, ArtifactNotFoundException {
+    return this.delegate.resolveTransitively(artifacts, originatingArtifact, managedVersions, localRepository, remoteRepositories, source, filter, listeners);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository, final org.apache.maven.artifact.metadata.ArtifactMetadataSource source, final List<ResolutionListener> listeners) throws ArtifactResolutionException, ArtifactNotFoundException {
+    return this.delegate.resolveTransitively(artifacts, originatingArtifact, remoteRepositories, localRepository, source, listeners);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void resolve(final Artifact artifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository) throws ArtifactResolutionException, ArtifactNotFoundException {
+    this.delegate.resolve(artifact, remoteRepositories, localRepository);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void resolve(final Artifact artifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository, final TransferListener transferListener) throws ArtifactResolutionException, ArtifactNotFoundException {
+    this.delegate.resolve(artifact, remoteRepositories, localRepository, transferListener);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void resolveAlways(final Artifact artifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository) throws ArtifactResolutionException, ArtifactNotFoundException {
+    this.delegate.resolveAlways(artifact, remoteRepositories, localRepository);
+  }
+
+}
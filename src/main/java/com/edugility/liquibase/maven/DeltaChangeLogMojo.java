@@ -0,0 +1,497 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.URL;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.edugility.liquibase.ChangeLogDiff;
+import com.edugility.liquibase.ChangeLogResource;
+
+import org.apache.maven.artifact.Artifact;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+
+import org.apache.maven.execution.MavenSession;
+
+import org.apache.maven.model.building.ModelBuildingRequest;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.project.ProjectBuildingRequest;
+
+import org.apache.maven.repository.RepositorySystem;
+
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+
+/**
+ * Compares the changelog fragments contributed to the current build
+ * with those contributed to a previous version of the current project,
+ * by {@linkplain ChangeLogResource#getContentHash() content hash}, and
+ * assembles a delta changelog that includes only the fragments that
+ * are new or modified, together with a machine-readable {@linkplain
+ * ChangeLogDiff diff}.
+ *
+ * <p>The previous version's project and dependencies are resolved
+ * from the local repository only; no remote repository is consulted.
+ * All {@link AssembleChangeLogMojo assembleChangeLog} parameters that
+ * govern discovery and assembly, such as the resource names, artifact
+ * filter, template and include mode, apply to both versions.</p>
+ *
+ * <p>Fragments are paired across versions by
+ * <code><i>groupId</i>:<i>artifactId</i>:<i>resourceName</i></code>,
+ * so a fragment is considered unchanged even if the version of the
+ * artifact containing it changed, as long as its contents did
+ * not.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogDiff
+ */
+@Mojo(name = "deltaChangeLog", requiresDependencyResolution = ResolutionScope.TEST)
+public class DeltaChangeLogMojo extends AssembleChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The previous version of the current project, such as the last
+   * release, against which the current build will be compared.  It
+   * must be present in the local repository.
+   *
+   * @see #getPreviousVersion()
+   *
+   * @see #setPreviousVersion(String)
+   */
+  @Parameter(required = true)
+  private String previousVersion;
+
+  /**
+   * The delta changelog that will be written;
+   * <code>${project.build.directory}/generated-sources/liquibase/delta-changelog.xml</code>
+   * by default.
+   *
+   * @see #getDeltaChangeLogFile()
+   *
+   * @see #setDeltaChangeLogFile(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/generated-sources/liquibase/delta-changelog.xml", required = true)
+  private File deltaChangeLogFile;
+
+  /**
+   * The {@linkplain ChangeLogDiff diff} that will be written;
+   * <code>${project.build.directory}/liquibase/changelog-diff.tsv</code>
+   * by default.
+   *
+   * @see #getDiffFile()
+   *
+   * @see #setDiffFile(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/liquibase/changelog-diff.tsv", required = true)
+  private File diffFile;
+
+  /**
+   * The current {@link MavenSession}.
+   */
+  @Parameter(defaultValue = "${session}", readonly = true, required = true)
+  private MavenSession session;
+
+  /**
+   * The {@link ProjectBuilder} used to build the previous version of
+   * the current project.
+   */
+  @Component
+  private ProjectBuilder projectBuilder;
+
+  /**
+   * The {@link RepositorySystem} used to create {@link Artifact}s.
+   */
+  @Component
+  private RepositorySystem repositorySystem;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link DeltaChangeLogMojo}.
+   */
+  public DeltaChangeLogMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the previous version of the current project against which
+   * the current build will be compared.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a version, or {@code null}
+   *
+   * @see #setPreviousVersion(String)
+   */
+  public String getPreviousVersion() {
+    return this.previousVersion;
+  }
+
+  /**
+   * Sets the previous version of the current project against which
+   * the current build will be compared.
+   *
+   * @param previousVersion the version; may be {@code null}
+   *
+   * @see #getPreviousVersion()
+   */
+  public void setPreviousVersion(final String previousVersion) {
+    this.previousVersion = previousVersion;
+  }
+
+  /**
+   * Returns the delta changelog {@link File} that will be written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setDeltaChangeLogFile(File)
+   */
+  public File getDeltaChangeLogFile() {
+    return this.deltaChangeLogFile;
+  }
+
+  /**
+   * Sets the delta changelog {@link File} that will be written.
+   *
+   * @param file the {@link File}; if non-{@code null}, then must not
+   * be {@linkplain File#isDirectory() a directory}
+   *
+   * @exception IllegalArgumentException if {@code file} is a
+   * directory
+   *
+   * @see #getDeltaChangeLogFile()
+   */
+  public void setDeltaChangeLogFile(final File file) {
+    if (file != null && file.isDirectory()) {
+      throw new IllegalArgumentException("file", new IOException("file.isDirectory()"));
+    }
+    this.deltaChangeLogFile = file;
+  }
+
+  /**
+   * Returns the {@linkplain ChangeLogDiff diff} {@link File} that
+   * will be written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setDiffFile(File)
+   */
+  public File getDiffFile() {
+    return this.diffFile;
+  }
+
+  /**
+   * Sets the {@linkplain ChangeLogDiff diff} {@link File} that will
+   * be written.
+   *
+   * @param file the {@link File}; if non-{@code null}, then must not
+   * be {@linkplain File#isDirectory() a directory}
+   *
+   * @exception IllegalArgumentException if {@code file} is a
+   * directory
+   *
+   * @see #getDiffFile()
+   */
+  public void setDiffFile(final File file) {
+    if (file != null && file.isDirectory()) {
+      throw new IllegalArgumentException("file", new IOException("file.isDirectory()"));
+    }
+    this.diffFile = file;
+  }
+
+  /**
+   * Executes this {@link DeltaChangeLogMojo} by calling the {@link
+   * #assembleDeltaChangeLog()} method unless {@linkplain #getSkip()
+   * skipped}.
+   *
+   * @exception MojoFailureException if the delta changelog could not
+   * be assembled
+   *
+   * @see #assembleDeltaChangeLog()
+   */
+  @Override
+  public void execute() throws MojoFailureException {
+    final Log log = this.getLog();
+    if (this.getSkip()) {
+      if (log != null && log.isDebugEnabled()) {
+        log.debug("Skipping execution by request");
+      }
+    } else {
+      try {
+        this.assembleDeltaChangeLog();
+      } catch (final RuntimeException e) {
+        throw e;
+      } catch (final IOException e) {
+        throw new MojoFailureException("Failure assembling delta changelog", e);
+      } catch (final ArtifactResolutionException e) {
+        throw new MojoFailureException("Failure assembling delta changelog", e);
+      } catch (final DependencyGraphBuilderException e) {
+        throw new MojoFailureException("Failure assembling delta changelog", e);
+      } catch (final ProjectBuildingException e) {
+        throw new MojoFailureException("Failure assembling delta changelog", e);
+      }
+    }
+  }
+
+  /**
+   * Discovers the changelog fragments contributed to the current
+   * build and to the {@linkplain #getPreviousVersion() previous
+   * version}, {@linkplain ChangeLogDiff#compute(Map, Map) compares}
+   * them, and writes the {@linkplain #getDeltaChangeLogFile() delta
+   * changelog} and the {@linkplain #getDiffFile() diff}.
+   *
+   * @exception ArtifactResolutionException if an {@link Artifact}
+   * could not be resolved
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution
+   *
+   * @exception ProjectBuildingException if the previous version of
+   * the current project could not be built
+   *
+   * @exception IOException if there was a problem with input or
+   * output
+   */
+  public final void assembleDeltaChangeLog() throws ArtifactResolutionException, DependencyGraphBuilderException, ProjectBuildingException, IOException {
+    final Log log = this.getLog();
+    final File deltaChangeLogFile = this.getDeltaChangeLogFile();
+    if (deltaChangeLogFile == null) {
+      throw new IllegalStateException("this.getDeltaChangeLogFile()", new NullPointerException("this.getDeltaChangeLogFile()"));
+    }
+    final File diffFile = this.getDiffFile();
+    if (diffFile == null) {
+      throw new IllegalStateException("this.getDiffFile()", new NullPointerException("this.getDiffFile()"));
+    }
+    final URL changeLogTemplateResource = this.getChangeLogTemplateResource();
+    if (changeLogTemplateResource == null) {
+      throw new IOException("No changelog template could be found");
+    }
+    final String templateContents = this.readTemplate(changeLogTemplateResource);
+
+    Collection<? extends ChangeLogResource> current = this.getChangeLogResourceDescriptors();
+    final MavenProject previousProject = this.buildPreviousProject();
+    assert previousProject != null;
+    Collection<? extends ChangeLogResource> previous = this.getChangeLogResourceDescriptors(this.resolvePreviousArtifacts(previousProject));
+    if (this.isDeduplicate()) {
+      current = this.deduplicate(current);
+      previous = this.deduplicate(previous);
+    }
+
+    final ChangeLogDiff diff = ChangeLogDiff.compute(keyed(previous), keyed(current));
+    if (log != null && log.isInfoEnabled()) {
+      log.info(String.format("Changelogs since %s: %d added, %d modified, %d removed, %d unchanged",
+                             previousProject.getVersion(),
+                             diff.count(ChangeLogDiff.Status.ADDED),
+                             diff.count(ChangeLogDiff.Status.MODIFIED),
+                             diff.count(ChangeLogDiff.Status.REMOVED),
+                             diff.count(ChangeLogDiff.Status.UNCHANGED)));
+    }
+
+    final Map<ChangeLogResource, String> includes = this.toIncludes(diff.getChangedResources());
+    assert includes != null;
+    this.write(templateContents, this.toDescriptors(includes), deltaChangeLogFile);
+
+    final File parent = diffFile.getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Could not create parent directory chain for " + diffFile);
+    }
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(diffFile), "UTF-8"));
+    try {
+      diff.write(writer);
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Builds and returns the {@linkplain #getPreviousVersion() previous
+   * version} of the current project from its POM in the local
+   * repository.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link MavenProject} whose remote
+   * repositories have been removed
+   *
+   * @exception ProjectBuildingException if the project could not be
+   * built
+   */
+  protected MavenProject buildPreviousProject() throws ProjectBuildingException {
+    final MavenProject project = this.getProject();
+    if (project == null) {
+      throw new IllegalStateException("this.getProject()", new NullPointerException("this.getProject()"));
+    }
+    final String previousVersion = this.getPreviousVersion();
+    if (previousVersion == null) {
+      throw new IllegalStateException("this.getPreviousVersion()", new NullPointerException("this.getPreviousVersion()"));
+    }
+    if (this.session == null) {
+      throw new IllegalStateException("this.session", new NullPointerException("this.session"));
+    }
+    final List<ArtifactRepository> noRepositories = Collections.emptyList();
+    final ProjectBuildingRequest request = new DefaultProjectBuildingRequest(this.session.getProjectBuildingRequest());
+    request.setLocalRepository(this.getLocalRepository());
+    request.setRemoteRepositories(noRepositories);
+    request.setPluginArtifactRepositories(noRepositories);
+    request.setProcessPlugins(false);
+    request.setResolveDependencies(false);
+    request.setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
+    request.setProject(null);
+    final Artifact pom = this.repositorySystem.createProjectArtifact(project.getGroupId(), project.getArtifactId(), previousVersion);
+    final MavenProject returnValue = this.projectBuilder.build(pom, request).getProject();
+    assert returnValue != null;
+    returnValue.setRemoteArtifactRepositories(noRepositories);
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@link Artifact}s contributing to the supplied
+   * previous version of the current project, in topological order,
+   * resolved from the local repository.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param previousProject the previous version of the current
+   * project; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Collection} of {@link
+   * Artifact}s
+   *
+   * @exception ArtifactResolutionException if an {@link Artifact}
+   * could not be resolved
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution
+   */
+  private final Collection<? extends Artifact> resolvePreviousArtifacts(final MavenProject previousProject) throws ArtifactResolutionException, DependencyGraphBuilderException {
+    assert previousProject != null;
+    final List<ArtifactRepository> noRepositories = Collections.emptyList();
+    final TopologicalArtifactSorter sorter = new TopologicalArtifactSorter();
+    final Collection<? extends Artifact> artifacts = sorter.getArtifactsInTopologicalOrder(previousProject,
+                                                                                           this.getDependencyGraphBuilder(),
+                                                                                           this.getArtifactFilter(),
+                                                                                           this.getArtifactResolver(),
+                                                                                           this.getLocalRepository());
+    if (artifacts == null) {
+      return Collections.emptySet();
+    }
+    // The previous project's own artifact will not have been resolved
+    // as a dependency.
+    sorter.resolve(artifacts, this.getArtifactResolver(), this.getLocalRepository(), noRepositories);
+    return artifacts;
+  }
+
+  /**
+   * Returns a {@link Map} of the supplied {@link ChangeLogResource}s
+   * indexed by a key that identifies each independently of the
+   * version of the {@link Artifact} that contains it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources the {@link ChangeLogResource}s; may be {@code
+   * null}
+   *
+   * @return a non-{@code null}, ordered {@link Map}
+   */
+  private static final Map<String, ChangeLogResource> keyed(final Collection<? extends ChangeLogResource> resources) {
+    final Map<String, ChangeLogResource> returnValue = new LinkedHashMap<String, ChangeLogResource>();
+    if (resources != null) {
+      for (final ChangeLogResource resource : resources) {
+        if (resource != null) {
+          final StringBuilder sb = new StringBuilder();
+          if (resource instanceof ArtifactChangeLogResource) {
+            final Artifact artifact = ((ArtifactChangeLogResource)resource).getArtifact();
+            sb.append(artifact.getGroupId()).append(':').append(artifact.getArtifactId()).append(':');
+            final String classifier = artifact.getClassifier();
+            if (classifier != null && !classifier.isEmpty()) {
+              sb.append(classifier).append(':');
+            }
+          }
+          sb.append(resource.getName());
+          final String base = sb.toString();
+          String key = base;
+          for (int i = 2; returnValue.containsKey(key); i++) {
+            key = base + "#" + i;
+          }
+          returnValue.put(key, resource);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+}
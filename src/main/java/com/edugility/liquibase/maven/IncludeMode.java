@@ -0,0 +1,63 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+/**
+ * The ways in which an {@linkplain AssembleChangeLogMojo assembled
+ * changelog} may refer to the changelog fragments it {@code
+ * include}s.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see AssembleChangeLogMojo#getIncludeMode()
+ */
+public enum IncludeMode {
+
+  /**
+   * Each fragment is {@code include}d by its absolute {@code file:}
+   * or {@code jar:} {@link java.net.URL}.  Such {@link java.net.URL}s
+   * are only valid on the machine that assembled the changelog.
+   * Fragments found in {@linkplain
+   * AssembleChangeLogMojo#getNestedArchiveNames() nested jar files}
+   * are {@code include}d by {@code jar:} {@link java.net.URL}s with
+   * more than one {@code !/} separator, which only {@link
+   * com.edugility.liquibase.URLResourceAccessor} can open.
+   */
+  URL,
+
+  /**
+   * Each fragment is {@code include}d by its classpath-relative
+   * resource name, so that it can be found at runtime by a {@link
+   * ClassLoader}.  Fragments whose resource names are not unique are
+   * copied to artifact-specific resource names so that each may be
+   * found unambiguously.
+   */
+  CLASSPATH
+
+}
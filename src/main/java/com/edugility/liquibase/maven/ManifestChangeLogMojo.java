@@ -0,0 +1,280 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.edugility.liquibase.ChangeLogManifest;
+import com.edugility.liquibase.ChangeLogManifestWriter;
+import com.edugility.liquibase.ChangeLogManifestEntry;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.exception.LiquibaseException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Parses an {@linkplain AssembleChangeLogMojo assembled changelog}
+ * with Liquibase at build time and writes a {@linkplain
+ * ChangeLogManifest changelog manifest}: a compact binary record of
+ * the identity of every changeset it contains, together with the
+ * checksum Liquibase computed for it, that can be read at runtime
+ * without any XML parsing.
+ *
+ * <p>The manifest does not contain the changes themselves, and so
+ * cannot stand in for the changelog when changesets are to be
+ * applied.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogManifest
+ *
+ * @see ChangeLogManifestWriter
+ */
+@Mojo(name = "manifestChangeLog")
+public class ManifestChangeLogMojo extends AbstractAssembledChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The changelog manifest that will be written;
+   * <code>${project.build.directory}/generated-resources/liquibase/changelog-manifest.bin</code>
+   * by default.
+   *
+   * @see #getManifestFile()
+   *
+   * @see #setManifestFile(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/generated-resources/liquibase/changelog-manifest.bin", required = true)
+  private File manifestFile;
+
+  /**
+   * Whether the changelog manifest should be read back after it is
+   * written and each parsed changeset matched, by identity and
+   * checksum, with its manifest entry; {@code true} by default.
+   *
+   * @see #getVerify()
+   *
+   * @see #setVerify(boolean)
+   */
+  @Parameter(defaultValue = "true")
+  private boolean verify;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ManifestChangeLogMojo}.
+   */
+  public ManifestChangeLogMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the changelog manifest {@link File} that will be
+   * written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setManifestFile(File)
+   */
+  public File getManifestFile() {
+    return this.manifestFile;
+  }
+
+  /**
+   * Sets the changelog manifest {@link File} that will be written.
+   *
+   * @param file the {@link File}; if non-{@code null}, then must not
+   * be {@linkplain File#isDirectory() a directory}
+   *
+   * @exception IllegalArgumentException if {@code file} is a
+   * directory
+   *
+   * @see #getManifestFile()
+   */
+  public void setManifestFile(final File file) {
+    if (file != null && file.isDirectory()) {
+      throw new IllegalArgumentException("file", new IOException("file.isDirectory()"));
+    }
+    this.manifestFile = file;
+  }
+
+  /**
+   * Returns {@code true} if the changelog manifest will be read back
+   * and verified after it is written.
+   *
+   * @return {@code true} if the changelog manifest will be verified
+   *
+   * @see #setVerify(boolean)
+   */
+  public boolean getVerify() {
+    return this.verify;
+  }
+
+  /**
+   * Sets whether the changelog manifest will be read back and
+   * verified after it is written.
+   *
+   * @param verify whether the changelog manifest will be verified
+   *
+   * @see #getVerify()
+   */
+  public void setVerify(final boolean verify) {
+    this.verify = verify;
+  }
+
+  /**
+   * Parses the supplied assembled changelog and writes its
+   * changesets to the {@linkplain #getManifestFile()
+   * changelog manifest file}, {@linkplain #verify(List,
+   * ChangeLogManifest) verifying} the result if so configured.
+   *
+   * @param changeLogFile the assembled changelog; must not be {@code
+   * null}
+   *
+   * @exception MojoFailureException if the changelog could not be
+   * parsed, written or verified
+   */
+  @Override
+  protected void execute(final File changeLogFile) throws MojoExecutionException, MojoFailureException {
+    if (changeLogFile == null) {
+      throw new IllegalArgumentException("changeLogFile", new NullPointerException("changeLogFile"));
+    }
+    final Log log = this.getLog();
+    final File manifestFile = this.getManifestFile();
+    if (manifestFile == null) {
+      throw new IllegalStateException("this.getManifestFile()", new NullPointerException("this.getManifestFile()"));
+    }
+    try {
+      final DatabaseChangeLog changeLog = this.parseChangeLog(changeLogFile.getAbsolutePath());
+      assert changeLog != null;
+      final List<ChangeSet> changeSets = changeLog.getChangeSets();
+      final File parent = manifestFile.getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs()) {
+        throw new IOException("Could not create parent directory chain for " + manifestFile);
+      }
+      if (log != null && log.isDebugEnabled()) {
+        log.debug(String.format("Writing %d changesets to %s", changeSets == null ? 0 : changeSets.size(), manifestFile));
+      }
+      new ChangeLogManifestWriter().write(changeSets, manifestFile);
+      if (this.getVerify()) {
+        this.verify(changeSets, new ChangeLogManifest(manifestFile));
+      }
+    } catch (final LiquibaseException e) {
+      throw new MojoFailureException("Failure writing changelog manifest", e);
+    } catch (final IOException e) {
+      throw new MojoFailureException("Failure writing changelog manifest", e);
+    }
+  }
+
+  /**
+   * Verifies that the supplied {@link ChangeLogManifest} describes
+   * exactly the supplied non-{@code null} {@link ChangeSet}s,
+   * including their checksums.
+   *
+   * <p>{@link ChangeSet}s are matched to {@linkplain
+   * ChangeLogManifestEntry manifest entries} by their {@linkplain
+   * ChangeSet#toString(boolean) identity}, not by position.</p>
+   *
+   * @param changeSets the parsed {@link ChangeSet}s; may be {@code
+   * null}
+   *
+   * @param manifest the {@link ChangeLogManifest} to verify; must not
+   * be {@code null}
+   *
+   * @exception MojoFailureException if verification fails
+   *
+   * @see ChangeLogManifestEntry#describes(ChangeSet)
+   */
+  protected void verify(final List<? extends ChangeSet> changeSets, final ChangeLogManifest manifest) throws MojoFailureException {
+    if (manifest == null) {
+      throw new IllegalArgumentException("manifest", new NullPointerException("manifest"));
+    }
+    final Map<String, ChangeLogManifestEntry> entries = new HashMap<String, ChangeLogManifestEntry>();
+    for (final ChangeLogManifestEntry entry : manifest) {
+      assert entry != null;
+      if (entries.put(entry.toString(), entry) != null) {
+        throw new MojoFailureException(String.format("The changelog manifest contains %s more than once", entry));
+      }
+    }
+    int size = 0;
+    if (changeSets != null) {
+      for (final ChangeSet changeSet : changeSets) {
+        if (changeSet != null) {
+          final ChangeLogManifestEntry entry = entries.remove(changeSet.toString(false));
+          if (entry == null) {
+            throw new MojoFailureException(String.format("The changelog manifest does not contain the parsed changeset %s", changeSet.toString(false)));
+          }
+          if (!entry.describes(changeSet)) {
+            throw new MojoFailureException(String.format("The manifest entry %s (checksum %s) does not match the parsed changeset %s (checksum %s)",
+                                                         entry, entry.getCheckSum(), changeSet.toString(false), changeSet.generateCheckSum()));
+          }
+          size++;
+        }
+      }
+    }
+    if (!entries.isEmpty()) {
+      throw new MojoFailureException(String.format("The changelog manifest contains entries for changesets that were not parsed: %s", entries.keySet()));
+    }
+    final Log log = this.getLog();
+    if (log != null && log.isDebugEnabled()) {
+      log.debug(String.format("Verified %d manifest entries", size));
+    }
+  }
+
+}
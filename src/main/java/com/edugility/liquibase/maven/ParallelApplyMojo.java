@@ -0,0 +1,164 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.edugility.liquibase.ParallelChangeSetApplier;
+
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.exception.LiquibaseException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * {@linkplain PlanChangeLogMojo Plans} the {@linkplain
+ * AssembleChangeLogMojo assembled changelog} and then {@linkplain
+ * ParallelChangeSetApplier applies} it twice to fresh in-memory <a
+ * href="http://www.h2database.com/">H2</a> databases, once with a
+ * single thread and once following the plan with several, and
+ * reports the speedup.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ParallelChangeSetApplier
+ */
+@Mojo(name = "parallelApply")
+public class ParallelApplyMojo extends PlanChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The number of changesets to apply in parallel; {@code 0},
+   * meaning one per available processor, by default.
+   *
+   * @see #getThreads()
+   *
+   * @see #setThreads(int)
+   */
+  @Parameter(defaultValue = "0")
+  private int threads;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ParallelApplyMojo}.
+   */
+  public ParallelApplyMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the number of changesets to apply in parallel.
+   *
+   * @return the number of threads; {@code 0} or less means one per
+   * available processor
+   *
+   * @see #setThreads(int)
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Sets the number of changesets to apply in parallel.
+   *
+   * @param threads the number of threads; {@code 0} or less means one
+   * per available processor
+   *
+   * @see #getThreads()
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * Writes the {@linkplain #getPlanFile() plan} for the supplied
+   * assembled changelog, applies the changelog serially and in
+   * parallel, and logs both times.
+   *
+   * @param changeLogFile the assembled changelog; must not be {@code
+   * null}
+   *
+   * @exception MojoFailureException if the changelog could not be
+   * parsed, planned or applied
+   */
+  @Override
+  protected void execute(final File changeLogFile) throws MojoExecutionException, MojoFailureException {
+    final Log log = this.getLog();
+    try {
+      final String changeLog = changeLogFile.getAbsolutePath();
+      this.plan(this.parseChangeLog(changeLog));
+      final ParallelChangeSetApplier applier = new ParallelChangeSetApplier();
+      applier.setThreads(1);
+      final ParallelChangeSetApplier.Result serial = applier.apply(this.parseChangeLog(changeLog), this.getContexts());
+      applier.setThreads(this.getThreads());
+      final ParallelChangeSetApplier.Result parallel = applier.apply(this.parseChangeLog(changeLog), this.getContexts());
+      if (log != null && log.isInfoEnabled()) {
+        log.info(String.format("Applied %d changesets serially in %d ms and in %d groups on %d threads in %d ms (speedup %.2fx)",
+                               serial.getGraph().getNodes().size(),
+                               serial.getNanos() / 1000000L,
+                               parallel.getGraph().getGroups().size(),
+                               parallel.getThreads(),
+                               parallel.getNanos() / 1000000L,
+                               parallel.getNanos() == 0L ? 1.0 : (double)serial.getNanos() / (double)parallel.getNanos()));
+      }
+    } catch (final LiquibaseException e) {
+      throw new MojoFailureException("Failure applying changelog in parallel", e);
+    } catch (final IOException e) {
+      throw new MojoFailureException("Failure applying changelog in parallel", e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoFailureException("Interrupted while applying changelog in parallel", e);
+    }
+  }
+
+}
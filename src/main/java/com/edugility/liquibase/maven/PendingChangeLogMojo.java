@@ -0,0 +1,364 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.edugility.liquibase.ChangeLogPruner;
+import com.edugility.liquibase.RanChangeSetIndex;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Computes, offline, which changesets of an {@linkplain
+ * AssembleChangeLogMojo assembled changelog} have not yet been
+ * applied to a database, given a CSV export of that database's {@code
+ * DATABASECHANGELOG} table, and writes a pruned changelog containing
+ * only those changesets together with a report.
+ *
+ * <p>The export is loaded into a compact {@link RanChangeSetIndex}
+ * and the changelogs are processed as streams, so exports with
+ * millions of rows and changelogs of any size are handled in bounded
+ * memory.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogPruner
+ *
+ * @see RanChangeSetIndex
+ */
+@Mojo(name = "pendingChangeLog")
+public class PendingChangeLogMojo extends AbstractAssembledChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * A CSV export of the {@code DATABASECHANGELOG} table, whose first
+   * row names its columns.
+   *
+   * @see #getDatabaseChangeLogExport()
+   *
+   * @see #setDatabaseChangeLogExport(File)
+   */
+  @Parameter(required = true)
+  private File databaseChangeLogExport;
+
+  /**
+   * The field separator of the {@linkplain
+   * #getDatabaseChangeLogExport() export}; {@code ,} by default.
+   *
+   * @see #getExportSeparator()
+   *
+   * @see #setExportSeparator(String)
+   */
+  @Parameter(defaultValue = ",", required = true)
+  private String exportSeparator;
+
+  /**
+   * The character encoding of the {@linkplain
+   * #getDatabaseChangeLogExport() export}; {@code UTF-8} by default.
+   *
+   * @see #getExportCharacterEncoding()
+   *
+   * @see #setExportCharacterEncoding(String)
+   */
+  @Parameter(defaultValue = "UTF-8", required = true)
+  private String exportCharacterEncoding;
+
+  /**
+   * The pruned changelog that will be written;
+   * <code>${project.build.directory}/liquibase/pending/changelog.xml</code>
+   * by default.
+   *
+   * @see #getPrunedChangeLogFile()
+   *
+   * @see #setPrunedChangeLogFile(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/liquibase/pending/changelog.xml", required = true)
+  private File prunedChangeLogFile;
+
+  /**
+   * The report that will be written;
+   * <code>${project.build.directory}/liquibase/pending/report.txt</code>
+   * by default.
+   *
+   * @see #getReportFile()
+   *
+   * @see #setReportFile(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/liquibase/pending/report.txt", required = true)
+  private File reportFile;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link PendingChangeLogMojo}.
+   */
+  public PendingChangeLogMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the CSV export of the {@code DATABASECHANGELOG} table.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setDatabaseChangeLogExport(File)
+   */
+  public File getDatabaseChangeLogExport() {
+    return this.databaseChangeLogExport;
+  }
+
+  /**
+   * Sets the CSV export of the {@code DATABASECHANGELOG} table.
+   *
+   * @param file the {@link File}; may be {@code null}
+   *
+   * @see #getDatabaseChangeLogExport()
+   */
+  public void setDatabaseChangeLogExport(final File file) {
+    this.databaseChangeLogExport = file;
+  }
+
+  /**
+   * Returns the field separator of the export.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the field separator, or {@code null}
+   *
+   * @see #setExportSeparator(String)
+   */
+  public String getExportSeparator() {
+    return this.exportSeparator;
+  }
+
+  /**
+   * Sets the field separator of the export.
+   *
+   * @param separator the field separator; if non-{@code null} then
+   * must be exactly one character long
+   *
+   * @exception IllegalArgumentException if {@code separator} is not
+   * exactly one character long
+   *
+   * @see #getExportSeparator()
+   */
+  public void setExportSeparator(final String separator) {
+    if (separator != null && separator.length() != 1) {
+      throw new IllegalArgumentException("separator: " + separator);
+    }
+    this.exportSeparator = separator;
+  }
+
+  /**
+   * Returns the character encoding of the export.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a character encoding name, or {@code null}
+   *
+   * @see #setExportCharacterEncoding(String)
+   */
+  public String getExportCharacterEncoding() {
+    return this.exportCharacterEncoding;
+  }
+
+  /**
+   * Sets the character encoding of the export.
+   *
+   * @param encoding the character encoding name; may be {@code null}
+   * in which case {@code UTF-8} will be used
+   *
+   * @see #getExportCharacterEncoding()
+   */
+  public void setExportCharacterEncoding(final String encoding) {
+    this.exportCharacterEncoding = encoding;
+  }
+
+  /**
+   * Returns the pruned changelog {@link File} that will be written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setPrunedChangeLogFile(File)
+   */
+  public File getPrunedChangeLogFile() {
+    return this.prunedChangeLogFile;
+  }
+
+  /**
+   * Sets the pruned changelog {@link File} that will be written.
+   *
+   * @param file the {@link File}; if non-{@code null}, then must not
+   * be {@linkplain File#isDirectory() a directory}
+   *
+   * @exception IllegalArgumentException if {@code file} is a
+   * directory
+   *
+   * @see #getPrunedChangeLogFile()
+   */
+  public void setPrunedChangeLogFile(final File file) {
+    if (file != null && file.isDirectory()) {
+      throw new IllegalArgumentException("file", new IOException("file.isDirectory()"));
+    }
+    this.prunedChangeLogFile = file;
+  }
+
+  /**
+   * Returns the report {@link File} that will be written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setReportFile(File)
+   */
+  public File getReportFile() {
+    return this.reportFile;
+  }
+
+  /**
+   * Sets the report {@link File} that will be written.
+   *
+   * @param file the {@link File}; if non-{@code null}, then must not
+   * be {@linkplain File#isDirectory() a directory}
+   *
+   * @exception IllegalArgumentException if {@code file} is a
+   * directory
+   *
+   * @see #getReportFile()
+   */
+  public void setReportFile(final File file) {
+    if (file != null && file.isDirectory()) {
+      throw new IllegalArgumentException("file", new IOException("file.isDirectory()"));
+    }
+    this.reportFile = file;
+  }
+
+  /**
+   * Loads the {@linkplain #getDatabaseChangeLogExport() export},
+   * prunes the supplied assembled changelog against it, and writes
+   * the {@linkplain #getPrunedChangeLogFile() pruned changelog} and
+   * the {@linkplain #getReportFile() report}.
+   *
+   * @param changeLogFile the assembled changelog; must not be {@code
+   * null}
+   *
+   * @exception MojoFailureException if the export or the changelog
+   * could not be read, or the outputs could not be written
+   */
+  @Override
+  protected void execute(final File changeLogFile) throws MojoExecutionException, MojoFailureException {
+    if (changeLogFile == null) {
+      throw new IllegalArgumentException("changeLogFile", new NullPointerException("changeLogFile"));
+    }
+    final Log log = this.getLog();
+    final File export = this.getDatabaseChangeLogExport();
+    if (export == null || !export.isFile()) {
+      throw new MojoFailureException("The DATABASECHANGELOG export " + export + " does not exist");
+    }
+    final File prunedChangeLogFile = this.getPrunedChangeLogFile();
+    if (prunedChangeLogFile == null) {
+      throw new IllegalStateException("this.getPrunedChangeLogFile()", new NullPointerException("this.getPrunedChangeLogFile()"));
+    }
+    final File reportFile = this.getReportFile();
+    if (reportFile == null) {
+      throw new IllegalStateException("this.getReportFile()", new NullPointerException("this.getReportFile()"));
+    }
+    final String separator = this.getExportSeparator();
+    String encoding = this.getExportCharacterEncoding();
+    if (encoding == null) {
+      encoding = "UTF-8";
+    }
+    try {
+      final RanChangeSetIndex ranChangeSets;
+      final Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(export), encoding));
+      try {
+        ranChangeSets = RanChangeSetIndex.read(reader, separator == null || separator.isEmpty() ? ',' : separator.charAt(0));
+      } finally {
+        reader.close();
+      }
+      assert ranChangeSets != null;
+      if (log != null && log.isDebugEnabled()) {
+        log.debug(String.format("Loaded %d applied changesets from %s", ranChangeSets.size(), export));
+      }
+      mkdirs(prunedChangeLogFile.getParentFile());
+      mkdirs(reportFile.getParentFile());
+      final ChangeLogPruner.Summary summary;
+      final Writer report = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8"));
+      try {
+        summary = new ChangeLogPruner(ranChangeSets).prune(changeLogFile.getAbsolutePath(), this.getResourceAccessor(), prunedChangeLogFile, report);
+        assert summary != null;
+        report.write("# " + summary + "; " + ranChangeSets.getUnmatchedCount() + " applied changesets not in the changelog" + System.getProperty("line.separator", "\n"));
+      } finally {
+        report.close();
+      }
+      if (log != null && log.isInfoEnabled()) {
+        log.info(String.format("%s; %d applied changesets not in the changelog; wrote %s and %s", summary, ranChangeSets.getUnmatchedCount(), prunedChangeLogFile, reportFile));
+      }
+    } catch (final IOException e) {
+      throw new MojoFailureException("Failure computing pending changesets", e);
+    }
+  }
+
+}
@@ -0,0 +1,257 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.edugility.liquibase.ChangeSetDependencyGraph;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.changelog.filter.ContextChangeSetFilter;
+
+import liquibase.exception.LiquibaseException;
+
+import liquibase.util.StringUtils;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Analyzes the {@linkplain AssembleChangeLogMojo assembled changelog}
+ * and writes a plan of groups of changesets that can be applied in
+ * parallel, derived from the {@linkplain ChangeSetDependencyGraph
+ * tables and other objects each changeset reads and writes}.
+ *
+ * <p>No database is needed.  Changesets restricted to particular
+ * database types are included regardless of type.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeSetDependencyGraph
+ */
+@Mojo(name = "planChangeLog")
+public class PlanChangeLogMojo extends AbstractAssembledChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The Liquibase contexts to plan for; all changesets are planned
+   * if this is not set.
+   *
+   * @see #getContexts()
+   *
+   * @see #setContexts(String)
+   */
+  @Parameter
+  private String contexts;
+
+  /**
+   * The plan that will be written;
+   * <code>${project.build.directory}/liquibase/apply-plan.tsv</code>
+   * by default.
+   *
+   * @see #getPlanFile()
+   *
+   * @see #setPlanFile(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/liquibase/apply-plan.tsv", required = true)
+  private File planFile;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link PlanChangeLogMojo}.
+   */
+  public PlanChangeLogMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the Liquibase contexts to plan for.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the contexts, or {@code null}
+   *
+   * @see #setContexts(String)
+   */
+  public String getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Sets the Liquibase contexts to plan for.
+   *
+   * @param contexts the contexts; may be {@code null}
+   *
+   * @see #getContexts()
+   */
+  public void setContexts(final String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Returns the plan {@link File} that will be written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setPlanFile(File)
+   */
+  public File getPlanFile() {
+    return this.planFile;
+  }
+
+  /**
+   * Sets the plan {@link File} that will be written.
+   *
+   * @param file the {@link File}; if non-{@code null}, then must not
+   * be {@linkplain File#isDirectory() a directory}
+   *
+   * @exception IllegalArgumentException if {@code file} is a
+   * directory
+   *
+   * @see #getPlanFile()
+   */
+  public void setPlanFile(final File file) {
+    if (file != null && file.isDirectory()) {
+      throw new IllegalArgumentException("file", new IOException("file.isDirectory()"));
+    }
+    this.planFile = file;
+  }
+
+  /**
+   * Analyzes the supplied assembled changelog and writes the
+   * {@linkplain #getPlanFile() plan}.
+   *
+   * @param changeLogFile the assembled changelog; must not be {@code
+   * null}
+   *
+   * @exception MojoFailureException if the changelog could not be
+   * parsed or the plan could not be written
+   */
+  @Override
+  protected void execute(final File changeLogFile) throws MojoExecutionException, MojoFailureException {
+    try {
+      this.plan(this.parseChangeLog(changeLogFile.getAbsolutePath()));
+    } catch (final LiquibaseException e) {
+      throw new MojoFailureException("Failure planning changelog", e);
+    } catch (final IOException e) {
+      throw new MojoFailureException("Failure planning changelog", e);
+    }
+  }
+
+  /**
+   * Builds the {@link ChangeSetDependencyGraph} of those changesets
+   * of the supplied changelog that match the {@linkplain
+   * #getContexts() contexts}, writes its plan to the {@linkplain
+   * #getPlanFile() plan file} and returns it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeLog the parsed changelog; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link ChangeSetDependencyGraph}
+   *
+   * @exception IllegalArgumentException if {@code changeLog} is
+   * {@code null}
+   *
+   * @exception IOException if the plan could not be written
+   */
+  protected final ChangeSetDependencyGraph plan(final DatabaseChangeLog changeLog) throws IOException {
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    final Log log = this.getLog();
+    final File planFile = this.getPlanFile();
+    if (planFile == null) {
+      throw new IllegalStateException("this.getPlanFile()", new NullPointerException("this.getPlanFile()"));
+    }
+    final String contexts = StringUtils.trimToNull(this.getContexts());
+    final ContextChangeSetFilter filter = contexts == null ? new ContextChangeSetFilter() : new ContextChangeSetFilter(contexts.split(","));
+    final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+    for (final ChangeSet changeSet : changeLog.getChangeSets()) {
+      if (filter.accepts(changeSet)) {
+        changeSets.add(changeSet);
+      }
+    }
+    final ChangeSetDependencyGraph graph = ChangeSetDependencyGraph.build(changeSets);
+    mkdirs(planFile.getParentFile());
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(planFile), "UTF-8"));
+    try {
+      graph.write(writer);
+    } finally {
+      writer.close();
+    }
+    if (log != null && log.isInfoEnabled()) {
+      int widest = 0;
+      for (final List<ChangeSetDependencyGraph.Node> group : graph.getGroups()) {
+        widest = Math.max(widest, group.size());
+      }
+      log.info(String.format("Planned %d changesets in %d parallel groups (widest %d, %d barriers); wrote %s",
+                             graph.getNodes().size(),
+                             graph.getGroups().size(),
+                             widest,
+                             graph.getBarrierCount(),
+                             planFile));
+    }
+    return graph;
+  }
+
+}
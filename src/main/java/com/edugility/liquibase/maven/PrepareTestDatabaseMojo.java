@@ -0,0 +1,497 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Properties;
+
+import com.edugility.liquibase.MigratedDatabaseCache;
+
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.exception.LiquibaseException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Provides a file-based embedded <a
+ * href="http://www.h2database.com/">H2</a> database to which an
+ * {@linkplain AssembleChangeLogMojo assembled changelog} has already
+ * been applied, and exposes its connection details to later plugins
+ * such as Surefire as project properties.
+ *
+ * <p>Migrated databases are {@linkplain MigratedDatabaseCache cached}
+ * across builds under a key derived from the changelog's contents.
+ * When the changelog has not changed since a previous build, the
+ * cached database is copied into place and no changesets are
+ * applied.</p>
+ *
+ * <p>By default the connection URL, user and password are published
+ * as the {@code testDatabaseConnectionURL}, {@code testDatabaseUser}
+ * and {@code testDatabasePassword} properties, which a Surefire
+ * {@code systemPropertyVariables} configuration can pass on to tests.
+ * Bind this goal to a phase that precedes {@code test}, such as
+ * {@code process-test-classes}.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MigratedDatabaseCache
+ */
+@Mojo(name = "prepareTestDatabase")
+public class PrepareTestDatabaseMojo extends AbstractAssembledChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The directory beneath which migrated databases are cached across
+   * builds; <code>${user.home}/.m2/liquibase/test-databases</code> by
+   * default.
+   *
+   * @see #getCacheDirectory()
+   *
+   * @see #setCacheDirectory(File)
+   */
+  @Parameter(defaultValue = "${user.home}/.m2/liquibase/test-databases", required = true)
+  private File cacheDirectory;
+
+  /**
+   * The directory into which the migrated database is copied for use
+   * by this build;
+   * <code>${project.build.directory}/liquibase/test-database</code>
+   * by default.  Its previous contents are replaced.
+   *
+   * @see #getDatabaseDirectory()
+   *
+   * @see #setDatabaseDirectory(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/liquibase/test-database", required = true)
+  private File databaseDirectory;
+
+  /**
+   * The comma-separated Liquibase contexts to apply; all changesets
+   * are applied by default.
+   *
+   * @see #getContexts()
+   *
+   * @see #setContexts(String)
+   */
+  @Parameter
+  private String contexts;
+
+  /**
+   * The database user; {@code sa} by default.
+   *
+   * @see #getUser()
+   *
+   * @see #setUser(String)
+   */
+  @Parameter(defaultValue = "sa", required = true)
+  private String user;
+
+  /**
+   * The password of the {@linkplain #getUser() database user}; empty
+   * by default.
+   *
+   * @see #getPassword()
+   *
+   * @see #setPassword(String)
+   */
+  @Parameter
+  private String password;
+
+  /**
+   * The name of the project property that will be set to the
+   * database's JDBC URL; {@code testDatabaseConnectionURL} by
+   * default.
+   *
+   * @see #getUrlProperty()
+   *
+   * @see #setUrlProperty(String)
+   */
+  @Parameter(defaultValue = "testDatabaseConnectionURL", required = true)
+  private String urlProperty;
+
+  /**
+   * The name of the project property that will be set to the
+   * database user; {@code testDatabaseUser} by default.
+   *
+   * @see #getUserProperty()
+   *
+   * @see #setUserProperty(String)
+   */
+  @Parameter(defaultValue = "testDatabaseUser", required = true)
+  private String userProperty;
+
+  /**
+   * The name of the project property that will be set to the
+   * database password; {@code testDatabasePassword} by default.
+   *
+   * @see #getPasswordProperty()
+   *
+   * @see #setPasswordProperty(String)
+   */
+  @Parameter(defaultValue = "testDatabasePassword", required = true)
+  private String passwordProperty;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link PrepareTestDatabaseMojo}.
+   */
+  public PrepareTestDatabaseMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the directory beneath which migrated databases are
+   * cached.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a directory, or {@code null}
+   *
+   * @see #setCacheDirectory(File)
+   */
+  public File getCacheDirectory() {
+    return this.cacheDirectory;
+  }
+
+  /**
+   * Sets the directory beneath which migrated databases are cached.
+   *
+   * @param directory the directory; if non-{@code null}, then must
+   * not be {@linkplain File#isFile() a file}
+   *
+   * @exception IllegalArgumentException if {@code directory} is a
+   * file
+   *
+   * @see #getCacheDirectory()
+   */
+  public void setCacheDirectory(final File directory) {
+    if (directory != null && directory.isFile()) {
+      throw new IllegalArgumentException("directory", new IOException("directory.isFile()"));
+    }
+    this.cacheDirectory = directory;
+  }
+
+  /**
+   * Returns the directory into which the migrated database is copied
+   * for use by this build.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a directory, or {@code null}
+   *
+   * @see #setDatabaseDirectory(File)
+   */
+  public File getDatabaseDirectory() {
+    return this.databaseDirectory;
+  }
+
+  /**
+   * Sets the directory into which the migrated database is copied
+   * for use by this build.
+   *
+   * @param directory the directory; if non-{@code null}, then must
+   * not be {@linkplain File#isFile() a file}
+   *
+   * @exception IllegalArgumentException if {@code directory} is a
+   * file
+   *
+   * @see #getDatabaseDirectory()
+   */
+  public void setDatabaseDirectory(final File directory) {
+    if (directory != null && directory.isFile()) {
+      throw new IllegalArgumentException("directory", new IOException("directory.isFile()"));
+    }
+    this.databaseDirectory = directory;
+  }
+
+  /**
+   * Returns the comma-separated Liquibase contexts to apply.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the contexts, or {@code null}
+   *
+   * @see #setContexts(String)
+   */
+  public String getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Sets the comma-separated Liquibase contexts to apply.
+   *
+   * @param contexts the contexts; may be {@code null}
+   *
+   * @see #getContexts()
+   */
+  public void setContexts(final String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Returns the database user.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the user, or {@code null}
+   *
+   * @see #setUser(String)
+   */
+  public String getUser() {
+    return this.user;
+  }
+
+  /**
+   * Sets the database user.
+   *
+   * @param user the user; may be {@code null}
+   *
+   * @see #getUser()
+   */
+  public void setUser(final String user) {
+    this.user = user;
+  }
+
+  /**
+   * Returns the password of the {@linkplain #getUser() database
+   * user}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the password, or {@code null}
+   *
+   * @see #setPassword(String)
+   */
+  public String getPassword() {
+    return this.password;
+  }
+
+  /**
+   * Sets the password of the {@linkplain #getUser() database user}.
+   *
+   * @param password the password; may be {@code null} in which case
+   * an empty password will be used
+   *
+   * @see #getPassword()
+   */
+  public void setPassword(final String password) {
+    this.password = password;
+  }
+
+  /**
+   * Returns the name of the project property that will be set to the
+   * database's JDBC URL.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the property name, or {@code null}
+   *
+   * @see #setUrlProperty(String)
+   */
+  public String getUrlProperty() {
+    return this.urlProperty;
+  }
+
+  /**
+   * Sets the name of the project property that will be set to the
+   * database's JDBC URL.
+   *
+   * @param urlProperty the property name; may be {@code null} in
+   * which case no property will be set
+   *
+   * @see #getUrlProperty()
+   */
+  public void setUrlProperty(final String urlProperty) {
+    this.urlProperty = urlProperty;
+  }
+
+  /**
+   * Returns the name of the project property that will be set to the
+   * database user.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the property name, or {@code null}
+   *
+   * @see #setUserProperty(String)
+   */
+  public String getUserProperty() {
+    return this.userProperty;
+  }
+
+  /**
+   * Sets the name of the project property that will be set to the
+   * database user.
+   *
+   * @param userProperty the property name; may be {@code null} in
+   * which case no property will be set
+   *
+   * @see #getUserProperty()
+   */
+  public void setUserProperty(final String userProperty) {
+    this.userProperty = userProperty;
+  }
+
+  /**
+   * Returns the name of the project property that will be set to the
+   * database password.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the property name, or {@code null}
+   *
+   * @see #setPasswordProperty(String)
+   */
+  public String getPasswordProperty() {
+    return this.passwordProperty;
+  }
+
+  /**
+   * Sets the name of the project property that will be set to the
+   * database password.
+   *
+   * @param passwordProperty the property name; may be {@code null} in
+   * which case no property will be set
+   *
+   * @see #getPasswordProperty()
+   */
+  public void setPasswordProperty(final String passwordProperty) {
+    this.passwordProperty = passwordProperty;
+  }
+
+  /**
+   * Copies a cached database migrated with the supplied assembled
+   * changelog into the {@linkplain #getDatabaseDirectory() database
+   * directory}, migrating and caching one first if necessary, and
+   * publishes its connection details as project properties.
+   *
+   * @param changeLogFile the assembled changelog; must not be {@code
+   * null}
+   *
+   * @exception MojoFailureException if the changelog could not be
+   * parsed or applied, or the database could not be cached or copied
+   */
+  @Override
+  protected void execute(final File changeLogFile) throws MojoExecutionException, MojoFailureException {
+    if (changeLogFile == null) {
+      throw new IllegalArgumentException("changeLogFile", new NullPointerException("changeLogFile"));
+    }
+    final Log log = this.getLog();
+    final File cacheDirectory = this.getCacheDirectory();
+    if (cacheDirectory == null) {
+      throw new IllegalStateException("this.getCacheDirectory()", new NullPointerException("this.getCacheDirectory()"));
+    }
+    final File databaseDirectory = this.getDatabaseDirectory();
+    if (databaseDirectory == null) {
+      throw new IllegalStateException("this.getDatabaseDirectory()", new NullPointerException("this.getDatabaseDirectory()"));
+    }
+    final String password = this.getPassword() == null ? "" : this.getPassword();
+    final String changeLog = changeLogFile.getAbsolutePath();
+    final MigratedDatabaseCache cache = new MigratedDatabaseCache(cacheDirectory);
+    cache.setChangeLogParameters(this.getChangeLogParameters());
+    try {
+      final DatabaseChangeLog parsedChangeLog = this.parseChangeLog(changeLog);
+      final String key = cache.computeKey(parsedChangeLog, this.getContexts());
+      File cachedDirectory = cache.get(key);
+      if (cachedDirectory == null) {
+        if (log != null && log.isInfoEnabled()) {
+          log.info(String.format("No cached database for %s; applying %s", key, changeLogFile));
+        }
+        cachedDirectory = cache.put(key, changeLog, this.getResourceAccessor(), this.getContexts(), this.getUser(), password);
+      } else if (log != null && log.isInfoEnabled()) {
+        log.info(String.format("Using cached database %s", cachedDirectory));
+      }
+      MigratedDatabaseCache.copy(cachedDirectory, databaseDirectory);
+    } catch (final LiquibaseException e) {
+      throw new MojoFailureException("Failure preparing test database", e);
+    } catch (final IOException e) {
+      throw new MojoFailureException("Failure preparing test database", e);
+    }
+    final String url = MigratedDatabaseCache.toUrl(databaseDirectory);
+    if (log != null && log.isDebugEnabled()) {
+      log.debug(String.format("Test database URL: %s", url));
+    }
+    final MavenProject project = this.getProject();
+    if (project != null) {
+      final Properties properties = project.getProperties();
+      if (properties != null) {
+        setProperty(properties, this.getUrlProperty(), url);
+        setProperty(properties, this.getUserProperty(), this.getUser() == null ? "" : this.getUser());
+        setProperty(properties, this.getPasswordProperty(), password);
+      }
+    }
+  }
+
+  /**
+   * Sets the supplied property if its name is non-{@code null} and
+   * non-empty.
+   *
+   * @param properties the {@link Properties}; must not be {@code
+   * null}
+   *
+   * @param name the property name; may be {@code null}
+   *
+   * @param value the value; must not be {@code null}
+   */
+  private static final void setProperty(final Properties properties, final String name, final String value) {
+    assert properties != null;
+    assert value != null;
+    if (name != null && !name.isEmpty()) {
+      properties.setProperty(name, value);
+    }
+  }
+
+}
@@ -0,0 +1,652 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.edugility.liquibase.ChangeLogResource;
+import com.edugility.liquibase.ChangeSetProfileReport;
+import com.edugility.liquibase.ChangeSetProfiler;
+import com.edugility.liquibase.EmbeddedDatabases;
+import com.edugility.liquibase.URLResourceAccessor;
+
+import liquibase.exception.LiquibaseException;
+
+import org.apache.maven.artifact.Artifact;
+
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+
+/**
+ * Applies the {@linkplain AssembleChangeLogMojo assembled changelog}
+ * to an embedded, in-process database, {@linkplain ChangeSetProfiler
+ * profiles} every changeset, writes sortable reports of where the
+ * time went, and optionally fails the build if a changeset has become
+ * slower than it was in a stored baseline report.
+ *
+ * <p>Two tab-separated reports are written to the {@linkplain
+ * #getReportDirectory() report directory}: {@code changesets.tsv},
+ * with one line per changeset, and {@code artifacts.tsv}, with one
+ * line per contributing artifact.  A {@code changesets.tsv} from an
+ * earlier build can be used as the {@linkplain #getBaselineFile()
+ * baseline} of a later one.</p>
+ *
+ * <p>Changesets are attributed to artifacts using the same discovery
+ * parameters as the {@link AssembleChangeLogMojo assembleChangeLog}
+ * goal, which must already have run.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeSetProfiler
+ *
+ * @see ChangeSetProfileReport
+ */
+@Mojo(name = "profileChangeLog", requiresDependencyResolution = ResolutionScope.TEST)
+public class ProfileChangeLogMojo extends AssembleChangeLogMojo {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The platform's line separator.
+   */
+  private static final String LS = System.getProperty("line.separator", "\n");
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The JDBC URL of the embedded database to which the changelog
+   * will be applied; it must identify an empty database and its
+   * driver must be on the plugin's classpath; <code>jdbc:h2:mem:</code>
+   * by default.
+   *
+   * @see #getUrl()
+   *
+   * @see #setUrl(String)
+   */
+  @Parameter(defaultValue = EmbeddedDatabases.DEFAULT_URL, required = true)
+  private String url;
+
+  /**
+   * The Liquibase contexts to apply; all changesets are applied if
+   * this is not set.
+   *
+   * @see #getContexts()
+   *
+   * @see #setContexts(String)
+   */
+  @Parameter
+  private String contexts;
+
+  /**
+   * The number of rows to generate in every table created by the
+   * changelog, so that later changesets are profiled against
+   * realistic volumes of data; {@code 0} by default.  Only H2
+   * databases support volume data.
+   *
+   * @see #getVolumeRows()
+   *
+   * @see #setVolumeRows(int)
+   */
+  @Parameter(defaultValue = "0")
+  private int volumeRows;
+
+  /**
+   * The directory to which the reports will be written;
+   * <code>${project.build.directory}/liquibase/profile</code> by
+   * default.
+   *
+   * @see #getReportDirectory()
+   *
+   * @see #setReportDirectory(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/liquibase/profile", required = true)
+  private File reportDirectory;
+
+  /**
+   * A {@code changesets.tsv} report from an earlier build against
+   * which changeset timings will be compared; no comparison is made
+   * if this is not set or does not exist.
+   *
+   * @see #getBaselineFile()
+   *
+   * @see #setBaselineFile(File)
+   */
+  @Parameter
+  private File baselineFile;
+
+  /**
+   * The percentage by which a changeset may exceed its {@linkplain
+   * #getBaselineFile() baseline} time; {@code 50} by default.
+   *
+   * @see #getMaxRegressionPercent()
+   *
+   * @see #setMaxRegressionPercent(double)
+   */
+  @Parameter(defaultValue = "50")
+  private double maxRegressionPercent;
+
+  /**
+   * The number of milliseconds by which a changeset may always
+   * exceed its {@linkplain #getBaselineFile() baseline} time, so that
+   * very fast changesets do not fail on timing noise; {@code 10} by
+   * default.
+   *
+   * @see #getMinRegressionMillis()
+   *
+   * @see #setMinRegressionMillis(double)
+   */
+  @Parameter(defaultValue = "10")
+  private double minRegressionMillis;
+
+  /**
+   * The number of milliseconds any single changeset may take,
+   * regardless of any {@linkplain #getBaselineFile() baseline};
+   * {@code 0}, meaning no limit, by default.
+   *
+   * @see #getMaxChangeSetMillis()
+   *
+   * @see #setMaxChangeSetMillis(double)
+   */
+  @Parameter(defaultValue = "0")
+  private double maxChangeSetMillis;
+
+  /**
+   * Whether changesets that exceed their budgets will fail the
+   * build, rather than merely be logged as warnings; {@code true} by
+   * default.
+   *
+   * @see #isFailOnRegression()
+   *
+   * @see #setFailOnRegression(boolean)
+   */
+  @Parameter(defaultValue = "true")
+  private boolean failOnRegression;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ProfileChangeLogMojo}.
+   */
+  public ProfileChangeLogMojo() {
+    super();
+    this.url = EmbeddedDatabases.DEFAULT_URL;
+    this.maxRegressionPercent = 50.0;
+    this.minRegressionMillis = 10.0;
+    this.failOnRegression = true;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the JDBC URL of the embedded database to which the
+   * changelog will be applied.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a JDBC URL, or {@code null}
+   *
+   * @see #setUrl(String)
+   */
+  public String getUrl() {
+    return this.url;
+  }
+
+  /**
+   * Sets the JDBC URL of the embedded database to which the
+   * changelog will be applied.
+   *
+   * @param url the JDBC URL; may be {@code null}
+   *
+   * @see #getUrl()
+   */
+  public void setUrl(final String url) {
+    this.url = url;
+  }
+
+  /**
+   * Returns the Liquibase contexts to apply.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the contexts, or {@code null}
+   *
+   * @see #setContexts(String)
+   */
+  public String getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Sets the Liquibase contexts to apply.
+   *
+   * @param contexts the contexts; may be {@code null}
+   *
+   * @see #getContexts()
+   */
+  public void setContexts(final String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Returns the number of rows to generate in every created table.
+   *
+   * @return the number of rows
+   *
+   * @see #setVolumeRows(int)
+   */
+  public int getVolumeRows() {
+    return this.volumeRows;
+  }
+
+  /**
+   * Sets the number of rows to generate in every created table.
+   *
+   * @param volumeRows the number of rows; values less than or equal
+   * to {@code 0} disable generation
+   *
+   * @see #getVolumeRows()
+   */
+  public void setVolumeRows(final int volumeRows) {
+    this.volumeRows = volumeRows;
+  }
+
+  /**
+   * Returns the directory to which the reports will be written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the directory, or {@code null}
+   *
+   * @see #setReportDirectory(File)
+   */
+  public File getReportDirectory() {
+    return this.reportDirectory;
+  }
+
+  /**
+   * Sets the directory to which the reports will be written.
+   *
+   * @param directory the directory; if non-{@code null}, then must
+   * not be {@linkplain File#isFile() a file}
+   *
+   * @exception IllegalArgumentException if {@code directory} is a
+   * file
+   *
+   * @see #getReportDirectory()
+   */
+  public void setReportDirectory(final File directory) {
+    if (directory != null && directory.isFile()) {
+      throw new IllegalArgumentException("directory", new IOException("directory.isFile()"));
+    }
+    this.reportDirectory = directory;
+  }
+
+  /**
+   * Returns the earlier {@code changesets.tsv} report against which
+   * changeset timings will be compared.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link File}, or {@code null}
+   *
+   * @see #setBaselineFile(File)
+   */
+  public File getBaselineFile() {
+    return this.baselineFile;
+  }
+
+  /**
+   * Sets the earlier {@code changesets.tsv} report against which
+   * changeset timings will be compared.
+   *
+   * @param file the {@link File}; may be {@code null}
+   *
+   * @see #getBaselineFile()
+   */
+  public void setBaselineFile(final File file) {
+    this.baselineFile = file;
+  }
+
+  /**
+   * Returns the percentage by which a changeset may exceed its
+   * baseline time.
+   *
+   * @return a percentage
+   *
+   * @see #setMaxRegressionPercent(double)
+   */
+  public double getMaxRegressionPercent() {
+    return this.maxRegressionPercent;
+  }
+
+  /**
+   * Sets the percentage by which a changeset may exceed its baseline
+   * time.
+   *
+   * @param maxRegressionPercent the percentage; negative values
+   * disable baseline comparison
+   *
+   * @see #getMaxRegressionPercent()
+   */
+  public void setMaxRegressionPercent(final double maxRegressionPercent) {
+    this.maxRegressionPercent = maxRegressionPercent;
+  }
+
+  /**
+   * Returns the number of milliseconds by which a changeset may
+   * always exceed its baseline time.
+   *
+   * @return a number of milliseconds
+   *
+   * @see #setMinRegressionMillis(double)
+   */
+  public double getMinRegressionMillis() {
+    return this.minRegressionMillis;
+  }
+
+  /**
+   * Sets the number of milliseconds by which a changeset may always
+   * exceed its baseline time.
+   *
+   * @param minRegressionMillis the number of milliseconds
+   *
+   * @see #getMinRegressionMillis()
+   */
+  public void setMinRegressionMillis(final double minRegressionMillis) {
+    this.minRegressionMillis = minRegressionMillis;
+  }
+
+  /**
+   * Returns the number of milliseconds any single changeset may
+   * take.
+   *
+   * @return a number of milliseconds; {@code 0} or less means no
+   * limit
+   *
+   * @see #setMaxChangeSetMillis(double)
+   */
+  public double getMaxChangeSetMillis() {
+    return this.maxChangeSetMillis;
+  }
+
+  /**
+   * Sets the number of milliseconds any single changeset may take.
+   *
+   * @param maxChangeSetMillis the number of milliseconds; {@code 0}
+   * or less means no limit
+   *
+   * @see #getMaxChangeSetMillis()
+   */
+  public void setMaxChangeSetMillis(final double maxChangeSetMillis) {
+    this.maxChangeSetMillis = maxChangeSetMillis;
+  }
+
+  /**
+   * Returns whether changesets that exceed their budgets will fail
+   * the build.
+   *
+   * @return {@code true} if changesets that exceed their budgets will
+   * fail the build; {@code false} if they will only be logged
+   *
+   * @see #setFailOnRegression(boolean)
+   */
+  public boolean isFailOnRegression() {
+    return this.failOnRegression;
+  }
+
+  /**
+   * Sets whether changesets that exceed their budgets will fail the
+   * build.
+   *
+   * @param failOnRegression whether changesets that exceed their
+   * budgets will fail the build
+   *
+   * @see #isFailOnRegression()
+   */
+  public void setFailOnRegression(final boolean failOnRegression) {
+    this.failOnRegression = failOnRegression;
+  }
+
+  /**
+   * Executes this {@link ProfileChangeLogMojo} by calling the {@link
+   * #profileChangeLog()} method unless {@linkplain #getSkip()
+   * skipped}, and fails if any changeset exceeded its budget and
+   * {@linkplain #isFailOnRegression() that is fatal}.
+   *
+   * @exception MojoFailureException if the changelog could not be
+   * profiled, or if a changeset exceeded its budget
+   *
+   * @see #profileChangeLog()
+   */
+  @Override
+  public void execute() throws MojoFailureException {
+    final Log log = this.getLog();
+    if (this.getSkip()) {
+      if (log != null && log.isDebugEnabled()) {
+        log.debug("Skipping execution by request");
+      }
+    } else {
+      final List<String> overBudget;
+      try {
+        overBudget = this.profileChangeLog();
+      } catch (final RuntimeException e) {
+        throw e;
+      } catch (final IOException e) {
+        throw new MojoFailureException("Failure profiling changelog", e);
+      } catch (final LiquibaseException e) {
+        throw new MojoFailureException("Failure profiling changelog", e);
+      } catch (final ArtifactResolutionException e) {
+        throw new MojoFailureException("Failure profiling changelog", e);
+      } catch (final DependencyGraphBuilderException e) {
+        throw new MojoFailureException("Failure profiling changelog", e);
+      }
+      assert overBudget != null;
+      if (!overBudget.isEmpty()) {
+        final StringBuilder sb = new StringBuilder(overBudget.size() + " changesets exceeded their budgets:");
+        for (final String message : overBudget) {
+          sb.append(LS).append("  ").append(message);
+        }
+        if (this.isFailOnRegression()) {
+          throw new MojoFailureException(sb.toString());
+        } else if (log != null && log.isWarnEnabled()) {
+          log.warn(sb.toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies the {@linkplain #getOutputFile() assembled changelog} to
+   * the {@linkplain #getUrl() embedded database}, writes the reports
+   * to the {@linkplain #getReportDirectory() report directory} and
+   * returns a description of every changeset that exceeded its
+   * budget.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link List} of descriptions
+   *
+   * @exception ArtifactResolutionException if an {@link Artifact}
+   * could not be resolved
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution
+   *
+   * @exception LiquibaseException if the changelog could not be
+   * applied
+   *
+   * @exception IOException if the assembled changelog does not exist
+   * or there was a problem with input or output
+   *
+   * @see ChangeSetProfiler#profile(String, liquibase.resource.ResourceAccessor, String)
+   *
+   * @see ChangeSetProfileReport#findOverBudget(Map, double, double, double)
+   */
+  public final List<String> profileChangeLog() throws ArtifactResolutionException, DependencyGraphBuilderException, LiquibaseException, IOException {
+    final Log log = this.getLog();
+    final File reportDirectory = this.getReportDirectory();
+    if (reportDirectory == null) {
+      throw new IllegalStateException("this.getReportDirectory()", new NullPointerException("this.getReportDirectory()"));
+    }
+    final File changeLogFile = this.getOutputFile();
+    if (changeLogFile == null || !changeLogFile.isFile()) {
+      throw new IOException("The assembled changelog, " + changeLogFile + ", does not exist; has the assembleChangeLog goal run?");
+    }
+
+    final ChangeSetProfiler profiler = new ChangeSetProfiler();
+    profiler.setUrl(this.getUrl());
+    profiler.setVolumeRows(this.getVolumeRows());
+    profiler.setChangeLogParameters(this.getChangeLogParameters());
+    final List<ChangeSetProfiler.Profile> profiles = profiler.profile(changeLogFile.getAbsolutePath(), new URLResourceAccessor(this.getClass().getClassLoader()), this.getContexts());
+    assert profiles != null;
+
+    final ChangeSetProfileReport report = new ChangeSetProfileReport(profiles, this.getOrigins());
+    if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+      throw new IOException("Could not create directory " + reportDirectory);
+    }
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(reportDirectory, "changesets.tsv")), "UTF-8"));
+    try {
+      report.writeChangeSets(writer);
+    } finally {
+      writer.close();
+    }
+    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(reportDirectory, "artifacts.tsv")), "UTF-8"));
+    try {
+      report.writeOrigins(writer);
+    } finally {
+      writer.close();
+    }
+    if (log != null && log.isInfoEnabled()) {
+      long nanos = 0L;
+      for (final ChangeSetProfiler.Profile profile : profiles) {
+        nanos += profile.getNanos();
+      }
+      log.info(String.format("Profiled %d changesets (%d ms); reports are in %s", profiles.size(), nanos / 1000000L, reportDirectory));
+    }
+
+    Map<String, Double> baseline = null;
+    final File baselineFile = this.getBaselineFile();
+    if (baselineFile != null) {
+      if (baselineFile.isFile()) {
+        final Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(baselineFile), "UTF-8"));
+        try {
+          baseline = ChangeSetProfileReport.readBaseline(reader);
+        } finally {
+          try {
+            reader.close();
+          } catch (final IOException nothingWeCanDo) {
+
+          }
+        }
+      } else if (log != null && log.isWarnEnabled()) {
+        log.warn(String.format("Baseline file %s does not exist; skipping comparison", baselineFile));
+      }
+    }
+    return report.findOverBudget(baseline, this.getMaxRegressionPercent(), this.getMinRegressionMillis(), this.getMaxChangeSetMillis());
+  }
+
+  /**
+   * Returns the identifiers of the {@link Artifact}s that contribute
+   * changelog fragments to the current build, indexed by the {@code
+   * include} that refers to each fragment in the assembled changelog.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Map}
+   *
+   * @exception ArtifactResolutionException if an {@link Artifact}
+   * could not be resolved
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution
+   *
+   * @exception IOException if there was a problem with input or
+   * output
+   */
+  private final Map<String, String> getOrigins() throws ArtifactResolutionException, DependencyGraphBuilderException, IOException {
+    Collection<? extends ChangeLogResource> resources = this.getChangeLogResourceDescriptors();
+    if (this.isDeduplicate()) {
+      resources = this.deduplicate(resources);
+    }
+    final Map<String, String> returnValue = new HashMap<String, String>();
+    final Map<ChangeLogResource, String> includes = this.toIncludes(resources);
+    if (includes != null) {
+      for (final Map.Entry<ChangeLogResource, String> entry : includes.entrySet()) {
+        final ChangeLogResource resource = entry.getKey();
+        if (resource instanceof ArtifactChangeLogResource) {
+          final Artifact artifact = ((ArtifactChangeLogResource)resource).getArtifact();
+          if (artifact != null) {
+            returnValue.put(entry.getValue(), artifact.getId());
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+}
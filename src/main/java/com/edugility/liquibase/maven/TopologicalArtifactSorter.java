@@ -0,0 +1,490 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+
+import org.apache.maven.project.MavenProject;
+
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+import org.apache.maven.shared.dependency.graph.DependencyNode;
+
+/**
+ * Orders the {@link Artifact}s of a dependency graph topologically,
+ * from the {@link Artifact} with the least dependencies to the root
+ * of the graph, and resolves them.
+ *
+ * <h3>Order</h3>
+ *
+ * <p>{@link Artifact}s are identified by their {@linkplain
+ * Artifact#getId() identifiers}, so an {@link Artifact} that appears
+ * several times in a dependency graph is ordered once, after
+ * everything any of its occurrences depends on.  Ties are broken the
+ * same way the {@code com.edugility.maven.Artifacts} helper this
+ * class replaces broke them: the graph is walked depth first, from
+ * the root, and then, starting with the root, each {@link Artifact}
+ * is emitted once every {@link Artifact} depending on it has been,
+ * first come, first served, with a parent's dependencies considered
+ * in declaration order; that order is then reversed.</p>
+ *
+ * <h3>Scale</h3>
+ *
+ * <p>Identifiers are interned to {@code int}s, and the graph's edges
+ * are held in {@code int} arrays, so ordering takes time and space
+ * linear in the number of {@link Artifact}s and dependencies, and
+ * very large graphs are walked without recursion.</p>
+ *
+ * <h3>Cycles</h3>
+ *
+ * <p>Maven does not normally produce cyclic dependency graphs, but
+ * interning {@link Artifact}s can close a cycle between occurrences
+ * that Maven kept apart.  When that happens a {@link
+ * DependencyGraphBuilderException} is thrown whose message names
+ * the {@link Artifact}s in the cycle, in dependency order.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TopologicalArtifactSorter {
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link TopologicalArtifactSorter}.
+   */
+  public TopologicalArtifactSorter() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Builds the dependency graph of the supplied {@link
+   * MavenProject}, {@linkplain #sort(DependencyNode) sorts} it,
+   * {@linkplain #resolve(Collection, ArtifactResolver,
+   * ArtifactRepository, List) resolves} every {@link Artifact} other
+   * than the project's own, and returns them all.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param project the {@link MavenProject}; must not be {@code null}
+   *
+   * @param dependencyGraphBuilder the {@link DependencyGraphBuilder}
+   * to build the graph with; must not be {@code null}
+   *
+   * @param filter an {@link ArtifactFilter} restricting the graph;
+   * may be {@code null}
+   *
+   * @param resolver the {@link ArtifactResolver} to resolve {@link
+   * Artifact}s with; must not be {@code null}
+   *
+   * @param localRepository the local {@link ArtifactRepository}; may
+   * be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of {@link Artifact}s in
+   * topological order, ending with the project's own
+   *
+   * @exception IllegalArgumentException if {@code project}, {@code
+   * dependencyGraphBuilder} or {@code resolver} is {@code null}
+   *
+   * @exception DependencyGraphBuilderException if the graph could not
+   * be built or is cyclic
+   *
+   * @exception ArtifactResolutionException if an {@link Artifact}
+   * could not be resolved
+   */
+  public List<Artifact> getArtifactsInTopologicalOrder(final MavenProject project, final DependencyGraphBuilder dependencyGraphBuilder, final ArtifactFilter filter, final ArtifactResolver resolver, final ArtifactRepository localRepository) throws ArtifactResolutionException, DependencyGraphBuilderException {
+    if (project == null) {
+      throw new IllegalArgumentException("project", new NullPointerException("project"));
+    }
+    if (dependencyGraphBuilder == null) {
+      throw new IllegalArgumentException("dependencyGraphBuilder", new NullPointerException("dependencyGraphBuilder"));
+    }
+    if (resolver == null) {
+      throw new IllegalArgumentException("resolver", new NullPointerException("resolver"));
+    }
+    final List<Artifact> returnValue = this.sort(dependencyGraphBuilder.buildDependencyGraph(project, filter));
+    if (!returnValue.isEmpty()) {
+      final List<ArtifactRepository> remoteRepositories = new ArrayList<ArtifactRepository>();
+      final List<?> projectRemoteRepositories = project.getRemoteArtifactRepositories();
+      if (projectRemoteRepositories != null) {
+        for (final Object repository : projectRemoteRepositories) {
+          if (repository instanceof ArtifactRepository) {
+            remoteRepositories.add((ArtifactRepository)repository);
+          }
+        }
+      }
+      // The root, which is the project itself, is always last.
+      this.resolve(returnValue.subList(0, returnValue.size() - 1), resolver, localRepository, remoteRepositories);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@link Artifact}s of the dependency graph rooted at
+   * the supplied {@link DependencyNode} in topological order, from
+   * the {@link Artifact} with the least dependencies to the root's.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param root the root of the dependency graph; may be {@code null}
+   * in which case an empty {@link List} is returned
+   *
+   * @return a non-{@code null}, mutable {@link List} of {@link
+   * Artifact}s, each of which appears after all of its dependencies
+   *
+   * @exception DependencyGraphBuilderException if the graph is cyclic
+   */
+  public List<Artifact> sort(final DependencyNode root) throws DependencyGraphBuilderException {
+    if (root == null || root.getArtifact() == null) {
+      return new ArrayList<Artifact>();
+    }
+
+    // Intern artifacts, depth first, and record edges from dependent
+    // to dependency, in declaration order.
+    final Map<String, Integer> ids = new HashMap<String, Integer>();
+    Artifact[] artifacts = new Artifact[64];
+    int n = 0;
+    int[] from = new int[64];
+    int[] to = new int[64];
+    int m = 0;
+    final Set<DependencyNode> visited = Collections.newSetFromMap(new IdentityHashMap<DependencyNode, Boolean>());
+    DependencyNode[] stack = new DependencyNode[64];
+    int[] positions = new int[64];
+    int[] stackIds = new int[64];
+    int depth = 0;
+
+    ids.put(root.getArtifact().getId(), Integer.valueOf(0));
+    artifacts[n++] = root.getArtifact();
+    visited.add(root);
+    stack[0] = root;
+    positions[0] = 0;
+    stackIds[0] = 0;
+    depth = 1;
+    while (depth > 0) {
+      final DependencyNode parent = stack[depth - 1];
+      final List<DependencyNode> children = parent.getChildren();
+      final int position = positions[depth - 1];
+      if (children == null || position >= children.size()) {
+        stack[--depth] = null;
+        continue;
+      }
+      positions[depth - 1] = position + 1;
+      final DependencyNode child = children.get(position);
+      if (child == null || child.getArtifact() == null) {
+        continue;
+      }
+      final String key = child.getArtifact().getId();
+      Integer id = ids.get(key);
+      if (id == null) {
+        if (n == artifacts.length) {
+          artifacts = Arrays.copyOf(artifacts, n * 2);
+        }
+        id = Integer.valueOf(n);
+        ids.put(key, id);
+        artifacts[n++] = child.getArtifact();
+      }
+      final int parentId = stackIds[depth - 1];
+      final int childId = id.intValue();
+      if (m == from.length) {
+        from = Arrays.copyOf(from, m * 2);
+        to = Arrays.copyOf(to, m * 2);
+      }
+      from[m] = parentId;
+      to[m] = childId;
+      m++;
+      if (visited.add(child)) {
+        if (depth == stack.length) {
+          stack = Arrays.copyOf(stack, depth * 2);
+          positions = Arrays.copyOf(positions, depth * 2);
+          stackIds = Arrays.copyOf(stackIds, depth * 2);
+        }
+        stack[depth] = child;
+        positions[depth] = 0;
+        stackIds[depth] = childId;
+        depth++;
+      }
+    }
+
+    // Lay the edges out by source, keeping each source's edges in
+    // declaration order.
+    final int[] offsets = new int[n + 1];
+    for (int i = 0; i < m; i++) {
+      offsets[from[i] + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    final int[] targets = new int[m];
+    final int[] cursors = Arrays.copyOf(offsets, n);
+    for (int i = 0; i < m; i++) {
+      targets[cursors[from[i]]++] = to[i];
+    }
+
+    // Drop each source's repeated edges in place, keeping the first
+    // of each; lastSource[w] is the last source seen to depend on w.
+    final int[] inDegrees = new int[n];
+    final int[] lastSource = new int[n];
+    Arrays.fill(lastSource, -1);
+    int kept = 0;
+    for (int v = 0; v < n; v++) {
+      final int start = offsets[v];
+      offsets[v] = kept;
+      for (int i = start; i < offsets[v + 1]; i++) {
+        final int w = targets[i];
+        if (lastSource[w] != v) {
+          lastSource[w] = v;
+          targets[kept++] = w;
+          inDegrees[w]++;
+        }
+      }
+    }
+    offsets[n] = kept;
+
+    // Kahn's algorithm with a first-in, first-out queue seeded in
+    // interning order.
+    final int[] queue = new int[n];
+    int head = 0;
+    int tail = 0;
+    for (int i = 0; i < n; i++) {
+      if (inDegrees[i] == 0) {
+        queue[tail++] = i;
+      }
+    }
+    while (head < tail) {
+      final int v = queue[head++];
+      for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+        final int w = targets[i];
+        if (--inDegrees[w] == 0) {
+          queue[tail++] = w;
+        }
+      }
+    }
+    if (tail < n) {
+      throw new DependencyGraphBuilderException("Dependency cycle: " + describeCycle(artifacts, n, from, to, m, inDegrees));
+    }
+
+    final List<Artifact> returnValue = new ArrayList<Artifact>(n);
+    for (int i = n - 1; i >= 0; i--) {
+      returnValue.add(artifacts[queue[i]]);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the depth of each {@link Artifact} in the dependency
+   * graph rooted at the supplied {@link DependencyNode}, indexed by
+   * {@linkplain Artifact#getId() artifact identifier}: {@code 0} for
+   * the root, {@code 1} for its direct dependencies, and so on.  An
+   * {@link Artifact} reachable along several paths has the depth of
+   * the shortest.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param root the root of the dependency graph; may be {@code null}
+   * in which case an empty {@link Map} is returned
+   *
+   * @return a non-{@code null}, mutable {@link Map} of depths
+   */
+  public Map<String, Integer> getDepths(final DependencyNode root) {
+    final Map<String, Integer> returnValue = new HashMap<String, Integer>();
+    if (root != null && root.getArtifact() != null) {
+      // Breadth first, so that each artifact is first seen at its
+      // least depth.
+      final Set<DependencyNode> visited = Collections.newSetFromMap(new IdentityHashMap<DependencyNode, Boolean>());
+      List<DependencyNode> level = Collections.singletonList(root);
+      visited.add(root);
+      int depth = 0;
+      while (!level.isEmpty()) {
+        final List<DependencyNode> next = new ArrayList<DependencyNode>();
+        for (final DependencyNode node : level) {
+          final String key = node.getArtifact().getId();
+          if (!returnValue.containsKey(key)) {
+            returnValue.put(key, Integer.valueOf(depth));
+          }
+          final List<DependencyNode> children = node.getChildren();
+          if (children != null) {
+            for (final DependencyNode child : children) {
+              if (child != null && child.getArtifact() != null && visited.add(child)) {
+                next.add(child);
+              }
+            }
+          }
+        }
+        level = next;
+        depth++;
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Resolves those of the supplied {@link Artifact}s that are not
+   * already resolved, one at a time, in iteration order.
+   *
+   * @param artifacts the {@link Artifact}s to resolve; may be {@code
+   * null}
+   *
+   * @param resolver the {@link ArtifactResolver} to resolve them
+   * with; must not be {@code null}
+   *
+   * @param localRepository the local {@link ArtifactRepository}; may
+   * be {@code null}
+   *
+   * @param remoteRepositories the remote {@link ArtifactRepository}
+   * instances to resolve from; may be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code resolver} is {@code
+   * null}
+   *
+   * @exception ArtifactResolutionException if an {@link Artifact}
+   * could not be resolved
+   */
+  public void resolve(final Collection<? extends Artifact> artifacts, final ArtifactResolver resolver, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories) throws ArtifactResolutionException {
+    if (resolver == null) {
+      throw new IllegalArgumentException("resolver", new NullPointerException("resolver"));
+    }
+    if (artifacts != null) {
+      for (final Artifact artifact : artifacts) {
+        if (artifact != null && (artifact.getFile() == null || !artifact.isResolved()) && !(Artifact.SCOPE_SYSTEM.equals(artifact.getScope()) && artifact.getFile() != null)) {
+          final ArtifactResolutionRequest request = new ArtifactResolutionRequest();
+          request.setArtifact(artifact);
+          request.setResolveRoot(true);
+          request.setResolveTransitively(false);
+          request.setLocalRepository(localRepository);
+          request.setRemoteRepositories(remoteRepositories);
+          final ArtifactResolutionResult result = resolver.resolve(request);
+          if (result == null || !result.isSuccess()) {
+            Throwable cause = null;
+            if (result != null && result.hasExceptions()) {
+              cause = result.getExceptions().get(0);
+              if (cause instanceof ArtifactResolutionException) {
+                throw (ArtifactResolutionException)cause;
+              }
+            }
+            throw new ArtifactResolutionException("Could not resolve " + artifact.getId(), artifact, remoteRepositories, cause);
+          }
+        }
+      }
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns a description of a cycle among the vertices that Kahn's
+   * algorithm could not emit.
+   *
+   * <p>Every such vertex has a predecessor that is also such a
+   * vertex, so walking predecessors from any of them must eventually
+   * revisit one.</p>
+   *
+   * @param artifacts the interned {@link Artifact}s; must not be
+   * {@code null}
+   *
+   * @param n the number of vertices
+   *
+   * @param from the source of each edge; must not be {@code null}
+   *
+   * @param to the target of each edge; must not be {@code null}
+   *
+   * @param m the number of edges
+   *
+   * @param inDegrees the remaining in-degree of each vertex; must not
+   * be {@code null}
+   *
+   * @return a non-{@code null} description of a cycle, in dependency
+   * order
+   */
+  private static final String describeCycle(final Artifact[] artifacts, final int n, final int[] from, final int[] to, final int m, final int[] inDegrees) {
+    final int[] predecessors = new int[n];
+    Arrays.fill(predecessors, -1);
+    int start = -1;
+    for (int i = 0; i < m; i++) {
+      if (inDegrees[from[i]] > 0 && inDegrees[to[i]] > 0) {
+        predecessors[to[i]] = from[i];
+        if (start < 0) {
+          start = to[i];
+        }
+      }
+    }
+    final int[] seenAt = new int[n];
+    Arrays.fill(seenAt, -1);
+    final int[] walk = new int[n + 1];
+    int length = 0;
+    int v = start;
+    while (v >= 0 && seenAt[v] < 0) {
+      seenAt[v] = length;
+      walk[length++] = v;
+      v = predecessors[v];
+    }
+    final StringBuilder sb = new StringBuilder();
+    if (v >= 0) {
+      // walk[seenAt[v]] .. walk[length - 1] is the cycle, with each
+      // vertex depended upon by the next; print it dependent first.
+      for (int i = length - 1; i >= seenAt[v]; i--) {
+        sb.append(artifacts[walk[i]].getId()).append(" -> ");
+      }
+      sb.append(artifacts[walk[length - 1]].getId());
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,449 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.edugility.liquibase.OfflineSqlRenderer;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.changelog.filter.ContextChangeSetFilter;
+
+import liquibase.database.Database;
+
+import liquibase.exception.LiquibaseException;
+
+import liquibase.util.StringUtils;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Renders an {@linkplain AssembleChangeLogMojo assembled changelog}
+ * as a SQL script for each of one or more database dialects, offline,
+ * without connecting to any database.
+ *
+ * <p>The scripts contain the SQL Liquibase would issue when applying
+ * every changeset to an empty schema, together (by default) with the
+ * statements that create the {@code DATABASECHANGELOG} table and
+ * record each changeset in it, and so are suitable for review by a
+ * database administrator.  Preconditions are not evaluated.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see OfflineSqlRenderer
+ */
+@Mojo(name = "updateSQL")
+public class UpdateSqlMojo extends AbstractAssembledChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The {@linkplain Database#getShortName() short names} of the
+   * databases, such as {@code postgresql} or {@code oracle}, for which
+   * SQL scripts will be rendered.
+   *
+   * @see #getDatabases()
+   *
+   * @see #setDatabases(List)
+   */
+  @Parameter(required = true)
+  private List<String> databases;
+
+  /**
+   * The Liquibase contexts to render SQL for, as a comma-separated
+   * list; all changesets are rendered if this is not set.
+   *
+   * <p>Liquibase 3.0.8, against which this plugin is built, has no
+   * notion of labels, so there is no corresponding {@code labels}
+   * parameter.</p>
+   *
+   * @see #getContexts()
+   *
+   * @see #setContexts(String)
+   */
+  @Parameter
+  private String contexts;
+
+  /**
+   * The directory to which SQL scripts will be written, each named
+   * <code>update-<i>shortName</i>.sql</code>;
+   * <code>${project.build.directory}/liquibase/sql</code> by default.
+   *
+   * @see #getOutputDirectory()
+   *
+   * @see #setOutputDirectory(File)
+   */
+  @Parameter(defaultValue = "${project.build.directory}/liquibase/sql", required = true)
+  private File outputDirectory;
+
+  /**
+   * The character encoding of the SQL scripts;
+   * <code>${project.build.sourceEncoding}</code> by default.
+   *
+   * @see #getSqlCharacterEncoding()
+   *
+   * @see #setSqlCharacterEncoding(String)
+   */
+  @Parameter(defaultValue = "${project.build.sourceEncoding}")
+  private String sqlCharacterEncoding;
+
+  /**
+   * The maximum number of threads to use to render each script;
+   * {@code 0}, meaning the number of available processors, by
+   * default.
+   *
+   * @see #getThreads()
+   *
+   * @see #setThreads(int)
+   */
+  @Parameter(defaultValue = "0")
+  private int threads;
+
+  /**
+   * The maximum number of rows inserted by a single {@code INSERT}
+   * statement rendered for a {@code loadData} change; {@code 100} by
+   * default.  Values less than {@code 2} disable coalescing.
+   *
+   * @see #getLoadDataBatchSize()
+   *
+   * @see #setLoadDataBatchSize(int)
+   */
+  @Parameter(defaultValue = "100")
+  private int loadDataBatchSize;
+
+  /**
+   * Whether the statements creating the {@code DATABASECHANGELOG}
+   * table and recording each changeset in it will be rendered; {@code
+   * true} by default.
+   *
+   * @see #getTrackChangeSets()
+   *
+   * @see #setTrackChangeSets(boolean)
+   */
+  @Parameter(defaultValue = "true")
+  private boolean trackChangeSets;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link UpdateSqlMojo}.
+   */
+  public UpdateSqlMojo() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@linkplain Database#getShortName() short names} of
+   * the databases for which SQL scripts will be rendered.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link List} of short names, or {@code null}
+   *
+   * @see #setDatabases(List)
+   */
+  public List<String> getDatabases() {
+    return this.databases;
+  }
+
+  /**
+   * Sets the {@linkplain Database#getShortName() short names} of the
+   * databases for which SQL scripts will be rendered.
+   *
+   * @param databases a {@link List} of short names; may be {@code
+   * null}
+   *
+   * @see #getDatabases()
+   */
+  public void setDatabases(final List<String> databases) {
+    this.databases = databases;
+  }
+
+  /**
+   * Returns the Liquibase contexts to render SQL for.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the contexts, or {@code null}
+   *
+   * @see #setContexts(String)
+   */
+  public String getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Sets the Liquibase contexts to render SQL for.
+   *
+   * @param contexts the contexts; may be {@code null}
+   *
+   * @see #getContexts()
+   */
+  public void setContexts(final String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Returns the directory to which SQL scripts will be written.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a directory, or {@code null}
+   *
+   * @see #setOutputDirectory(File)
+   */
+  public File getOutputDirectory() {
+    return this.outputDirectory;
+  }
+
+  /**
+   * Sets the directory to which SQL scripts will be written.
+   *
+   * @param directory the directory; if non-{@code null}, then must
+   * not be {@linkplain File#isFile() a file}
+   *
+   * @exception IllegalArgumentException if {@code directory} is a
+   * file
+   *
+   * @see #getOutputDirectory()
+   */
+  public void setOutputDirectory(final File directory) {
+    if (directory != null && directory.isFile()) {
+      throw new IllegalArgumentException("directory", new IOException("directory.isFile()"));
+    }
+    this.outputDirectory = directory;
+  }
+
+  /**
+   * Returns the character encoding of the SQL scripts.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a character encoding name, or {@code null}
+   *
+   * @see #setSqlCharacterEncoding(String)
+   */
+  public String getSqlCharacterEncoding() {
+    return this.sqlCharacterEncoding;
+  }
+
+  /**
+   * Sets the character encoding of the SQL scripts.
+   *
+   * @param encoding the character encoding name; may be {@code null}
+   * in which case {@code UTF-8} will be used
+   *
+   * @see #getSqlCharacterEncoding()
+   */
+  public void setSqlCharacterEncoding(final String encoding) {
+    this.sqlCharacterEncoding = encoding;
+  }
+
+  /**
+   * Returns the maximum number of threads to use to render each
+   * script.  A return value less than {@code 1} means the number of
+   * available processors.
+   *
+   * @return the maximum number of threads
+   *
+   * @see #setThreads(int)
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Sets the maximum number of threads to use to render each script.
+   *
+   * @param threads the maximum number of threads; if less than {@code
+   * 1} then the number of available processors will be used
+   *
+   * @see #getThreads()
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * Returns the maximum number of rows inserted by a single {@code
+   * INSERT} statement rendered for a {@code loadData} change.
+   *
+   * @return the maximum number of rows
+   *
+   * @see #setLoadDataBatchSize(int)
+   */
+  public int getLoadDataBatchSize() {
+    return this.loadDataBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of rows inserted by a single {@code
+   * INSERT} statement rendered for a {@code loadData} change.
+   *
+   * @param loadDataBatchSize the maximum number of rows; values less
+   * than {@code 2} disable coalescing
+   *
+   * @see #getLoadDataBatchSize()
+   */
+  public void setLoadDataBatchSize(final int loadDataBatchSize) {
+    this.loadDataBatchSize = loadDataBatchSize;
+  }
+
+  /**
+   * Returns {@code true} if the statements creating the {@code
+   * DATABASECHANGELOG} table and recording each changeset in it will
+   * be rendered.
+   *
+   * @return {@code true} if changesets will be tracked
+   *
+   * @see #setTrackChangeSets(boolean)
+   */
+  public boolean getTrackChangeSets() {
+    return this.trackChangeSets;
+  }
+
+  /**
+   * Sets whether the statements creating the {@code
+   * DATABASECHANGELOG} table and recording each changeset in it will
+   * be rendered.
+   *
+   * @param trackChangeSets whether changesets will be tracked
+   *
+   * @see #getTrackChangeSets()
+   */
+  public void setTrackChangeSets(final boolean trackChangeSets) {
+    this.trackChangeSets = trackChangeSets;
+  }
+
+  /**
+   * Parses the supplied assembled changelog once and renders those of
+   * its changesets that match the {@linkplain #getContexts()
+   * configured contexts} as a SQL script for each of the {@linkplain
+   * #getDatabases() configured databases}.
+   *
+   * @param changeLogFile the assembled changelog; must not be {@code
+   * null}
+   *
+   * @exception MojoFailureException if the changelog could not be
+   * parsed or rendered, or if a configured database is unknown
+   */
+  @Override
+  protected void execute(final File changeLogFile) throws MojoExecutionException, MojoFailureException {
+    if (changeLogFile == null) {
+      throw new IllegalArgumentException("changeLogFile", new NullPointerException("changeLogFile"));
+    }
+    final Log log = this.getLog();
+    final File outputDirectory = this.getOutputDirectory();
+    if (outputDirectory == null) {
+      throw new IllegalStateException("this.getOutputDirectory()", new NullPointerException("this.getOutputDirectory()"));
+    }
+    final List<String> databases = this.getDatabases();
+    if (databases == null || databases.isEmpty()) {
+      throw new MojoFailureException("No databases were specified");
+    }
+    String encoding = this.getSqlCharacterEncoding();
+    if (encoding == null) {
+      encoding = "UTF-8";
+    }
+    try {
+      final DatabaseChangeLog changeLog = this.parseChangeLog(changeLogFile.getAbsolutePath());
+      assert changeLog != null;
+      final String contexts = StringUtils.trimToNull(this.getContexts());
+      final ContextChangeSetFilter filter = contexts == null ? new ContextChangeSetFilter() : new ContextChangeSetFilter(contexts.split(","));
+      final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+      for (final ChangeSet changeSet : changeLog.getChangeSets()) {
+        if (filter.accepts(changeSet)) {
+          changeSets.add(changeSet);
+        }
+      }
+      if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+        throw new IOException("Could not create directory " + outputDirectory);
+      }
+      for (final String shortName : databases) {
+        if (shortName != null) {
+          final Database database;
+          try {
+            database = OfflineSqlRenderer.newDatabase(shortName);
+          } catch (final IllegalArgumentException e) {
+            throw new MojoFailureException(e.getMessage(), e);
+          }
+          assert database != null;
+          final OfflineSqlRenderer renderer = new OfflineSqlRenderer(database.getClass());
+          renderer.setLoadDataBatchSize(this.getLoadDataBatchSize());
+          renderer.setTrackChangeSets(this.getTrackChangeSets());
+          final File sqlFile = new File(outputDirectory, "update-" + database.getShortName() + ".sql");
+          if (log != null && log.isInfoEnabled()) {
+            log.info(String.format("Rendering %s", sqlFile));
+          }
+          final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(sqlFile), encoding));
+          try {
+            renderer.render(changeLogFile.getName(), changeSets, writer, this.getThreads());
+          } finally {
+            writer.close();
+          }
+        }
+      }
+    } catch (final LiquibaseException e) {
+      throw new MojoFailureException("Failure rendering SQL", e);
+    } catch (final IOException e) {
+      throw new MojoFailureException("Failure rendering SQL", e);
+    }
+  }
+
+}
@@ -0,0 +1,400 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.edugility.liquibase.ChangeLogResource;
+import com.edugility.liquibase.RollbackVerifier;
+import com.edugility.liquibase.URLResourceAccessor;
+
+import org.apache.maven.artifact.Artifact;
+
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import org.apache.maven.project.MavenProject;
+
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+import org.apache.maven.shared.dependency.graph.DependencyNode;
+
+/**
+ * Verifies the rollback blocks of the changelog fragments
+ * contributed to the current build by {@linkplain RollbackVerifier
+ * running} {@code update}, {@code rollback} and {@code update} again
+ * for each contributing artifact on its own in-memory database.
+ *
+ * <p>Each artifact's fragments are applied on top of the state left
+ * behind by the fragments of the artifacts it depends on, as given by
+ * the project's resolved dependency tree.  Artifacts that do not
+ * depend on one another are verified in parallel.</p>
+ *
+ * <p>Fragments are discovered using the same parameters as the
+ * {@link AssembleChangeLogMojo assembleChangeLog} goal.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see RollbackVerifier
+ */
+@Mojo(name = "verifyRollbacks", requiresDependencyResolution = ResolutionScope.TEST)
+public class VerifyRollbacksMojo extends AssembleChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The Liquibase contexts to apply; all changesets are applied if
+   * this is not set.
+   *
+   * @see #getContexts()
+   *
+   * @see #setContexts(String)
+   */
+  @Parameter
+  private String contexts;
+
+  /**
+   * The number of artifacts to verify in parallel; {@code 0}, meaning
+   * one per available processor, by default.
+   *
+   * @see #getThreads()
+   *
+   * @see #setThreads(int)
+   */
+  @Parameter(defaultValue = "0")
+  private int threads;
+
+  /**
+   * Whether artifacts that fail verification will fail the build,
+   * rather than merely be logged as warnings; {@code true} by
+   * default.
+   *
+   * @see #isFailOnError()
+   *
+   * @see #setFailOnError(boolean)
+   */
+  @Parameter(defaultValue = "true")
+  private boolean failOnError;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link VerifyRollbacksMojo}.
+   */
+  public VerifyRollbacksMojo() {
+    super();
+    this.failOnError = true;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the Liquibase contexts to apply.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the contexts, or {@code null}
+   *
+   * @see #setContexts(String)
+   */
+  public String getContexts() {
+    return this.contexts;
+  }
+
+  /**
+   * Sets the Liquibase contexts to apply.
+   *
+   * @param contexts the contexts; may be {@code null}
+   *
+   * @see #getContexts()
+   */
+  public void setContexts(final String contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * Returns the number of artifacts to verify in parallel.
+   *
+   * @return the number of threads; {@code 0} or less means one per
+   * available processor
+   *
+   * @see #setThreads(int)
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Sets the number of artifacts to verify in parallel.
+   *
+   * @param threads the number of threads; {@code 0} or less means one
+   * per available processor
+   *
+   * @see #getThreads()
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * Returns whether artifacts that fail verification will fail the
+   * build.
+   *
+   * @return {@code true} if artifacts that fail verification will
+   * fail the build; {@code false} if they will only be logged
+   *
+   * @see #setFailOnError(boolean)
+   */
+  public boolean isFailOnError() {
+    return this.failOnError;
+  }
+
+  /**
+   * Sets whether artifacts that fail verification will fail the
+   * build.
+   *
+   * @param failOnError whether artifacts that fail verification will
+   * fail the build
+   *
+   * @see #isFailOnError()
+   */
+  public void setFailOnError(final boolean failOnError) {
+    this.failOnError = failOnError;
+  }
+
+  /**
+   * Executes this {@link VerifyRollbacksMojo} by calling the {@link
+   * #verifyRollbacks()} method unless {@linkplain #getSkip()
+   * skipped}, and fails if any artifact failed verification and
+   * {@linkplain #isFailOnError() that is fatal}.
+   *
+   * @exception MojoFailureException if verification could not be
+   * performed, or if an artifact failed verification
+   *
+   * @see #verifyRollbacks()
+   */
+  @Override
+  public void execute() throws MojoFailureException {
+    final Log log = this.getLog();
+    if (this.getSkip()) {
+      if (log != null && log.isDebugEnabled()) {
+        log.debug("Skipping execution by request");
+      }
+    } else {
+      final List<RollbackVerifier.Result> results;
+      try {
+        results = this.verifyRollbacks();
+      } catch (final RuntimeException e) {
+        throw e;
+      } catch (final IOException e) {
+        throw new MojoFailureException("Failure verifying rollbacks", e);
+      } catch (final ArtifactResolutionException e) {
+        throw new MojoFailureException("Failure verifying rollbacks", e);
+      } catch (final DependencyGraphBuilderException e) {
+        throw new MojoFailureException("Failure verifying rollbacks", e);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoFailureException("Interrupted while verifying rollbacks", e);
+      }
+      assert results != null;
+      int failures = 0;
+      long nanos = 0L;
+      for (final RollbackVerifier.Result result : results) {
+        nanos += result.getNanos();
+        if (result.getStatus() == RollbackVerifier.Status.PASSED) {
+          if (log != null && log.isInfoEnabled()) {
+            log.info(String.format("%s: %d changesets; update %d ms, rollback %d ms, update %d ms (setup %d ms)",
+                                   result.getName(),
+                                   result.getChangeSetCount(),
+                                   result.getUpdateNanos() / 1000000L,
+                                   result.getRollbackNanos() / 1000000L,
+                                   result.getReupdateNanos() / 1000000L,
+                                   result.getSetupNanos() / 1000000L));
+          }
+        } else {
+          failures++;
+          if (log != null && log.isErrorEnabled()) {
+            log.error(result.toString(), log.isDebugEnabled() ? result.getCause() : null);
+          }
+        }
+      }
+      if (log != null && log.isInfoEnabled()) {
+        log.info(String.format("Verified %d artifacts (%d ms of work); %d failed or were skipped", results.size(), nanos / 1000000L, failures));
+      }
+      if (failures > 0 && this.isFailOnError()) {
+        throw new MojoFailureException(failures + " artifacts failed rollback verification; see the log above for details");
+      }
+    }
+  }
+
+  /**
+   * Discovers the changelog fragments contributed to the current
+   * build, groups them by artifact, and {@linkplain
+   * RollbackVerifier#verify(Collection,
+   * liquibase.resource.ResourceAccessor) verifies} each group.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link List} of {@link
+   * RollbackVerifier.Result}s in the order in which artifacts were
+   * verified
+   *
+   * @exception ArtifactResolutionException if an {@link Artifact}
+   * could not be resolved
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution
+   *
+   * @exception IOException if there was a problem with input or
+   * output
+   *
+   * @exception InterruptedException if the current thread was
+   * interrupted
+   */
+  public final List<RollbackVerifier.Result> verifyRollbacks() throws ArtifactResolutionException, DependencyGraphBuilderException, IOException, InterruptedException {
+    Collection<? extends ChangeLogResource> resources = this.getChangeLogResourceDescriptors();
+    if (this.isDeduplicate()) {
+      resources = this.deduplicate(resources);
+    }
+
+    // Group fragments by artifact.
+    final Map<String, List<String>> changeLogs = new LinkedHashMap<String, List<String>>();
+    final Map<String, String> unitNames = new HashMap<String, String>();
+    for (final ChangeLogResource resource : resources) {
+      String name = resource.getName();
+      if (resource instanceof ArtifactChangeLogResource) {
+        final Artifact artifact = ((ArtifactChangeLogResource)resource).getArtifact();
+        if (artifact != null) {
+          name = artifact.getId();
+          unitNames.put(artifact.getDependencyConflictId(), name);
+        }
+      }
+      List<String> list = changeLogs.get(name);
+      if (list == null) {
+        list = new ArrayList<String>();
+        changeLogs.put(name, list);
+      }
+      list.add(resource.getURL().toExternalForm());
+    }
+
+    final Map<String, Set<String>> prerequisites = new HashMap<String, Set<String>>();
+    if (!unitNames.isEmpty()) {
+      final MavenProject project = this.getProject();
+      if (project == null) {
+        throw new IllegalStateException("this.getProject()", new NullPointerException("this.getProject()"));
+      }
+      final DependencyGraphBuilder dependencyGraphBuilder = this.getDependencyGraphBuilder();
+      if (dependencyGraphBuilder == null) {
+        throw new IllegalStateException("this.getDependencyGraphBuilder()", new NullPointerException("this.getDependencyGraphBuilder()"));
+      }
+      collectPrerequisites(dependencyGraphBuilder.buildDependencyGraph(project, this.getArtifactFilter()), unitNames, prerequisites);
+    }
+
+    final List<RollbackVerifier.Unit> units = new ArrayList<RollbackVerifier.Unit>(changeLogs.size());
+    for (final Map.Entry<String, List<String>> entry : changeLogs.entrySet()) {
+      units.add(new RollbackVerifier.Unit(entry.getKey(), entry.getValue(), prerequisites.get(entry.getKey())));
+    }
+    final RollbackVerifier verifier = new RollbackVerifier();
+    verifier.setThreads(this.getThreads());
+    verifier.setContexts(this.getContexts());
+    verifier.setChangeLogParameters(this.getChangeLogParameters());
+    return verifier.verify(units, new URLResourceAccessor(this.getClass().getClassLoader()));
+  }
+
+  /**
+   * Records, for the supplied {@link DependencyNode} and each of its
+   * descendants that contributes changelogs, the names of the
+   * contributing artifacts below it in the dependency tree, and
+   * returns the names of the contributing artifacts at or below it.
+   *
+   * @param node the {@link DependencyNode}; may be {@code null}
+   *
+   * @param unitNames unit names indexed by {@linkplain
+   * Artifact#getDependencyConflictId() dependency conflict
+   * identifier}; must not be {@code null}
+   *
+   * @param prerequisites the prerequisites collected so far, indexed
+   * by unit name; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Set} of unit names
+   */
+  private static final Set<String> collectPrerequisites(final DependencyNode node, final Map<String, String> unitNames, final Map<String, Set<String>> prerequisites) {
+    final Set<String> below = new HashSet<String>();
+    if (node != null) {
+      final List<DependencyNode> children = node.getChildren();
+      if (children != null) {
+        for (final DependencyNode child : children) {
+          below.addAll(collectPrerequisites(child, unitNames, prerequisites));
+        }
+      }
+      final Artifact artifact = node.getArtifact();
+      final String name = artifact == null ? null : unitNames.get(artifact.getDependencyConflictId());
+      if (name != null) {
+        Set<String> set = prerequisites.get(name);
+        if (set == null) {
+          set = new HashSet<String>();
+          prerequisites.put(name, set);
+        }
+        set.addAll(below);
+        set.remove(name);
+        below.add(name);
+      }
+    }
+    return below;
+  }
+
+}
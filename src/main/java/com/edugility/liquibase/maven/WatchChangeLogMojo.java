@@ -0,0 +1,484 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.TimeUnit;
+
+import com.edugility.liquibase.ChangeLogResource;
+import com.edugility.liquibase.ResourceNamePatterns;
+
+import org.apache.maven.artifact.Artifact;
+
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+
+/**
+ * {@linkplain AssembleChangeLogMojo Assembles the changelog} and then
+ * keeps running, re-assembling it whenever a changelog fragment
+ * changes, until interrupted.
+ *
+ * <p>Dependencies are resolved and every artifact is scanned once,
+ * at startup.  The output directories of the current project and of
+ * any reactor dependencies, and the files of dependencies that are
+ * SNAPSHOTs, are then watched using a {@link WatchService}.  When
+ * something changes, this goal waits for a {@linkplain
+ * #getQuietPeriod() quiet period} so that a burst of changes, such as
+ * a rebuild, is handled once, rescans only the artifacts whose
+ * locations changed, and writes the {@linkplain #getOutputFile()
+ * output file} and its companions again.  Scan results, including
+ * content hashes, for other artifacts are reused.</p>
+ *
+ * <p>Directories that do not exist when the goal starts are not
+ * watched.  Released dependencies never change and so are not
+ * watched either.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see AssembleChangeLogMojo#assembleChangeLog(String, Collection)
+ */
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.TEST)
+public class WatchChangeLogMojo extends AssembleChangeLogMojo {
+
+
+  /*
+   * Instance fields and plugin parameters.
+   */
+
+
+  /**
+   * The number of milliseconds without further changes to wait
+   * before re-assembling; {@code 50} by default.
+   *
+   * @see #getQuietPeriod()
+   *
+   * @see #setQuietPeriod(long)
+   */
+  @Parameter(defaultValue = "50")
+  private long quietPeriod;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link WatchChangeLogMojo}.
+   */
+  public WatchChangeLogMojo() {
+    super();
+    this.quietPeriod = 50L;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the number of milliseconds without further changes to
+   * wait before re-assembling.
+   *
+   * @return the quiet period in milliseconds
+   *
+   * @see #setQuietPeriod(long)
+   */
+  public long getQuietPeriod() {
+    return this.quietPeriod;
+  }
+
+  /**
+   * Sets the number of milliseconds without further changes to wait
+   * before re-assembling.
+   *
+   * @param quietPeriod the quiet period in milliseconds; must not be
+   * negative
+   *
+   * @exception IllegalArgumentException if {@code quietPeriod} is
+   * negative
+   *
+   * @see #getQuietPeriod()
+   */
+  public void setQuietPeriod(final long quietPeriod) {
+    if (quietPeriod < 0L) {
+      throw new IllegalArgumentException("quietPeriod < 0: " + quietPeriod);
+    }
+    this.quietPeriod = quietPeriod;
+  }
+
+  /**
+   * Executes this {@link WatchChangeLogMojo} by calling the {@link
+   * #watch()} method unless {@linkplain #getSkip() skipped}.
+   *
+   * @exception MojoFailureException if the changelog could not be
+   * assembled or the watch could not be established
+   *
+   * @see #watch()
+   */
+  @Override
+  public void execute() throws MojoFailureException {
+    final Log log = this.getLog();
+    if (this.getSkip()) {
+      if (log != null && log.isDebugEnabled()) {
+        log.debug("Skipping execution by request");
+      }
+    } else {
+      try {
+        this.watch();
+      } catch (final RuntimeException e) {
+        throw e;
+      } catch (final IOException e) {
+        throw new MojoFailureException("Failure watching changelogs", e);
+      } catch (final ArtifactResolutionException e) {
+        throw new MojoFailureException("Failure watching changelogs", e);
+      } catch (final DependencyGraphBuilderException e) {
+        throw new MojoFailureException("Failure watching changelogs", e);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (log != null && log.isInfoEnabled()) {
+          log.info("Stopped watching changelogs");
+        }
+      }
+    }
+  }
+
+  /**
+   * Assembles the changelog and re-assembles it whenever a watched
+   * location changes, until the current thread is interrupted.
+   *
+   * @exception ArtifactResolutionException if an {@link Artifact}
+   * could not be resolved
+   *
+   * @exception DependencyGraphBuilderException if there was a problem
+   * with dependency resolution
+   *
+   * @exception IOException if there was a problem with input or
+   * output
+   *
+   * @exception InterruptedException if the current thread was
+   * interrupted, which is the normal way for this method to end
+   */
+  public final void watch() throws ArtifactResolutionException, DependencyGraphBuilderException, IOException, InterruptedException {
+    final Log log = this.getLog();
+    final URL changeLogTemplateResource = this.getChangeLogTemplateResource();
+    if (changeLogTemplateResource == null) {
+      throw new IOException("No changelog template could be found");
+    }
+    final String templateContents = this.readTemplate(changeLogTemplateResource);
+
+    final Collection<? extends Artifact> artifacts = this.getArtifactsInTopologicalOrder();
+    final Map<Artifact, Collection<? extends ChangeLogResource>> scans = new LinkedHashMap<Artifact, Collection<? extends ChangeLogResource>>();
+    if (artifacts != null) {
+      for (final Artifact artifact : artifacts) {
+        if (artifact != null) {
+          scans.put(artifact, this.getChangeLogResourceDescriptors(Collections.singleton(artifact)));
+        }
+      }
+    }
+    this.assembleChangeLog(templateContents, this.merge(scans));
+
+    final WatchService watchService = FileSystems.getDefault().newWatchService();
+    try {
+      final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+      final Map<Path, Set<Artifact>> trees = new HashMap<Path, Set<Artifact>>();
+      final Map<Path, Set<Artifact>> files = new HashMap<Path, Set<Artifact>>();
+      for (final Artifact artifact : scans.keySet()) {
+        for (final URL url : this.toURLs(artifact)) {
+          final Path path = toPath(url);
+          if (path != null) {
+            if (Files.isDirectory(path)) {
+              register(watchService, path, Collections.singleton(artifact), directories, trees);
+            } else if (Files.isRegularFile(path) && artifact.isSnapshot()) {
+              final Path parent = path.getParent();
+              if (parent != null) {
+                add(files, path, artifact);
+                if (!directories.containsValue(parent)) {
+                  directories.put(parent.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), parent);
+                }
+              }
+            }
+          }
+        }
+      }
+      if (log != null && log.isInfoEnabled()) {
+        log.info(String.format("Watching %d directories for changes to the changelogs of %d artifacts; interrupt to stop", directories.size(), scans.size()));
+      }
+
+      while (true) {
+        final Set<Artifact> changed = new LinkedHashSet<Artifact>();
+        WatchKey key = watchService.take();
+        final long start = System.nanoTime();
+        while (key != null) {
+          this.process(key, watchService, directories, trees, files, changed);
+          key = watchService.poll(this.getQuietPeriod(), TimeUnit.MILLISECONDS);
+        }
+        if (!changed.isEmpty()) {
+          for (final Artifact artifact : changed) {
+            for (final URL url : this.toURLs(artifact)) {
+              evictJarFile(toPath(url));
+            }
+            scans.put(artifact, this.getChangeLogResourceDescriptors(Collections.singleton(artifact)));
+          }
+          try {
+            this.assembleChangeLog(templateContents, this.merge(scans));
+            if (log != null && log.isInfoEnabled()) {
+              log.info(String.format("Re-assembled %s in %d ms after changes to %s", this.getOutputFile(), (System.nanoTime() - start) / 1000000L, changed));
+            }
+          } catch (final IOException e) {
+            // Keep watching; the next save will probably fix it.
+            if (log != null && log.isErrorEnabled()) {
+              log.error("Failure re-assembling changelog", e);
+            }
+          }
+        }
+      }
+    } finally {
+      watchService.close();
+    }
+  }
+
+  /**
+   * Handles the events of the supplied {@link WatchKey}, adding the
+   * {@link Artifact}s whose locations changed to the supplied {@link
+   * Set}, watching newly created directories, and resetting the key.
+   *
+   * @param key the {@link WatchKey}; must not be {@code null}
+   *
+   * @param watchService the {@link WatchService}; must not be {@code
+   * null}
+   *
+   * @param directories the watched directories, indexed by {@link
+   * WatchKey}; must not be {@code null}
+   *
+   * @param trees the {@link Artifact}s owning each watched directory
+   * tree; must not be {@code null}
+   *
+   * @param files the {@link Artifact}s owning each watched file; must
+   * not be {@code null}
+   *
+   * @param changed the {@link Set} of changed {@link Artifact}s; must
+   * not be {@code null}
+   *
+   * @exception IOException if a new directory could not be watched
+   */
+  private final void process(final WatchKey key, final WatchService watchService, final Map<WatchKey, Path> directories, final Map<Path, Set<Artifact>> trees, final Map<Path, Set<Artifact>> files, final Set<Artifact> changed) throws IOException {
+    final Path directory = directories.get(key);
+    if (directory != null) {
+      final Set<Artifact> owners = trees.get(directory);
+      for (final WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          if (owners != null) {
+            changed.addAll(owners);
+          }
+          for (final Map.Entry<Path, Set<Artifact>> entry : files.entrySet()) {
+            if (directory.equals(entry.getKey().getParent())) {
+              changed.addAll(entry.getValue());
+            }
+          }
+        } else {
+          final Path child = directory.resolve((Path)event.context());
+          final Set<Artifact> fileOwners = files.get(child);
+          if (fileOwners != null) {
+            changed.addAll(fileOwners);
+          }
+          if (owners != null) {
+            changed.addAll(owners);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+              register(watchService, child, owners, directories, trees);
+            }
+          }
+        }
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  /**
+   * Returns the changelog fragments of the supplied per-artifact
+   * scans in the order in which {@link
+   * #getChangeLogResourceDescriptors(Iterable)} would have returned
+   * them for all of the artifacts at once: grouped by resource name
+   * and, within each name, in artifact order.
+   *
+   * @param scans the fragments of each {@link Artifact}, in artifact
+   * order; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Collection}
+   */
+  private final Collection<? extends ChangeLogResource> merge(final Map<Artifact, Collection<? extends ChangeLogResource>> scans) {
+    final List<ChangeLogResource> returnValue = new ArrayList<ChangeLogResource>();
+    final List<String> names = this.getChangeLogResourceNames();
+    if (names != null) {
+      final ResourceNamePatterns patterns = ResourceNamePatterns.of(names);
+      for (final String name : names) {
+        if (name != null) {
+          for (final Collection<? extends ChangeLogResource> resources : scans.values()) {
+            returnValue.addAll(patterns.select(resources, name));
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Watches the supplied directory and all of its subdirectories on
+   * behalf of the supplied {@link Artifact}s.
+   *
+   * @param watchService the {@link WatchService}; must not be {@code
+   * null}
+   *
+   * @param root the directory; must not be {@code null}
+   *
+   * @param owners the {@link Artifact}s; must not be {@code null}
+   *
+   * @param directories the watched directories, indexed by {@link
+   * WatchKey}; must not be {@code null}
+   *
+   * @param trees the {@link Artifact}s owning each watched directory
+   * tree; must not be {@code null}
+   *
+   * @exception IOException if a directory could not be watched
+   */
+  private static final void register(final WatchService watchService, final Path root, final Set<Artifact> owners, final Map<WatchKey, Path> directories, final Map<Path, Set<Artifact>> trees) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public final FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes) throws IOException {
+          directories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), directory);
+          for (final Artifact owner : owners) {
+            add(trees, directory, owner);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+  }
+
+  /**
+   * Adds the supplied {@link Artifact} to the {@link Set} indexed by
+   * the supplied {@link Path}.
+   *
+   * @param map the {@link Map}; must not be {@code null}
+   *
+   * @param path the {@link Path}; must not be {@code null}
+   *
+   * @param artifact the {@link Artifact}; must not be {@code null}
+   */
+  private static final void add(final Map<Path, Set<Artifact>> map, final Path path, final Artifact artifact) {
+    Set<Artifact> set = map.get(path);
+    if (set == null) {
+      set = new HashSet<Artifact>();
+      map.put(path, set);
+    }
+    set.add(artifact);
+  }
+
+  /**
+   * Returns the {@link Path} denoted by the supplied {@code file:}
+   * {@link URL}, or {@code null} if it is not a {@code file:} {@link
+   * URL}.
+   *
+   * @param url the {@link URL}; may be {@code null}
+   *
+   * @return a {@link Path}, or {@code null}
+   */
+  private static final Path toPath(final URL url) {
+    if (url == null || !"file".equals(url.getProtocol())) {
+      return null;
+    }
+    try {
+      return new File(url.toURI()).toPath();
+    } catch (final URISyntaxException e) {
+      return new File(url.getPath()).toPath();
+    }
+  }
+
+  /**
+   * Closes and so evicts any {@link java.util.jar.JarFile} that the
+   * JDK has cached for the supplied jar, so that {@code jar:} {@link
+   * URL}s into it see its new contents.
+   *
+   * @param path the {@link Path} of a jar file; may be {@code null}
+   */
+  private static final void evictJarFile(final Path path) {
+    if (path != null && Files.isRegularFile(path)) {
+      try {
+        final URLConnection connection = new URL("jar:" + path.toUri().toURL() + "!/").openConnection();
+        if (connection instanceof JarURLConnection) {
+          ((JarURLConnection)connection).getJarFile().close();
+        }
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ChangeLogAssembler}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseChangeLogAssembler {
+
+  public TestCaseChangeLogAssembler() {
+    super();
+  }
+
+  @Test
+  public void testDefaultOutputEscapesParametersAndIncludes() throws Exception {
+    final ChangeLogAssembler assembler = new ChangeLogAssembler();
+    final Properties changeLogParameters = new Properties();
+    changeLogParameters.setProperty("condition", "a < b && c > \"d\"");
+    assembler.setChangeLogParameters(changeLogParameters);
+    final StringWriter writer = new StringWriter();
+    assembler.write(Arrays.asList("jar:file:/tmp/a&b.jar!/META-INF/liquibase/changelog.xml", "file:/tmp/\"quoted\".xml"), writer);
+
+    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    final Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(writer.toString().getBytes("UTF-8")));
+    final Element root = document.getDocumentElement();
+    assertEquals("http://www.liquibase.org/xml/ns/dbchangelog", root.getNamespaceURI());
+    assertEquals("databaseChangeLog", root.getLocalName());
+    assertTrue(root.getAttributeNS("http://www.w3.org/2001/XMLSchema-instance", "schemaLocation").endsWith("/dbchangelog-3.0.xsd"));
+
+    final NodeList properties = root.getElementsByTagNameNS("http://www.liquibase.org/xml/ns/dbchangelog", "property");
+    assertEquals(1, properties.getLength());
+    assertEquals("condition", ((Element)properties.item(0)).getAttribute("name"));
+    assertEquals("a < b && c > \"d\"", ((Element)properties.item(0)).getAttribute("value"));
+
+    final NodeList includes = root.getElementsByTagNameNS("http://www.liquibase.org/xml/ns/dbchangelog", "include");
+    assertEquals(2, includes.getLength());
+    assertEquals("jar:file:/tmp/a&b.jar!/META-INF/liquibase/changelog.xml", ((Element)includes.item(0)).getAttribute("file"));
+    assertEquals("file:/tmp/\"quoted\".xml", ((Element)includes.item(1)).getAttribute("file"));
+  }
+
+}
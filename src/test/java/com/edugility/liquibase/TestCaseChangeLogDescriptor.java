@@ -0,0 +1,164 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import java.net.URL;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ChangeLogDescriptor}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseChangeLogDescriptor {
+
+  private static final String CHANGELOG = "<databaseChangeLog><changeSet id=\"1\" author=\"a\"/><changeSet id=\"2\" author=\"a\"/></databaseChangeLog>";
+
+  private File file;
+
+  private CountingChangeLogResource resource;
+
+  public TestCaseChangeLogDescriptor() {
+    super();
+  }
+
+  @Before
+  public void createChangeLog() throws IOException {
+    this.file = File.createTempFile("changelog", ".xml");
+    assertNotNull(this.file);
+    final OutputStream stream = new FileOutputStream(this.file);
+    try {
+      stream.write(CHANGELOG.getBytes("UTF-8"));
+    } finally {
+      stream.close();
+    }
+    this.resource = new CountingChangeLogResource(this.file.toURI().toURL(), "META-INF/liquibase/changelog.xml");
+  }
+
+  @After
+  public void deleteChangeLog() {
+    if (this.file != null) {
+      this.file.delete();
+    }
+  }
+
+  @Test
+  public void testTemplateThatIgnoresDetailsReadsNothing() throws IOException {
+    final String output = this.merge("@foreach{resource : resources}<include file=\"@{resource}\"/>@end{}");
+    assertEquals("<include file=\"" + this.file.toURI().toURL().toExternalForm() + "\"/>", output);
+    assertEquals(0, this.resource.opens);
+  }
+
+  @Test
+  public void testDetailsAreReadOnceEach() throws IOException {
+    final String output = this.merge("@foreach{resource : resources}@{resource.contentHash} @{resource.contentHash} @{resource.size} @{resource.size} @{resource.changeSetCount} @{resource.changeSetCount}@end{}");
+    final String contentHash = Digests.hash(this.file.toURI().toURL());
+    final int size = CHANGELOG.getBytes("UTF-8").length;
+    assertEquals(contentHash + " " + contentHash + " " + size + " " + size + " 2 2", output);
+    // One read apiece for the content hash, the size and the
+    // changeset count, however often each is used.
+    assertEquals(3, this.resource.opens);
+  }
+
+  @Test
+  public void testURLMethods() throws Exception {
+    final URL url = this.file.toURI().toURL();
+    final ChangeLogDescriptor descriptor = new ChangeLogDescriptor(this.resource, "META-INF/liquibase/changelog.xml");
+    assertEquals("META-INF/liquibase/changelog.xml", descriptor.toString());
+    assertEquals(url.toExternalForm(), descriptor.toExternalForm());
+    assertEquals(url.toURI(), descriptor.toURI());
+    assertEquals("file", descriptor.getProtocol());
+    assertEquals(url.getPath(), descriptor.getPath());
+    assertEquals(url.getFile(), descriptor.getFile());
+    assertEquals(-1, descriptor.getPort());
+    assertTrue(descriptor.sameFile(url));
+    assertEquals(CHANGELOG, read(descriptor.openStream()));
+    assertEquals(CHANGELOG, read(descriptor.openConnection().getInputStream()));
+    // Templates written for URL elements keep working.
+    assertEquals(url.getPath(), this.merge("@foreach{resource : resources}@{resource.path}@end{}"));
+  }
+
+  private final String merge(final String template) throws IOException {
+    final ChangeLogAssembler assembler = new ChangeLogAssembler();
+    assembler.setTemplate(template);
+    final List<ChangeLogDescriptor> descriptors = Arrays.asList(new ChangeLogDescriptor(this.resource, this.resource.toString()));
+    final StringWriter writer = new StringWriter();
+    assembler.write(descriptors, writer);
+    return writer.toString();
+  }
+
+  private static final String read(final InputStream stream) throws IOException {
+    assertNotNull(stream);
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      int b;
+      while ((b = stream.read()) >= 0) {
+        bytes.write(b);
+      }
+      return bytes.toString("UTF-8");
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static final class CountingChangeLogResource extends ChangeLogResource {
+
+    private int opens;
+
+    private CountingChangeLogResource(final URL url, final String name) {
+      super(url, name);
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+      this.opens++;
+      return super.openStream();
+    }
+
+  }
+
+}
@@ -0,0 +1,126 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import java.net.URL;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ChangeLogDiff}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseChangeLogDiff {
+
+  public TestCaseChangeLogDiff() {
+    super();
+  }
+
+  @Test
+  public void testClassification() throws IOException {
+    final Map<String, ChangeLogResource> previous = new LinkedHashMap<String, ChangeLogResource>();
+    previous.put("g:removed:changelog.xml", resource("removed-1.0", "r"));
+    previous.put("g:unchanged:changelog.xml", resource("unchanged-1.0", "u"));
+    previous.put("g:modified:changelog.xml", resource("modified-1.0", "m1"));
+
+    final Map<String, ChangeLogResource> current = new LinkedHashMap<String, ChangeLogResource>();
+    final ChangeLogResource modified = resource("modified-2.0", "m2");
+    current.put("g:modified:changelog.xml", modified);
+    final ChangeLogResource added = resource("added-2.0", "a");
+    current.put("g:added:changelog.xml", added);
+    current.put("g:unchanged:changelog.xml", resource("unchanged-2.0", "u"));
+
+    final ChangeLogDiff diff = ChangeLogDiff.compute(previous, current);
+    final List<ChangeLogDiff.Entry> entries = diff.getEntries();
+    assertEquals(4, entries.size());
+
+    // Current order first, then removed changelogs.
+    assertEquals(ChangeLogDiff.Status.MODIFIED, entries.get(0).getStatus());
+    assertEquals("g:modified:changelog.xml", entries.get(0).getKey());
+    assertEquals("m1", entries.get(0).getPreviousContentHash());
+    assertEquals("m2", entries.get(0).getCurrentContentHash());
+    assertSame(modified, entries.get(0).getResource());
+
+    assertEquals(ChangeLogDiff.Status.ADDED, entries.get(1).getStatus());
+    assertNull(entries.get(1).getPreviousContentHash());
+    assertEquals("a", entries.get(1).getCurrentContentHash());
+
+    assertEquals(ChangeLogDiff.Status.UNCHANGED, entries.get(2).getStatus());
+    assertEquals("g:unchanged:changelog.xml", entries.get(2).getKey());
+
+    assertEquals(ChangeLogDiff.Status.REMOVED, entries.get(3).getStatus());
+    assertEquals("g:removed:changelog.xml", entries.get(3).getKey());
+    assertEquals("r", entries.get(3).getPreviousContentHash());
+    assertNull(entries.get(3).getCurrentContentHash());
+    assertNull(entries.get(3).getResource());
+
+    assertEquals(1, diff.count(ChangeLogDiff.Status.ADDED));
+    assertEquals(1, diff.count(ChangeLogDiff.Status.MODIFIED));
+    assertEquals(1, diff.count(ChangeLogDiff.Status.UNCHANGED));
+    assertEquals(1, diff.count(ChangeLogDiff.Status.REMOVED));
+    assertEquals(Arrays.asList(modified, added), diff.getChangedResources());
+
+    final StringWriter writer = new StringWriter();
+    diff.write(writer);
+    final String[] lines = writer.toString().split("\n");
+    assertEquals(5, lines.length);
+    assertTrue(lines[0].startsWith("#"));
+    assertEquals("MODIFIED\tg:modified:changelog.xml\tm1\tm2", lines[1]);
+    assertEquals("ADDED\tg:added:changelog.xml\t-\ta", lines[2]);
+    assertEquals("REMOVED\tg:removed:changelog.xml\tr\t-", lines[4]);
+  }
+
+  @Test
+  public void testNoPreviousVersion() throws IOException {
+    final Map<String, ChangeLogResource> current = new LinkedHashMap<String, ChangeLogResource>();
+    current.put("g:a:changelog.xml", resource("a", "a"));
+    final ChangeLogDiff diff = ChangeLogDiff.compute(null, current);
+    assertEquals(1, diff.count(ChangeLogDiff.Status.ADDED));
+    assertTrue(ChangeLogDiff.compute(null, null).getEntries().isEmpty());
+  }
+
+  private static final ChangeLogResource resource(final String jar, final String contentHash) throws IOException {
+    return new ChangeLogResource(new URL("jar:file:/tmp/" + jar + ".jar!/META-INF/liquibase/changelog.xml"), "META-INF/liquibase/changelog.xml", contentHash);
+  }
+
+}
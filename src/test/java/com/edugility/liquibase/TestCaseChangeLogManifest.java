@@ -0,0 +1,178 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.parser.ChangeLogParser;
+import liquibase.parser.ChangeLogParserFactory;
+
+import liquibase.resource.ResourceAccessor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that a {@link ChangeLogManifest} written by a {@link
+ * ChangeLogManifestWriter} reads back exactly what Liquibase parsed.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseChangeLogManifest {
+
+  private List<ChangeSet> changeSets;
+
+  public TestCaseChangeLogManifest() {
+    super();
+  }
+
+  @Before
+  public void parseChangeLog() throws Exception {
+    final String name = "changelogs/manifest/changelog.xml";
+    final ResourceAccessor resourceAccessor = new URLResourceAccessor(Thread.currentThread().getContextClassLoader());
+    final ChangeLogParser parser = ChangeLogParserFactory.getInstance().getParser(name, resourceAccessor);
+    assertNotNull(parser);
+    final DatabaseChangeLog changeLog = parser.parse(name, new ChangeLogParameters(), resourceAccessor);
+    assertNotNull(changeLog);
+    this.changeSets = changeLog.getChangeSets();
+    assertNotNull(this.changeSets);
+    assertEquals(4, this.changeSets.size());
+  }
+
+  @Test
+  public void testFileRoundTrip() throws IOException {
+    final File file = File.createTempFile("changelog", ".bin");
+    file.deleteOnExit();
+    new ChangeLogManifestWriter().write(this.changeSets, file);
+    this.assertDescribes(new ChangeLogManifest(file));
+    this.assertDescribes(ChangeLogManifest.load(file.toURI().toURL()));
+    assertTrue(file.delete());
+  }
+
+  @Test
+  public void testBufferRoundTrip() throws IOException {
+    this.assertDescribes(new ChangeLogManifest(ByteBuffer.wrap(this.write())));
+  }
+
+  @Test
+  public void testAttributes() throws IOException {
+    final ChangeLogManifest changeLog = new ChangeLogManifest(ByteBuffer.wrap(this.write()));
+
+    final ChangeLogManifestEntry first = changeLog.get(0);
+    assertEquals("1", first.getId());
+    assertEquals("ljnelson", first.getAuthor());
+    assertEquals("fragment", first.getFilePath());
+    assertEquals("Creates the person table.", first.getComments());
+    assertTrue(first.getContexts().isEmpty());
+    assertNull(first.getFailOnError());
+
+    final ChangeLogManifestEntry third = changeLog.get(2);
+    assertEquals("changelogs/manifest/changelog.xml", third.getFilePath());
+    assertEquals(1, third.getContexts().size());
+    assertTrue(third.getContexts().contains("test"));
+    assertTrue(third.isRunOnChange());
+    assertFalse(third.isAlwaysRun());
+
+    final ChangeLogManifestEntry fourth = changeLog.get(3);
+    assertEquals(2, fourth.getDbmsSet().size());
+    assertTrue(fourth.getDbmsSet().contains("postgresql"));
+    assertTrue(fourth.isAlwaysRun());
+    assertFalse(fourth.isRunInTransaction());
+    assertEquals(Boolean.FALSE, fourth.getFailOnError());
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new ChangeLogManifestWriter().write(null, bytes);
+    assertTrue(new ChangeLogManifest(ByteBuffer.wrap(bytes.toByteArray())).isEmpty());
+  }
+
+  @Test
+  public void testNotAChangeLogManifest() {
+    try {
+      new ChangeLogManifest(ByteBuffer.wrap("<databaseChangeLog/>".getBytes()));
+      fail();
+    } catch (final IOException expected) {
+
+    }
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    final byte[] all = this.write();
+    try {
+      new ChangeLogManifest(ByteBuffer.wrap(all, 0, ChangeLogManifest.HEADER_SIZE + 4));
+      fail();
+    } catch (final IOException expected) {
+
+    }
+  }
+
+  private final byte[] write() throws IOException {
+    final List<ChangeLogManifestEntry> entries = new ArrayList<ChangeLogManifestEntry>();
+    for (final ChangeSet changeSet : this.changeSets) {
+      entries.add(new ChangeLogManifestEntry(changeSet));
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new ChangeLogManifestWriter().write(entries, bytes);
+    return bytes.toByteArray();
+  }
+
+  private final void assertDescribes(final ChangeLogManifest manifest) {
+    assertNotNull(manifest);
+    assertEquals(this.changeSets.size(), manifest.size());
+    for (int i = 0; i < this.changeSets.size(); i++) {
+      final ChangeSet changeSet = this.changeSets.get(i);
+      final ChangeLogManifestEntry entry = manifest.get(i);
+      assertTrue(entry.toString(), entry.describes(changeSet));
+      assertEquals(changeSet.generateCheckSum(), entry.getCheckSum());
+      assertEquals(changeSet.generateCheckSum().toString(), entry.getCheckSum().toString());
+    }
+  }
+
+}
@@ -0,0 +1,225 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.parser.ChangeLogParserFactory;
+
+import liquibase.resource.FileSystemResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link ChangeLogPruner}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseChangeLogPruner {
+
+  private static final String HEADER =
+    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+    "<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\"\n" +
+    "                   xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+    "                   xsi:schemaLocation=\"http://www.liquibase.org/xml/ns/dbchangelog http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.0.xsd\"";
+
+  private File directory;
+
+  private ResourceAccessor resourceAccessor;
+
+  private File outputFile;
+
+  public TestCaseChangeLogPruner() {
+    super();
+  }
+
+  @Before
+  public void createChangeLogs() throws IOException {
+    this.directory = File.createTempFile("pruner", "");
+    assertNotNull(this.directory);
+    this.directory.delete();
+    this.directory.mkdirs();
+    write("master.xml", HEADER + ">\n" +
+          "  <include file=\"a.xml\" relativeToChangelogFile=\"true\"/>\n" +
+          "  <include file=\"b.xml\" relativeToChangelogFile=\"true\"/>\n" +
+          "</databaseChangeLog>\n");
+    write("a.xml", HEADER + ">\n" +
+          changeSet("1", " context=\"prod\"") +
+          changeSet("2", " runOnChange=\"true\"") +
+          changeSet("3", " context=\"test, qa\"") +
+          "</databaseChangeLog>\n");
+    write("b.xml", HEADER + " logicalFilePath=\"legacy/b.xml\">\n" +
+          changeSet("4", " context=\"test\"") +
+          "</databaseChangeLog>\n");
+    this.resourceAccessor = new FileSystemResourceAccessor(this.directory.getAbsolutePath());
+    this.outputFile = new File(new File(this.directory, "out"), "pruned.xml");
+    this.outputFile.getParentFile().mkdirs();
+  }
+
+  @After
+  public void deleteChangeLogs() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testContexts() throws Exception {
+    final StringWriter report = new StringWriter();
+    final ChangeLogPruner.Summary summary = new ChangeLogPruner(new ContextChangeSetFilter("PROD")).prune("master.xml", this.resourceAccessor, this.outputFile, report);
+    assertEquals(4, summary.getChangeSetCount());
+    assertEquals(2, summary.getOmittedCount());
+    assertEquals(2, summary.getKeptCount());
+    assertEquals(1, summary.getCount(ContextChangeSetFilter.MATCHED));
+    assertEquals(1, summary.getCount(ContextChangeSetFilter.ANY_CONTEXT));
+    final String nl = System.getProperty("line.separator", "\n");
+    assertEquals("MATCHED\ta.xml::1::test" + nl + "ANY_CONTEXT\ta.xml::2::test" + nl, report.toString());
+    // b.xml has nothing left, so it is not included at all.
+    assertEquals(Arrays.asList("a.xml::1::test", "a.xml::2::test"), identities(parse()));
+    assertFalse(new File(this.outputFile.getParentFile(), "pruned.xml.includes/0002.xml").exists());
+  }
+
+  @Test
+  public void testContextsMatchAnyOfSeveral() throws Exception {
+    final ChangeLogPruner.Summary summary = new ChangeLogPruner(new ContextChangeSetFilter(Arrays.asList("qa"))).prune("master.xml", this.resourceAccessor, this.outputFile, null);
+    assertEquals(1, summary.getCount(ContextChangeSetFilter.MATCHED));
+    assertEquals(Arrays.asList("a.xml::2::test", "a.xml::3::test"), identities(parse()));
+  }
+
+  @Test
+  public void testPending() throws Exception {
+    final RanChangeSetIndex ranChangeSets = new RanChangeSetIndex();
+    ranChangeSets.add("a.xml", "1", "test");
+    ranChangeSets.add("a.xml", "2", "test");
+    // Applied under its logicalFilePath, not the file it lives in.
+    ranChangeSets.add("legacy/b.xml", "4", "test");
+    ranChangeSets.add("gone.xml", "5", "test");
+    final StringWriter report = new StringWriter();
+    final ChangeLogPruner.Summary summary = new ChangeLogPruner(ranChangeSets).prune("master.xml", this.resourceAccessor, this.outputFile, report);
+    assertEquals(4, summary.getChangeSetCount());
+    assertEquals(2, summary.getOmittedCount());
+    assertEquals(1, summary.getCount(PendingChangeSetFilter.PENDING));
+    assertEquals(1, summary.getCount(PendingChangeSetFilter.RERUNNABLE));
+    assertEquals(1, ranChangeSets.getUnmatchedCount());
+    final String nl = System.getProperty("line.separator", "\n");
+    assertEquals("RERUNNABLE\ta.xml::2::test" + nl + "PENDING\ta.xml::3::test" + nl, report.toString());
+    // The copies keep the identities Liquibase knows the changesets
+    // by.
+    assertEquals(Arrays.asList("a.xml::2::test", "a.xml::3::test"), identities(parse()));
+  }
+
+  @Test
+  public void testNothingPending() throws Exception {
+    final RanChangeSetIndex ranChangeSets = new RanChangeSetIndex();
+    ranChangeSets.add("a.xml", "1", "test");
+    ranChangeSets.add("a.xml", "2", "test");
+    ranChangeSets.add("a.xml", "3", "test");
+    ranChangeSets.add("legacy/b.xml", "4", "test");
+    final ChangeLogPruner.Summary summary = new ChangeLogPruner(ranChangeSets).prune("master.xml", this.resourceAccessor, this.outputFile, null);
+    assertEquals(0, summary.getCount(PendingChangeSetFilter.PENDING));
+    assertEquals(0, ranChangeSets.getUnmatchedCount());
+    // Only the runOnChange changeset is left.
+    assertEquals(Arrays.asList("a.xml::2::test"), identities(parse()));
+  }
+
+  @Test
+  public void testChangeSetInAssembledChangeLog() throws IOException {
+    write("bad.xml", HEADER + ">\n" + changeSet("1", "") + "</databaseChangeLog>\n");
+    try {
+      new ChangeLogPruner(new ContextChangeSetFilter("prod")).prune("bad.xml", this.resourceAccessor, this.outputFile, null);
+      fail();
+    } catch (final IOException expected) {
+
+    }
+  }
+
+  private final DatabaseChangeLog parse() throws Exception {
+    final String path = this.outputFile.getAbsolutePath();
+    return ChangeLogParserFactory.getInstance().getParser(path, this.resourceAccessor).parse(path, new ChangeLogParameters(), new FileSystemResourceAccessor());
+  }
+
+  private static final String changeSet(final String id, final String attributes) {
+    return
+      "  <changeSet id=\"" + id + "\" author=\"test\"" + attributes + ">\n" +
+      "    <createTable tableName=\"t" + id + "\">\n" +
+      "      <column name=\"id\" type=\"bigint\"/>\n" +
+      "    </createTable>\n" +
+      "  </changeSet>\n";
+  }
+
+  private static final List<String> identities(final DatabaseChangeLog changeLog) {
+    assertNotNull(changeLog);
+    final List<String> returnValue = new ArrayList<String>();
+    for (final ChangeSet changeSet : changeLog.getChangeSets()) {
+      returnValue.add(changeSet.getFilePath() + "::" + changeSet.getId() + "::" + changeSet.getAuthor());
+    }
+    return returnValue;
+  }
+
+  private final void write(final String name, final String contents) throws IOException {
+    final Writer writer = new OutputStreamWriter(new FileOutputStream(new File(this.directory, name)), "UTF-8");
+    try {
+      writer.write(contents);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static final void delete(final File file) {
+    if (file != null) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+        for (final File child : children) {
+          delete(child);
+        }
+      }
+      file.delete();
+    }
+  }
+
+}
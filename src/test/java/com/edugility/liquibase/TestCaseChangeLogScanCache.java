@@ -0,0 +1,198 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ChangeLogScanCache}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseChangeLogScanCache {
+
+  private File directory;
+
+  private File jarFile;
+
+  private ChangeLogScanCache cache;
+
+  public TestCaseChangeLogScanCache() {
+    super();
+  }
+
+  @Before
+  public void createJarFile() throws IOException {
+    this.directory = File.createTempFile("scans", "");
+    assertNotNull(this.directory);
+    this.directory.delete();
+    this.directory.mkdirs();
+    this.jarFile = new File(this.directory, "a.jar");
+    final JarOutputStream jar = new JarOutputStream(new FileOutputStream(this.jarFile));
+    try {
+      jar.putNextEntry(new ZipEntry("META-INF/liquibase/changelog.xml"));
+      jar.write("<databaseChangeLog/>".getBytes("UTF-8"));
+      jar.closeEntry();
+      jar.putNextEntry(new ZipEntry("db/changelog-2.xml"));
+      jar.write("<databaseChangeLog><!-- 2 --></databaseChangeLog>".getBytes("UTF-8"));
+      jar.closeEntry();
+    } finally {
+      jar.close();
+    }
+    this.cache = new ChangeLogScanCache(new File(this.directory, "cache"));
+  }
+
+  @After
+  public void deleteJarFile() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final Collection<String> names = Arrays.asList("META-INF/liquibase/changelog.xml", "missing.xml");
+    assertNull(this.cache.get(this.jarFile, names));
+    final Map<String, ChangeLogResource> scan = JarChangeLogScanner.scan(this.jarFile, names);
+    this.cache.put(this.jarFile, scan);
+    final Map<String, ChangeLogResource> stored = this.cache.get(this.jarFile, names);
+    assertNotNull(stored);
+    assertEquals(1, stored.size());
+    final ChangeLogResource resource = stored.get("META-INF/liquibase/changelog.xml");
+    assertNotNull(resource);
+    assertEquals(scan.get("META-INF/liquibase/changelog.xml").getURL(), resource.getURL());
+    assertEquals(scan.get("META-INF/liquibase/changelog.xml").getContentHash(), resource.getContentHash());
+    assertEquals("<databaseChangeLog/>", read(resource.openStream()));
+    // A subset of the names that were scanned for is also covered.
+    assertEquals(1, this.cache.get(this.jarFile, Arrays.asList("missing.xml", "META-INF/liquibase/changelog.xml")).size());
+    assertTrue(this.cache.get(this.jarFile, Arrays.asList("missing.xml")).isEmpty());
+  }
+
+  @Test
+  public void testContentHashesAreNotComputedUntilNeeded() throws IOException {
+    final Collection<String> names = Arrays.asList("META-INF/liquibase/changelog.xml", "db/changelog-2.xml");
+    final Map<String, ChangeLogResource> scan = JarChangeLogScanner.scan(this.jarFile, names);
+    assertNull(scan.get("META-INF/liquibase/changelog.xml").getContentHashIfComputed());
+    final String contentHash = scan.get("db/changelog-2.xml").getContentHash();
+    assertEquals(contentHash, scan.get("db/changelog-2.xml").getContentHashIfComputed());
+    this.cache.put(this.jarFile, scan);
+    final Map<String, ChangeLogResource> stored = this.cache.get(this.jarFile, names);
+    assertNotNull(stored);
+    assertNull(stored.get("META-INF/liquibase/changelog.xml").getContentHashIfComputed());
+    assertEquals(contentHash, stored.get("db/changelog-2.xml").getContentHashIfComputed());
+    assertEquals(scan.get("META-INF/liquibase/changelog.xml").getContentHash(), stored.get("META-INF/liquibase/changelog.xml").getContentHash());
+  }
+
+  @Test
+  public void testUncoveredName() throws IOException {
+    this.cache.put(this.jarFile, JarChangeLogScanner.scan(this.jarFile, Arrays.asList("META-INF/liquibase/changelog.xml")));
+    assertNull(this.cache.get(this.jarFile, Arrays.asList("META-INF/liquibase/changelog.xml", "db/changelog-2.xml")));
+  }
+
+  @Test
+  public void testPattern() throws IOException {
+    final Collection<String> names = Arrays.asList("db/*.xml");
+    this.cache.put(this.jarFile, JarChangeLogScanner.scan(this.jarFile, names));
+    final Map<String, ChangeLogResource> stored = this.cache.get(this.jarFile, names);
+    assertNotNull(stored);
+    assertEquals(1, stored.size());
+    assertNotNull(stored.get("db/changelog-2.xml"));
+  }
+
+  @Test
+  public void testStale() throws IOException {
+    final Collection<String> names = Arrays.asList("META-INF/liquibase/changelog.xml");
+    this.cache.put(this.jarFile, JarChangeLogScanner.scan(this.jarFile, names));
+    assertNotNull(this.cache.get(this.jarFile, names));
+    assertTrue(this.jarFile.setLastModified(this.jarFile.lastModified() - 10000L));
+    assertNull(this.cache.get(this.jarFile, names));
+  }
+
+  @Test
+  public void testUnreadable() throws IOException {
+    final Collection<String> names = Arrays.asList("META-INF/liquibase/changelog.xml");
+    this.cache.put(this.jarFile, JarChangeLogScanner.scan(this.jarFile, names));
+    final File[] files = this.cache.getDirectory().listFiles();
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    final OutputStream stream = new FileOutputStream(files[0]);
+    try {
+      stream.write("garbage".getBytes("UTF-8"));
+    } finally {
+      stream.close();
+    }
+    assertNull(this.cache.get(this.jarFile, names));
+  }
+
+  private static final String read(final InputStream stream) throws IOException {
+    assertNotNull(stream);
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      int b;
+      while ((b = stream.read()) >= 0) {
+        bytes.write(b);
+      }
+      return bytes.toString("UTF-8");
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static final void delete(final File file) {
+    if (file != null) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+        for (final File child : children) {
+          delete(child);
+        }
+      }
+      file.delete();
+    }
+  }
+
+}
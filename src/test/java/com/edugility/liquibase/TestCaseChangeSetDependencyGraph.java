@@ -0,0 +1,191 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import liquibase.change.Change;
+import liquibase.change.ColumnConfig;
+import liquibase.change.ConstraintsConfig;
+
+import liquibase.change.core.AddForeignKeyConstraintChange;
+import liquibase.change.core.CreateTableChange;
+import liquibase.change.core.DropTableChange;
+import liquibase.change.core.InsertDataChange;
+import liquibase.change.core.RawSQLChange;
+import liquibase.change.core.UpdateDataChange;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ChangeSetDependencyGraph}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseChangeSetDependencyGraph {
+
+  private DatabaseChangeLog changeLog;
+
+  public TestCaseChangeSetDependencyGraph() {
+    super();
+  }
+
+  @Before
+  public void createChangeLog() {
+    this.changeLog = new DatabaseChangeLog("changelog.xml");
+  }
+
+  @Test
+  public void testReadWriteSetsAndGroups() {
+    final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+    changeSets.add(this.changeSet("0", createTable("person", null)));
+    changeSets.add(this.changeSet("1", createTable("address", null)));
+    final InsertDataChange insert = new InsertDataChange();
+    insert.setTableName("PERSON");
+    changeSets.add(this.changeSet("2", insert));
+    final AddForeignKeyConstraintChange fk = new AddForeignKeyConstraintChange();
+    fk.setConstraintName("fk_address_person");
+    fk.setBaseTableName("address");
+    fk.setBaseColumnNames("person_id");
+    fk.setReferencedTableName("person");
+    fk.setReferencedColumnNames("id");
+    changeSets.add(this.changeSet("3", fk));
+
+    final ChangeSetDependencyGraph graph = ChangeSetDependencyGraph.build(changeSets);
+    final List<ChangeSetDependencyGraph.Node> nodes = graph.getNodes();
+    assertEquals(4, nodes.size());
+    assertEquals(0, graph.getBarrierCount());
+
+    // The two tables are independent.
+    assertTrue(nodes.get(0).getPredecessors().isEmpty());
+    assertTrue(nodes.get(1).getPredecessors().isEmpty());
+    // Names are compared case-insensitively, so the insert follows
+    // the creation of person (write after write).
+    assertEquals(Collections.singleton(Integer.valueOf(0)), nodes.get(2).getPredecessors());
+    // The foreign key writes address and reads person, so it follows
+    // the last writer of each.
+    assertEquals(Collections.singleton("person"), nodes.get(3).getReads());
+    assertEquals(Collections.singleton("address"), nodes.get(3).getWrites());
+    assertEquals(new TreeSet<Integer>(Arrays.asList(1, 2)), nodes.get(3).getPredecessors());
+
+    final List<List<ChangeSetDependencyGraph.Node>> groups = graph.getGroups();
+    assertEquals(3, groups.size());
+    assertEquals(Arrays.asList(nodes.get(0), nodes.get(1)), groups.get(0));
+    assertEquals(Arrays.asList(nodes.get(2)), groups.get(1));
+    assertEquals(Arrays.asList(nodes.get(3)), groups.get(2));
+  }
+
+  @Test
+  public void testWriteAfterRead() {
+    // address reads person by a column reference; dropping person
+    // must wait for it even though address does not write person.
+    final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+    changeSets.add(this.changeSet("0", createTable("person", null)));
+    changeSets.add(this.changeSet("1", createTable("address", "person(id)")));
+    final DropTableChange drop = new DropTableChange();
+    drop.setTableName("person");
+    changeSets.add(this.changeSet("2", drop));
+    final ChangeSetDependencyGraph graph = ChangeSetDependencyGraph.build(changeSets);
+    final List<ChangeSetDependencyGraph.Node> nodes = graph.getNodes();
+    assertTrue(nodes.get(1).getReads().contains("person"));
+    assertEquals(Collections.singleton(Integer.valueOf(0)), nodes.get(1).getPredecessors());
+    assertEquals(new TreeSet<Integer>(Arrays.asList(0, 1)), nodes.get(2).getPredecessors());
+    assertEquals(3, graph.getGroups().size());
+  }
+
+  @Test
+  public void testBarriers() {
+    final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+    changeSets.add(this.changeSet("0", createTable("person", null)));
+    changeSets.add(this.changeSet("1", createTable("address", null)));
+    final RawSQLChange sql = new RawSQLChange();
+    sql.setSql("UPDATE person SET id = id");
+    changeSets.add(this.changeSet("2", sql));
+    changeSets.add(this.changeSet("3", createTable("phone", null)));
+    final UpdateDataChange update = new UpdateDataChange();
+    update.setTableName("person");
+    changeSets.add(this.changeSet("4", update));
+
+    final ChangeSetDependencyGraph graph = ChangeSetDependencyGraph.build(changeSets);
+    final List<ChangeSetDependencyGraph.Node> nodes = graph.getNodes();
+    assertEquals(1, graph.getBarrierCount());
+    final ChangeSetDependencyGraph.Node barrier = nodes.get(2);
+    assertTrue(barrier.isBarrier());
+    assertTrue(barrier.getReads().isEmpty());
+    assertTrue(barrier.getWrites().isEmpty());
+    // The barrier waits for everything before it...
+    assertEquals(new TreeSet<Integer>(Arrays.asList(0, 1)), barrier.getPredecessors());
+    // ...and everything after it waits for the barrier, but no
+    // longer for the writers the barrier has superseded.
+    assertFalse(nodes.get(3).isBarrier());
+    assertEquals(Collections.singleton(Integer.valueOf(2)), nodes.get(3).getPredecessors());
+    assertEquals(Collections.singleton(Integer.valueOf(2)), nodes.get(4).getPredecessors());
+
+    final List<List<ChangeSetDependencyGraph.Node>> groups = graph.getGroups();
+    assertEquals(3, groups.size());
+    assertEquals(Arrays.asList(nodes.get(0), nodes.get(1)), groups.get(0));
+    assertEquals(Arrays.asList(barrier), groups.get(1));
+    assertEquals(Arrays.asList(nodes.get(3), nodes.get(4)), groups.get(2));
+  }
+
+  private final ChangeSet changeSet(final String id, final Change change) {
+    final ChangeSet changeSet = new ChangeSet(id, "ljnelson", false, false, "changelog.xml", null, null, this.changeLog);
+    changeSet.addChange(change);
+    return changeSet;
+  }
+
+  private static final CreateTableChange createTable(final String tableName, final String references) {
+    final CreateTableChange change = new CreateTableChange();
+    change.setTableName(tableName);
+    final ColumnConfig column = new ColumnConfig();
+    column.setName("id");
+    column.setType("INT");
+    if (references != null) {
+      final ConstraintsConfig constraints = new ConstraintsConfig();
+      constraints.setReferences(references);
+      constraints.setForeignKeyName("fk_" + tableName);
+      column.setConstraints(constraints);
+    }
+    change.addColumn(column);
+    return change;
+  }
+
+}
@@ -0,0 +1,159 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ChangeSetIdentityIndex}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseChangeSetIdentityIndex {
+
+  private File directory;
+
+  private ChangeSetIdentityIndex index;
+
+  public TestCaseChangeSetIdentityIndex() {
+    super();
+  }
+
+  @Before
+  public void createIndex() throws IOException {
+    this.index = new ChangeSetIdentityIndex();
+    this.directory = File.createTempFile("identities", "");
+    assertNotNull(this.directory);
+    this.directory.delete();
+    this.directory.mkdirs();
+  }
+
+  @After
+  public void deleteDirectory() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testCollisionAcrossResourcesSharingAPath() throws IOException {
+    final ChangeLogResource a = this.changeLog("a.xml",
+                                               "<databaseChangeLog>\n" +
+                                               "  <changeSet id=\"1\" author=\"ljnelson\"/>\n" +
+                                               "  <changeSet id=\"2\" author=\"ljnelson\"/>\n" +
+                                               "</databaseChangeLog>\n");
+    final ChangeLogResource b = this.changeLog("b.xml",
+                                               "<databaseChangeLog>\n" +
+                                               "  <changeSet id=\"2\" author=\"ljnelson\"/>\n" +
+                                               "  <changeSet id=\"2\" author=\"someoneElse\"/>\n" +
+                                               "</databaseChangeLog>\n");
+    assertTrue(this.index.add(a, "META-INF/liquibase/changelog.xml").isEmpty());
+    final List<ChangeSetIdentityIndex.Collision> collisions = this.index.add(b, "META-INF/liquibase/changelog.xml");
+    assertEquals(1, collisions.size());
+    final ChangeSetIdentityIndex.Collision collision = collisions.get(0);
+    assertSame(a, collision.getFirst().getResource());
+    assertEquals(3, collision.getFirst().getLineNumber());
+    assertSame(b, collision.getSecond().getResource());
+    assertEquals(2, collision.getSecond().getLineNumber());
+    assertEquals("META-INF/liquibase/changelog.xml::2::ljnelson", collision.getSecond().toString());
+    assertEquals(3, this.index.size());
+  }
+
+  @Test
+  public void testDistinctPathsDoNotCollide() throws IOException {
+    final String contents = "<databaseChangeLog><changeSet id=\"1\" author=\"ljnelson\"/></databaseChangeLog>";
+    final ChangeLogResource a = this.changeLog("a.xml", contents);
+    final ChangeLogResource b = this.changeLog("b.xml", contents);
+    assertTrue(this.index.add(a, null).isEmpty());
+    assertTrue(this.index.add(b, null).isEmpty());
+    assertEquals(2, this.index.size());
+  }
+
+  @Test
+  public void testLogicalFilePaths() throws IOException {
+    // The changelog's logicalFilePath makes a's changeset collide
+    // with b's, whose changeset sets the same path itself; c's
+    // changeset escapes its changelog's path.
+    final ChangeLogResource a = this.changeLog("a.xml",
+                                               "<databaseChangeLog logicalFilePath=\"shared.xml\">\n" +
+                                               "  <changeSet id=\"1\" author=\"ljnelson\"/>\n" +
+                                               "</databaseChangeLog>\n");
+    final ChangeLogResource b = this.changeLog("b.xml",
+                                               "<databaseChangeLog>\n" +
+                                               "  <changeSet id=\"1\" author=\"ljnelson\" logicalFilePath=\"shared.xml\"/>\n" +
+                                               "</databaseChangeLog>\n");
+    final ChangeLogResource c = this.changeLog("c.xml",
+                                               "<databaseChangeLog logicalFilePath=\"shared.xml\">\n" +
+                                               "  <changeSet id=\"1\" author=\"ljnelson\" logicalFilePath=\"other.xml\"/>\n" +
+                                               "</databaseChangeLog>\n");
+    assertTrue(this.index.add(a, "a.xml").isEmpty());
+    final List<ChangeSetIdentityIndex.Collision> collisions = this.index.add(b, "b.xml");
+    assertEquals(1, collisions.size());
+    assertEquals("shared.xml", collisions.get(0).getFirst().getFilePath());
+    assertSame(b, collisions.get(0).getSecond().getResource());
+    assertTrue(this.index.add(c, "c.xml").isEmpty());
+    assertEquals(2, this.index.size());
+  }
+
+  private final ChangeLogResource changeLog(final String name, final String contents) throws IOException {
+    final File file = new File(this.directory, name);
+    final OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(contents.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return new ChangeLogResource(file.toURI().toURL(), name);
+  }
+
+  private static final void delete(final File file) {
+    if (file != null) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+        for (final File child : children) {
+          delete(child);
+        }
+      }
+      file.delete();
+    }
+  }
+
+}
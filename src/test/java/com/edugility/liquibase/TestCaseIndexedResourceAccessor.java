@@ -0,0 +1,218 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.util.Enumeration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link IncludeIndex} and {@link IndexedResourceAccessor}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseIndexedResourceAccessor {
+
+  private File directory;
+
+  private CountingClassLoader loader;
+
+  public TestCaseIndexedResourceAccessor() {
+    super();
+  }
+
+  @Before
+  public void createClasspath() throws IOException {
+    this.directory = File.createTempFile("classpath", "");
+    assertNotNull(this.directory);
+    this.directory.delete();
+    write(new File(this.directory, "META-INF/liquibase/changelog.xml"), "<databaseChangeLog/>");
+    write(new File(this.directory, "liquibase-includes/com.foo/bar/changelog.xml"), "<databaseChangeLog><!-- bar --></databaseChangeLog>");
+    this.loader = new CountingClassLoader(new URL[] { this.directory.toURI().toURL() });
+  }
+
+  @After
+  public void deleteClasspath() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testLookupIsOneGetResource() throws IOException {
+    final IncludeIndex index = new IncludeIndex();
+    index.put("file:/build/a.jar!/META-INF/liquibase/changelog.xml", "META-INF/liquibase/changelog.xml", "0");
+    index.put("file:/build/bar.jar!/META-INF/liquibase/changelog.xml", "liquibase-includes/com.foo/bar/changelog.xml", "1");
+    final IndexedResourceAccessor accessor = new IndexedResourceAccessor(index, this.loader);
+    assertEquals("<databaseChangeLog><!-- bar --></databaseChangeLog>", read(accessor.getResourceAsStream("file:/build/bar.jar!/META-INF/liquibase/changelog.xml")));
+    assertEquals("<databaseChangeLog/>", read(accessor.getResourceAsStream("file:/build/a.jar!/META-INF/liquibase/changelog.xml")));
+    assertEquals(2, this.loader.getResourceCalls);
+    assertEquals(0, this.loader.getResourcesCalls);
+  }
+
+  @Test
+  public void testVerification() throws IOException {
+    final String contentHash = Digests.hash(new File(this.directory, "META-INF/liquibase/changelog.xml").toURI().toURL());
+    final IncludeIndex index = new IncludeIndex();
+    index.put("good", "META-INF/liquibase/changelog.xml", contentHash);
+    index.put("bad", "liquibase-includes/com.foo/bar/changelog.xml", contentHash);
+    final IndexedResourceAccessor accessor = new IndexedResourceAccessor(index, this.loader, true);
+    assertEquals("<databaseChangeLog/>", read(accessor.getResourceAsStream("good")));
+    try {
+      accessor.getResourceAsStream("bad");
+      fail();
+    } catch (final IOException expected) {
+
+    }
+    // Without verification the mismatch goes unnoticed and nothing
+    // is hashed.
+    assertNotNull(new IndexedResourceAccessor(index, this.loader).getURL(index.get("bad")));
+  }
+
+  @Test
+  public void testMissing() throws IOException {
+    final IncludeIndex index = new IncludeIndex();
+    index.put("missing", "no/such/changelog.xml", "0");
+    final IndexedResourceAccessor accessor = new IndexedResourceAccessor(index, this.loader);
+    try {
+      accessor.getResourceAsStream("missing");
+      fail();
+    } catch (final IOException expected) {
+
+    }
+    assertNull(accessor.getResourceAsStream("not/indexed.xml"));
+  }
+
+  @Test
+  public void testNamesAreUnique() {
+    final IncludeIndex index = new IncludeIndex();
+    index.put("a", "META-INF/liquibase/changelog.xml", "0");
+    index.put("a", "META-INF/liquibase/changelog.xml", "1");
+    try {
+      index.put("b", "META-INF/liquibase/changelog.xml", "0");
+      fail();
+    } catch (final IllegalArgumentException expected) {
+
+    }
+    index.put("a", "other.xml", "0");
+    index.put("b", "META-INF/liquibase/changelog.xml", "0");
+    assertEquals(2, index.size());
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    final IncludeIndex index = new IncludeIndex();
+    index.put("jar:file:/a.jar!/x.xml", "x.xml", "00ff");
+    index.put("y.xml", "y.xml", "ff00");
+    final StringWriter writer = new StringWriter();
+    index.write(writer);
+    final IncludeIndex read = IncludeIndex.read(new StringReader(writer.toString()));
+    assertEquals(2, read.size());
+    assertEquals("x.xml", read.get("jar:file:/a.jar!/x.xml").getName());
+    assertEquals("ff00", read.get("y.xml").getContentHash());
+  }
+
+  private static final void write(final File file, final String contents) throws IOException {
+    file.getParentFile().mkdirs();
+    final OutputStream stream = new FileOutputStream(file);
+    try {
+      stream.write(contents.getBytes("UTF-8"));
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static final String read(final InputStream stream) throws IOException {
+    assertNotNull(stream);
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      int b;
+      while ((b = stream.read()) >= 0) {
+        bytes.write(b);
+      }
+      return bytes.toString("UTF-8");
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static final void delete(final File file) {
+    if (file != null) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+        for (final File child : children) {
+          delete(child);
+        }
+      }
+      file.delete();
+    }
+  }
+
+  private static final class CountingClassLoader extends URLClassLoader {
+
+    private int getResourceCalls;
+
+    private int getResourcesCalls;
+
+    private CountingClassLoader(final URL[] urls) {
+      super(urls, null);
+    }
+
+    @Override
+    public URL getResource(final String name) {
+      this.getResourceCalls++;
+      return super.getResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> getResources(final String name) throws IOException {
+      this.getResourcesCalls++;
+      return super.getResources(name);
+    }
+
+  }
+
+}
@@ -0,0 +1,108 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.File;
+
+import liquibase.change.ColumnConfig;
+
+import liquibase.change.core.CreateTableChange;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests {@link MigratedDatabaseCache#computeKey(DatabaseChangeLog,
+ * String)}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseMigratedDatabaseCache {
+
+  private MigratedDatabaseCache cache;
+
+  public TestCaseMigratedDatabaseCache() {
+    super();
+  }
+
+  @Before
+  public void createCache() {
+    this.cache = new MigratedDatabaseCache(new File(System.getProperty("java.io.tmpdir"), "migrated-databases"));
+  }
+
+  @Test
+  public void testKeyIsStableForEquivalentChangeLogs() {
+    final String key = this.cache.computeKey(changeLog("person", false), "test");
+    assertNotNull(key);
+    assertEquals(key, this.cache.computeKey(changeLog("person", false), "test"));
+    // Context order and case do not matter.
+    assertEquals(this.cache.computeKey(changeLog("person", false), "b, A"), this.cache.computeKey(changeLog("person", false), "a,b"));
+  }
+
+  @Test
+  public void testKeyChangesWhenChangeSetsChange() {
+    final String key = this.cache.computeKey(changeLog("person", false), "test");
+    // A different change yields a different checksum.
+    assertFalse(key.equals(this.cache.computeKey(changeLog("address", false), "test")));
+    // So do different rerun settings.
+    assertFalse(key.equals(this.cache.computeKey(changeLog("person", true), "test")));
+    // And different contexts.
+    assertFalse(key.equals(this.cache.computeKey(changeLog("person", false), "production")));
+    // And an additional changeset.
+    final DatabaseChangeLog longer = changeLog("person", false);
+    longer.addChangeSet(changeSet(longer, "2", "address", false));
+    assertFalse(key.equals(this.cache.computeKey(longer, "test")));
+  }
+
+  private static final DatabaseChangeLog changeLog(final String tableName, final boolean runOnChange) {
+    final DatabaseChangeLog changeLog = new DatabaseChangeLog("changelog.xml");
+    changeLog.addChangeSet(changeSet(changeLog, "1", tableName, runOnChange));
+    return changeLog;
+  }
+
+  private static final ChangeSet changeSet(final DatabaseChangeLog changeLog, final String id, final String tableName, final boolean runOnChange) {
+    final ChangeSet changeSet = new ChangeSet(id, "ljnelson", false, runOnChange, "changelog.xml", null, null, changeLog);
+    final CreateTableChange change = new CreateTableChange();
+    change.setTableName(tableName);
+    final ColumnConfig column = new ColumnConfig();
+    column.setName("id");
+    column.setType("INT");
+    change.addColumn(column);
+    changeSet.addChange(change);
+    return changeSet;
+  }
+
+}
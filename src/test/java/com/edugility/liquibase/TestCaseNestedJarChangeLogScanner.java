@@ -0,0 +1,234 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import java.util.jar.JarOutputStream;
+
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link NestedJarChangeLogScanner}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseNestedJarChangeLogScanner {
+
+  private static final String CHANGELOG = "META-INF/liquibase/changelog.xml";
+
+  private File directory;
+
+  private File jarFile;
+
+  public TestCaseNestedJarChangeLogScanner() {
+    super();
+  }
+
+  @Before
+  public void createJarFile() throws IOException {
+    this.directory = File.createTempFile("nested", "");
+    assertNotNull(this.directory);
+    this.directory.delete();
+    this.directory.mkdirs();
+    this.jarFile = new File(this.directory, "fat.jar");
+    final JarOutputStream jar = new JarOutputStream(new FileOutputStream(this.jarFile));
+    try {
+      jar.putNextEntry(new ZipEntry("BOOT-INF/"));
+      jar.closeEntry();
+      jar.putNextEntry(new ZipEntry("BOOT-INF/classes/" + CHANGELOG));
+      jar.write("<databaseChangeLog><!-- outer --></databaseChangeLog>".getBytes("UTF-8"));
+      jar.closeEntry();
+      // Stored, as repackaging tools store them, so read in place.
+      putStored(jar, "BOOT-INF/lib/a-1.10.jar", jar(CHANGELOG, "<databaseChangeLog><!-- a-1.10 --></databaseChangeLog>", "db/other.xml", "<databaseChangeLog/>"));
+      putStored(jar, "BOOT-INF/lib/a-1.9.jar", jar(CHANGELOG, "<databaseChangeLog><!-- a-1.9 --></databaseChangeLog>"));
+      // Compressed, so streamed through an inflater.
+      jar.putNextEntry(new ZipEntry("BOOT-INF/lib/b.jar"));
+      jar.write(jar(CHANGELOG, "<databaseChangeLog><!-- b --></databaseChangeLog>"));
+      jar.closeEntry();
+      putStored(jar, "BOOT-INF/lib/none.jar", jar("db/other.xml", "<databaseChangeLog/>"));
+      putStored(jar, "lib/c.jar", jar(CHANGELOG, "<databaseChangeLog><!-- c --></databaseChangeLog>"));
+    } finally {
+      jar.close();
+    }
+  }
+
+  @After
+  public void deleteJarFile() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testScan() throws IOException {
+    final Map<String, ChangeLogResource> resources = NestedJarChangeLogScanner.scan(this.jarFile, Arrays.asList("BOOT-INF/lib/*.jar"), Arrays.asList(CHANGELOG));
+    assertNotNull(resources);
+    // Natural order: a-1.9 precedes a-1.10.
+    assertEquals(Arrays.asList("BOOT-INF/lib/a-1.9.jar!/" + CHANGELOG, "BOOT-INF/lib/a-1.10.jar!/" + CHANGELOG, "BOOT-INF/lib/b.jar!/" + CHANGELOG), new ArrayList<String>(resources.keySet()));
+    assertContents(resources.get("BOOT-INF/lib/a-1.9.jar!/" + CHANGELOG), "<databaseChangeLog><!-- a-1.9 --></databaseChangeLog>");
+    assertContents(resources.get("BOOT-INF/lib/a-1.10.jar!/" + CHANGELOG), "<databaseChangeLog><!-- a-1.10 --></databaseChangeLog>");
+    assertContents(resources.get("BOOT-INF/lib/b.jar!/" + CHANGELOG), "<databaseChangeLog><!-- b --></databaseChangeLog>");
+    try {
+      resources.clear();
+      fail();
+    } catch (final UnsupportedOperationException expected) {
+
+    }
+  }
+
+  @Test
+  public void testPatterns() throws IOException {
+    final Map<String, ChangeLogResource> resources = NestedJarChangeLogScanner.scan(this.jarFile, Arrays.asList("BOOT-INF/lib/a-*.jar", "lib/*.jar"), Arrays.asList("regex:.*\\.xml"));
+    assertEquals(Arrays.asList("BOOT-INF/lib/a-1.9.jar!/" + CHANGELOG, "BOOT-INF/lib/a-1.10.jar!/" + CHANGELOG, "BOOT-INF/lib/a-1.10.jar!/db/other.xml", "lib/c.jar!/" + CHANGELOG), new ArrayList<String>(resources.keySet()));
+  }
+
+  @Test
+  public void testNothingToScan() throws IOException {
+    assertTrue(NestedJarChangeLogScanner.scan(this.jarFile, Collections.<String>emptyList(), Arrays.asList(CHANGELOG)).isEmpty());
+    assertTrue(NestedJarChangeLogScanner.scan(this.jarFile, Arrays.asList("BOOT-INF/lib/*.jar"), Collections.<String>emptyList()).isEmpty());
+    assertTrue(NestedJarChangeLogScanner.scan(new File(this.directory, "missing.jar"), Arrays.asList("BOOT-INF/lib/*.jar"), Arrays.asList(CHANGELOG)).isEmpty());
+    final File notAJar = new File(this.directory, "not.jar");
+    final FileOutputStream stream = new FileOutputStream(notAJar);
+    try {
+      stream.write("not a jar file".getBytes("UTF-8"));
+    } finally {
+      stream.close();
+    }
+    assertTrue(NestedJarChangeLogScanner.scan(notAJar, Arrays.asList("BOOT-INF/lib/*.jar"), Arrays.asList(CHANGELOG)).isEmpty());
+  }
+
+  @Test
+  public void testURLs() throws IOException {
+    final String outer = "jar:" + this.jarFile.toURI().toURL().toExternalForm();
+    assertFalse(NestedJarChangeLogScanner.isNested(null));
+    assertFalse(NestedJarChangeLogScanner.isNested(outer + "!/" + CHANGELOG));
+    assertFalse(NestedJarChangeLogScanner.isNested("file:/a.jar!/b.jar!/c.xml"));
+    final String spec = outer + "!/BOOT-INF/lib/b.jar!/" + CHANGELOG;
+    assertTrue(NestedJarChangeLogScanner.isNested(spec));
+    // A URL created from a String, as URLResourceAccessor creates
+    // them, reads the same bytes as the scanned one.
+    assertEquals("<databaseChangeLog><!-- b --></databaseChangeLog>", read(NestedJarChangeLogScanner.newURL(spec).openStream()));
+    try {
+      NestedJarChangeLogScanner.newURL(outer + "!/" + CHANGELOG);
+      fail();
+    } catch (final MalformedURLException expected) {
+
+    }
+  }
+
+  private static final void assertContents(final ChangeLogResource resource, final String contents) throws IOException {
+    assertNotNull(resource);
+    assertEquals(CHANGELOG, resource.getName());
+    final URL url = resource.getURL();
+    assertNotNull(url);
+    assertTrue(url.toExternalForm(), NestedJarChangeLogScanner.isNested(url.toExternalForm()));
+    assertEquals(contents, read(url.openStream()));
+    assertEquals(Digests.hash(new ByteArrayInputStream(contents.getBytes("UTF-8"))), resource.getContentHash());
+  }
+
+  private static final byte[] jar(final String... namesAndContents) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final JarOutputStream jar = new JarOutputStream(bytes);
+    try {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        jar.putNextEntry(new ZipEntry(namesAndContents[i]));
+        jar.write(namesAndContents[i + 1].getBytes("UTF-8"));
+        jar.closeEntry();
+      }
+    } finally {
+      jar.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  private static final void putStored(final JarOutputStream jar, final String name, final byte[] bytes) throws IOException {
+    final ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(bytes.length);
+    entry.setCompressedSize(bytes.length);
+    final CRC32 crc = new CRC32();
+    crc.update(bytes);
+    entry.setCrc(crc.getValue());
+    jar.putNextEntry(entry);
+    jar.write(bytes);
+    jar.closeEntry();
+  }
+
+  private static final String read(final InputStream stream) throws IOException {
+    assertNotNull(stream);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      final byte[] buffer = new byte[4096];
+      int read;
+      while ((read = stream.read(buffer)) >= 0) {
+        bytes.write(buffer, 0, read);
+      }
+    } finally {
+      stream.close();
+    }
+    return new String(bytes.toByteArray(), "UTF-8");
+  }
+
+  private static final void delete(final File file) {
+    if (file != null) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+        for (final File child : children) {
+          delete(child);
+        }
+      }
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,172 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.StringWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import liquibase.change.CheckSum;
+
+import liquibase.change.core.LoadDataChange;
+
+import liquibase.changelog.ChangeSet;
+
+import liquibase.database.Database;
+
+import liquibase.database.core.H2Database;
+import liquibase.database.core.OracleDatabase;
+
+import liquibase.sql.visitor.ReplaceSqlVisitor;
+
+import liquibase.statement.SqlStatement;
+
+import liquibase.statement.core.InsertStatement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link OfflineSqlRenderer}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseOfflineSqlRenderer {
+
+  private List<ChangeSet> changeSets;
+
+  public TestCaseOfflineSqlRenderer() {
+    super();
+  }
+
+  @Before
+  public void createChangeSets() {
+    this.changeSets = new ArrayList<ChangeSet>();
+    final ChangeSet changeSet = new ChangeSet("1", "test", false, false, "changelog.xml", null, null, null);
+    changeSet.addChange(new RowsChange(insert("A", "x", "y"), insert("B", null, "it's"), insert("C", "z", "w"), insertOther("D")));
+    this.changeSets.add(changeSet);
+  }
+
+  @Test
+  public void testCoalescing() throws Exception {
+    final OfflineSqlRenderer renderer = new OfflineSqlRenderer(H2Database.class);
+    renderer.setTrackChangeSets(false);
+    renderer.setLoadDataBatchSize(2);
+    final String sql = render(renderer, this.changeSets);
+    assertTrue(sql, sql.contains("INSERT INTO T (ID, NAME, NOTE) VALUES ('A', 'x', 'y'),\n  ('B', NULL, 'it''s');"));
+    assertTrue(sql, sql.contains("INSERT INTO T (ID, NAME, NOTE) VALUES ('C', 'z', 'w');"));
+    assertTrue(sql, sql.contains("INSERT INTO T (ID) VALUES ('D');"));
+    assertFalse(sql, sql.contains("DATABASECHANGELOG"));
+  }
+
+  @Test
+  public void testModifySqlAppliesToCoalescedStatement() throws Exception {
+    final ReplaceSqlVisitor visitor = new ReplaceSqlVisitor();
+    visitor.setReplace("INSERT INTO T");
+    visitor.setWith("INSERT INTO U");
+    this.changeSets.get(0).addSqlVisitor(visitor);
+    final OfflineSqlRenderer renderer = new OfflineSqlRenderer(H2Database.class);
+    renderer.setTrackChangeSets(false);
+    final String sql = render(renderer, this.changeSets);
+    assertTrue(sql, sql.contains("INSERT INTO U (ID, NAME, NOTE) VALUES ('A', 'x', 'y'),\n  ('B', NULL, 'it''s'),\n  ('C', 'z', 'w');"));
+    assertFalse(sql, sql.contains("INSERT INTO T"));
+  }
+
+  @Test
+  public void testNoCoalescingWithoutMultiRowInsert() throws Exception {
+    final OfflineSqlRenderer renderer = new OfflineSqlRenderer(OracleDatabase.class);
+    renderer.setTrackChangeSets(false);
+    final String sql = render(renderer, this.changeSets);
+    assertTrue(sql, sql.contains("INSERT INTO T (ID, NAME, NOTE) VALUES ('A', 'x', 'y');"));
+    assertTrue(sql, sql.contains("INSERT INTO T (ID, NAME, NOTE) VALUES ('B', NULL, 'it''s');"));
+  }
+
+  @Test
+  public void testTrackChangeSets() throws Exception {
+    final OfflineSqlRenderer renderer = new OfflineSqlRenderer(H2Database.class);
+    final String sql = render(renderer, this.changeSets);
+    final int create = sql.indexOf("CREATE TABLE DATABASECHANGELOG");
+    assertTrue(sql, create > 0);
+    final int insert = sql.indexOf("INSERT INTO DATABASECHANGELOG");
+    assertTrue(sql, insert > create);
+    assertTrue(sql, sql.indexOf("INSERT INTO T") < insert);
+  }
+
+  private static final String render(final OfflineSqlRenderer renderer, final List<? extends ChangeSet> changeSets) throws Exception {
+    final StringWriter writer = new StringWriter();
+    renderer.render("changelog.xml", changeSets, writer, 2);
+    return writer.toString().replace(System.getProperty("line.separator", "\n"), "\n");
+  }
+
+  private static final InsertStatement insert(final String id, final String name, final String note) {
+    final InsertStatement statement = new InsertStatement(null, null, "T");
+    statement.addColumnValue("ID", id);
+    statement.addColumnValue("NAME", name);
+    statement.addColumnValue("NOTE", note);
+    return statement;
+  }
+
+  private static final InsertStatement insertOther(final String id) {
+    final InsertStatement statement = new InsertStatement(null, null, "T");
+    statement.addColumnValue("ID", id);
+    return statement;
+  }
+
+  private static final class RowsChange extends LoadDataChange {
+
+    private final SqlStatement[] statements;
+
+    private RowsChange(final SqlStatement... statements) {
+      super();
+      this.statements = statements;
+    }
+
+    @Override
+    public final boolean supports(final Database database) {
+      return true;
+    }
+
+    @Override
+    public final CheckSum generateCheckSum() {
+      return CheckSum.compute("rows");
+    }
+
+    @Override
+    public final SqlStatement[] generateStatements(final Database database) {
+      return this.statements;
+    }
+
+  }
+
+}
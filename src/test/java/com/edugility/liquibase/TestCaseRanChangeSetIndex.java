@@ -0,0 +1,170 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import liquibase.changelog.ChangeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link RanChangeSetIndex}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseRanChangeSetIndex {
+
+  private RanChangeSetIndex index;
+
+  public TestCaseRanChangeSetIndex() {
+    super();
+  }
+
+  @Before
+  public void createIndex() {
+    this.index = new RanChangeSetIndex();
+  }
+
+  @Test
+  public void testAddAndMatch() {
+    assertEquals(0, this.index.size());
+    assertTrue(this.index.add("db/changelog.xml", "1", "ljnelson"));
+    assertFalse(this.index.add("db/changelog.xml", "1", "ljnelson"));
+    assertEquals(1, this.index.size());
+    assertTrue(this.index.matches("db/changelog.xml", "1", "ljnelson"));
+    assertFalse(this.index.matches("db/changelog.xml", "2", "ljnelson"));
+    assertFalse(this.index.matches("db/changelog.xml", "1", "someoneElse"));
+    assertFalse(this.index.matches("db/other.xml", "1", "ljnelson"));
+  }
+
+  @Test
+  public void testNormalization() {
+    this.index.add("db\\Changelog.XML", "Create-Table", "LJNelson");
+    // Compared as Liquibase compares them: case-insensitively, with
+    // backslashes treated as forward slashes.
+    assertTrue(this.index.matches("db/changelog.xml", "create-table", "ljnelson"));
+    // The fields are kept apart, so moving characters between them
+    // does not produce a match.
+    assertFalse(this.index.matches("db/changelog.xml", "create", "-tableljnelson"));
+  }
+
+  @Test
+  public void testNullFields() {
+    assertFalse(this.index.matches(null, null, null));
+    assertTrue(this.index.add(null, "1", null));
+    assertTrue(this.index.matches(null, "1", null));
+    assertFalse(this.index.matches("", "1", "x"));
+  }
+
+  @Test
+  public void testUnmatchedCount() {
+    this.index.add("a.xml", "1", "x");
+    this.index.add("a.xml", "2", "x");
+    this.index.add("a.xml", "3", "x");
+    assertEquals(3, this.index.getUnmatchedCount());
+    this.index.matches("a.xml", "1", "x");
+    this.index.matches("a.xml", "1", "x");
+    assertEquals(2, this.index.getUnmatchedCount());
+    this.index.matches("a.xml", "4", "x");
+    assertEquals(2, this.index.getUnmatchedCount());
+  }
+
+  @Test
+  public void testGrowth() {
+    final int size = 100000;
+    for (int i = 0; i < size; i++) {
+      assertTrue(this.index.add("db/changelog-" + (i % 97) + ".xml", Integer.toString(i), "author"));
+      if (i % 10 == 0) {
+        // Matched flags must survive every resize.
+        assertTrue(this.index.matches("db/changelog-" + (i % 97) + ".xml", Integer.toString(i), "author"));
+      }
+    }
+    assertEquals(size, this.index.size());
+    assertEquals(size - size / 10, this.index.getUnmatchedCount());
+    for (int i = 0; i < size; i++) {
+      assertTrue(this.index.matches("db/changelog-" + (i % 97) + ".xml", Integer.toString(i), "author"));
+      assertFalse(this.index.add("db/changelog-" + (i % 97) + ".xml", Integer.toString(i), "author"));
+    }
+    assertEquals(size, this.index.size());
+    assertEquals(0, this.index.getUnmatchedCount());
+    assertFalse(this.index.matches("db/changelog-0.xml", Integer.toString(size), "author"));
+  }
+
+  @Test
+  public void testMatchesChangeSet() {
+    this.index.add("db/changelog.xml", "1", "ljnelson");
+    assertTrue(this.index.matches(new ChangeSet("1", "ljnelson", false, false, "db/changelog.xml", null, null, null)));
+    assertFalse(this.index.matches(new ChangeSet("2", "ljnelson", false, false, "db/changelog.xml", null, null, null)));
+    try {
+      this.index.matches((ChangeSet)null);
+      fail();
+    } catch (final IllegalArgumentException expected) {
+
+    }
+  }
+
+  @Test
+  public void testRead() throws IOException {
+    final String csv =
+      "\"FileName\";\"Author\";\"DATEEXECUTED\";\"ID\"\n" +
+      "\"db/changelog.xml\";\"ljnelson\";\"2014-01-01\";\"1\"\n" +
+      "\n" +
+      "\"db/changelog.xml\";\"ljnelson\";\"2014-01-01\";\"with;separator\"\n" +
+      "\"db/changelog.xml\";\"ljnelson\";\"2014-01-01\";\"1\"\n";
+    final RanChangeSetIndex index = RanChangeSetIndex.read(new StringReader(csv), ';');
+    assertEquals(2, index.size());
+    assertTrue(index.matches("db/changelog.xml", "1", "ljnelson"));
+    assertTrue(index.matches("db/changelog.xml", "with;separator", "ljnelson"));
+  }
+
+  @Test
+  public void testReadMalformed() {
+    assertReadFails("");
+    assertReadFails("ID,AUTHOR\n1,ljnelson\n");
+    assertReadFails("ID,AUTHOR,FILENAME\n1,ljnelson\n");
+  }
+
+  private static final void assertReadFails(final String csv) {
+    try {
+      RanChangeSetIndex.read(new StringReader(csv), ',');
+      fail();
+    } catch (final IOException expected) {
+
+    }
+  }
+
+}
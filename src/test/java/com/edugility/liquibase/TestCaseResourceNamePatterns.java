@@ -0,0 +1,211 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link ResourceNamePatterns}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseResourceNamePatterns {
+
+  public TestCaseResourceNamePatterns() {
+    super();
+  }
+
+  @Test
+  public void testExactNames() {
+    final ResourceNamePatterns patterns = new ResourceNamePatterns(Arrays.asList("META-INF/liquibase/changelog.xml", null, "db/changelog.xml"));
+    assertFalse(patterns.hasPatterns());
+    assertEquals(0, patterns.indexOf("META-INF/liquibase/changelog.xml"));
+    assertEquals(2, patterns.indexOf("db/changelog.xml"));
+    // Prefixes and extensions of an exact name do not match it.
+    assertEquals(-1, patterns.indexOf("db/changelog"));
+    assertEquals(-1, patterns.indexOf("db/changelog.xml.bak"));
+    assertEquals(-1, patterns.indexOf(""));
+    assertEquals(-1, patterns.indexOf(null));
+  }
+
+  @Test
+  public void testGlobs() {
+    final ResourceNamePatterns patterns = new ResourceNamePatterns(Arrays.asList("db/changelog-*.xml", "META-INF/liquibase/**/*.xml", "glob:v?/[a-c].sql", "x/[!0-9]{.xml,.yaml}", "lit/\\*.xml"));
+    assertTrue(patterns.hasPatterns());
+
+    assertEquals(0, patterns.indexOf("db/changelog-1.0.xml"));
+    assertEquals(0, patterns.indexOf("db/changelog-.xml"));
+    // * does not cross directories.
+    assertEquals(-1, patterns.indexOf("db/changelog-1/x.xml"));
+
+    // **/ matches nothing as well as any number of directories.
+    assertEquals(1, patterns.indexOf("META-INF/liquibase/changelog.xml"));
+    assertEquals(1, patterns.indexOf("META-INF/liquibase/a/b/c/changelog.xml"));
+    assertEquals(-1, patterns.indexOf("META-INF/liquibase/changelog.yaml"));
+    assertEquals(-1, patterns.indexOf("META-INF/changelog.xml"));
+
+    assertEquals(2, patterns.indexOf("v1/b.sql"));
+    assertEquals(-1, patterns.indexOf("v10/b.sql"));
+    assertEquals(-1, patterns.indexOf("v1/d.sql"));
+    // glob: is a prefix, not part of the pattern.
+    assertEquals(-1, patterns.indexOf("glob:v1/b.sql"));
+
+    assertEquals(3, patterns.indexOf("x/a.xml"));
+    assertEquals(3, patterns.indexOf("x/a.yaml"));
+    assertEquals(-1, patterns.indexOf("x/1.xml"));
+    assertEquals(-1, patterns.indexOf("x/a.json"));
+
+    assertEquals(4, patterns.indexOf("lit/*.xml"));
+    assertEquals(-1, patterns.indexOf("lit/a.xml"));
+  }
+
+  @Test
+  public void testRegularExpressions() {
+    final ResourceNamePatterns patterns = new ResourceNamePatterns(Arrays.asList("regex:db/v[0-9]+\\.xml", "regex:.*\\.yaml|.*\\.json"));
+    assertTrue(patterns.hasPatterns());
+    assertEquals(0, patterns.indexOf("db/v12.xml"));
+    // The whole name must match.
+    assertEquals(-1, patterns.indexOf("db/v12.xml.bak"));
+    assertEquals(-1, patterns.indexOf("x/db/v12.xml"));
+    assertEquals(1, patterns.indexOf("a/b.yaml"));
+    assertEquals(1, patterns.indexOf("c.json"));
+    assertEquals(-1, patterns.indexOf("c.xml"));
+  }
+
+  @Test
+  public void testMalformedPattern() {
+    try {
+      new ResourceNamePatterns(Arrays.asList("regex:db/[0-9"));
+      fail();
+    } catch (final IllegalArgumentException expected) {
+
+    }
+  }
+
+  @Test
+  public void testFirstNameWins() {
+    // The trie is walked along the resource name, so a pattern with a
+    // shorter literal prefix must still win if it comes first.
+    ResourceNamePatterns patterns = new ResourceNamePatterns(Arrays.asList("regex:.*\\.xml", "db/*.xml", "db/a.xml"));
+    assertEquals(0, patterns.indexOf("db/a.xml"));
+    patterns = new ResourceNamePatterns(Arrays.asList("db/a.xml", "db/*.xml", "regex:.*\\.xml"));
+    assertEquals(0, patterns.indexOf("db/a.xml"));
+    assertEquals(1, patterns.indexOf("db/b.xml"));
+    assertEquals(2, patterns.indexOf("c.xml"));
+    patterns = new ResourceNamePatterns(Arrays.asList("db/*.xml", "db/a.xml"));
+    assertEquals(0, patterns.indexOf("db/a.xml"));
+  }
+
+  @Test
+  public void testCanMatchBeneath() {
+    ResourceNamePatterns patterns = new ResourceNamePatterns(Arrays.asList("META-INF/liquibase/**/*.xml", "db/changelog.xml"));
+    assertTrue(patterns.canMatchBeneath("META-INF/"));
+    assertTrue(patterns.canMatchBeneath("META-INF/liquibase/"));
+    assertTrue(patterns.canMatchBeneath("META-INF/liquibase/a/b/"));
+    assertTrue(patterns.canMatchBeneath("db/"));
+    assertFalse(patterns.canMatchBeneath("META-INF/maven/"));
+    assertFalse(patterns.canMatchBeneath("dc/"));
+    assertFalse(patterns.canMatchBeneath("db/sub/"));
+    // A pattern with no literal prefix can match beneath anything.
+    patterns = new ResourceNamePatterns(Arrays.asList("regex:.*\\.xml"));
+    assertTrue(patterns.canMatchBeneath("anything/at/all/"));
+    try {
+      patterns.canMatchBeneath(null);
+      fail();
+    } catch (final IllegalArgumentException expected) {
+
+    }
+  }
+
+  @Test
+  public void testIsPattern() {
+    assertFalse(ResourceNamePatterns.isPattern(null));
+    assertFalse(ResourceNamePatterns.isPattern("db/changelog.xml"));
+    assertTrue(ResourceNamePatterns.isPattern("db/*.xml"));
+    assertTrue(ResourceNamePatterns.isPattern("db/?.xml"));
+    assertTrue(ResourceNamePatterns.isPattern("db/[ab].xml"));
+    assertTrue(ResourceNamePatterns.isPattern("db/{a,b}.xml"));
+    assertTrue(ResourceNamePatterns.isPattern("regex:db/changelog.xml"));
+    assertTrue(ResourceNamePatterns.isPattern("glob:db/changelog.xml"));
+  }
+
+  @Test
+  public void testCompareNatural() {
+    final List<String> names = new ArrayList<String>(Arrays.asList("changelog-1.10.xml", "changelog-1.9.xml", "changelog-10.xml", "changelog-2.xml", "v1", "v01"));
+    Collections.sort(names, ResourceNamePatterns.NATURAL_ORDER);
+    assertEquals(Arrays.asList("changelog-1.9.xml", "changelog-1.10.xml", "changelog-2.xml", "changelog-10.xml", "v01", "v1"), names);
+    assertEquals(0, ResourceNamePatterns.compareNatural("a1", "a1"));
+  }
+
+  @Test
+  public void testSelect() throws MalformedURLException {
+    final ResourceNamePatterns patterns = new ResourceNamePatterns(Arrays.asList("db/changelog-1.xml", "db/changelog-*.xml"));
+    final List<ChangeLogResource> resources = Arrays.asList(resource("db/changelog-10.xml"), resource("db/changelog-1.xml"), null, resource("db/changelog-2.xml"), resource("other.xml"));
+    // changelog-1.xml belongs to the exact name that precedes the
+    // pattern, not to the pattern.
+    assertEquals(Arrays.asList("db/changelog-2.xml", "db/changelog-10.xml"), names(patterns.select(resources, "db/changelog-*.xml")));
+    assertEquals(Arrays.asList("db/changelog-1.xml"), names(patterns.select(resources, "db/changelog-1.xml")));
+    assertTrue(patterns.select(resources, "unknown").isEmpty());
+    assertTrue(patterns.select(null, "db/changelog-*.xml").isEmpty());
+  }
+
+  @Test
+  public void testOf() {
+    final ResourceNamePatterns patterns = ResourceNamePatterns.of(Arrays.asList("db/*.xml"));
+    assertSame(patterns, ResourceNamePatterns.of(new ArrayList<String>(Arrays.asList("db/*.xml"))));
+    assertEquals(Arrays.asList("db/*.xml"), patterns.getNames());
+  }
+
+  private static final ChangeLogResource resource(final String name) throws MalformedURLException {
+    return new ChangeLogResource(new URL("file:/tmp/" + name), name);
+  }
+
+  private static final List<String> names(final List<? extends ChangeLogResource> resources) {
+    final List<String> returnValue = new ArrayList<String>();
+    for (final ChangeLogResource resource : resources) {
+      returnValue.add(resource.getName());
+    }
+    return returnValue;
+  }
+
+}
@@ -0,0 +1,114 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import liquibase.resource.ClassLoaderResourceAccessor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link RollbackVerifier}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseRollbackVerifier {
+
+  private RollbackVerifier verifier;
+
+  public TestCaseRollbackVerifier() {
+    super();
+  }
+
+  @Before
+  public void createVerifier() {
+    this.verifier = new RollbackVerifier();
+  }
+
+  @Test
+  public void testRollbackFailureIsReported() throws InterruptedException {
+    // address's rollback fails, but its update succeeded, so phone,
+    // whose foreign key needs the address table, still starts from
+    // address's snapshot and passes.
+    final List<RollbackVerifier.Result> results = this.verifier.verify(Arrays.asList(unit("phone", "address"),
+                                                                                     unit("address", "person"),
+                                                                                     unit("person")),
+                                                                       new ClassLoaderResourceAccessor());
+    assertEquals(3, results.size());
+    assertEquals("person", results.get(0).getName());
+    assertEquals(RollbackVerifier.Status.PASSED, results.get(0).getStatus());
+    assertEquals(1, results.get(0).getChangeSetCount());
+
+    final RollbackVerifier.Result address = results.get(1);
+    assertEquals("address", address.getName());
+    assertEquals(RollbackVerifier.Status.FAILED, address.getStatus());
+    assertEquals("rollback", address.getPhase());
+    assertNotNull(address.getCause());
+
+    assertEquals("phone", results.get(2).getName());
+    assertEquals(RollbackVerifier.Status.PASSED, results.get(2).getStatus());
+    assertEquals(2, results.get(2).getChangeSetCount());
+  }
+
+  @Test
+  public void testDependentsOfAFailedUpdateAreSkipped() throws InterruptedException {
+    final List<RollbackVerifier.Result> results = this.verifier.verify(Arrays.asList(unit("broken"),
+                                                                                     unit("phone", "broken"),
+                                                                                     unit("orphan")),
+                                                                       new ClassLoaderResourceAccessor());
+    assertEquals(3, results.size());
+    final RollbackVerifier.Result broken = results.get(0);
+    assertEquals("broken", broken.getName());
+    assertEquals(RollbackVerifier.Status.FAILED, broken.getStatus());
+    assertEquals("update", broken.getPhase());
+
+    final RollbackVerifier.Result phone = results.get(1);
+    assertEquals("phone", phone.getName());
+    assertEquals(RollbackVerifier.Status.SKIPPED, phone.getStatus());
+    assertNull(phone.getPhase());
+    assertEquals(0, phone.getChangeSetCount());
+
+    // Units that do not depend on the failure are unaffected.
+    assertEquals("orphan", results.get(2).getName());
+    assertEquals(RollbackVerifier.Status.PASSED, results.get(2).getStatus());
+  }
+
+  private static final RollbackVerifier.Unit unit(final String name, final String... prerequisites) {
+    return new RollbackVerifier.Unit(name, Collections.singletonList("changelogs/rollback/" + name + ".xml"), Arrays.asList(prerequisites));
+  }
+
+}
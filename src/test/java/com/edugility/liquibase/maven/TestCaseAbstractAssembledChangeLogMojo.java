@@ -0,0 +1,81 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.util.Properties;
+
+import liquibase.change.core.CreateTableChange;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link AbstractAssembledChangeLogMojo#parseChangeLog(String)}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseAbstractAssembledChangeLogMojo {
+
+  private AbstractAssembledChangeLogMojo mojo;
+
+  public TestCaseAbstractAssembledChangeLogMojo() {
+    super();
+  }
+
+  @Before
+  public void createMojo() {
+    this.mojo = new ManifestChangeLogMojo();
+  }
+
+  @Test
+  public void testParseChangeLogExpandsChangeLogParameters() throws Exception {
+    final Properties changeLogParameters = new Properties();
+    changeLogParameters.setProperty("tableName", "person");
+    this.mojo.setChangeLogParameters(changeLogParameters);
+    assertEquals("person", this.parseTableName());
+  }
+
+  @Test
+  public void testParseChangeLogWithoutChangeLogParameters() throws Exception {
+    assertEquals("${tableName}", this.parseTableName());
+  }
+
+  private final String parseTableName() throws Exception {
+    final DatabaseChangeLog changeLog = this.mojo.parseChangeLog("changelogs/parameters/changelog.xml");
+    assertEquals(1, changeLog.getChangeSets().size());
+    final ChangeSet changeSet = changeLog.getChangeSets().get(0);
+    return ((CreateTableChange)changeSet.getChanges().get(0)).getTableName();
+  }
+
+}
@@ -0,0 +1,344 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.resolver.ResolutionListener;
+
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+
+import org.apache.maven.wagon.events.TransferListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link ConcurrentArtifactResolver} against a file-based
+ * stand-in for a local repository.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseConcurrentArtifactResolver {
+
+  private static final long DELAY = 300L;
+
+  private File repository;
+
+  private FileRepositoryResolver delegate;
+
+  private List<Artifact> artifacts;
+
+  public TestCaseConcurrentArtifactResolver() {
+    super();
+  }
+
+  @Before
+  public void createRepository() throws IOException {
+    this.repository = File.createTempFile("repository", "");
+    assertNotNull(this.repository);
+    this.repository.delete();
+    this.artifacts = new ArrayList<Artifact>();
+    // The artifacts take different times to resolve, so that the
+    // order of completion differs from the order of submission.
+    final String[] artifactIds = { "a", "b", "c", "d" };
+    final long[] delays = { DELAY / 3L, DELAY, 2L * DELAY / 3L, DELAY / 6L };
+    this.delegate = new FileRepositoryResolver(this.repository);
+    for (int i = 0; i < artifactIds.length; i++) {
+      final Artifact artifact = newArtifact(artifactIds[i]);
+      install(artifact);
+      this.delegate.delays.put(artifact.getId(), Long.valueOf(delays[i]));
+      this.artifacts.add(artifact);
+    }
+  }
+
+  @After
+  public void deleteRepository() {
+    delete(this.repository);
+  }
+
+  @Test
+  public void testPrefetchIsConcurrent() throws InterruptedException {
+    final ConcurrentArtifactResolver resolver = new ConcurrentArtifactResolver(this.delegate, this.artifacts.size());
+    final long start = System.nanoTime();
+    assertEquals(this.artifacts.size(), resolver.prefetch(this.artifacts, null, null));
+    final long elapsed = (System.nanoTime() - start) / 1000000L;
+    // Serially this would take at least 13 / 6 * DELAY.
+    assertTrue("Prefetching took " + elapsed + " ms", elapsed < 2L * DELAY);
+    assertEquals(this.artifacts.size(), this.delegate.calls.size());
+  }
+
+  @Test
+  public void testPrefetchDoesNotMutateArtifacts() throws InterruptedException {
+    final ConcurrentArtifactResolver resolver = new ConcurrentArtifactResolver(this.delegate, 2);
+    resolver.prefetch(this.artifacts, null, null);
+    for (final Artifact artifact : this.artifacts) {
+      assertNull(artifact.getFile());
+      assertFalse(artifact.isResolved());
+    }
+    for (final Artifact resolved : this.delegate.calls) {
+      for (final Artifact artifact : this.artifacts) {
+        assertFalse(resolved == artifact);
+      }
+    }
+  }
+
+  @Test
+  public void testResolutionOrderAndTimes() throws ArtifactResolutionException, InterruptedException {
+    final ConcurrentArtifactResolver resolver = new ConcurrentArtifactResolver(this.delegate, this.artifacts.size());
+    resolver.prefetch(this.artifacts, null, null);
+    final RecordingResolver recorder = new RecordingResolver(resolver);
+    new TopologicalArtifactSorter().resolve(this.artifacts, recorder, null, null);
+    // The caller's requests arrive in its own order and are all
+    // answered from the prefetch, on the caller's thread.
+    assertEquals(this.artifacts, recorder.calls);
+    assertEquals(this.artifacts.size(), this.delegate.calls.size());
+    for (final Artifact artifact : this.artifacts) {
+      assertTrue(artifact.isResolved());
+      assertEquals(this.delegate.getFile(artifact), artifact.getFile());
+      assertTrue(artifact.getFile().isFile());
+    }
+    final Map<String, Long> times = resolver.getResolutionTimes();
+    assertEquals(Arrays.asList("com.foo:b:jar:1.0", "com.foo:c:jar:1.0", "com.foo:a:jar:1.0", "com.foo:d:jar:1.0"), new ArrayList<String>(times.keySet()));
+    final Iterator<Long> iterator = times.values().iterator();
+    assertTrue(iterator.next().longValue() >= DELAY * 1000000L);
+  }
+
+  @Test
+  public void testMissingArtifact() throws InterruptedException {
+    final Artifact missing = newArtifact("missing");
+    final List<Artifact> artifacts = new ArrayList<Artifact>(this.artifacts);
+    artifacts.add(missing);
+    final ConcurrentArtifactResolver resolver = new ConcurrentArtifactResolver(this.delegate, 3);
+    assertEquals(this.artifacts.size(), resolver.prefetch(artifacts, null, null));
+    try {
+      new TopologicalArtifactSorter().resolve(artifacts, resolver, null, null);
+      fail();
+    } catch (final ArtifactResolutionException expected) {
+      assertSame(missing, expected.getArtifact());
+    }
+    // The missing artifact was tried once by the prefetch and once
+    // more, in the foreground, by the caller.
+    assertEquals(this.artifacts.size() + 2, this.delegate.calls.size());
+  }
+
+  private final void install(final Artifact artifact) throws IOException {
+    final File file = this.delegate.getFile(artifact);
+    file.getParentFile().mkdirs();
+    final FileOutputStream stream = new FileOutputStream(file);
+    try {
+      stream.write(artifact.getId().getBytes("UTF-8"));
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static final Artifact newArtifact(final String artifactId) {
+    return new DefaultArtifact("com.foo", artifactId, "1.0", Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+  }
+
+  private static final void delete(final File file) {
+    if (file != null) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+        for (final File child : children) {
+          delete(child);
+        }
+      }
+      file.delete();
+    }
+  }
+
+  private static class FileRepositoryResolver extends UnsupportedArtifactResolver {
+
+    private final File repository;
+
+    private final Map<String, Long> delays;
+
+    private final List<Artifact> calls;
+
+    private FileRepositoryResolver(final File repository) {
+      super();
+      this.repository = repository;
+      this.delays = Collections.synchronizedMap(new HashMap<String, Long>());
+      this.calls = Collections.synchronizedList(new ArrayList<Artifact>());
+    }
+
+    private final File getFile(final Artifact artifact) {
+      return new File(this.repository, String.format("%s/%s/%s/%s-%s.jar", artifact.getGroupId().replace('.', '/'), artifact.getArtifactId(), artifact.getVersion(), artifact.getArtifactId(), artifact.getVersion()));
+    }
+
+    @Override
+    public ArtifactResolutionResult resolve(final ArtifactResolutionRequest request) {
+      final Artifact artifact = request.getArtifact();
+      this.calls.add(artifact);
+      final Long delay = this.delays.get(artifact.getId());
+      if (delay != null) {
+        try {
+          Thread.sleep(delay.longValue());
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      final ArtifactResolutionResult result = new ArtifactResolutionResult();
+      result.setOriginatingArtifact(artifact);
+      final File file = this.getFile(artifact);
+      if (file.isFile()) {
+        artifact.setFile(file);
+        artifact.setResolved(true);
+        result.addArtifact(artifact);
+      } else {
+        result.addMissingArtifact(artifact);
+      }
+      return result;
+    }
+
+  }
+
+  private static class RecordingResolver extends UnsupportedArtifactResolver {
+
+    private final ArtifactResolver delegate;
+
+    private final List<Artifact> calls;
+
+    private RecordingResolver(final ArtifactResolver delegate) {
+      super();
+      this.delegate = delegate;
+      this.calls = new ArrayList<Artifact>();
+    }
+
+    @Override
+    public ArtifactResolutionResult resolve(final ArtifactResolutionRequest request) {
+      this.calls.add(request.getArtifact());
+      return this.delegate.resolve(request);
+    }
+
+  }
+
+  private static class UnsupportedArtifactResolver implements ArtifactResolver {
+
+    private UnsupportedArtifactResolver() {
+      super();
+    }
+
+    @Override
+    public ArtifactResolutionResult resolve(final ArtifactResolutionRequest request) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories, final ArtifactMetadataSource source, final ArtifactFilter filter) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings({"deprecation", "rawtypes"})
+    public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final Map managedVersions, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories, final ArtifactMetadataSource source) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings({"deprecation", "rawtypes"})
+    public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final Map managedVersions, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories, final ArtifactMetadataSource source, final ArtifactFilter filter) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository, final ArtifactMetadataSource source) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings({"deprecation", "rawtypes"})
+    public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final Map managedVersions, final ArtifactRepository localRepository, final List<ArtifactRepository> remoteRepositories, final ArtifactMetadataSource source, final ArtifactFilter filter, final List<ResolutionListener> listeners) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ArtifactResolutionResult resolveTransitively(final Set<Artifact> artifacts, final Artifact originatingArtifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository, final ArtifactMetadataSource source, final List<ResolutionListener> listeners) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void resolve(final Artifact artifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void resolve(final Artifact artifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository, final TransferListener transferListener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void resolveAlways(final Artifact artifact, final List<ArtifactRepository> remoteRepositories, final ArtifactRepository localRepository) {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+}
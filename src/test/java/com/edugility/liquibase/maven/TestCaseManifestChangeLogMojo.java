@@ -0,0 +1,129 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.edugility.liquibase.ChangeLogManifest;
+import com.edugility.liquibase.ChangeLogManifestEntry;
+import com.edugility.liquibase.ChangeLogManifestWriter;
+import com.edugility.liquibase.URLResourceAccessor;
+
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.parser.ChangeLogParser;
+import liquibase.parser.ChangeLogParserFactory;
+
+import liquibase.resource.ResourceAccessor;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link ManifestChangeLogMojo#verify(List, ChangeLogManifest)}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseManifestChangeLogMojo {
+
+  private List<ChangeSet> changeSets;
+
+  private ManifestChangeLogMojo mojo;
+
+  public TestCaseManifestChangeLogMojo() {
+    super();
+  }
+
+  @Before
+  public void parseChangeLog() throws Exception {
+    final String name = "changelogs/manifest/changelog.xml";
+    final ResourceAccessor resourceAccessor = new URLResourceAccessor(Thread.currentThread().getContextClassLoader());
+    final ChangeLogParser parser = ChangeLogParserFactory.getInstance().getParser(name, resourceAccessor);
+    final DatabaseChangeLog changeLog = parser.parse(name, new ChangeLogParameters(), resourceAccessor);
+    this.changeSets = new ArrayList<ChangeSet>(changeLog.getChangeSets());
+    assertEquals(4, this.changeSets.size());
+    this.mojo = new ManifestChangeLogMojo();
+  }
+
+  @Test
+  public void testVerifyMatchesByIdentity() throws IOException, MojoFailureException {
+    final List<ChangeSet> reversed = new ArrayList<ChangeSet>(this.changeSets);
+    Collections.reverse(reversed);
+    final ChangeLogManifest manifest = manifest(reversed);
+    this.changeSets.add(1, null);
+    this.mojo.verify(this.changeSets, manifest);
+  }
+
+  @Test
+  public void testVerifyReportsMissingEntry() throws IOException {
+    final ChangeLogManifest manifest = manifest(this.changeSets.subList(1, this.changeSets.size()));
+    try {
+      this.mojo.verify(this.changeSets, manifest);
+      fail();
+    } catch (final MojoFailureException expected) {
+
+    }
+  }
+
+  @Test
+  public void testVerifyReportsExtraEntry() throws IOException {
+    final ChangeLogManifest manifest = manifest(this.changeSets);
+    try {
+      this.mojo.verify(this.changeSets.subList(1, this.changeSets.size()), manifest);
+      fail();
+    } catch (final MojoFailureException expected) {
+
+    }
+  }
+
+  private static final ChangeLogManifest manifest(final List<ChangeSet> changeSets) throws IOException {
+    final List<ChangeLogManifestEntry> entries = new ArrayList<ChangeLogManifestEntry>();
+    for (final ChangeSet changeSet : changeSets) {
+      entries.add(new ChangeLogManifestEntry(changeSet));
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new ChangeLogManifestWriter().write(entries, bytes);
+    return new ChangeLogManifest(ByteBuffer.wrap(bytes.toByteArray()));
+  }
+
+}
@@ -0,0 +1,199 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.liquibase.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+
+import org.apache.maven.artifact.versioning.VersionRange;
+
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
+import org.apache.maven.shared.dependency.graph.DependencyNode;
+
+import org.apache.maven.shared.dependency.graph.internal.DefaultDependencyNode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link TopologicalArtifactSorter}.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public class TestCaseTopologicalArtifactSorter {
+
+  private TopologicalArtifactSorter sorter;
+
+  public TestCaseTopologicalArtifactSorter() {
+    super();
+  }
+
+  @Before
+  public void createSorter() {
+    this.sorter = new TopologicalArtifactSorter();
+  }
+
+  @Test
+  public void testNullRoot() throws DependencyGraphBuilderException {
+    final List<Artifact> artifacts = this.sorter.sort(null);
+    assertNotNull(artifacts);
+    assertTrue(artifacts.isEmpty());
+    assertTrue(this.sorter.getDepths(null).isEmpty());
+  }
+
+  @Test
+  public void testDiamond() throws DependencyGraphBuilderException {
+    final DependencyNode root = node(null, "root");
+    final DependencyNode a = node(root, "a");
+    final DependencyNode b = node(root, "b");
+    children(root, a, b);
+    children(a, node(a, "c"));
+    children(b, node(b, "c"));
+    assertEquals(Arrays.asList("c", "b", "a", "root"), artifactIds(this.sorter.sort(root)));
+  }
+
+  @Test
+  public void testDependencyOrderWinsOverDeclarationOrder() throws DependencyGraphBuilderException {
+    // root declares b before a, but b depends on a.
+    final DependencyNode root = node(null, "root");
+    final DependencyNode b = node(root, "b");
+    final DependencyNode a = node(root, "a");
+    children(root, b, a);
+    children(b, node(b, "a"));
+    final List<String> ids = artifactIds(this.sorter.sort(root));
+    assertEquals(Arrays.asList("a", "b", "root"), ids);
+  }
+
+  @Test
+  public void testRepeatedDependency() throws DependencyGraphBuilderException {
+    // root declares a twice; the repeated edge must not hold a back
+    // once b, which also depends on it, has been emitted.
+    final DependencyNode root = node(null, "root");
+    final DependencyNode b = node(root, "b");
+    children(root, node(root, "a"), node(root, "a"), b);
+    children(b, node(b, "a"));
+    assertEquals(Arrays.asList("a", "b", "root"), artifactIds(this.sorter.sort(root)));
+  }
+
+  @Test
+  public void testDepths() {
+    final DependencyNode root = node(null, "root");
+    final DependencyNode a = node(root, "a");
+    final DependencyNode b = node(a, "b");
+    children(root, a, node(root, "c"));
+    children(a, b);
+    final DependencyNode deepC = node(b, "c");
+    children(b, deepC);
+    final Map<String, Integer> depths = this.sorter.getDepths(root);
+    assertEquals(Integer.valueOf(0), depths.get(id("root")));
+    assertEquals(Integer.valueOf(1), depths.get(id("a")));
+    assertEquals(Integer.valueOf(2), depths.get(id("b")));
+    // c is reachable at depth 1 and at depth 3; the shortest wins.
+    assertEquals(Integer.valueOf(1), depths.get(id("c")));
+  }
+
+  @Test
+  public void testCycle() {
+    // Maven keeps these occurrences apart, but once artifacts are
+    // interned by identifier a depends on b and b depends on a.
+    final DependencyNode root = node(null, "root");
+    final DependencyNode a = node(root, "a");
+    final DependencyNode b = node(root, "b");
+    children(root, a, b);
+    children(a, node(a, "b"));
+    children(b, node(b, "a"));
+    try {
+      this.sorter.sort(root);
+      fail();
+    } catch (final DependencyGraphBuilderException expected) {
+      final String message = expected.getMessage();
+      // Dependents come first, and root is not part of the cycle.
+      assertEquals("Dependency cycle: " + id("a") + " -> " + id("b") + " -> " + id("a"), message);
+    }
+  }
+
+  @Test
+  public void testDeepChain() throws DependencyGraphBuilderException {
+    // Deep enough that a recursive walk would overflow the stack.
+    final int size = 100000;
+    final DependencyNode root = node(null, "n0");
+    DependencyNode parent = root;
+    for (int i = 1; i < size; i++) {
+      final DependencyNode child = node(parent, "n" + i);
+      children(parent, child);
+      parent = child;
+    }
+    final List<Artifact> artifacts = this.sorter.sort(root);
+    assertEquals(size, artifacts.size());
+    assertEquals("n" + (size - 1), artifacts.get(0).getArtifactId());
+    assertEquals("n0", artifacts.get(size - 1).getArtifactId());
+    assertEquals(Integer.valueOf(size - 1), this.sorter.getDepths(root).get(id("n" + (size - 1))));
+  }
+
+  private static final DependencyNode node(final DependencyNode parent, final String artifactId) {
+    final DefaultDependencyNode node = new DefaultDependencyNode(parent, artifact(artifactId), null, null, null);
+    node.setChildren(Collections.<DependencyNode>emptyList());
+    return node;
+  }
+
+  private static final void children(final DependencyNode parent, final DependencyNode... children) {
+    ((DefaultDependencyNode)parent).setChildren(Arrays.asList(children));
+  }
+
+  private static final Artifact artifact(final String artifactId) {
+    return new DefaultArtifact("com.edugility.test", artifactId, VersionRange.createFromVersion("1.0"), "compile", "jar", null, new DefaultArtifactHandler("jar"));
+  }
+
+  private static final String id(final String artifactId) {
+    return artifact(artifactId).getId();
+  }
+
+  private static final List<String> artifactIds(final List<? extends Artifact> artifacts) {
+    assertNotNull(artifacts);
+    final List<String> returnValue = new ArrayList<String>(artifacts.size());
+    for (final Artifact artifact : artifacts) {
+      returnValue.add(artifact.getArtifactId());
+    }
+    return returnValue;
+  }
+
+}